@@ -0,0 +1,45 @@
+package cpp.bench;
+
+import cpp.ScalingPrograms;
+import cpp.ast.ProgramNode;
+import cpp.model.ProgramDef;
+import cpp.parse.Parser;
+import cpp.sema.DefinitionBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A chain ten times as deep should take about ten times as long; quadratic paths in definition
+// building would show up as a factor of about a hundred.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefinitionBenchmark {
+  @Param({"1000", "10000"})
+  public int depth;
+
+  private ProgramNode program;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    program = Parser.forSource(ScalingPrograms.chain(depth)).parseProgram();
+  }
+
+  @Benchmark
+  public ProgramDef build() {
+    return new DefinitionBuilder().build(program);
+  }
+}
@@ -0,0 +1,94 @@
+package cpp.bench;
+
+import cpp.antlr.cppLexer;
+import cpp.antlr.cppParser;
+import cpp.ast.ProgramNode;
+import cpp.interp.Interpreter;
+import cpp.model.ProgramDef;
+import cpp.sema.ASTBuilder;
+import cpp.sema.DefinitionBuilder;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+  private static final String PROGRAM =
+      """
+      int fib(int n) {
+          if (n < 2) {
+              return n;
+          }
+          return fib(n - 1) + fib(n - 2);
+      }
+
+      int loop(int n) {
+          int s = 0;
+          int i = 0;
+          while (i < n) {
+              s = s + i % 7;
+              i = i + 1;
+          }
+          return s;
+      }
+
+      int main() {
+          print_int(fib(22));
+          print_int(loop(200000));
+          return 0;
+      }
+      """;
+
+  @Param({"tree", "closure", "vm", "jit"})
+  public String engine;
+
+  private Interpreter interpreter;
+  private PrintStream originalOut;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cppLexer lexer = new cppLexer(CharStreams.fromString(PROGRAM));
+    cppParser parser = new cppParser(new CommonTokenStream(lexer));
+    ProgramNode node = (ProgramNode) new ASTBuilder().visit(parser.program());
+    ProgramDef program = new DefinitionBuilder().build(node, false);
+    interpreter = new Interpreter(program);
+    switch (engine) {
+      case "closure" -> interpreter.enableClosureEngine();
+      case "vm" -> interpreter.enableBytecodeEngine();
+      case "jit" -> interpreter.enableBytecodeEngine().enableJit(1000, 10000, false);
+      default -> {}
+    }
+    originalOut = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.setOut(originalOut);
+  }
+
+  @Benchmark
+  public Object runMain() {
+    return interpreter.runMain();
+  }
+}
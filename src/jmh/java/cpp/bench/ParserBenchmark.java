@@ -0,0 +1,69 @@
+package cpp.bench;
+
+import cpp.antlr.cppParser;
+import cpp.ast.ASTNode;
+import cpp.parse.Parser;
+import cpp.sema.ASTBuilder;
+import cpp.util.SourceParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The "megabytes" counter is reported per second, i.e. as MB/s of source text.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+  @Param({"antlr", "antlr-direct", "hand"})
+  public String parser;
+
+  @Param({"200"})
+  public int copies;
+
+  private String source;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Throughput {
+    public double megabytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    try (InputStream in = ParserBenchmark.class.getResourceAsStream("/cpp/warmup.cpp")) {
+      source = new String(in.readAllBytes(), StandardCharsets.UTF_8).repeat(copies);
+    }
+  }
+
+  @Benchmark
+  public ASTNode parse(Throughput throughput) {
+    throughput.megabytes += source.length() / 1e6;
+    if (parser.equals("hand")) {
+      return Parser.forSource(source).parseProgram();
+    }
+    if (parser.equals("antlr-direct")) {
+      return new SourceParser().buildProgram(CharStreams.fromString(source));
+    }
+    cppParser.ProgramContext program =
+        new SourceParser().parseProgram(CharStreams.fromString(source));
+    return new ASTBuilder().visit(program);
+  }
+}
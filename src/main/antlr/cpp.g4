@@ -30,15 +30,31 @@ baseType
     | 'string'
     | 'void'
     | ID            // class type
+    | qualifier? ID '<' templateArg (',' templateArg)? '>'  // library container
+    ;
+
+templateArg
+    : 'int'
+    | 'bool'
+    | 'char'
+    | 'string'
+    ;
+
+qualifier
+    : ID '::'
     ;
 
 ref
     : '&'
     ;
 
+arraySize
+    : '[' INT ']'
+    ;
+
 
 functionDef
-    : type ID '(' paramList? ')' block
+    : (isConstexpr='constexpr')? type ID '(' paramList? ')' block
     ;
 
 paramList
@@ -46,7 +62,8 @@ paramList
     ;
 
 param
-    : type ID
+    : type ID arraySize?
+    | type '(' ref ID ')' arraySize
     ;
 
 
@@ -63,7 +80,7 @@ classMember
     ;
 
 fieldDecl
-    : type ID ';'
+    : type ID arraySize? ';'
     ;
 
 methodDef
@@ -89,7 +106,7 @@ stmt
     ;
 
 varDecl
-    : type ID ('=' expr)? ';'
+    : (isConst='const')? type ID arraySize? ('=' expr)? ';'
     ;
 
 exprStmt
@@ -147,13 +164,13 @@ unary
     ;
 
 postfix
-    : primary ('.' ID ('(' argList? ')')?)*
+    : primary ('.' ID ('(' argList? ')')? | '[' expr ']')*
     ;
 
 primary
     : literal
     | ID
-    | ID '(' argList? ')'
+    | qualifier? ID '(' argList? ')'
     | '(' expr ')'
     ;
 
@@ -0,0 +1,111 @@
+package cpp.aot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+final class CacheFile {
+  private static final int MAGIC = 0x43505043;
+
+  private static String interpreterVersion;
+
+  private CacheFile() {}
+
+  // Keys are SHA-256 digests of the format, the interpreter version and whatever the entry was
+  // built from; callers add the latter to the returned digest.
+  static MessageDigest key(String format) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    digest.update((format + "|" + interpreterVersion() + "|").getBytes(StandardCharsets.UTF_8));
+    return digest;
+  }
+
+  static Path resolve(Path dir, byte[] key, String suffix) {
+    return dir.resolve(HexFormat.of().formatHex(key) + suffix);
+  }
+
+  // Returns the payload as a view of the mapped file. Any unreadable, truncated or foreign entry is
+  // treated as a miss and replaced by the next write.
+  static ByteBuffer read(Path file, byte[] key) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != key.length) {
+        return null;
+      }
+      if (!buffer.slice(buffer.position(), key.length).equals(ByteBuffer.wrap(key))) {
+        return null;
+      }
+      return buffer.position(buffer.position() + key.length).slice();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  // Entries are only ever renamed into place, so concurrent writers cannot expose partial files.
+  static void write(Path file, byte[] key, byte[] payload) {
+    Path temp = null;
+    try {
+      Files.createDirectories(file.getParent());
+      temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        out.write(ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(key.length).array());
+        out.write(key);
+        out.write(payload);
+      }
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      temp = null;
+    } catch (IOException e) {
+      // A failed write only means the next run parses the source again.
+    } finally {
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException e) {
+          // Left behind for manual cleanup; it is never read as an entry.
+        }
+      }
+    }
+  }
+
+  static synchronized String interpreterVersion() throws IOException {
+    if (interpreterVersion == null) {
+      Path code = JarWriter.codeSource(CacheFile.class);
+      if (Files.isDirectory(code)) {
+        try (Stream<Path> files = Files.walk(code)) {
+          long newest = 0;
+          long count = 0;
+          for (Path path : files.filter(p -> p.toString().endsWith(".class")).toList()) {
+            newest = Math.max(newest, Files.getLastModifiedTime(path).toMillis());
+            count++;
+          }
+          interpreterVersion = count + "@" + newest;
+        }
+      } else {
+        interpreterVersion = Files.size(code) + "@" + Files.getLastModifiedTime(code).toMillis();
+      }
+    }
+    return interpreterVersion;
+  }
+}
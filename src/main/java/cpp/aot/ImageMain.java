@@ -0,0 +1,56 @@
+package cpp.aot;
+
+import cpp.app.Options;
+import cpp.error.CompileError;
+import cpp.error.RuntimeError;
+import cpp.interp.Interpreter;
+import cpp.opt.Inliner;
+import cpp.util.IO;
+import cpp.vm.Jit;
+import cpp.vm.Vm;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ImageMain {
+  public static void main(String... args) throws IOException {
+    ProgramImage image;
+    ClassLoader loader = ImageMain.class.getClassLoader();
+    try (InputStream in = loader.getResourceAsStream(ProgramImage.ENTRY)) {
+      if (in == null) {
+        throw new IOException("Missing program image: " + ProgramImage.ENTRY);
+      }
+      image = ProgramImage.read(in);
+    }
+    try {
+      run(image);
+    } catch (CompileError | RuntimeError ex) {
+      IO.println("Error: " + ex.getMessage());
+    }
+  }
+
+  public static void run(ProgramImage image) {
+    Interpreter interpreter = new Interpreter(image.program, true);
+    if (image.inline) {
+      new Inliner(image.program, image.inlineMaxSize, image.inlineMaxDepth, image.profile).run();
+    }
+    if (image.profile != null) {
+      interpreter.applyProfile(image.profile);
+    }
+    if (image.memoCapacity > 0) {
+      interpreter.enableMemoization(image.memoCapacity);
+    }
+    if (image.engine == Options.Engine.CLOSURE) {
+      interpreter.enableClosureEngine();
+    } else if (image.engine != Options.Engine.TREE) {
+      Vm vm = interpreter.enableBytecodeEngine();
+      vm.setOsrThreshold(image.osrThreshold);
+      if (image.engine == Options.Engine.JIT) {
+        Jit jit = vm.enableJit(image.jitThreshold, image.jitLoopThreshold, false);
+        if (image.profile != null) {
+          interpreter.enqueueHotFunctions(image.profile, jit, image.jitThreshold);
+        }
+      }
+    }
+    interpreter.runMain();
+  }
+}
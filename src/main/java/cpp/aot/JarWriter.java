@@ -0,0 +1,82 @@
+package cpp.aot;
+
+import cpp.app.Main;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import org.antlr.v4.runtime.CharStream;
+
+// "bundle" packs the checked program image with the interpreter runtime and ANTLR into a runnable
+// jar. The program is not compiled to JVM classes ahead of time: ImageMain loads the image and
+// runs it on the engine chosen at bundle time, which with --engine=jit still compiles hot
+// functions while the program runs.
+public class JarWriter {
+  private final Set<String> written = new HashSet<>();
+
+  public void write(ProgramImage image, Path target) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, ImageMain.class.getName());
+    try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(target), manifest)) {
+      written.add(JarFile.MANIFEST_NAME);
+      jar.putNextEntry(new JarEntry(ProgramImage.ENTRY));
+      image.write(jar);
+      jar.closeEntry();
+      for (Class<?> anchor : List.of(Main.class, CharStream.class)) {
+        copyClasses(codeSource(anchor), jar);
+      }
+    }
+  }
+
+  private void copyClasses(Path source, JarOutputStream jar) throws IOException {
+    if (Files.isDirectory(source)) {
+      try (Stream<Path> files = Files.walk(source)) {
+        for (Path file : files.filter(p -> p.toString().endsWith(".class")).toList()) {
+          String name = source.relativize(file).toString().replace('\\', '/');
+          try (InputStream in = Files.newInputStream(file)) {
+            copy(name, in, jar);
+          }
+        }
+      }
+      return;
+    }
+    try (JarFile library = new JarFile(source.toFile())) {
+      for (JarEntry entry : library.stream().toList()) {
+        if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) {
+          continue;
+        }
+        try (InputStream in = library.getInputStream(entry)) {
+          copy(entry.getName(), in, jar);
+        }
+      }
+    }
+  }
+
+  private void copy(String name, InputStream in, JarOutputStream jar) throws IOException {
+    if (!written.add(name)) {
+      return;
+    }
+    jar.putNextEntry(new JarEntry(name));
+    in.transferTo(jar);
+    jar.closeEntry();
+  }
+
+  static Path codeSource(Class<?> anchor) throws IOException {
+    try {
+      return Path.of(anchor.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException | NullPointerException e) {
+      throw new IOException("Cannot locate classes of " + anchor.getName(), e);
+    }
+  }
+}
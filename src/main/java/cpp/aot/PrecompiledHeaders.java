@@ -0,0 +1,96 @@
+package cpp.aot;
+
+import cpp.ast.ProgramNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class PrecompiledHeaders {
+  public static final int MAX_UNITS = 128;
+  private static final String FORMAT = "cpp-pch-3";
+  private static final PrecompiledHeaders IN_MEMORY = new PrecompiledHeaders(null);
+  private static final Map<Path, PrecompiledHeaders> SHARED = new ConcurrentHashMap<>();
+
+  private final Path dir;
+  // Keyed by the same SHA-256 that names the entry on disk, least recently used first out.
+  private final Map<String, ByteBuffer> units =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+              return size() > MAX_UNITS;
+            }
+          });
+  private final AtomicInteger parses = new AtomicInteger();
+
+  public PrecompiledHeaders(Path dir) {
+    this.dir = dir;
+  }
+
+  public static PrecompiledHeaders shared(Path dir) {
+    if (dir == null) {
+      return IN_MEMORY;
+    }
+    return SHARED.computeIfAbsent(dir.toAbsolutePath().normalize(), PrecompiledHeaders::new);
+  }
+
+  public int getParses() {
+    return parses.get();
+  }
+
+  public int getUnitCount() {
+    return units.size();
+  }
+
+  // Every caller gets a freshly decoded tree, since later passes rewrite function bodies in place.
+  public ProgramNode load(String text, Function<String, ProgramNode> parser) throws IOException {
+    byte[] key = CacheFile.key(FORMAT).digest(text.getBytes(StandardCharsets.UTF_8));
+    String name = HexFormat.of().formatHex(key);
+    ByteBuffer unit = units.get(name);
+    if (unit == null) {
+      unit = compile(text, key, parser);
+      if (unit != null) {
+        units.put(name, unit);
+      }
+    }
+    return unit != null ? new ProgramDecoder(unit).decodeUnit() : parser.apply(text);
+  }
+
+  private ByteBuffer compile(String text, byte[] key, Function<String, ProgramNode> parser) {
+    Path file = dir != null ? CacheFile.resolve(dir, key, ".pch") : null;
+    if (file != null) {
+      ByteBuffer stored = CacheFile.read(file, key);
+      if (stored != null && decodes(stored)) {
+        return stored;
+      }
+    }
+    parses.incrementAndGet();
+    byte[] unit;
+    try {
+      unit = new ProgramEncoder().encode(parser.apply(text));
+    } catch (IOException e) {
+      return null;
+    }
+    if (file != null) {
+      CacheFile.write(file, key, unit);
+    }
+    return ByteBuffer.wrap(unit);
+  }
+
+  private static boolean decodes(ByteBuffer unit) {
+    try {
+      new ProgramDecoder(unit).decodeUnit();
+      return true;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+}
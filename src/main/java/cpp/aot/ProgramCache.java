@@ -0,0 +1,59 @@
+package cpp.aot;
+
+import cpp.model.ProgramDef;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+public class ProgramCache {
+  private static final String FORMAT = "cpp-program-cache-6";
+
+  private final byte[] key;
+  private final Path file;
+
+  public ProgramCache(Path dir, Path source, boolean pruned) throws IOException {
+    this(dir, List.of(source), pruned);
+  }
+
+  public ProgramCache(Path dir, List<Path> sources, boolean pruned) throws IOException {
+    MessageDigest digest = CacheFile.key(FORMAT);
+    digest.update((pruned + "|").getBytes(StandardCharsets.UTF_8));
+    for (Path source : sources) {
+      byte[] text = Files.readAllBytes(source);
+      digest.update((source + "|" + text.length + "|").getBytes(StandardCharsets.UTF_8));
+      digest.update(text);
+    }
+    this.key = digest.digest();
+    this.file = CacheFile.resolve(dir, key, ".bin");
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public ProgramDef read() {
+    ByteBuffer payload = CacheFile.read(file, key);
+    if (payload == null) {
+      return null;
+    }
+    try {
+      return new ProgramDecoder(payload).decode();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  public void write(ProgramDef program) {
+    byte[] payload;
+    try {
+      payload = new ProgramEncoder().encode(program);
+    } catch (IOException e) {
+      return;
+    }
+    CacheFile.write(file, key, payload);
+  }
+}
@@ -0,0 +1,325 @@
+package cpp.aot;
+
+import static cpp.aot.ProgramEncoder.LITERAL_BOOL;
+import static cpp.aot.ProgramEncoder.LITERAL_CHAR;
+import static cpp.aot.ProgramEncoder.LITERAL_INT;
+import static cpp.aot.ProgramEncoder.LITERAL_NULL;
+import static cpp.aot.ProgramEncoder.LITERAL_STRING;
+import static cpp.aot.ProgramEncoder.TAG_ASSIGN;
+import static cpp.aot.ProgramEncoder.TAG_BINARY;
+import static cpp.aot.ProgramEncoder.TAG_BLOCK;
+import static cpp.aot.ProgramEncoder.TAG_CALL;
+import static cpp.aot.ProgramEncoder.TAG_CLASS;
+import static cpp.aot.ProgramEncoder.TAG_CONSTRUCTOR;
+import static cpp.aot.ProgramEncoder.TAG_EXPR_STMT;
+import static cpp.aot.ProgramEncoder.TAG_FIELD_ACCESS;
+import static cpp.aot.ProgramEncoder.TAG_FIELD_DECL;
+import static cpp.aot.ProgramEncoder.TAG_FUNCTION;
+import static cpp.aot.ProgramEncoder.TAG_IF;
+import static cpp.aot.ProgramEncoder.TAG_INDEX;
+import static cpp.aot.ProgramEncoder.TAG_LITERAL;
+import static cpp.aot.ProgramEncoder.TAG_METHOD;
+import static cpp.aot.ProgramEncoder.TAG_METHOD_CALL;
+import static cpp.aot.ProgramEncoder.TAG_NULL;
+import static cpp.aot.ProgramEncoder.TAG_PARAM;
+import static cpp.aot.ProgramEncoder.TAG_RETURN;
+import static cpp.aot.ProgramEncoder.TAG_TYPE;
+import static cpp.aot.ProgramEncoder.TAG_UNARY;
+import static cpp.aot.ProgramEncoder.TAG_VAR_DECL;
+import static cpp.aot.ProgramEncoder.TAG_VAR_REF;
+import static cpp.aot.ProgramEncoder.TAG_WHILE;
+
+import cpp.ast.ASTNode;
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.ClassMemberNode;
+import cpp.ast.ConstructorNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.FieldDeclNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.MethodNode;
+import cpp.ast.ParamNode;
+import cpp.ast.ProgramNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+final class ProgramDecoder {
+  private static final Type.Kind[] KINDS = Type.Kind.values();
+
+  private final ByteBuffer buffer;
+  private final List<String> strings = new ArrayList<>();
+
+  ProgramDecoder(byte[] bytes) {
+    this(ByteBuffer.wrap(bytes));
+  }
+
+  // Reads from a private view, so one buffer (possibly a mapped cache file) can be decoded again.
+  ProgramDecoder(ByteBuffer buffer) {
+    this.buffer = buffer.duplicate();
+  }
+
+  ProgramDef decode() throws IOException {
+    ProgramDef program = new ProgramDef();
+    ClassDef[] classes = new ClassDef[readInt()];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = new ClassDef(readString(), readString());
+      classes[i].fileIndex = readInt();
+      program.classes.put(classes[i].name, classes[i]);
+    }
+    for (ClassDef classDef : classes) {
+      int base = readInt();
+      classDef.baseClass = base == 0 ? null : classes[base - 1];
+      int fieldCount = readInt();
+      for (int i = 0; i < fieldCount; i++) {
+        classDef.fields.add(new FieldDef(readType(), readString()));
+      }
+      int methodCount = readInt();
+      for (int i = 0; i < methodCount; i++) {
+        MethodDef method =
+            new MethodDef(
+                readString(),
+                readType(),
+                readParams(),
+                (BlockNode) readNode(),
+                readBoolean(),
+                readString());
+        classDef.methods.add(method);
+      }
+      int ctorCount = readInt();
+      for (int i = 0; i < ctorCount; i++) {
+        classDef.constructors.add(
+            new ConstructorDef(classDef.name, readParams(), (BlockNode) readNode(), readBoolean()));
+      }
+    }
+    // Vtables follow from the methods, so they are rebuilt rather than stored.
+    ClassDef.buildVtables(List.of(classes));
+
+    int names = readInt();
+    for (int i = 0; i < names; i++) {
+      // Each overload repeats the name.
+      readString();
+      int overloads = readInt();
+      for (int j = 0; j < overloads; j++) {
+        FunctionDef function =
+            new FunctionDef(
+                readString(), readType(), readParams(), (BlockNode) readNode(), readBoolean());
+        function.isConstexpr = readBoolean();
+        function.fileIndex = readInt();
+        program.addFunction(function);
+      }
+    }
+
+    int deferredClasses = readInt();
+    for (int i = 0; i < deferredClasses; i++) {
+      program.deferredClasses.put(readString(), (ClassDefNode) readNode());
+    }
+    int deferredFunctions = readInt();
+    for (int i = 0; i < deferredFunctions; i++) {
+      program.deferredFunctions.put(readString(), readNodes(FunctionNode.class));
+    }
+    if (buffer.hasRemaining()) {
+      throw new IOException("Trailing bytes in program cache");
+    }
+    return program;
+  }
+
+  ProgramNode decodeUnit() throws IOException {
+    ProgramNode unit = new ProgramNode();
+    unit.declarations = readNodes(ASTNode.class);
+    if (buffer.hasRemaining()) {
+      throw new IOException("Trailing bytes in precompiled header");
+    }
+    return unit;
+  }
+
+  private List<ParamDef> readParams() {
+    int count = readInt();
+    List<ParamDef> params = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      params.add(new ParamDef(readType(), readString()));
+    }
+    return params;
+  }
+
+  private Type readType() {
+    Type.Kind kind = KINDS[readInt()];
+    String className = readString();
+    boolean isRef = readBoolean();
+    return switch (kind) {
+      case BOOL -> Type.boolType(isRef);
+      case INT -> Type.intType(isRef);
+      case CHAR -> Type.charType(isRef);
+      case STRING -> Type.stringType(isRef);
+      case VOID -> Type.voidType();
+      case CLASS -> Type.classType(className, isRef);
+      case ARRAY -> {
+        Type element = readType();
+        yield Type.arrayType(element, readInt(), isRef);
+      }
+      case VECTOR -> Type.vectorType(readType(), isRef);
+      case ITERATOR -> Type.iteratorType(readType());
+      case MAP -> {
+        Type value = readType();
+        yield Type.mapType(readType(), value, isRef);
+      }
+    };
+  }
+
+  private <T extends ASTNode> List<T> readNodes(Class<T> type) throws IOException {
+    int count = readInt();
+    List<T> nodes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      nodes.add(type.cast(readNode()));
+    }
+    return nodes;
+  }
+
+  private ASTNode readNode() throws IOException {
+    int tag = readInt();
+    if (tag == TAG_NULL) {
+      return null;
+    }
+    int line = readInt();
+    int column = readInt();
+    ASTNode node =
+        switch (tag) {
+          case TAG_BLOCK -> new BlockNode(readNodes(StmtNode.class));
+          case TAG_EXPR_STMT -> new ExprStmtNode(readExpr());
+          case TAG_IF -> new IfStmtNode(readExpr(), readBlock(), readBlock());
+          case TAG_WHILE -> new WhileStmtNode(readExpr(), readBlock());
+          case TAG_RETURN -> new ReturnStmtNode(readExpr());
+          case TAG_VAR_DECL -> {
+            VarDeclNode decl = new VarDeclNode(readTypeNode(), readString(), readExpr());
+            decl.isConst = readBoolean();
+            yield decl;
+          }
+          case TAG_ASSIGN -> new AssignExprNode(readExpr(), readExpr());
+          case TAG_BINARY -> new BinaryExprNode(readString(), readExpr(), readExpr());
+          case TAG_UNARY -> new UnaryExprNode(readString(), readExpr());
+          case TAG_CALL -> new CallExprNode(readString(), readNodes(ExprNode.class));
+          case TAG_METHOD_CALL ->
+              new MethodCallNode(readExpr(), readString(), readNodes(ExprNode.class));
+          case TAG_FIELD_ACCESS -> new FieldAccessNode(readExpr(), readString());
+          case TAG_INDEX -> {
+            IndexExprNode index = new IndexExprNode(readExpr(), readExpr());
+            index.checked = readBoolean();
+            yield index;
+          }
+          case TAG_VAR_REF -> new VarRefNode(readString());
+          case TAG_LITERAL -> new LiteralNode(readLiteral());
+          case TAG_TYPE -> TypeNode.of(readString(), readBoolean(), readInt());
+          case TAG_PARAM -> new ParamNode(readTypeNode(), readString());
+          case TAG_FUNCTION -> {
+            FunctionNode function =
+                new FunctionNode(
+                    readTypeNode(), readString(), readNodes(ParamNode.class), readBlock());
+            function.isConstexpr = readBoolean();
+            function.file = readString();
+            function.fileIndex = readInt();
+            yield function;
+          }
+          case TAG_METHOD ->
+              new MethodNode(
+                  readBoolean(),
+                  readTypeNode(),
+                  readString(),
+                  readNodes(ParamNode.class),
+                  readBlock());
+          case TAG_CONSTRUCTOR ->
+              new ConstructorNode(readString(), readNodes(ParamNode.class), readBlock());
+          case TAG_FIELD_DECL -> new FieldDeclNode(readTypeNode(), readString());
+          case TAG_CLASS -> {
+            ClassDefNode classDef =
+                new ClassDefNode(readString(), readString(), readNodes(ClassMemberNode.class));
+            classDef.file = readString();
+            classDef.fileIndex = readInt();
+            yield classDef;
+          }
+          default -> throw new IOException("Unknown node tag " + tag);
+        };
+    node.setPosition(line, column);
+    return node;
+  }
+
+  private ExprNode readExpr() throws IOException {
+    return (ExprNode) readNode();
+  }
+
+  private BlockNode readBlock() throws IOException {
+    return (BlockNode) readNode();
+  }
+
+  private TypeNode readTypeNode() throws IOException {
+    return (TypeNode) readNode();
+  }
+
+  private Object readLiteral() throws IOException {
+    return switch (readInt()) {
+      case LITERAL_NULL -> null;
+      case LITERAL_INT -> readInt();
+      case LITERAL_BOOL -> readBoolean();
+      case LITERAL_CHAR -> (char) readInt();
+      case LITERAL_STRING -> readString();
+      default -> throw new IOException("Unknown literal kind");
+    };
+  }
+
+  private String readString() {
+    int id = readInt();
+    if (id == 0) {
+      return null;
+    }
+    if (id > 1) {
+      return strings.get(id - 2);
+    }
+    int length = readInt();
+    byte[] utf8 = new byte[length];
+    buffer.get(utf8);
+    String value = new String(utf8, StandardCharsets.UTF_8);
+    strings.add(value);
+    return value;
+  }
+
+  private boolean readBoolean() {
+    return readInt() != 0;
+  }
+
+  private int readInt() {
+    int bits = 0;
+    int shift = 0;
+    byte next;
+    do {
+      next = buffer.get();
+      bits |= (next & 0x7f) << shift;
+      shift += 7;
+    } while (next < 0);
+    return (bits >>> 1) ^ -(bits & 1);
+  }
+}
@@ -0,0 +1,386 @@
+package cpp.aot;
+
+import cpp.ast.ASTNode;
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.ConstructorNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.FieldDeclNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.MethodNode;
+import cpp.ast.ParamNode;
+import cpp.ast.ProgramNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ProgramEncoder {
+  static final int TAG_NULL = 0;
+  static final int TAG_BLOCK = 1;
+  static final int TAG_EXPR_STMT = 2;
+  static final int TAG_IF = 3;
+  static final int TAG_WHILE = 4;
+  static final int TAG_RETURN = 5;
+  static final int TAG_VAR_DECL = 6;
+  static final int TAG_ASSIGN = 7;
+  static final int TAG_BINARY = 8;
+  static final int TAG_UNARY = 9;
+  static final int TAG_CALL = 10;
+  static final int TAG_METHOD_CALL = 11;
+  static final int TAG_FIELD_ACCESS = 12;
+  static final int TAG_VAR_REF = 13;
+  static final int TAG_LITERAL = 14;
+  static final int TAG_TYPE = 15;
+  static final int TAG_PARAM = 16;
+  static final int TAG_FUNCTION = 17;
+  static final int TAG_METHOD = 18;
+  static final int TAG_CONSTRUCTOR = 19;
+  static final int TAG_FIELD_DECL = 20;
+  static final int TAG_CLASS = 21;
+  static final int TAG_INDEX = 22;
+
+  static final int LITERAL_NULL = 0;
+  static final int LITERAL_INT = 1;
+  static final int LITERAL_BOOL = 2;
+  static final int LITERAL_CHAR = 3;
+  static final int LITERAL_STRING = 4;
+
+  private byte[] bytes = new byte[1 << 16];
+  private int size;
+  private final Map<String, Integer> strings = new HashMap<>();
+
+  byte[] encode(ProgramDef program) throws IOException {
+    List<ClassDef> classes = List.copyOf(program.classes.values());
+    Map<ClassDef, Integer> classIds = new IdentityHashMap<>();
+    writeInt(classes.size());
+    for (ClassDef classDef : classes) {
+      classIds.put(classDef, classIds.size());
+      writeString(classDef.name);
+      writeString(classDef.baseName);
+      writeInt(classDef.fileIndex);
+    }
+    for (ClassDef classDef : classes) {
+      writeInt(classDef.baseClass == null ? 0 : classIds.get(classDef.baseClass) + 1);
+      writeInt(classDef.fields.size());
+      for (FieldDef field : classDef.fields) {
+        writeType(field.type);
+        writeString(field.name);
+      }
+      writeInt(classDef.methods.size());
+      for (MethodDef method : classDef.methods) {
+        writeString(method.name);
+        writeType(method.returnType);
+        writeParams(method.params);
+        writeBody(method.body, method.deferredBody != null);
+        writeBoolean(method.isVirtual);
+        writeString(method.declaredIn);
+      }
+      writeInt(classDef.constructors.size());
+      for (ConstructorDef ctor : classDef.constructors) {
+        writeParams(ctor.params);
+        writeBody(ctor.body, ctor.deferredBody != null);
+        writeBoolean(ctor.isSyntheticCopy);
+      }
+    }
+
+    writeInt(program.functions.size());
+    for (Map.Entry<String, List<FunctionDef>> entry : program.functions.entrySet()) {
+      writeString(entry.getKey());
+      writeInt(entry.getValue().size());
+      for (FunctionDef function : entry.getValue()) {
+        writeString(function.name);
+        writeType(function.returnType);
+        writeParams(function.params);
+        writeBody(function.body, function.deferredBody != null);
+        writeBoolean(function.isBuiltin);
+        writeBoolean(function.isConstexpr);
+        writeInt(function.fileIndex);
+      }
+    }
+
+    writeInt(program.deferredClasses.size());
+    for (Map.Entry<String, ClassDefNode> entry : program.deferredClasses.entrySet()) {
+      writeString(entry.getKey());
+      writeNode(entry.getValue());
+    }
+    writeInt(program.deferredFunctions.size());
+    for (Map.Entry<String, List<FunctionNode>> entry : program.deferredFunctions.entrySet()) {
+      writeString(entry.getKey());
+      writeNodes(entry.getValue());
+    }
+    return Arrays.copyOf(bytes, size);
+  }
+
+  byte[] encode(ProgramNode unit) throws IOException {
+    writeNodes(unit.declarations);
+    return Arrays.copyOf(bytes, size);
+  }
+
+  private void writeParams(List<ParamDef> params) {
+    writeInt(params.size());
+    for (ParamDef param : params) {
+      writeType(param.type);
+      writeString(param.name);
+    }
+  }
+
+  private void writeBody(BlockNode body, boolean deferred) throws IOException {
+    if (deferred) {
+      throw new IOException("Deferred bodies cannot be cached");
+    }
+    writeNode(body);
+  }
+
+  private void writeType(Type type) {
+    writeInt(type.kind.ordinal());
+    writeString(type.className);
+    writeBoolean(type.isRef);
+    if (type.isArray()) {
+      writeType(type.element);
+      writeInt(type.length);
+    } else if (type.element != null) {
+      writeType(type.element);
+    }
+    if (type.key != null) {
+      writeType(type.key);
+    }
+  }
+
+  private void writeNodes(List<? extends ASTNode> nodes) throws IOException {
+    writeInt(nodes.size());
+    for (ASTNode node : nodes) {
+      writeNode(node);
+    }
+  }
+
+  private void writeNode(ASTNode node) throws IOException {
+    if (node == null) {
+      writeInt(TAG_NULL);
+      return;
+    }
+    switch (node) {
+      case BlockNode block -> {
+        writeHeader(TAG_BLOCK, block);
+        writeNodes(block.statements);
+      }
+      case ExprStmtNode stmt -> {
+        writeHeader(TAG_EXPR_STMT, stmt);
+        writeNode(stmt.expr);
+      }
+      case IfStmtNode stmt -> {
+        writeHeader(TAG_IF, stmt);
+        writeNode(stmt.condition);
+        writeNode(stmt.thenBlock);
+        writeNode(stmt.elseBlock);
+      }
+      case WhileStmtNode stmt -> {
+        writeHeader(TAG_WHILE, stmt);
+        writeNode(stmt.condition);
+        writeNode(stmt.body);
+      }
+      case ReturnStmtNode stmt -> {
+        writeHeader(TAG_RETURN, stmt);
+        writeNode(stmt.value);
+      }
+      case VarDeclNode decl -> {
+        writeHeader(TAG_VAR_DECL, decl);
+        writeNode(decl.type);
+        writeString(decl.name);
+        writeNode(decl.init);
+        writeBoolean(decl.isConst);
+      }
+      case AssignExprNode assign -> {
+        writeHeader(TAG_ASSIGN, assign);
+        writeNode(assign.target);
+        writeNode(assign.value);
+      }
+      case BinaryExprNode binary -> {
+        writeHeader(TAG_BINARY, binary);
+        writeString(binary.op);
+        writeNode(binary.left);
+        writeNode(binary.right);
+      }
+      case UnaryExprNode unary -> {
+        writeHeader(TAG_UNARY, unary);
+        writeString(unary.op);
+        writeNode(unary.expr);
+      }
+      case CallExprNode call -> {
+        writeHeader(TAG_CALL, call);
+        writeString(call.name);
+        writeNodes(call.args);
+      }
+      case MethodCallNode call -> {
+        writeHeader(TAG_METHOD_CALL, call);
+        writeNode(call.receiver);
+        writeString(call.name);
+        writeNodes(call.args);
+      }
+      case FieldAccessNode access -> {
+        writeHeader(TAG_FIELD_ACCESS, access);
+        writeNode(access.receiver);
+        writeString(access.name);
+      }
+      case IndexExprNode index -> {
+        writeHeader(TAG_INDEX, index);
+        writeNode(index.array);
+        writeNode(index.index);
+        writeBoolean(index.checked);
+      }
+      case VarRefNode ref -> {
+        writeHeader(TAG_VAR_REF, ref);
+        writeString(ref.name);
+      }
+      case LiteralNode literal -> {
+        writeHeader(TAG_LITERAL, literal);
+        writeLiteral(literal.value);
+      }
+      case TypeNode type -> {
+        writeHeader(TAG_TYPE, type);
+        writeString(type.name);
+        writeBoolean(type.isRef);
+        writeInt(type.length);
+      }
+      case ParamNode param -> {
+        writeHeader(TAG_PARAM, param);
+        writeNode(param.type);
+        writeString(param.name);
+      }
+      case FunctionNode function -> {
+        writeHeader(TAG_FUNCTION, function);
+        writeNode(function.returnType);
+        writeString(function.name);
+        writeNodes(function.params);
+        writeBody(function.body, function.deferredBody != null);
+        writeBoolean(function.isConstexpr);
+        writeString(function.file);
+        writeInt(function.fileIndex);
+      }
+      case MethodNode method -> {
+        writeHeader(TAG_METHOD, method);
+        writeBoolean(method.isVirtual);
+        writeNode(method.returnType);
+        writeString(method.name);
+        writeNodes(method.params);
+        writeBody(method.body, method.deferredBody != null);
+      }
+      case ConstructorNode ctor -> {
+        writeHeader(TAG_CONSTRUCTOR, ctor);
+        writeString(ctor.name);
+        writeNodes(ctor.params);
+        writeBody(ctor.body, ctor.deferredBody != null);
+      }
+      case FieldDeclNode field -> {
+        writeHeader(TAG_FIELD_DECL, field);
+        writeNode(field.type);
+        writeString(field.name);
+      }
+      case ClassDefNode classDef -> {
+        writeHeader(TAG_CLASS, classDef);
+        writeString(classDef.name);
+        writeString(classDef.baseName);
+        writeNodes(classDef.members);
+        writeString(classDef.file);
+        writeInt(classDef.fileIndex);
+      }
+      default -> throw new IOException("Cannot cache node " + node.getClass().getSimpleName());
+    }
+  }
+
+  private void writeHeader(int tag, ASTNode node) {
+    writeInt(tag);
+    writeInt(node.line());
+    writeInt(node.column());
+  }
+
+  private void writeLiteral(Object value) throws IOException {
+    switch (value) {
+      case null -> writeInt(LITERAL_NULL);
+      case Integer number -> {
+        writeInt(LITERAL_INT);
+        writeInt(number);
+      }
+      case Boolean flag -> {
+        writeInt(LITERAL_BOOL);
+        writeBoolean(flag);
+      }
+      case Character ch -> {
+        writeInt(LITERAL_CHAR);
+        writeInt(ch);
+      }
+      case String text -> {
+        writeInt(LITERAL_STRING);
+        writeString(text);
+      }
+      default -> throw new IOException("Cannot cache literal " + value.getClass().getSimpleName());
+    }
+  }
+
+  // Strings are written once and referenced by index afterwards: 0 is null, 1 introduces a new
+  // string, and n + 2 refers to the n-th string seen so far.
+  private void writeString(String value) {
+    if (value == null) {
+      writeInt(0);
+      return;
+    }
+    Integer id = strings.get(value);
+    if (id != null) {
+      writeInt(id + 2);
+      return;
+    }
+    strings.put(value, strings.size());
+    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(1);
+    writeInt(utf8.length);
+    ensure(utf8.length);
+    System.arraycopy(utf8, 0, bytes, size, utf8.length);
+    size += utf8.length;
+  }
+
+  private void writeBoolean(boolean value) {
+    writeInt(value ? 1 : 0);
+  }
+
+  // Unsigned LEB128 over the zigzag encoding, so small negative literals stay short as well.
+  private void writeInt(int value) {
+    ensure(5);
+    int bits = (value << 1) ^ (value >> 31);
+    while ((bits & ~0x7f) != 0) {
+      bytes[size++] = (byte) ((bits & 0x7f) | 0x80);
+      bits >>>= 7;
+    }
+    bytes[size++] = (byte) bits;
+  }
+
+  private void ensure(int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package cpp.aot;
+
+import cpp.app.Options;
+import cpp.model.ProgramDef;
+import cpp.profile.Profile;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// The checked program in the cache encoding plus the settings it was compiled with. Inlining
+// and the profile are applied when the image is loaded, because inlined calls are not encoded.
+public class ProgramImage {
+  public static final String ENTRY = "cpp/aot/program.bin";
+  private static final String FORMAT = "cpp-image-2";
+
+  public final ProgramDef program;
+  public final Options.Engine engine;
+  public final int osrThreshold;
+  public final int jitThreshold;
+  public final int jitLoopThreshold;
+  public final int memoCapacity;
+  public final boolean inline;
+  public final int inlineMaxSize;
+  public final int inlineMaxDepth;
+  public final Profile profile;
+
+  public ProgramImage(ProgramDef program, Options options, Profile profile) {
+    this(
+        program,
+        options.engine,
+        options.osrThreshold,
+        options.jitThreshold,
+        options.jitLoopThreshold,
+        options.memoize ? options.memoCapacity : 0,
+        options.inline,
+        options.inlineMaxSize,
+        options.inlineMaxDepth,
+        profile);
+  }
+
+  private ProgramImage(
+      ProgramDef program,
+      Options.Engine engine,
+      int osrThreshold,
+      int jitThreshold,
+      int jitLoopThreshold,
+      int memoCapacity,
+      boolean inline,
+      int inlineMaxSize,
+      int inlineMaxDepth,
+      Profile profile) {
+    this.program = program;
+    this.engine = engine;
+    this.osrThreshold = osrThreshold;
+    this.jitThreshold = jitThreshold;
+    this.jitLoopThreshold = jitLoopThreshold;
+    this.memoCapacity = memoCapacity;
+    this.inline = inline;
+    this.inlineMaxSize = inlineMaxSize;
+    this.inlineMaxDepth = inlineMaxDepth;
+    this.profile = profile;
+  }
+
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeUTF(FORMAT);
+    data.writeUTF(engine.name());
+    data.writeInt(osrThreshold);
+    data.writeInt(jitThreshold);
+    data.writeInt(jitLoopThreshold);
+    data.writeInt(memoCapacity);
+    data.writeBoolean(inline);
+    data.writeInt(inlineMaxSize);
+    data.writeInt(inlineMaxDepth);
+    List<String> lines = profile != null ? profile.lines() : List.of();
+    data.writeInt(lines.size());
+    for (String line : lines) {
+      data.writeUTF(line);
+    }
+    byte[] encoded = new ProgramEncoder().encode(program);
+    data.writeInt(encoded.length);
+    data.write(encoded);
+    data.flush();
+  }
+
+  public static ProgramImage read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    String format = data.readUTF();
+    if (!format.equals(FORMAT)) {
+      throw new IOException("Incompatible program image: " + format);
+    }
+    Options.Engine engine = Options.Engine.valueOf(data.readUTF());
+    int osrThreshold = data.readInt();
+    int jitThreshold = data.readInt();
+    int jitLoopThreshold = data.readInt();
+    int memoCapacity = data.readInt();
+    boolean inline = data.readBoolean();
+    int inlineMaxSize = data.readInt();
+    int inlineMaxDepth = data.readInt();
+    List<String> lines = new ArrayList<>();
+    for (int i = data.readInt(); i > 0; i--) {
+      lines.add(data.readUTF());
+    }
+    ProgramDef program = new ProgramDecoder(data.readNBytes(data.readInt())).decode();
+    return new ProgramImage(
+        program,
+        engine,
+        osrThreshold,
+        jitThreshold,
+        jitLoopThreshold,
+        memoCapacity,
+        inline,
+        inlineMaxSize,
+        inlineMaxDepth,
+        lines.isEmpty() ? null : Profile.parse(lines, ENTRY));
+  }
+}
@@ -0,0 +1,41 @@
+package cpp.app;
+
+import cpp.ast.SymbolTable;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Heap retained by the front end's output, measured as the difference in used heap after full
+// collections. Only meaningful when nothing else is running in the process.
+class Footprint {
+  private final long baseline = usedAfterGc();
+
+  List<String> report(List<Path> files, Object output) throws IOException {
+    long retained = usedAfterGc() - baseline;
+    Reference.reachabilityFence(output);
+    long lines = 0;
+    for (Path file : files) {
+      try (Stream<String> stream = Files.lines(file)) {
+        lines += stream.count();
+      }
+    }
+    return List.of(
+        String.format(
+            "[footprint] %d bytes for %d source lines (%.1f bytes/line)",
+            retained, lines, lines == 0 ? 0.0 : (double) retained / lines),
+        "[footprint] " + SymbolTable.size() + " interned symbols");
+  }
+
+  private static long usedAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+}
@@ -1,46 +1,138 @@
 package cpp.app;
 
-import cpp.antlr.cppLexer;
-import cpp.antlr.cppParser;
+import cpp.aot.JarWriter;
+import cpp.aot.ProgramCache;
+import cpp.aot.ProgramImage;
 import cpp.error.CompileError;
 import cpp.error.RuntimeError;
 import cpp.interp.Interpreter;
-import cpp.ast.ProgramNode;
+import cpp.interp.Memoizer;
 import cpp.model.ProgramDef;
+import cpp.opt.BoundsChecks;
+import cpp.opt.ConstantFolder;
+import cpp.opt.Inliner;
+import cpp.profile.Profile;
+import cpp.profile.Profiler;
 import cpp.runtime.Env;
-import cpp.sema.ASTBuilder;
 import cpp.sema.DefinitionBuilder;
 import cpp.util.IO;
-import cpp.util.ParserErrorListener;
+import cpp.vm.Jit;
+import cpp.vm.Vm;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class Main {
   public static void main(String... args) throws Exception {
     try {
-      cppParser.ProgramContext programCtx = null;
-      if (args.length > 0) {
-        cppLexer lexer =
-            new cppLexer(org.antlr.v4.runtime.CharStreams.fromPath(java.nio.file.Path.of(args[0])));
-        org.antlr.v4.runtime.CommonTokenStream tokens =
-            new org.antlr.v4.runtime.CommonTokenStream(lexer);
-        cppParser parser = new cppParser(tokens);
-        parser.removeErrorListeners();
-        parser.addErrorListener(new ParserErrorListener());
-        programCtx = parser.program();
-      }
+      run(Options.parse(args), null, true);
+    } catch (CompileError | RuntimeError ex) {
+      IO.println("Error: " + ex.getMessage());
+    }
+  }
 
-      ProgramDef program = new ProgramDef();
-      if (programCtx != null) {
-        ASTBuilder astBuilder = new ASTBuilder();
-        ProgramNode programNode = (ProgramNode) astBuilder.visit(programCtx);
+  // The whole command line pipeline: load or read the cached program, optimize it, then bundle it
+  // or run main (and the REPL). A null jitExecutor compiles on the JIT's background thread.
+  public static void run(Options options, Executor jitExecutor, boolean repl) throws IOException {
+    Memoizer memoizer = null;
+    Profiler profiler = null;
+    ProgramDef program = null;
+    try {
+      List<Path> sources = SourceLoader.expand(options.sourcePaths);
+      SourceLoader loader = new SourceLoader(options);
+      List<Path> files = loader.withIncludes(sources);
+      ProgramCache cache = null;
+      if (options.cacheDir != null && !sources.isEmpty()) {
+        cache = new ProgramCache(Path.of(options.cacheDir), files, options.pruneUnreachable);
+        program = cache.read();
+      }
+      Interpreter interpreter;
+      if (program != null) {
+        interpreter = new Interpreter(program, true);
+        if (options.checkBodies) {
+          interpreter.enableBodyChecks();
+        }
+      } else {
+        Footprint footprint = options.footprint ? new Footprint() : null;
         DefinitionBuilder builder = new DefinitionBuilder();
-        program = builder.build(programNode);
+        if (options.stream) {
+          loader.stream(sources, files, builder::add);
+        } else if (!sources.isEmpty()) {
+          loader.load(sources, files).declarations.forEach(builder::add);
+        }
+        program = builder.finish(options.pruneUnreachable);
+        if (footprint != null) {
+          for (String line : footprint.report(files, program)) {
+            IO.eprintln(line);
+          }
+        }
+        interpreter = new Interpreter(program);
+        if (options.checkBodies) {
+          interpreter.enableBodyChecks();
+        }
+        new ConstantFolder(program, interpreter).run();
+        new BoundsChecks(program).run();
+        if (cache != null) {
+          cache.write(program);
+        }
+      }
+      if (options.frontend == Options.Frontend.HAND) {
+        interpreter.useHandParser();
+      }
+      Profile profile = options.profileIn != null ? Profile.read(Path.of(options.profileIn)) : null;
+      if (options.bundle) {
+        new JarWriter()
+            .write(new ProgramImage(program, options, profile), Path.of(options.outputPath));
+        return;
+      }
+      if (options.inline) {
+        Inliner inliner =
+            new Inliner(program, options.inlineMaxSize, options.inlineMaxDepth, profile);
+        inliner.run();
+        if (options.inlineReport) {
+          for (String line : inliner.getReport()) {
+            IO.eprintln(line);
+          }
+        }
+      }
+      if (profile != null) {
+        interpreter.applyProfile(profile);
+      }
+      if (options.profileOut != null) {
+        profiler = interpreter.enableProfiling();
+      }
+      if (options.memoize) {
+        memoizer = interpreter.enableMemoization(options.memoCapacity);
+      }
+      if (options.engine == Options.Engine.CLOSURE) {
+        interpreter.enableClosureEngine();
+      } else if (options.engine != Options.Engine.TREE) {
+        Vm vm = interpreter.enableBytecodeEngine();
+        vm.setOsrThreshold(options.osrThreshold);
+        if (options.engine == Options.Engine.JIT) {
+          Jit jit =
+              vm.enableJit(
+                  options.jitThreshold, options.jitLoopThreshold, options.jitLog, jitExecutor);
+          if (profile != null) {
+            interpreter.enqueueHotFunctions(profile, jit, options.jitThreshold);
+          }
+        }
       }
-      Interpreter interpreter = new Interpreter(program);
       Env sessionEnv = interpreter.runMain();
-      interpreter.setReplSessionEnv(sessionEnv);
-      interpreter.executeRepl();
-    } catch (CompileError | RuntimeError ex) {
-      IO.println("Error: " + ex.getMessage());
+      if (repl) {
+        interpreter.setReplSessionEnv(sessionEnv);
+        interpreter.executeRepl();
+      }
+    } finally {
+      if (profiler != null) {
+        profiler.toProfile(program).write(Path.of(options.profileOut));
+      }
+      if (memoizer != null && options.memoStats) {
+        for (String line : memoizer.getStats()) {
+          IO.eprintln(line);
+        }
+      }
     }
   }
 }
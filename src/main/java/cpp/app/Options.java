@@ -0,0 +1,174 @@
+package cpp.app;
+
+import cpp.error.CompileError;
+import cpp.interp.Memoizer;
+import cpp.opt.Inliner;
+import cpp.vm.Jit;
+import cpp.vm.Vm;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Options {
+  public enum Engine {
+    TREE,
+    CLOSURE,
+    VM,
+    JIT
+  }
+
+  public enum Frontend {
+    ANTLR,
+    ANTLR_DIRECT,
+    HAND
+  }
+
+  public boolean bundle;
+  public String outputPath;
+  public final List<String> sourcePaths = new ArrayList<>();
+  public final List<String> includePaths = new ArrayList<>();
+  public Frontend frontend = Frontend.ANTLR;
+  public boolean lazyBodies;
+  public boolean stream;
+  public boolean footprint;
+  public String cacheDir;
+  public Engine engine = Engine.TREE;
+  public int jitThreshold = Jit.DEFAULT_INVOCATION_THRESHOLD;
+  public int jitLoopThreshold = Jit.DEFAULT_LOOP_THRESHOLD;
+  public boolean jitLog;
+  public int osrThreshold = Vm.DEFAULT_OSR_THRESHOLD;
+  public boolean pruneUnreachable;
+  public boolean checkBodies;
+  public boolean inline;
+  public int inlineMaxSize = Inliner.DEFAULT_MAX_SIZE;
+  public int inlineMaxDepth = Inliner.DEFAULT_MAX_DEPTH;
+  public boolean inlineReport;
+  public boolean memoize;
+  public int memoCapacity = Memoizer.DEFAULT_CAPACITY;
+  public boolean memoStats;
+  public String profileOut;
+  public String profileIn;
+
+  public static Options parse(String... args) {
+    Options options = new Options();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (i == 0 && arg.equals("bundle")) {
+        options.bundle = true;
+      } else if (arg.startsWith("--output=")) {
+        options.outputPath = arg.substring("--output=".length());
+      } else if (arg.startsWith("--parser=")) {
+        options.frontend = frontendValue(arg.substring("--parser=".length()));
+      } else if (arg.startsWith("--include-path=")) {
+        options.includePaths.add(arg.substring("--include-path=".length()));
+      } else if (arg.startsWith("--cache-dir=")) {
+        options.cacheDir = arg.substring("--cache-dir=".length());
+      } else if (arg.equals("--lazy-bodies")) {
+        options.lazyBodies = true;
+      } else if (arg.equals("--stream")) {
+        options.stream = true;
+      } else if (arg.equals("--footprint")) {
+        options.footprint = true;
+      } else if (arg.startsWith("--engine=")) {
+        options.engine = engineValue(arg.substring("--engine=".length()));
+      } else if (arg.startsWith("--jit-threshold=")) {
+        options.engine = Engine.JIT;
+        options.jitThreshold = intValue(arg, "--jit-threshold=");
+      } else if (arg.startsWith("--jit-loop-threshold=")) {
+        options.engine = Engine.JIT;
+        options.jitLoopThreshold = intValue(arg, "--jit-loop-threshold=");
+      } else if (arg.equals("--jit-log")) {
+        options.engine = Engine.JIT;
+        options.jitLog = true;
+      } else if (arg.startsWith("--osr-threshold=")) {
+        options.osrThreshold = intValue(arg, "--osr-threshold=");
+      } else if (arg.equals("--prune-unreachable")) {
+        options.pruneUnreachable = true;
+      } else if (arg.equals("--check-bodies")) {
+        options.checkBodies = true;
+      } else if (arg.equals("--inline")) {
+        options.inline = true;
+      } else if (arg.startsWith("--inline-size=")) {
+        options.inline = true;
+        options.inlineMaxSize = intValue(arg, "--inline-size=");
+      } else if (arg.startsWith("--inline-depth=")) {
+        options.inline = true;
+        options.inlineMaxDepth = intValue(arg, "--inline-depth=");
+      } else if (arg.equals("--inline-report")) {
+        options.inline = true;
+        options.inlineReport = true;
+      } else if (arg.equals("--memoize")) {
+        options.memoize = true;
+      } else if (arg.startsWith("--memo-size=")) {
+        options.memoize = true;
+        options.memoCapacity = intValue(arg, "--memo-size=");
+        if (options.memoCapacity == 0) {
+          throw new CompileError("Memo cache size must be positive");
+        }
+      } else if (arg.equals("--memo-stats")) {
+        options.memoize = true;
+        options.memoStats = true;
+      } else if (arg.startsWith("--profile-out=")) {
+        options.profileOut = arg.substring("--profile-out=".length());
+      } else if (arg.startsWith("--profile-in=")) {
+        options.profileIn = arg.substring("--profile-in=".length());
+      } else if (arg.startsWith("--")) {
+        throw new CompileError("Unknown option: " + arg);
+      } else {
+        options.sourcePaths.add(arg);
+      }
+    }
+    if (options.lazyBodies
+        && (options.bundle
+            || options.pruneUnreachable
+            || options.cacheDir != null
+            || options.stream)) {
+      throw new CompileError(
+          "--lazy-bodies cannot be combined with bundle, pruning, caching or streaming");
+    }
+    if (options.lazyBodies && options.frontend == Frontend.ANTLR_DIRECT) {
+      throw new CompileError(
+          "--lazy-bodies needs the parse tree and cannot use --parser=antlr-direct");
+    }
+    if (options.bundle) {
+      if (options.sourcePaths.isEmpty()) {
+        throw new CompileError("bundle requires a source file");
+      }
+      if (options.outputPath == null) {
+        String first = options.sourcePaths.get(0).replaceFirst("[/\\\\]+$", "");
+        options.outputPath = first.replaceFirst("\\.cpp$", "") + ".jar";
+      }
+    }
+    return options;
+  }
+
+  private static Frontend frontendValue(String name) {
+    return switch (name) {
+      case "antlr" -> Frontend.ANTLR;
+      case "antlr-direct" -> Frontend.ANTLR_DIRECT;
+      case "hand" -> Frontend.HAND;
+      default -> throw new CompileError("Unknown parser: " + name);
+    };
+  }
+
+  private static Engine engineValue(String name) {
+    return switch (name) {
+      case "tree" -> Engine.TREE;
+      case "closure" -> Engine.CLOSURE;
+      case "vm" -> Engine.VM;
+      case "jit" -> Engine.JIT;
+      default -> throw new CompileError("Unknown engine: " + name);
+    };
+  }
+
+  private static int intValue(String arg, String prefix) {
+    try {
+      int value = Integer.parseInt(arg.substring(prefix.length()));
+      if (value < 0) {
+        throw new CompileError("Negative value for option: " + arg);
+      }
+      return value;
+    } catch (NumberFormatException e) {
+      throw new CompileError("Invalid number for option: " + arg);
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package cpp.app;
+
+import cpp.antlr.cppParser;
+import cpp.aot.PrecompiledHeaders;
+import cpp.ast.ASTNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.FunctionNode;
+import cpp.ast.ProgramNode;
+import cpp.error.CompileError;
+import cpp.parse.Parser;
+import cpp.sema.ASTBuilder;
+import cpp.util.MappedCharStream;
+import cpp.util.SourceParser;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+public class SourceLoader {
+  private static final String RUNTIME_HEADER = "hsbi_runtime.h";
+
+  private final Options options;
+  private final PrecompiledHeaders headers;
+  private final ThreadLocal<SourceParser> parsers = ThreadLocal.withInitial(SourceParser::new);
+
+  public SourceLoader(Options options) {
+    this(
+        options,
+        PrecompiledHeaders.shared(options.cacheDir != null ? Path.of(options.cacheDir) : null));
+  }
+
+  public SourceLoader(Options options, PrecompiledHeaders headers) {
+    this.options = options;
+    this.headers = headers;
+  }
+
+  // Files keep their command-line order; directories contribute their .cpp files sorted by path.
+  public static List<Path> expand(List<String> paths) throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (String path : paths) {
+      Path source = Path.of(path);
+      if (!Files.isDirectory(source)) {
+        files.add(source);
+        continue;
+      }
+      try (Stream<Path> walk = Files.walk(source)) {
+        List<Path> found =
+            walk.filter(p -> p.toString().endsWith(".cpp") && Files.isRegularFile(p))
+                .sorted()
+                .toList();
+        if (found.isEmpty()) {
+          throw new CompileError("No .cpp files in directory: " + path);
+        }
+        files.addAll(found);
+      }
+    }
+    return files;
+  }
+
+  // Quoted includes resolve against the including file's directory, then --include-path entries.
+  // Each file appears once, after everything it includes; the runtime header is built in.
+  public List<Path> withIncludes(List<Path> sources) throws IOException {
+    List<Path> ordered = new ArrayList<>();
+    Set<Path> seen = new HashSet<>();
+    for (Path source : sources) {
+      visit(source, seen, ordered);
+    }
+    return ordered;
+  }
+
+  private void visit(Path file, Set<Path> seen, List<Path> ordered) throws IOException {
+    if (!seen.add(file.toRealPath())) {
+      return;
+    }
+    for (Include include : includes(MappedCharStream.open(file))) {
+      if (!Path.of(include.name).getFileName().toString().equals(RUNTIME_HEADER)) {
+        visit(resolve(file, include), seen, ordered);
+      }
+    }
+    ordered.add(file);
+  }
+
+  // Quoted #include directives, skipping comments and string and character literals. Only the
+  // directive names are copied out of the mapped file.
+  static List<Include> includes(CharSequence text) {
+    List<Include> includes = new ArrayList<>();
+    int length = text.length();
+    int line = 1;
+    boolean lineStart = true;
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+      char next = i + 1 < length ? text.charAt(i + 1) : 0;
+      if (c == '\n') {
+        line++;
+        lineStart = true;
+        i++;
+      } else if (c == ' ' || c == '\t' || c == '\r') {
+        i++;
+      } else if (c == '/' && next == '/') {
+        while (i < length && text.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && next == '*') {
+        i += 2;
+        while (i + 1 < length && !(text.charAt(i) == '*' && text.charAt(i + 1) == '/')) {
+          line += text.charAt(i) == '\n' ? 1 : 0;
+          i++;
+        }
+        i = Math.min(i + 2, length);
+      } else if (c == '"' || c == '\'') {
+        i = skipLiteral(text, i);
+        lineStart = false;
+      } else if (c == '#' && lineStart) {
+        i = directive(text, i + 1, line, includes);
+        lineStart = false;
+      } else {
+        lineStart = false;
+        i++;
+      }
+    }
+    return includes;
+  }
+
+  private static int skipLiteral(CharSequence text, int start) {
+    char quote = text.charAt(start);
+    int i = start + 1;
+    while (i < text.length() && text.charAt(i) != quote && text.charAt(i) != '\n') {
+      i += text.charAt(i) == '\\' ? 2 : 1;
+    }
+    return Math.min(i + 1, text.length());
+  }
+
+  // Reads the rest of a directive line after '#' and returns the index of its line break.
+  private static int directive(CharSequence text, int i, int line, List<Include> includes) {
+    i = skipBlanks(text, i);
+    String keyword = "include";
+    int end = i + keyword.length();
+    if (end <= text.length() && keyword.contentEquals(text.subSequence(i, end))) {
+      i = skipBlanks(text, end);
+      if (i < text.length() && text.charAt(i) == '"') {
+        int close = i + 1;
+        while (close < text.length() && text.charAt(close) != '"' && text.charAt(close) != '\n') {
+          close++;
+        }
+        if (close < text.length() && text.charAt(close) == '"' && close > i + 1) {
+          includes.add(new Include(text.subSequence(i + 1, close).toString(), line));
+          i = close + 1;
+        }
+      }
+    }
+    while (i < text.length() && text.charAt(i) != '\n') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipBlanks(CharSequence text, int i) {
+    while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+      i++;
+    }
+    return i;
+  }
+
+  static final class Include {
+    final String name;
+    final int line;
+
+    Include(String name, int line) {
+      this.name = name;
+      this.line = line;
+    }
+  }
+
+  private Path resolve(Path includer, Include include) {
+    String name = include.name;
+    Path dir = includer.getParent();
+    List<Path> candidates = new ArrayList<>();
+    candidates.add(dir != null ? dir.resolve(name) : Path.of(name));
+    for (String includePath : options.includePaths) {
+      candidates.add(Path.of(includePath).resolve(name));
+    }
+    for (Path candidate : candidates) {
+      if (Files.isRegularFile(candidate)) {
+        return candidate.normalize();
+      }
+    }
+    throw new CompileError(includer + ":" + include.line + ": Cannot find include: " + name);
+  }
+
+  public ProgramNode load(List<Path> sources) throws IOException {
+    return load(sources, withIncludes(sources));
+  }
+
+  // files is the include-ordered list from withIncludes(sources).
+  public ProgramNode load(List<Path> sources, List<Path> files) throws IOException {
+    Set<Path> roots = new HashSet<>(sources);
+    if (files.size() == 1) {
+      return parse(files.get(0), 0, false);
+    }
+    int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<ProgramNode>> parsed = new ArrayList<>();
+      for (int i = 0; i < files.size(); i++) {
+        Path file = files.get(i);
+        int index = i;
+        boolean header = !roots.contains(file);
+        parsed.add(pool.submit(() -> parse(file, index, header)));
+      }
+      ProgramNode program = new ProgramNode();
+      for (Future<ProgramNode> part : parsed) {
+        program.declarations.addAll(join(part).declarations);
+      }
+      return program;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Headers are never deferred so that their declarations can be stored as precompiled units.
+  private ProgramNode parse(Path file, int index, boolean header) throws IOException {
+    ProgramNode program;
+    try {
+      program =
+          header
+              ? headers.load(Files.readString(file), source -> parse(source, false))
+              : parse(MappedCharStream.open(file), options.lazyBodies);
+    } catch (CompileError e) {
+      throw new CompileError(file + ": " + e.getMessage());
+    }
+    for (ASTNode decl : program.declarations) {
+      stamp(decl, file, index);
+    }
+    return program;
+  }
+
+  // Root sources hand each declaration to the sink as soon as it is converted, dropping its
+  // tokens and parse tree. The source itself stays in the mapped file rather than on the heap.
+  public void stream(List<Path> sources, Consumer<ASTNode> sink) throws IOException {
+    stream(sources, withIncludes(sources), sink);
+  }
+
+  public void stream(List<Path> sources, List<Path> files, Consumer<ASTNode> sink)
+      throws IOException {
+    Set<Path> roots = new HashSet<>(sources);
+    for (int i = 0; i < files.size(); i++) {
+      Path file = files.get(i);
+      int index = i;
+      if (!roots.contains(file)) {
+        parse(file, index, true).declarations.forEach(sink);
+        continue;
+      }
+      Consumer<ASTNode> stamped =
+          decl -> {
+            stamp(decl, file, index);
+            sink.accept(decl);
+          };
+      try {
+        if (options.frontend == Options.Frontend.HAND) {
+          Parser parser = Parser.streaming(MappedCharStream.open(file));
+          for (ASTNode decl = parser.nextDecl(); decl != null; decl = parser.nextDecl()) {
+            stamped.accept(decl);
+          }
+        } else if (options.frontend == Options.Frontend.ANTLR_DIRECT) {
+          parsers.get().streamDeclarations(MappedCharStream.open(file), stamped);
+        } else {
+          ASTBuilder builder = new ASTBuilder();
+          parsers
+              .get()
+              .streamProgram(
+                  MappedCharStream.open(file), decl -> stamped.accept(builder.visit(decl)));
+        }
+      } catch (CompileError e) {
+        throw new CompileError(file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static void stamp(ASTNode decl, Path file, int index) {
+    if (decl instanceof FunctionNode function) {
+      function.file = file.toString();
+      function.fileIndex = index;
+    } else if (decl instanceof ClassDefNode classDef) {
+      classDef.file = file.toString();
+      classDef.fileIndex = index;
+    }
+  }
+
+  private ProgramNode parse(CharSequence source, boolean deferBodies) {
+    if (options.frontend == Options.Frontend.HAND) {
+      Parser parser = Parser.forSource(source);
+      parser.setDeferBodies(deferBodies);
+      return parser.parseProgram();
+    }
+    CharStream input =
+        source instanceof CharStream stream ? stream : CharStreams.fromString(source.toString());
+    if (options.frontend == Options.Frontend.ANTLR_DIRECT) {
+      return parsers.get().buildProgram(input);
+    }
+    Map<Integer, DeferredBody> bodies = deferBodies ? new HashMap<>() : null;
+    cppParser.ProgramContext programCtx = parsers.get().parseProgram(input, bodies);
+    ProgramNode program = (ProgramNode) new ASTBuilder(bodies).visit(programCtx);
+    parsers.get().release();
+    return program;
+  }
+
+  private static ProgramNode join(Future<ProgramNode> part) throws IOException {
+    try {
+      return part.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing sources");
+    } catch (ExecutionException e) {
+      switch (e.getCause()) {
+        case IOException io -> throw io;
+        case RuntimeException re -> throw re;
+        case Error error -> throw error;
+        default -> throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
@@ -1,6 +1,30 @@
 package cpp.ast;
 
+import java.util.Arrays;
+import java.util.List;
+
 public abstract class ASTNode {
-  public int line;
-  public int column;
+  // Line in the upper 32 bits, column in the lower 32, so neither is ever truncated.
+  private long position;
+
+  public int line() {
+    return (int) (position >>> 32);
+  }
+
+  public int column() {
+    return (int) position;
+  }
+
+  public void setPosition(int line, int column) {
+    position = (long) line << 32 | (column & 0xFFFFFFFFL);
+  }
+
+  // Child lists never grow after parsing, only have elements replaced by the optimizer.
+  @SuppressWarnings("unchecked")
+  static <T> List<T> exact(List<T> list) {
+    if (list == null) {
+      return null;
+    }
+    return list.isEmpty() ? List.of() : (List<T>) Arrays.asList(list.toArray());
+  }
 }
@@ -5,7 +5,7 @@ public class BinaryExprNode extends ExprNode {
   public ExprNode left, right;
 
   public BinaryExprNode(String op, ExprNode left, ExprNode right) {
-    this.op = op;
+    this.op = SymbolTable.intern(op);
     this.left = left;
     this.right = right;
   }
@@ -1,8 +1,11 @@
 package cpp.ast;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class BlockNode extends StmtNode {
-  public List<StmtNode> statements = new ArrayList<>();
+  public final List<StmtNode> statements;
+
+  public BlockNode(List<StmtNode> statements) {
+    this.statements = exact(statements);
+  }
 }
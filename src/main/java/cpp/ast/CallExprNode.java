@@ -7,7 +7,7 @@ public class CallExprNode extends ExprNode {
   public final List<ExprNode> args;
 
   public CallExprNode(String name, List<ExprNode> args) {
-    this.name = name;
-    this.args = args;
+    this.name = SymbolTable.intern(name);
+    this.args = exact(args);
   }
 }
@@ -1,15 +1,17 @@
 package cpp.ast;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ClassDefNode extends ASTNode {
   public final String name;
   public final String baseName;
-  public final List<ClassMemberNode> members = new ArrayList<>();
+  public final List<ClassMemberNode> members;
+  public String file;
+  public int fileIndex;
 
-  public ClassDefNode(String name, String baseName) {
-    this.name = name;
-    this.baseName = baseName;
+  public ClassDefNode(String name, String baseName, List<ClassMemberNode> members) {
+    this.name = SymbolTable.intern(name);
+    this.baseName = SymbolTable.intern(baseName);
+    this.members = exact(members);
   }
 }
@@ -6,10 +6,11 @@ public class ConstructorNode extends ClassMemberNode {
   public final String name;
   public final List<ParamNode> params;
   public final BlockNode body;
+  public DeferredBody deferredBody;
 
   public ConstructorNode(String name, List<ParamNode> params, BlockNode body) {
-    this.name = name;
-    this.params = params;
+    this.name = SymbolTable.intern(name);
+    this.params = exact(params);
     this.body = body;
   }
 }
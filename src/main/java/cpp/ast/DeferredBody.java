@@ -0,0 +1,5 @@
+package cpp.ast;
+
+public interface DeferredBody {
+  BlockNode parse();
+}
@@ -6,6 +6,6 @@ public class FieldAccessNode extends ExprNode {
 
   public FieldAccessNode(ExprNode receiver, String name) {
     this.receiver = receiver;
-    this.name = name;
+    this.name = SymbolTable.intern(name);
   }
 }
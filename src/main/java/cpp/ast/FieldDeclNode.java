@@ -6,6 +6,6 @@ public class FieldDeclNode extends ClassMemberNode {
 
   public FieldDeclNode(TypeNode type, String name) {
     this.type = type;
-    this.name = name;
+    this.name = SymbolTable.intern(name);
   }
 }
@@ -7,11 +7,15 @@ public class FunctionNode extends ASTNode {
   public String name;
   public List<ParamNode> params;
   public BlockNode body;
+  public DeferredBody deferredBody;
+  public boolean isConstexpr;
+  public String file;
+  public int fileIndex;
 
   public FunctionNode(TypeNode returnType, String name, List<ParamNode> params, BlockNode body) {
     this.returnType = returnType;
-    this.name = name;
-    this.params = params;
+    this.name = SymbolTable.intern(name);
+    this.params = exact(params);
     this.body = body;
   }
 }
@@ -0,0 +1,13 @@
+package cpp.ast;
+
+public class IndexExprNode extends ExprNode {
+  public final ExprNode array;
+  public final ExprNode index;
+  // Cleared by BoundsChecks where the index is provably within the array.
+  public boolean checked = true;
+
+  public IndexExprNode(ExprNode array, ExprNode index) {
+    this.array = array;
+    this.index = index;
+  }
+}
@@ -0,0 +1,29 @@
+package cpp.ast;
+
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+
+public class InlinedCallNode extends ExprNode {
+  public final ExprNode call;
+  public final FunctionDef function;
+  public final MethodDef method;
+  public final String signature;
+  public final ExprNode body;
+  // Static class of the receiver for inlined method calls.
+  public final String receiverClass;
+
+  public InlinedCallNode(
+      ExprNode call,
+      FunctionDef function,
+      MethodDef method,
+      String signature,
+      ExprNode body,
+      String receiverClass) {
+    this.call = call;
+    this.function = function;
+    this.method = method;
+    this.signature = signature;
+    this.body = body;
+    this.receiverClass = receiverClass;
+  }
+}
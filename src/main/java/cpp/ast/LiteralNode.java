@@ -4,6 +4,13 @@ public class LiteralNode extends ExprNode {
   public Object value;
 
   public LiteralNode(Object value) {
-    this.value = value;
+    this.value = isImmutable(value) ? SymbolTable.constant(value) : value;
+  }
+
+  private static boolean isImmutable(Object value) {
+    return value instanceof String
+        || value instanceof Integer
+        || value instanceof Character
+        || value instanceof Boolean;
   }
 }
@@ -1,15 +1,17 @@
 package cpp.ast;
 
+import cpp.runtime.InlineCache;
 import java.util.List;
 
 public class MethodCallNode extends ExprNode {
   public final ExprNode receiver;
   public final String name;
   public final List<ExprNode> args;
+  public InlineCache inlineCache;
 
   public MethodCallNode(ExprNode receiver, String name, List<ExprNode> args) {
     this.receiver = receiver;
-    this.name = name;
-    this.args = args;
+    this.name = SymbolTable.intern(name);
+    this.args = exact(args);
   }
 }
@@ -8,13 +8,14 @@ public class MethodNode extends ClassMemberNode {
   public final String name;
   public final List<ParamNode> params;
   public final BlockNode body;
+  public DeferredBody deferredBody;
 
   public MethodNode(
       boolean isVirtual, TypeNode returnType, String name, List<ParamNode> params, BlockNode body) {
     this.isVirtual = isVirtual;
     this.returnType = returnType;
-    this.name = name;
-    this.params = params;
+    this.name = SymbolTable.intern(name);
+    this.params = exact(params);
     this.body = body;
   }
 }
@@ -6,6 +6,6 @@ public class ParamNode extends ASTNode {
 
   public ParamNode(TypeNode type, String name) {
     this.type = type;
-    this.name = name;
+    this.name = SymbolTable.intern(name);
   }
 }
@@ -0,0 +1,58 @@
+package cpp.ast;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Every identifier, operator and literal value in the AST goes through here, so a name that
+// appears a thousand times in the source is held by one String. Shared across parser threads.
+// Entries are weak: a value drops out once no AST refers to it, so REPL sessions and
+// long-running processes do not keep every name they have ever parsed.
+public final class SymbolTable {
+  private static final int STRIPES = 16;
+  private static final Stripe[] TABLES = new Stripe[STRIPES];
+
+  static {
+    for (int i = 0; i < STRIPES; i++) {
+      TABLES[i] = new Stripe();
+    }
+  }
+
+  private static final class Stripe {
+    final Map<Object, WeakReference<Object>> values = new WeakHashMap<>();
+  }
+
+  private SymbolTable() {}
+
+  public static String intern(String name) {
+    return (String) constant(name);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> T constant(T value) {
+    if (value == null) {
+      return null;
+    }
+    int hash = value.hashCode();
+    Stripe stripe = TABLES[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    synchronized (stripe) {
+      WeakReference<Object> known = stripe.values.get(value);
+      Object existing = known != null ? known.get() : null;
+      if (existing != null) {
+        return (T) existing;
+      }
+      stripe.values.put(value, new WeakReference<>(value));
+      return value;
+    }
+  }
+
+  public static int size() {
+    int size = 0;
+    for (Stripe stripe : TABLES) {
+      synchronized (stripe) {
+        size += stripe.values.size();
+      }
+    }
+    return size;
+  }
+}
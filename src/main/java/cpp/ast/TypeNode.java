@@ -1,11 +1,52 @@
 package cpp.ast;
 
+import cpp.error.CompileError;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One shared instance per type, so type nodes carry no position.
 public class TypeNode extends ASTNode {
-  public String name;
-  public boolean isRef;
+  private static final ConcurrentHashMap<String, TypeNode> VALUES = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, TypeNode> REFERENCES = new ConcurrentHashMap<>();
+
+  public final String name;
+  public final boolean isRef;
+  public final int length;
 
-  public TypeNode(String name, boolean isRef) {
+  private TypeNode(String name, boolean isRef, int length) {
     this.name = name;
     this.isRef = isRef;
+    this.length = length;
+  }
+
+  public static TypeNode of(String name, boolean isRef) {
+    return of(name, isRef, 0);
   }
+
+  public static TypeNode of(String name, boolean isRef, int length) {
+    String key = length == 0 ? name : name + "[" + length + "]";
+    return (isRef ? REFERENCES : VALUES)
+        .computeIfAbsent(key, k -> new TypeNode(SymbolTable.intern(name), isRef, length));
+  }
+
+  // A reference to an array binds the whole array, as in int (&a)[N].
+  public static TypeNode arrayOf(TypeNode element, int length, boolean isRef) {
+    if (element.isRef) {
+      throw new CompileError("Arrays of references are not allowed");
+    }
+    if (length <= 0) {
+      throw new CompileError("Array size must be positive: " + length);
+    }
+    return of(element.name, isRef, length);
+  }
+
+  public boolean isArray() {
+    return length > 0;
+  }
+
+  public boolean isContainer() {
+    return name.indexOf('<') >= 0;
+  }
+
+  @Override
+  public void setPosition(int line, int column) {}
 }
@@ -5,7 +5,7 @@ public class UnaryExprNode extends ExprNode {
   public final ExprNode expr;
 
   public UnaryExprNode(String op, ExprNode expr) {
-    this.op = op;
+    this.op = SymbolTable.intern(op);
     this.expr = expr;
   }
 }
@@ -4,10 +4,11 @@ public class VarDeclNode extends StmtNode {
   public TypeNode type;
   public String name;
   public ExprNode init;
+  public boolean isConst;
 
   public VarDeclNode(TypeNode type, String name, ExprNode init) {
     this.type = type;
-    this.name = name;
+    this.name = SymbolTable.intern(name);
     this.init = init;
   }
 }
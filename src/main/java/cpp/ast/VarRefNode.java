@@ -4,6 +4,6 @@ public class VarRefNode extends ExprNode {
   public final String name;
 
   public VarRefNode(String name) {
-    this.name = name;
+    this.name = SymbolTable.intern(name);
   }
 }
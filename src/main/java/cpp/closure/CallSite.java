@@ -0,0 +1,17 @@
+package cpp.closure;
+
+import cpp.model.FunctionDef;
+
+final class CallSite {
+  final FunctionDef function;
+  final Code.Int[] intArgs;
+  final Code.Str[] strArgs;
+  ClosureBody target;
+  int generation = -1;
+
+  CallSite(FunctionDef function, Code.Int[] intArgs, Code.Str[] strArgs) {
+    this.function = function;
+    this.intArgs = intArgs;
+    this.strArgs = strArgs;
+  }
+}
@@ -0,0 +1,33 @@
+package cpp.closure;
+
+import cpp.model.Type;
+
+public final class ClosureBody {
+  final String name;
+  final Code.Stmt body;
+  final int intSlots;
+  final int objSlots;
+  final boolean[] paramIsObj;
+  final int[] paramSlots;
+  final Type returnType;
+  final String missingReturn;
+
+  ClosureBody(
+      String name,
+      Code.Stmt body,
+      int intSlots,
+      int objSlots,
+      boolean[] paramIsObj,
+      int[] paramSlots,
+      Type returnType,
+      String missingReturn) {
+    this.name = name;
+    this.body = body;
+    this.intSlots = intSlots;
+    this.objSlots = objSlots;
+    this.paramIsObj = paramIsObj;
+    this.paramSlots = paramSlots;
+    this.returnType = returnType;
+    this.missingReturn = missingReturn;
+  }
+}
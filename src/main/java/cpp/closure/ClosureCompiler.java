@@ -0,0 +1,731 @@
+package cpp.closure;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.error.RuntimeError;
+import cpp.model.ClassDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.runtime.Value;
+import cpp.runtime.VarSlot;
+import cpp.util.IO;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClosureCompiler {
+  private final ProgramDef program;
+  private final ClosureEngine engine;
+
+  public ClosureCompiler(ProgramDef program, ClosureEngine engine) {
+    this.program = program;
+    this.engine = engine;
+  }
+
+  public ClosureBody compile(FunctionDef function) {
+    if (function.isBuiltin || function.body == null) {
+      return null;
+    }
+    return compile(
+        function.name,
+        function.params,
+        function.returnType,
+        function.body,
+        null,
+        "Missing return in function: " + function.name);
+  }
+
+  public ClosureBody compile(MethodDef method) {
+    return compile(
+        method.declaredIn + "::" + method.name,
+        method.params,
+        method.returnType,
+        method.body,
+        program.classes.get(method.declaredIn),
+        "Missing return in method: " + method.name);
+  }
+
+  private ClosureBody compile(
+      String name,
+      List<ParamDef> params,
+      Type returnType,
+      BlockNode body,
+      ClassDef owner,
+      String missingReturn) {
+    try {
+      return new Unit(name, returnType, owner, missingReturn).compile(params, body);
+    } catch (Unsupported e) {
+      return null;
+    }
+  }
+
+  private static final class Unsupported extends RuntimeException {
+    Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final class Local {
+    final Type.Kind kind;
+    final int slot;
+    final boolean readOnly;
+
+    Local(Type.Kind kind, int slot, boolean readOnly) {
+      this.kind = kind;
+      this.slot = slot;
+      this.readOnly = readOnly;
+    }
+
+    boolean isStr() {
+      return kind == Type.Kind.STRING;
+    }
+  }
+
+  private static final class Expr {
+    final Type.Kind kind;
+    final Code.Int ints;
+    final Code.Str strs;
+    final Code.Cond cond;
+
+    private Expr(Type.Kind kind, Code.Int ints, Code.Str strs, Code.Cond cond) {
+      this.kind = kind;
+      this.ints = ints;
+      this.strs = strs;
+      this.cond = cond;
+    }
+
+    static Expr of(Type.Kind kind, Code.Int code) {
+      return new Expr(kind, code, null, null);
+    }
+
+    static Expr str(Code.Str code) {
+      return new Expr(Type.Kind.STRING, null, code, null);
+    }
+
+    static Expr bool(Code.Cond code) {
+      return new Expr(Type.Kind.BOOL, null, null, code);
+    }
+
+    Code.Int asInt() {
+      if (ints != null) {
+        return ints;
+      }
+      Code.Cond test = cond;
+      return f -> test.test(f) ? 1 : 0;
+    }
+
+    Code.Cond asCond() {
+      if (cond != null) {
+        return cond;
+      }
+      if (strs != null) {
+        Code.Str value = strs;
+        return f -> !value.eval(f).isEmpty();
+      }
+      Code.Int value = ints;
+      return f -> value.eval(f) != 0;
+    }
+  }
+
+  private final class Unit {
+    private final String name;
+    private final Type returnType;
+    private final String missingReturn;
+    private final Map<String, Type> fields = new HashMap<>();
+    private final Deque<Map<String, Local>> scopes = new ArrayDeque<>();
+    private int intSlots;
+    private int objSlots;
+
+    Unit(String name, Type returnType, ClassDef owner, String missingReturn) {
+      this.name = name;
+      this.returnType = returnType;
+      this.missingReturn = missingReturn;
+      for (ClassDef current = owner; current != null; current = current.baseClass) {
+        for (FieldDef field : current.fields) {
+          fields.putIfAbsent(field.name, field.type);
+        }
+      }
+    }
+
+    ClosureBody compile(List<ParamDef> params, BlockNode body) {
+      if (returnType.isRef || !(returnType.isVoid() || returnType.isScalar())) {
+        throw new Unsupported();
+      }
+      boolean[] paramIsObj = new boolean[params.size()];
+      int[] paramSlots = new int[params.size()];
+      Map<String, Local> top = new HashMap<>();
+      for (int i = 0; i < params.size(); i++) {
+        ParamDef param = params.get(i);
+        if (param.type.isRef || fields.containsKey(param.name)) {
+          throw new Unsupported();
+        }
+        Local local = newLocal(kindOf(param.type), false);
+        top.put(param.name, local);
+        paramIsObj[i] = local.isStr();
+        paramSlots[i] = local.slot;
+      }
+      scopes.push(top);
+      Code.Stmt code = compileStatements(body);
+      return new ClosureBody(
+          name, code, intSlots, objSlots, paramIsObj, paramSlots, returnType, missingReturn);
+    }
+
+    private Code.Stmt compileBlock(BlockNode block) {
+      scopes.push(new HashMap<>());
+      Code.Stmt code = compileStatements(block);
+      scopes.pop();
+      return code;
+    }
+
+    private Code.Stmt compileStatements(BlockNode block) {
+      List<Code.Stmt> statements = new ArrayList<>();
+      for (StmtNode stmt : block.statements) {
+        statements.add(compileStmt(stmt));
+      }
+      Code.Stmt[] codes = statements.toArray(new Code.Stmt[0]);
+      switch (codes.length) {
+        case 0:
+          return f -> false;
+        case 1:
+          return codes[0];
+        case 2:
+          Code.Stmt first = codes[0];
+          Code.Stmt second = codes[1];
+          return f -> first.exec(f) || second.exec(f);
+        default:
+          return f -> {
+            for (Code.Stmt code : codes) {
+              if (code.exec(f)) {
+                return true;
+              }
+            }
+            return false;
+          };
+      }
+    }
+
+    private Code.Stmt compileStmt(StmtNode stmt) {
+      if (stmt instanceof VarDeclNode decl) {
+        return compileVarDecl(decl);
+      }
+      if (stmt instanceof ExprStmtNode exprStmt) {
+        if (exprStmt.expr instanceof AssignExprNode assign) {
+          return compileStore(assign);
+        }
+        Expr expr = compileExpr(exprStmt.expr);
+        if (expr.kind == Type.Kind.STRING) {
+          Code.Str value = expr.strs;
+          return f -> {
+            value.eval(f);
+            return false;
+          };
+        }
+        Code.Int value = expr.asInt();
+        return f -> {
+          value.eval(f);
+          return false;
+        };
+      }
+      if (stmt instanceof IfStmtNode ifStmt) {
+        Code.Cond condition = condition(ifStmt.condition);
+        Code.Stmt thenCode = compileBlock(ifStmt.thenBlock);
+        if (ifStmt.elseBlock == null) {
+          return f -> condition.test(f) && thenCode.exec(f);
+        }
+        Code.Stmt elseCode = compileBlock(ifStmt.elseBlock);
+        return f -> condition.test(f) ? thenCode.exec(f) : elseCode.exec(f);
+      }
+      if (stmt instanceof WhileStmtNode whileStmt) {
+        Code.Cond condition = condition(whileStmt.condition);
+        Code.Stmt body = compileBlock(whileStmt.body);
+        return f -> {
+          while (condition.test(f)) {
+            if (body.exec(f)) {
+              return true;
+            }
+          }
+          return false;
+        };
+      }
+      if (stmt instanceof ReturnStmtNode returnStmt) {
+        return compileReturn(returnStmt);
+      }
+      if (stmt instanceof BlockNode block) {
+        return compileBlock(block);
+      }
+      throw new Unsupported();
+    }
+
+    private Code.Stmt compileVarDecl(VarDeclNode decl) {
+      Type.Kind kind = kindOf(decl.type);
+      if (scopes.peek().containsKey(decl.name) || fields.containsKey(decl.name)) {
+        throw new Unsupported();
+      }
+      Expr init = null;
+      if (decl.init != null) {
+        init = compileExpr(decl.init);
+        require(init.kind == kind);
+      } else if (decl.isConst) {
+        throw new Unsupported();
+      }
+      Local local = newLocal(kind, decl.isConst);
+      scopes.peek().put(decl.name, local);
+      int slot = local.slot;
+      if (kind == Type.Kind.STRING) {
+        Code.Str value = init != null ? init.strs : f -> "";
+        return f -> {
+          f.objs[slot] = value.eval(f);
+          return false;
+        };
+      }
+      Code.Int value = init != null ? init.asInt() : f -> 0;
+      return f -> {
+        f.ints[slot] = value.eval(f);
+        return false;
+      };
+    }
+
+    private Code.Stmt compileReturn(ReturnStmtNode stmt) {
+      if (stmt.value == null) {
+        require(returnType.isVoid());
+        return f -> true;
+      }
+      require(!returnType.isVoid());
+      Expr value = compileExpr(stmt.value);
+      require(value.kind == returnType.kind);
+      if (value.kind == Type.Kind.STRING) {
+        Code.Str result = value.strs;
+        return f -> {
+          f.strResult = result.eval(f);
+          return true;
+        };
+      }
+      Code.Int result = value.asInt();
+      return f -> {
+        f.intResult = result.eval(f);
+        return true;
+      };
+    }
+
+    private Code.Stmt compileStore(AssignExprNode assign) {
+      require(assign.target instanceof VarRefNode);
+      String target = ((VarRefNode) assign.target).name;
+      Local local = lookup(target);
+      if (local == null) {
+        Expr expr = compileAssign(assign);
+        Code.Int value = expr.kind == Type.Kind.STRING ? null : expr.ints;
+        Code.Str text = expr.strs;
+        return value != null
+            ? f -> {
+              value.eval(f);
+              return false;
+            }
+            : f -> {
+              text.eval(f);
+              return false;
+            };
+      }
+      require(!local.readOnly);
+      Expr value = compileExpr(assign.value);
+      require(value.kind == local.kind);
+      int slot = local.slot;
+      if (local.isStr()) {
+        Code.Str text = value.strs;
+        return f -> {
+          f.objs[slot] = text.eval(f);
+          return false;
+        };
+      }
+      if (assign.value instanceof BinaryExprNode binary
+          && binary.left instanceof VarRefNode left
+          && left.name.equals(target)
+          && binary.right instanceof LiteralNode literal
+          && literal.value instanceof Integer delta
+          && local.kind == Type.Kind.INT) {
+        if (binary.op.equals("+")) {
+          return f -> {
+            f.ints[slot] += delta;
+            return false;
+          };
+        }
+        if (binary.op.equals("-")) {
+          return f -> {
+            f.ints[slot] -= delta;
+            return false;
+          };
+        }
+      }
+      Code.Int number = value.asInt();
+      return f -> {
+        f.ints[slot] = number.eval(f);
+        return false;
+      };
+    }
+
+    private Code.Cond condition(ExprNode expr) {
+      Expr condition = compileExpr(expr);
+      require(condition.kind != Type.Kind.VOID);
+      return condition.asCond();
+    }
+
+    private Expr compileExpr(ExprNode expr) {
+      if (expr instanceof LiteralNode literal) {
+        return compileLiteral(literal.value);
+      }
+      if (expr instanceof VarRefNode ref) {
+        return compileLoad(ref.name);
+      }
+      if (expr instanceof AssignExprNode assign) {
+        return compileAssign(assign);
+      }
+      if (expr instanceof BinaryExprNode binary) {
+        return compileBinary(binary);
+      }
+      if (expr instanceof UnaryExprNode unary) {
+        Expr operand = compileExpr(unary.expr);
+        if (unary.op.equals("!")) {
+          require(operand.kind == Type.Kind.BOOL);
+          Code.Cond value = operand.asCond();
+          return Expr.bool(f -> !value.test(f));
+        }
+        require(operand.kind == Type.Kind.INT);
+        if (unary.op.equals("-")) {
+          Code.Int value = operand.ints;
+          return Expr.of(Type.Kind.INT, f -> -value.eval(f));
+        }
+        return operand;
+      }
+      if (expr instanceof CallExprNode call) {
+        return compileCall(call);
+      }
+      if (expr instanceof InlinedCallNode inlined) {
+        return compileExpr(inlined.call);
+      }
+      throw new Unsupported();
+    }
+
+    private Expr compileLiteral(Object value) {
+      if (value instanceof Integer intValue) {
+        int constant = intValue;
+        return Expr.of(Type.Kind.INT, f -> constant);
+      }
+      if (value instanceof Boolean boolValue) {
+        boolean constant = boolValue;
+        return Expr.bool(f -> constant);
+      }
+      if (value instanceof Character charValue) {
+        int constant = charValue;
+        return Expr.of(Type.Kind.CHAR, f -> constant);
+      }
+      if (value instanceof String stringValue) {
+        return Expr.str(f -> stringValue);
+      }
+      throw new Unsupported();
+    }
+
+    private Expr compileLoad(String name) {
+      Local local = lookup(name);
+      if (local != null) {
+        int slot = local.slot;
+        if (local.isStr()) {
+          return Expr.str(f -> (String) f.objs[slot]);
+        }
+        return Expr.of(local.kind, f -> f.ints[slot]);
+      }
+      Type fieldType = fields.get(name);
+      require(fieldType != null);
+      Type.Kind kind = kindOf(fieldType);
+      if (kind == Type.Kind.STRING) {
+        return Expr.str(f -> (String) f.self.fields.get(name).get().data);
+      }
+      return Expr.of(kind, f -> ClosureEngine.toInt(f.self.fields.get(name).get().data));
+    }
+
+    private Expr compileAssign(AssignExprNode assign) {
+      require(assign.target instanceof VarRefNode);
+      String target = ((VarRefNode) assign.target).name;
+      Local local = lookup(target);
+      if (local != null) {
+        require(!local.readOnly);
+        Expr value = compileExpr(assign.value);
+        require(value.kind == local.kind);
+        int slot = local.slot;
+        if (local.isStr()) {
+          Code.Str text = value.strs;
+          return Expr.str(f -> (String) (f.objs[slot] = text.eval(f)));
+        }
+        Code.Int number = value.asInt();
+        return Expr.of(local.kind, f -> f.ints[slot] = number.eval(f));
+      }
+      Type fieldType = fields.get(target);
+      require(fieldType != null);
+      Type type = fieldType;
+      Type.Kind kind = kindOf(type);
+      Expr value = compileExpr(assign.value);
+      require(value.kind == kind);
+      if (kind == Type.Kind.STRING) {
+        Code.Str text = value.strs;
+        return Expr.str(
+            f -> {
+              String result = text.eval(f);
+              f.self.fields.get(target).set(new Value(type, result));
+              return result;
+            });
+      }
+      Code.Int number = value.asInt();
+      return Expr.of(
+          kind,
+          f -> {
+            int result = number.eval(f);
+            VarSlot slot = f.self.fields.get(target);
+            slot.set(new Value(type, ClosureEngine.fromInt(kind, result)));
+            return result;
+          });
+    }
+
+    private Expr compileBinary(BinaryExprNode binary) {
+      String op = binary.op;
+      if (op.equals("&&") || op.equals("||")) {
+        Expr left = compileExpr(binary.left);
+        Expr right = compileExpr(binary.right);
+        require(left.kind == Type.Kind.BOOL && right.kind == Type.Kind.BOOL);
+        Code.Cond l = left.asCond();
+        Code.Cond r = right.asCond();
+        if (op.equals("&&")) {
+          return Expr.bool(f -> l.test(f) && r.test(f));
+        }
+        return Expr.bool(f -> l.test(f) || r.test(f));
+      }
+      Expr left = compileExpr(binary.left);
+      Expr right = compileExpr(binary.right);
+      require(left.kind == right.kind && left.kind != Type.Kind.VOID);
+      if (left.kind == Type.Kind.STRING) {
+        require(op.equals("==") || op.equals("!="));
+        Code.Str l = left.strs;
+        Code.Str r = right.strs;
+        if (op.equals("==")) {
+          return Expr.bool(f -> l.eval(f).equals(r.eval(f)));
+        }
+        return Expr.bool(f -> !l.eval(f).equals(r.eval(f)));
+      }
+      Code.Int l = left.asInt();
+      Code.Int r = right.asInt();
+      Integer constant =
+          binary.right instanceof LiteralNode literal && literal.value instanceof Integer value
+              ? value
+              : null;
+      switch (op) {
+        case "==":
+          return Expr.bool(f -> l.eval(f) == r.eval(f));
+        case "!=":
+          return Expr.bool(f -> l.eval(f) != r.eval(f));
+        default:
+          break;
+      }
+      require(left.kind == Type.Kind.INT || left.kind == Type.Kind.CHAR);
+      if (constant != null) {
+        int c = constant;
+        switch (op) {
+          case "<":
+            return Expr.bool(f -> l.eval(f) < c);
+          case "<=":
+            return Expr.bool(f -> l.eval(f) <= c);
+          case ">":
+            return Expr.bool(f -> l.eval(f) > c);
+          case ">=":
+            return Expr.bool(f -> l.eval(f) >= c);
+          case "+":
+            return Expr.of(Type.Kind.INT, f -> l.eval(f) + c);
+          case "-":
+            return Expr.of(Type.Kind.INT, f -> l.eval(f) - c);
+          case "*":
+            return Expr.of(Type.Kind.INT, f -> l.eval(f) * c);
+          default:
+            break;
+        }
+      }
+      switch (op) {
+        case "<":
+          return Expr.bool(f -> l.eval(f) < r.eval(f));
+        case "<=":
+          return Expr.bool(f -> l.eval(f) <= r.eval(f));
+        case ">":
+          return Expr.bool(f -> l.eval(f) > r.eval(f));
+        case ">=":
+          return Expr.bool(f -> l.eval(f) >= r.eval(f));
+        default:
+          break;
+      }
+      require(left.kind == Type.Kind.INT);
+      return switch (op) {
+        case "+" -> Expr.of(Type.Kind.INT, f -> l.eval(f) + r.eval(f));
+        case "-" -> Expr.of(Type.Kind.INT, f -> l.eval(f) - r.eval(f));
+        case "*" -> Expr.of(Type.Kind.INT, f -> l.eval(f) * r.eval(f));
+        case "/" -> Expr.of(Type.Kind.INT, f -> l.eval(f) / divisor(r.eval(f)));
+        case "%" -> Expr.of(Type.Kind.INT, f -> l.eval(f) % divisor(r.eval(f)));
+        default -> throw new Unsupported();
+      };
+    }
+
+    private Expr compileCall(CallExprNode call) {
+      List<FunctionDef> candidates = program.functions.get(call.name);
+      require(candidates != null && !program.classes.containsKey(call.name));
+      List<ExprNode> args = call.args == null ? List.of() : call.args;
+      Expr[] values = new Expr[args.size()];
+      boolean[] lvalues = new boolean[args.size()];
+      for (int i = 0; i < args.size(); i++) {
+        values[i] = compileExpr(args.get(i));
+        lvalues[i] = isLValue(args.get(i));
+      }
+      FunctionDef selected = null;
+      for (FunctionDef candidate : candidates) {
+        if (matches(candidate.params, values, lvalues)) {
+          require(selected == null);
+          selected = candidate;
+        }
+      }
+      require(selected != null);
+      if (selected.isBuiltin) {
+        return compileBuiltin(selected.name, values);
+      }
+      Code.Int[] intArgs = new Code.Int[values.length];
+      Code.Str[] strArgs = new Code.Str[values.length];
+      for (int i = 0; i < values.length; i++) {
+        require(!selected.params.get(i).type.isRef);
+        if (values[i].kind == Type.Kind.STRING) {
+          strArgs[i] = values[i].strs;
+        } else {
+          intArgs[i] = values[i].asInt();
+        }
+      }
+      Type result = selected.returnType;
+      require(!result.isRef && (result.isVoid() || result.isScalar()));
+      CallSite site = new CallSite(selected, intArgs, strArgs);
+      return switch (result.kind) {
+        case STRING -> Expr.str(f -> engine.call(site, f).strResult);
+        case VOID ->
+            Expr.of(
+                Type.Kind.VOID,
+                f -> {
+                  engine.call(site, f);
+                  return 0;
+                });
+        default -> Expr.of(result.kind, f -> engine.call(site, f).intResult);
+      };
+    }
+
+    private Expr compileBuiltin(String name, Expr[] values) {
+      return switch (name) {
+        case "print_int" -> {
+          Code.Int value = values[0].asInt();
+          yield print(f -> Integer.toString(value.eval(f)));
+        }
+        case "print_bool" -> {
+          Code.Cond value = values[0].asCond();
+          yield print(f -> value.test(f) ? "1" : "0");
+        }
+        case "print_char" -> {
+          Code.Int value = values[0].asInt();
+          yield print(f -> Character.toString((char) value.eval(f)));
+        }
+        case "print_string" -> print(values[0].strs);
+        default -> throw new Unsupported();
+      };
+    }
+
+    private Expr print(Code.Str text) {
+      return Expr.of(
+          Type.Kind.VOID,
+          f -> {
+            IO.println(text.eval(f));
+            return 0;
+          });
+    }
+
+    private boolean matches(List<ParamDef> params, Expr[] values, boolean[] lvalues) {
+      if (params.size() != values.length) {
+        return false;
+      }
+      for (int i = 0; i < values.length; i++) {
+        Type type = params.get(i).type;
+        if (type.kind != values[i].kind || type.isRef && !lvalues[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean isLValue(ExprNode expr) {
+      if (!(expr instanceof VarRefNode ref)) {
+        return false;
+      }
+      Local local = lookup(ref.name);
+      return local != null ? !local.readOnly : fields.containsKey(ref.name);
+    }
+
+    private Type.Kind kindOf(TypeNode type) {
+      require(!type.isRef && !type.isArray());
+      return switch (type.name) {
+        case "int" -> Type.Kind.INT;
+        case "bool" -> Type.Kind.BOOL;
+        case "char" -> Type.Kind.CHAR;
+        case "string" -> Type.Kind.STRING;
+        default -> throw new Unsupported();
+      };
+    }
+
+    private Type.Kind kindOf(Type type) {
+      require(!type.isRef && type.isScalar());
+      return type.kind;
+    }
+
+    private Local lookup(String name) {
+      for (Map<String, Local> scope : scopes) {
+        Local local = scope.get(name);
+        if (local != null) {
+          return local;
+        }
+      }
+      return null;
+    }
+
+    private Local newLocal(Type.Kind kind, boolean readOnly) {
+      int slot = kind == Type.Kind.STRING ? objSlots++ : intSlots++;
+      return new Local(kind, slot, readOnly);
+    }
+
+    private void require(boolean condition) {
+      if (!condition) {
+        throw new Unsupported();
+      }
+    }
+  }
+
+  private static int divisor(int value) {
+    if (value == 0) {
+      throw new RuntimeError("Division by zero");
+    }
+    return value;
+  }
+}
@@ -0,0 +1,144 @@
+package cpp.closure;
+
+import cpp.error.RuntimeError;
+import cpp.interp.ArgInfo;
+import cpp.interp.ExprEvaluator;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.runtime.EvalResult;
+import cpp.runtime.Instance;
+import cpp.runtime.Value;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClosureEngine {
+  private static final ClosureBody NOT_COMPILABLE =
+      new ClosureBody("", f -> false, 0, 0, null, null, null, null);
+
+  private final ClosureCompiler compiler;
+  private final ExprEvaluator evaluator;
+  private final Map<Object, ClosureBody> bodies = new IdentityHashMap<>();
+  private int generation;
+
+  public ClosureEngine(ProgramDef program, ExprEvaluator evaluator) {
+    this.compiler = new ClosureCompiler(program, this);
+    this.evaluator = evaluator;
+  }
+
+  public ClosureBody codeFor(FunctionDef function) {
+    ClosureBody body = bodies.get(function);
+    if (body == null) {
+      function.loadBody();
+      body = orMarker(compiler.compile(function));
+      bodies.put(function, body);
+    }
+    return body == NOT_COMPILABLE ? null : body;
+  }
+
+  public ClosureBody codeFor(MethodDef method) {
+    ClosureBody body = bodies.get(method);
+    if (body == null) {
+      method.loadBody();
+      body = orMarker(compiler.compile(method));
+      bodies.put(method, body);
+    }
+    return body == NOT_COMPILABLE ? null : body;
+  }
+
+  public void invalidate() {
+    bodies.clear();
+    generation++;
+  }
+
+  public EvalResult invoke(ClosureBody body, List<ArgInfo> args, Instance self) {
+    Frame frame = new Frame(body, self);
+    for (int i = 0; i < args.size(); i++) {
+      Object data = args.get(i).result.value.data;
+      if (body.paramIsObj[i]) {
+        frame.objs[body.paramSlots[i]] = data;
+      } else {
+        frame.ints[body.paramSlots[i]] = toInt(data);
+      }
+    }
+    run(body, frame);
+    Type type = body.returnType;
+    if (type.isVoid()) {
+      return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
+    }
+    Object data =
+        type.kind == Type.Kind.STRING ? frame.strResult : fromInt(type.kind, frame.intResult);
+    return new EvalResult(new Value(type, data), type, false, null, false);
+  }
+
+  Frame call(CallSite site, Frame caller) {
+    if (site.generation != generation) {
+      site.target = codeFor(site.function);
+      site.generation = generation;
+    }
+    ClosureBody target = site.target;
+    if (target != null && evaluator.allowsDirectCalls()) {
+      Frame frame = new Frame(target, null);
+      for (int i = 0; i < target.paramSlots.length; i++) {
+        if (target.paramIsObj[i]) {
+          frame.objs[target.paramSlots[i]] = site.strArgs[i].eval(caller);
+        } else {
+          frame.ints[target.paramSlots[i]] = site.intArgs[i].eval(caller);
+        }
+      }
+      run(target, frame);
+      return frame;
+    }
+    List<ArgInfo> args = new ArrayList<>(site.function.params.size());
+    for (int i = 0; i < site.function.params.size(); i++) {
+      Type type = site.function.params.get(i).type;
+      Object data =
+          type.kind == Type.Kind.STRING
+              ? site.strArgs[i].eval(caller)
+              : fromInt(type.kind, site.intArgs[i].eval(caller));
+      args.add(new ArgInfo(new EvalResult(new Value(type, data), type, false, null, false)));
+    }
+    EvalResult result = evaluator.invokeSelected(site.function, args);
+    Frame frame = new Frame(NOT_COMPILABLE, null);
+    if (!result.type.isVoid()) {
+      Object data = result.value.data;
+      if (result.type.kind == Type.Kind.STRING) {
+        frame.strResult = (String) data;
+      } else {
+        frame.intResult = toInt(data);
+      }
+    }
+    return frame;
+  }
+
+  private static void run(ClosureBody body, Frame frame) {
+    if (!body.body.exec(frame) && !body.returnType.isVoid()) {
+      throw new RuntimeError(body.missingReturn);
+    }
+  }
+
+  private static ClosureBody orMarker(ClosureBody body) {
+    return body != null ? body : NOT_COMPILABLE;
+  }
+
+  static int toInt(Object data) {
+    if (data instanceof Integer value) {
+      return value;
+    }
+    if (data instanceof Boolean value) {
+      return value ? 1 : 0;
+    }
+    return (Character) data;
+  }
+
+  static Object fromInt(Type.Kind kind, int value) {
+    return switch (kind) {
+      case BOOL -> value != 0;
+      case CHAR -> (char) value;
+      default -> value;
+    };
+  }
+}
@@ -0,0 +1,21 @@
+package cpp.closure;
+
+final class Code {
+  interface Int {
+    int eval(Frame frame);
+  }
+
+  interface Str {
+    String eval(Frame frame);
+  }
+
+  interface Cond {
+    boolean test(Frame frame);
+  }
+
+  interface Stmt {
+    boolean exec(Frame frame);
+  }
+
+  private Code() {}
+}
@@ -0,0 +1,17 @@
+package cpp.closure;
+
+import cpp.runtime.Instance;
+
+final class Frame {
+  final int[] ints;
+  final Object[] objs;
+  final Instance self;
+  int intResult;
+  String strResult;
+
+  Frame(ClosureBody body, Instance self) {
+    this.ints = new int[body.intSlots];
+    this.objs = new Object[body.objSlots];
+    this.self = self;
+  }
+}
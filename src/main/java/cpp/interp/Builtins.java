@@ -1,11 +1,16 @@
 package cpp.interp;
 
 import cpp.error.CompileError;
+import cpp.error.RuntimeError;
 import cpp.model.FunctionDef;
 import cpp.model.ParamDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.runtime.EvalResult;
+import cpp.runtime.UnorderedMap;
 import cpp.runtime.Value;
+import cpp.runtime.Vector;
+import cpp.runtime.VectorIterator;
 import cpp.util.IO;
 import java.util.List;
 
@@ -22,6 +27,20 @@ public class Builtins {
         "print_string",
         Type.voidType(),
         List.of(new ParamDef(Type.stringType(false), "v")));
+    List<Type> elements =
+        List.of(
+            Type.intType(false),
+            Type.charType(false),
+            Type.boolType(false),
+            Type.stringType(false));
+    for (Type element : elements) {
+      Type iterator = Type.iteratorType(Type.vectorType(element, false));
+      addBuiltin(
+          program,
+          "sort",
+          Type.voidType(),
+          List.of(new ParamDef(iterator, "first"), new ParamDef(iterator, "last")));
+    }
   }
 
   public void execute(String name, List<ArgInfo> args) {
@@ -31,10 +50,94 @@ public class Builtins {
       case "print_int" -> IO.println(Integer.toString((int) value.data));
       case "print_char" -> IO.println(Character.toString((char) value.data));
       case "print_string" -> IO.println((String) value.data);
+      case "sort" ->
+          sort((VectorIterator) value.data, (VectorIterator) args.get(1).result.value.data);
       default -> throw new CompileError("Unknown builtin: " + name);
     }
   }
 
+  // Member functions of library containers; the receiver's type is known to be a container.
+  public EvalResult invokeMethod(EvalResult receiver, String name, List<ArgInfo> args) {
+    if (receiver.type.kind == Type.Kind.MAP) {
+      return invokeMapMethod(receiver, name, args);
+    }
+    Vector vector = (Vector) receiver.value.data;
+    Type element = receiver.type.element;
+    switch (name) {
+      case "push_back" -> {
+        expectArgs(name, args, element);
+        vector.pushBack(args.get(0).result.value);
+      }
+      case "size" -> {
+        expectArgs(name, args);
+        return new EvalResult(
+            Value.intValue(vector.size()), Type.intType(false), false, null, false);
+      }
+      case "reserve" -> {
+        expectArgs(name, args, Type.intType(false));
+        int capacity = (int) args.get(0).result.value.data;
+        if (capacity < 0) {
+          throw new RuntimeError("Negative vector capacity: " + capacity);
+        }
+        vector.reserve(capacity);
+      }
+      case "clear" -> {
+        expectArgs(name, args);
+        vector.clear();
+      }
+      case "begin", "end" -> {
+        expectArgs(name, args);
+        Type type = Type.iteratorType(receiver.type.withoutRef());
+        int position = name.equals("begin") ? 0 : vector.size();
+        return new EvalResult(
+            new Value(type, new VectorIterator(vector, position)), type, false, null, false);
+      }
+      default -> throw new CompileError("No matching method: " + name);
+    }
+    return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
+  }
+
+  private EvalResult invokeMapMethod(EvalResult receiver, String name, List<ArgInfo> args) {
+    UnorderedMap map = (UnorderedMap) receiver.value.data;
+    int result =
+        switch (name) {
+          case "count" -> {
+            expectArgs(name, args, receiver.type.key);
+            yield map.contains(args.get(0).result.value) ? 1 : 0;
+          }
+          case "erase" -> {
+            expectArgs(name, args, receiver.type.key);
+            yield map.remove(args.get(0).result.value) ? 1 : 0;
+          }
+          case "size" -> {
+            expectArgs(name, args);
+            yield map.size();
+          }
+          default -> throw new CompileError("No matching method: " + name);
+        };
+    return new EvalResult(Value.intValue(result), Type.intType(false), false, null, false);
+  }
+
+  private static void expectArgs(String name, List<ArgInfo> args, Type... params) {
+    if (args.size() != params.length) {
+      throw new CompileError("No matching method: " + name);
+    }
+    for (int i = 0; i < params.length; i++) {
+      if (!args.get(i).result.type.withoutRef().equals(params[i])) {
+        throw new CompileError("No matching method: " + name);
+      }
+    }
+  }
+
+  private static void sort(VectorIterator first, VectorIterator last) {
+    if (first.vector != last.vector
+        || first.position > last.position
+        || last.position > last.vector.size()) {
+      throw new RuntimeError("sort: iterators do not form a valid range");
+    }
+    first.vector.sort(first.position, last.position);
+  }
+
   public void printValue(Value value) {
     if (value.type.kind == Type.Kind.BOOL) {
       IO.println(((boolean) value.data) ? "1" : "0");
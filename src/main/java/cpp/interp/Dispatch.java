@@ -7,7 +7,9 @@ import cpp.model.MethodDef;
 import cpp.model.ParamDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.model.Vtable;
 import cpp.runtime.Env;
+import cpp.runtime.EvalResult;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -62,7 +64,7 @@ public class Dispatch {
 
   public MethodDef selectMethod(ClassDef staticClass, String name, List<ArgInfo> args) {
     Map<String, MethodDef> candidates = new HashMap<>();
-    for (Map.Entry<String, MethodDef> entry : staticClass.vtable.entrySet()) {
+    for (Map.Entry<String, MethodDef> entry : staticClass.vtable.entries().entrySet()) {
       if (entry.getValue().name.equals(name)) {
         candidates.put(entry.getKey(), entry.getValue());
       }
@@ -83,13 +85,11 @@ public class Dispatch {
   }
 
   public boolean isVirtualInStatic(ClassDef staticClass, String signature) {
-    ClassDef current = staticClass;
-    while (current != null) {
-      MethodDef method = current.vtable.get(signature);
+    for (Vtable layer = staticClass.vtable; layer != null; layer = layer.parent) {
+      MethodDef method = layer.getOwn(signature);
       if (method != null && method.isVirtual) {
         return true;
       }
-      current = current.baseClass;
     }
     return false;
   }
@@ -100,7 +100,7 @@ public class Dispatch {
       ParamDef param = params.get(i);
       ArgInfo arg = args.get(i);
       if (currentClass != null) {
-        if (objectModel.collectFieldNames(currentClass).contains(param.name)) {
+        if (objectModel.hasField(currentClass, param.name)) {
           throw new CompileError("Parameter shadows field: " + param.name);
         }
       }
@@ -113,15 +113,8 @@ public class Dispatch {
   }
 
   public void ensureUniqueFunction(FunctionDef def) {
-    List<FunctionDef> existing = program.functions.get(def.name);
-    if (existing == null) {
-      return;
-    }
-    String signature = cpp.sema.SignatureUtil.signature(def.name, def.params);
-    for (FunctionDef other : existing) {
-      if (cpp.sema.SignatureUtil.signature(other.name, other.params).equals(signature)) {
-        throw new CompileError("Function already defined: " + signature);
-      }
+    if (program.hasFunction(def.signature)) {
+      throw new CompileError("Function already defined: " + def.signature);
     }
   }
 
@@ -130,21 +123,21 @@ public class Dispatch {
       return false;
     }
     for (int i = 0; i < params.size(); i++) {
-      ParamDef param = params.get(i);
-      ArgInfo arg = args.get(i);
-      if (param.type.isRef) {
-        if (!arg.result.isLValue) {
-          return false;
-        }
-        if (!param.type.withoutRef().equals(arg.result.type)) {
-          return false;
-        }
-      } else {
-        if (!param.type.equals(arg.result.type)) {
-          return false;
-        }
+      if (!matchesParam(params.get(i), args.get(i).result)) {
+        return false;
       }
     }
     return true;
   }
+
+  public boolean matchesParam(ParamDef param, EvalResult arg) {
+    return matchesParam(param, arg.type, arg.isLValue);
+  }
+
+  public static boolean matchesParam(ParamDef param, Type argType, boolean isLValue) {
+    if (param.type.isRef) {
+      return isLValue && param.type.withoutRef().equals(argType);
+    }
+    return param.type.equals(argType);
+  }
 }
@@ -5,10 +5,14 @@ import cpp.ast.BinaryExprNode;
 import cpp.ast.CallExprNode;
 import cpp.ast.ExprNode;
 import cpp.ast.FieldAccessNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.InlinedCallNode;
 import cpp.ast.LiteralNode;
 import cpp.ast.MethodCallNode;
 import cpp.ast.UnaryExprNode;
 import cpp.ast.VarRefNode;
+import cpp.closure.ClosureBody;
+import cpp.closure.ClosureEngine;
 import cpp.error.CompileError;
 import cpp.error.RuntimeError;
 import cpp.model.ClassDef;
@@ -16,13 +20,21 @@ import cpp.model.FunctionDef;
 import cpp.model.MethodDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.profile.Profiler;
+import cpp.runtime.ElementSlot;
 import cpp.runtime.EvalResult;
+import cpp.runtime.InlineCache;
 import cpp.runtime.Instance;
+import cpp.runtime.MapSlot;
 import cpp.runtime.ReturnSignal;
+import cpp.runtime.UnorderedMap;
 import cpp.runtime.Value;
 import cpp.runtime.VarSlot;
-import cpp.sema.SignatureUtil;
+import cpp.runtime.Vector;
+import cpp.runtime.VectorSlot;
 import cpp.sema.TypeResolver;
+import cpp.vm.CompiledBody;
+import cpp.vm.Vm;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,6 +45,10 @@ public class ExprEvaluator {
   private final ObjectModel objectModel;
   private final Builtins builtins;
   private StmtExecutor stmtExecutor;
+  private Memoizer memoizer;
+  private Profiler profiler;
+  private Vm vm;
+  private ClosureEngine closures;
 
   public ExprEvaluator(
       ProgramDef program,
@@ -51,6 +67,38 @@ public class ExprEvaluator {
     this.stmtExecutor = stmtExecutor;
   }
 
+  public void setMemoizer(Memoizer memoizer) {
+    this.memoizer = memoizer;
+  }
+
+  public Memoizer getMemoizer() {
+    return memoizer;
+  }
+
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  public void setVm(Vm vm) {
+    this.vm = vm;
+  }
+
+  public Vm getVm() {
+    return vm;
+  }
+
+  public void setClosureEngine(ClosureEngine closures) {
+    this.closures = closures;
+  }
+
+  public ClosureEngine getClosureEngine() {
+    return closures;
+  }
+
+  public boolean allowsDirectCalls() {
+    return memoizer == null && profiler == null;
+  }
+
   public EvalResult evalExpr(ExprNode expr, ExecContext context) {
     if (expr instanceof AssignExprNode assignExpr) {
       return evalAssignment(assignExpr, context);
@@ -76,6 +124,12 @@ public class ExprEvaluator {
     if (expr instanceof FieldAccessNode fieldAccess) {
       return evalFieldAccess(fieldAccess, context);
     }
+    if (expr instanceof IndexExprNode index) {
+      return evalIndex(index, context);
+    }
+    if (expr instanceof InlinedCallNode inlined) {
+      return evalInlinedCall(inlined, context);
+    }
     throw new CompileError("Unknown expression");
   }
 
@@ -244,7 +298,7 @@ public class ExprEvaluator {
       Value value = slot.get();
       Type type = slot.getDeclaredType().withoutRef();
       boolean isRefBinding = slot.isRef();
-      return new EvalResult(value, type, true, slot, isRefBinding);
+      return new EvalResult(value, type, !slot.isReadOnly(), slot, isRefBinding);
     }
     throw new CompileError("Unknown identifier: " + expr.name);
   }
@@ -262,7 +316,43 @@ public class ExprEvaluator {
   private EvalResult evalMethodCall(MethodCallNode call, ExecContext context) {
     EvalResult receiver = evalExpr(call.receiver, context);
     List<ArgInfo> args = evalArgs(call.args, context);
-    return invokeMethod(receiver, call.name, args, context);
+    return invokeMethod(call, receiver, args, context);
+  }
+
+  private EvalResult evalInlinedCall(InlinedCallNode node, ExecContext context) {
+    boolean guardHolds = node.method != null ? methodGuardHolds(node) : functionGuardHolds(node);
+    if (!guardHolds) {
+      return evalExpr(node.call, context);
+    }
+    if (profiler != null) {
+      profiler.call(node.method != null ? node.method : node.function);
+    }
+    Type returnType = node.method != null ? node.method.returnType : node.function.returnType;
+    if (node.body == null) {
+      return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
+    }
+    EvalResult result = evalExpr(node.body, context);
+    if (returnType.isVoid()) {
+      return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
+    }
+    objectModel.expectType(returnType, result.value.type, "return");
+    return new EvalResult(result.value, returnType, false, null, false);
+  }
+
+  // Argument types were checked against the callee when the call was inlined, so the guard only
+  // has to notice definitions added since then and never evaluates the arguments.
+  private boolean functionGuardHolds(InlinedCallNode node) {
+    CallExprNode call = (CallExprNode) node.call;
+    List<FunctionDef> candidates = program.functions.get(call.name);
+    return candidates != null
+        && candidates.size() == 1
+        && candidates.get(0) == node.function
+        && !program.classes.containsKey(call.name);
+  }
+
+  private boolean methodGuardHolds(InlinedCallNode node) {
+    ClassDef staticClass = program.classes.get(node.receiverClass);
+    return staticClass != null && staticClass.vtable.get(node.signature) == node.method;
   }
 
   private EvalResult evalFieldAccess(FieldAccessNode access, ExecContext context) {
@@ -305,11 +395,44 @@ public class ExprEvaluator {
     if (candidates == null) {
       throw new CompileError("Unknown function: " + name);
     }
-    FunctionDef selected = dispatch.selectFunction(candidates, args);
+    return invokeSelected(dispatch.selectFunction(candidates, args), args);
+  }
+
+  public EvalResult invokeSelected(FunctionDef selected, List<ArgInfo> args) {
     if (selected.isBuiltin) {
-      builtins.execute(name, args);
+      builtins.execute(selected.name, args);
       return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
     }
+    if (profiler != null) {
+      profiler.call(selected);
+    }
+    Memoizer.MemoTable memo = memoizer != null ? memoizer.tableFor(selected) : null;
+    if (memo != null) {
+      Value cached = memo.get(args);
+      if (cached != null) {
+        return new EvalResult(cached, selected.returnType, false, null, false);
+      }
+      EvalResult result = executeFunction(selected, args);
+      memo.put(args, result.value);
+      return result;
+    }
+    return executeFunction(selected, args);
+  }
+
+  private EvalResult executeFunction(FunctionDef selected, List<ArgInfo> args) {
+    stmtExecutor.countStep();
+    selected.loadBody();
+    if (vm != null && profiler == null) {
+      CompiledBody body = vm.codeFor(selected);
+      if (body != null) {
+        return vm.invoke(body, args, null);
+      }
+    } else if (closures != null && profiler == null) {
+      ClosureBody body = closures.codeFor(selected);
+      if (body != null) {
+        return closures.invoke(body, args, null);
+      }
+    }
     ExecContext fnContext = new ExecContext(new cpp.runtime.Env(null), null, null);
     stmtExecutor.bindParams(fnContext.env, selected.params, args, null);
     try {
@@ -331,20 +454,48 @@ public class ExprEvaluator {
   }
 
   private EvalResult invokeMethod(
-      EvalResult receiver, String name, List<ArgInfo> args, ExecContext context) {
+      MethodCallNode call, EvalResult receiver, List<ArgInfo> args, ExecContext context) {
+    if (receiver.type.isContainer()) {
+      return builtins.invokeMethod(receiver, call.name, args);
+    }
     if (!receiver.type.isClass()) {
       throw new CompileError("Member access on non-class type");
     }
     ClassDef staticClass = program.classes.get(receiver.type.className);
-    MethodDef selected = dispatch.selectMethod(staticClass, name, args);
-    String signature = SignatureUtil.signature(selected.name, selected.params);
-    boolean isVirtual = dispatch.isVirtualInStatic(staticClass, signature);
-    MethodDef target = selected;
     Instance instance = (Instance) receiver.value.data;
-    if (isVirtual && receiver.isRefBinding) {
-      MethodDef impl = instance.classDef.vtable.get(signature);
-      if (impl != null) {
-        target = impl;
+    if (profiler != null) {
+      profiler.receiver(call, instance.classDef);
+    }
+    ClassDef dynamicClass = receiver.isRefBinding ? instance.classDef : null;
+    int argMask = lvalueMask(args);
+    MethodDef target = null;
+    if (call.inlineCache != null && argMask >= 0) {
+      target = call.inlineCache.lookup(staticClass, dynamicClass, argMask);
+      if (target != null && !dispatch.matchesParams(target.params, args)) {
+        target = null;
+      }
+    }
+    if (target == null) {
+      target = resolveMethod(staticClass, instance, receiver.isRefBinding, call.name, args);
+      if (argMask >= 0) {
+        if (call.inlineCache == null) {
+          call.inlineCache = new InlineCache();
+        }
+        call.inlineCache.add(staticClass, dynamicClass, argMask, target);
+      }
+    }
+    target.loadBody();
+    if (profiler != null) {
+      profiler.call(target);
+    } else if (vm != null) {
+      CompiledBody body = vm.codeFor(target);
+      if (body != null) {
+        return vm.invoke(body, args, instance);
+      }
+    } else if (closures != null) {
+      ClosureBody body = closures.codeFor(target);
+      if (body != null) {
+        return closures.invoke(body, args, instance);
       }
     }
     ExecContext methodContext =
@@ -369,6 +520,82 @@ public class ExprEvaluator {
     return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
   }
 
+  private MethodDef resolveMethod(
+      ClassDef staticClass,
+      Instance instance,
+      boolean isRefBinding,
+      String name,
+      List<ArgInfo> args) {
+    MethodDef selected = dispatch.selectMethod(staticClass, name, args);
+    boolean isVirtual = dispatch.isVirtualInStatic(staticClass, selected.signature);
+    if (isVirtual && isRefBinding) {
+      MethodDef impl = instance.classDef.vtable.get(selected.signature);
+      if (impl != null) {
+        return impl;
+      }
+    }
+    return selected;
+  }
+
+  private static int lvalueMask(List<ArgInfo> args) {
+    if (args.size() > 30) {
+      return -1;
+    }
+    int mask = 0;
+    for (int i = 0; i < args.size(); i++) {
+      if (args.get(i).result.isLValue) {
+        mask |= 1 << i;
+      }
+    }
+    return mask;
+  }
+
+  private EvalResult evalIndex(IndexExprNode expr, ExecContext context) {
+    EvalResult array = evalExpr(expr.array, context);
+    if (array.type.kind == Type.Kind.MAP) {
+      return evalMapIndex(array, evalExpr(expr.index, context));
+    }
+    if (array.type.isContainer()) {
+      return evalVectorIndex(array, evalExpr(expr.index, context));
+    }
+    if (!array.type.isArray()) {
+      throw new CompileError("Subscript on non-array type: " + array.type);
+    }
+    EvalResult index = evalExpr(expr.index, context);
+    if (index.type.withoutRef().kind != Type.Kind.INT) {
+      throw new CompileError("Array index must be int");
+    }
+    int position = (int) index.value.data;
+    int length = array.type.length;
+    if (expr.checked && (position < 0 || position >= length)) {
+      throw new RuntimeError("Array index out of bounds: " + position + " (size " + length + ")");
+    }
+    VarSlot slot = new ElementSlot(array.type.element, array.value.data, position);
+    return new EvalResult(slot.get(), array.type.element, true, slot, false);
+  }
+
+  private EvalResult evalVectorIndex(EvalResult receiver, EvalResult index) {
+    if (index.type.withoutRef().kind != Type.Kind.INT) {
+      throw new CompileError("Vector index must be int");
+    }
+    Vector vector = (Vector) receiver.value.data;
+    int position = (int) index.value.data;
+    if (position < 0 || position >= vector.size()) {
+      throw new RuntimeError(
+          "Vector index out of bounds: " + position + " (size " + vector.size() + ")");
+    }
+    Type element = receiver.type.element;
+    VarSlot slot = new VectorSlot(element, vector, position);
+    return new EvalResult(slot.get(), element, receiver.isLValue, slot, false);
+  }
+
+  private EvalResult evalMapIndex(EvalResult receiver, EvalResult key) {
+    objectModel.expectType(receiver.type.key, key.type.withoutRef(), "map key");
+    Type valueType = receiver.type.element;
+    VarSlot slot = new MapSlot(valueType, (UnorderedMap) receiver.value.data, key.value);
+    return new EvalResult(slot.get(), valueType, receiver.isLValue, slot, false);
+  }
+
   private EvalResult accessField(EvalResult receiver, String name) {
     if (!receiver.type.isClass()) {
       throw new CompileError("Field access on non-class type");
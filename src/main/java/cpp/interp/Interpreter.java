@@ -1,11 +1,23 @@
 package cpp.interp;
 
+import cpp.ast.ExprNode;
+import cpp.ast.MethodCallNode;
+import cpp.closure.ClosureEngine;
 import cpp.model.FunctionDef;
 import cpp.model.ProgramDef;
+import cpp.profile.Profile;
+import cpp.profile.ProfileKeys;
+import cpp.profile.Profiler;
 import cpp.runtime.Env;
+import cpp.runtime.InlineCache;
 import cpp.runtime.ReturnSignal;
+import cpp.runtime.Value;
+import cpp.sema.BodyAnalyzer;
 import cpp.sema.TypeResolver;
 import cpp.util.IO;
+import cpp.util.SourceParser;
+import cpp.vm.Jit;
+import cpp.vm.Vm;
 
 public class Interpreter {
   private final ProgramDef program;
@@ -18,6 +30,10 @@ public class Interpreter {
   private final ReplHandler replHandler;
 
   public Interpreter(ProgramDef program) {
+    this(program, false);
+  }
+
+  public Interpreter(ProgramDef program, boolean checked) {
     this.program = program;
     this.typeResolver = new TypeResolver(program);
     this.builtins = new Builtins();
@@ -33,7 +49,9 @@ public class Interpreter {
     exprEvaluator.setStmtExecutor(stmtExecutor);
     objectModel.setStmtExecutor(stmtExecutor);
 
-    builtins.register(program);
+    if (!checked) {
+      builtins.register(program);
+    }
   }
 
   public Env runMain() {
@@ -41,6 +59,7 @@ public class Interpreter {
     if (main == null) {
       return new Env(null);
     }
+    main.loadBody();
     Env sessionEnv = new Env(null);
     ExecContext context = new ExecContext(sessionEnv, null, null);
     try {
@@ -53,7 +72,74 @@ public class Interpreter {
     return sessionEnv;
   }
 
+  public Memoizer enableMemoization(int capacity) {
+    Memoizer memoizer = new Memoizer(program, capacity);
+    exprEvaluator.setMemoizer(memoizer);
+    return memoizer;
+  }
+
+  public Vm enableBytecodeEngine() {
+    Vm vm = new Vm(program, exprEvaluator);
+    exprEvaluator.setVm(vm);
+    objectModel.setVm(vm);
+    stmtExecutor.setVm(vm);
+    return vm;
+  }
+
+  // Rejects unknown names and malformed declarations in every body, including code that never
+  // runs. Without it these errors only surface when the code is executed.
+  public void enableBodyChecks() {
+    new BodyAnalyzer(program).run();
+    replHandler.setBodyChecks(true);
+  }
+
+  public void useHandParser() {
+    replHandler.setHandParser(true);
+  }
+
+  public ClosureEngine enableClosureEngine() {
+    ClosureEngine closures = new ClosureEngine(program, exprEvaluator);
+    exprEvaluator.setClosureEngine(closures);
+    return closures;
+  }
+
+  public Profiler enableProfiling() {
+    Profiler profiler = new Profiler();
+    exprEvaluator.setProfiler(profiler);
+    stmtExecutor.setProfiler(profiler);
+    return profiler;
+  }
+
+  public void applyProfile(Profile profile) {
+    ProfileKeys keys = new ProfileKeys(program);
+    for (String key : profile.receivers.keySet()) {
+      if (keys.nodeAt(key) instanceof MethodCallNode call) {
+        call.inlineCache = new InlineCache(profile.receiverOrder(key));
+      }
+    }
+  }
+
+  // Functions the profiled run called at least threshold times are compiled at startup.
+  public void enqueueHotFunctions(Profile profile, Jit jit, long threshold) {
+    ProfileKeys keys = new ProfileKeys(program);
+    for (String signature : profile.hotFunctions(threshold)) {
+      if (keys.callableAt(signature) instanceof FunctionDef function) {
+        jit.enqueue(function, profile.callCount(signature) + " profiled calls");
+      }
+    }
+  }
+
+  public Value evalIsolated(ExprNode expr, long stepLimit) {
+    stmtExecutor.setStepBudget(stepLimit);
+    try {
+      return exprEvaluator.evalExpr(expr, new ExecContext(new Env(null), null, null)).value;
+    } finally {
+      stmtExecutor.setStepBudget(StmtExecutor.UNLIMITED);
+    }
+  }
+
   public void executeRepl() {
+    SourceParser.warmUpInBackground();
     StringBuilder buffer = new StringBuilder();
     int balance = 0;
     while (true) {
@@ -0,0 +1,155 @@
+package cpp.interp;
+
+import cpp.model.FunctionDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.opt.PurityAnalysis;
+import cpp.runtime.MemoCache;
+import cpp.runtime.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Memoizer {
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final ProgramDef program;
+  private final int capacity;
+  private final Map<FunctionDef, MemoTable> tables = new IdentityHashMap<>();
+  private final List<MemoTable> retired = new ArrayList<>();
+
+  public Memoizer(ProgramDef program, int capacity) {
+    this.program = program;
+    this.capacity = capacity;
+    analyze();
+  }
+
+  public MemoTable tableFor(FunctionDef function) {
+    return tables.get(function);
+  }
+
+  public void invalidate() {
+    retired.addAll(tables.values());
+    tables.clear();
+    analyze();
+  }
+
+  public List<String> getStats() {
+    List<String> lines = new ArrayList<>();
+    List<MemoTable> all = new ArrayList<>(retired);
+    all.addAll(tables.values());
+    all.sort((a, b) -> a.signature.compareTo(b.signature));
+    for (MemoTable table : all) {
+      MemoCache cache = table.cache;
+      long lookups = cache.hits() + cache.misses();
+      double hitRate = lookups == 0 ? 0 : 100.0 * cache.hits() / lookups;
+      lines.add(
+          String.format(
+              "memo %s: size %d/%d, hits %d, misses %d, evictions %d, hit rate %.1f%%",
+              table.signature,
+              cache.size(),
+              cache.capacity(),
+              cache.hits(),
+              cache.misses(),
+              cache.evictions(),
+              hitRate));
+    }
+    return lines;
+  }
+
+  private void analyze() {
+    for (FunctionDef function : new PurityAnalysis(program).run()) {
+      tables.put(function, new MemoTable(function, capacity));
+    }
+  }
+
+  public static class MemoTable {
+    private final String signature;
+    private final MemoCache cache;
+    private final int[] packedBits;
+
+    MemoTable(FunctionDef function, int capacity) {
+      this.signature = function.signature;
+      this.packedBits = packedLayout(function.params);
+      this.cache = new MemoCache(capacity, packedBits != null);
+    }
+
+    public Value get(List<ArgInfo> args) {
+      return packedBits != null ? cache.get(packedKey(args)) : cache.get(objectKey(args));
+    }
+
+    public void put(List<ArgInfo> args, Value result) {
+      if (packedBits != null) {
+        cache.put(packedKey(args), result);
+      } else {
+        cache.put(objectKey(args), result);
+      }
+    }
+
+    private long packedKey(List<ArgInfo> args) {
+      long key = 0;
+      for (int i = 0; i < packedBits.length; i++) {
+        Object data = args.get(i).result.value.data;
+        long bits =
+            switch (packedBits[i]) {
+              case 32 -> (Integer) data & 0xffffffffL;
+              case 16 -> (Character) data;
+              default -> (Boolean) data ? 1 : 0;
+            };
+        key = (key << packedBits[i]) | bits;
+      }
+      return key;
+    }
+
+    private static ArgsKey objectKey(List<ArgInfo> args) {
+      Object[] values = new Object[args.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = args.get(i).result.value.data;
+      }
+      return new ArgsKey(values);
+    }
+
+    private static int[] packedLayout(List<ParamDef> params) {
+      int[] bits = new int[params.size()];
+      int total = 0;
+      for (int i = 0; i < bits.length; i++) {
+        Type.Kind kind = params.get(i).type.kind;
+        bits[i] =
+            switch (kind) {
+              case INT -> 32;
+              case CHAR -> 16;
+              case BOOL -> 1;
+              default -> -1;
+            };
+        if (bits[i] < 0) {
+          return null;
+        }
+        total += bits[i];
+      }
+      return total <= 64 ? bits : null;
+    }
+  }
+
+  private static final class ArgsKey {
+    private final Object[] values;
+    private final int hash;
+
+    ArgsKey(Object[] values) {
+      this.values = values;
+      this.hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ArgsKey other && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
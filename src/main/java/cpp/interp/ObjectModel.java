@@ -7,17 +7,22 @@ import cpp.model.FieldDef;
 import cpp.model.ParamDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.runtime.Container;
 import cpp.runtime.Instance;
+import cpp.runtime.UnorderedMap;
 import cpp.runtime.Value;
 import cpp.runtime.VarSlot;
+import cpp.runtime.Vector;
+import cpp.vm.CompiledBody;
+import cpp.vm.Vm;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 public class ObjectModel {
   private final ProgramDef program;
   private StmtExecutor stmtExecutor;
+  private Vm vm;
 
   public ObjectModel(ProgramDef program) {
     this.program = program;
@@ -27,14 +32,22 @@ public class ObjectModel {
     this.stmtExecutor = stmtExecutor;
   }
 
+  public void setVm(Vm vm) {
+    this.vm = vm;
+  }
+
   public Instance createInstance(ClassDef classDef, List<ArgInfo> args) {
     ConstructorDef ctor = selectConstructor(classDef, args);
+    ctor.loadBody();
     Instance instance = new Instance(classDef);
     initializeFields(instance, classDef);
     if (classDef.baseClass != null) {
       callBaseDefaultConstructor(instance, classDef.baseClass);
     }
-    if (ctor.body != null) {
+    CompiledBody compiled = vm != null ? vm.codeFor(ctor) : null;
+    if (compiled != null) {
+      vm.invoke(compiled, args, instance);
+    } else if (ctor.body != null) {
       ExecContext ctorContext = new ExecContext(new cpp.runtime.Env(null), instance, classDef);
       stmtExecutor.bindParams(ctorContext.env, ctor.params, args, classDef);
       try {
@@ -60,18 +73,67 @@ public class ObjectModel {
       case STRING -> Value.stringValue("");
       case VOID -> Value.voidValue();
       case CLASS -> new Value(type, createInstance(program.classes.get(type.className), List.of()));
+      case ARRAY -> new Value(type, newArray(type));
+      case VECTOR -> new Value(type, new Vector(type.element.kind));
+      case ITERATOR -> throw new CompileError("Iterator must be initialized");
+      case MAP -> new Value(type, new UnorderedMap(type.key.kind, type.element.kind));
     };
   }
 
+  private Object newArray(Type type) {
+    int length = type.length;
+    Type element = type.element;
+    return switch (element.kind) {
+      case INT -> new int[length];
+      case CHAR -> new char[length];
+      case BOOL -> new boolean[length];
+      case STRING -> {
+        String[] strings = new String[length];
+        Arrays.fill(strings, "");
+        yield strings;
+      }
+      case CLASS -> {
+        Instance[] instances = new Instance[length];
+        for (int i = 0; i < length; i++) {
+          instances[i] = (Instance) defaultValue(element).data;
+        }
+        yield instances;
+      }
+      case VOID, ARRAY, VECTOR, ITERATOR, MAP ->
+          throw new CompileError("Unsupported array element type: " + element);
+    };
+  }
+
+  // Copies element by element, so references into the target array stay valid.
+  private void copyArrayInto(Object target, Object source, Type type) {
+    if (type.element.isClass()) {
+      Instance[] targets = (Instance[]) target;
+      Instance[] sources = (Instance[]) source;
+      for (int i = 0; i < type.length; i++) {
+        copyInto(targets[i], sources[i], type.element.className);
+      }
+    } else {
+      System.arraycopy(source, 0, target, 0, type.length);
+    }
+  }
+
   public Value coerceValue(Value value, Type targetType) {
     if (targetType.isRef) {
       throw new CompileError("Cannot assign to reference directly");
     }
     if (targetType.equals(value.type)) {
+      if (targetType.isArray()) {
+        Object copy = newArray(targetType);
+        copyArrayInto(copy, value.data, targetType);
+        return new Value(targetType, copy);
+      }
       if (targetType.isClass()) {
         Instance instance = (Instance) value.data;
         return new Value(targetType, copyInstance(instance, targetType.className));
       }
+      if (targetType.isContainer()) {
+        return new Value(targetType, ((Container) value.data).copy());
+      }
       return value;
     }
     if (targetType.isClass() && value.type.isClass()) {
@@ -85,6 +147,9 @@ public class ObjectModel {
 
   public void assignValueToSlot(VarSlot slot, Type targetType, cpp.runtime.EvalResult right) {
     Value value = right.value;
+    if (targetType.isArray()) {
+      throw new CompileError("Array cannot be assigned: " + targetType);
+    }
     if (targetType.isClass()) {
       if (!value.type.isClass()) {
         throw new CompileError(
@@ -99,7 +164,7 @@ public class ObjectModel {
       return;
     }
     expectType(targetType, value.type, "assignment");
-    slot.set(value);
+    slot.set(targetType.isContainer() ? coerceValue(value, targetType) : value);
   }
 
   public boolean isDerivedFrom(String derived, String base) {
@@ -116,29 +181,8 @@ public class ObjectModel {
     return false;
   }
 
-  public Set<String> collectFieldNames(ClassDef classDef) {
-    Set<String> names = new HashSet<>();
-    ClassDef current = classDef;
-    while (current != null) {
-      for (FieldDef field : current.fields) {
-        names.add(field.name);
-      }
-      current = current.baseClass;
-    }
-    return names;
-  }
-
   public boolean hasField(ClassDef classDef, String name) {
-    ClassDef current = classDef;
-    while (current != null) {
-      for (FieldDef field : current.fields) {
-        if (field.name.equals(name)) {
-          return true;
-        }
-      }
-      current = current.baseClass;
-    }
-    return false;
+    return classDef.hasField(name);
   }
 
   public VarSlot createRefSlot(Type type, VarSlot target) {
@@ -164,9 +208,15 @@ public class ObjectModel {
       callBaseDefaultConstructor(instance, baseClass.baseClass);
     }
     ConstructorDef baseCtor = selectConstructor(baseClass, List.of());
+    baseCtor.loadBody();
     if (baseCtor.body == null) {
       return;
     }
+    CompiledBody compiled = vm != null ? vm.codeFor(baseCtor) : null;
+    if (compiled != null) {
+      vm.invoke(compiled, List.of(), instance);
+      return;
+    }
     ExecContext ctorContext = new ExecContext(new cpp.runtime.Env(null), instance, baseClass);
     try {
       stmtExecutor.executeBlock(baseCtor.body, ctorContext, false);
@@ -256,6 +306,10 @@ public class ObjectModel {
         if (src == null) {
           continue;
         }
+        if (field.type.isArray()) {
+          copyArrayInto(target.fields.get(field.name).get().data, src.get().data, field.type);
+          continue;
+        }
         Value copied = coerceValue(src.get(), field.type);
         target.fields.get(field.name).set(copied);
       }
@@ -1,7 +1,5 @@
 package cpp.interp;
 
-import cpp.antlr.cppLexer;
-import cpp.antlr.cppParser;
 import cpp.ast.ASTNode;
 import cpp.ast.BlockNode;
 import cpp.ast.ClassDefNode;
@@ -14,6 +12,7 @@ import cpp.ast.FunctionNode;
 import cpp.ast.MethodNode;
 import cpp.ast.ParamNode;
 import cpp.ast.StmtNode;
+import cpp.closure.ClosureEngine;
 import cpp.error.CompileError;
 import cpp.error.RuntimeError;
 import cpp.model.ClassDef;
@@ -24,18 +23,20 @@ import cpp.model.MethodDef;
 import cpp.model.ParamDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.opt.Reachability;
+import cpp.parse.Parser;
 import cpp.runtime.Env;
 import cpp.runtime.EvalResult;
 import cpp.sema.ASTBuilder;
-import cpp.sema.SignatureUtil;
+import cpp.sema.BodyAnalyzer;
+import cpp.sema.DefinitionBuilder;
 import cpp.sema.TypeResolver;
 import cpp.util.IO;
-import cpp.util.ParserErrorListener;
+import cpp.util.SourceParser;
+import cpp.vm.Vm;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class ReplHandler {
@@ -46,6 +47,9 @@ public class ReplHandler {
   private final StmtExecutor stmtExecutor;
   private final ExprEvaluator exprEvaluator;
   private final Builtins builtins;
+  private final SourceParser sourceParser = new SourceParser();
+  private boolean handParser;
+  private boolean bodyChecks;
   private Env sessionEnv;
 
   public ReplHandler(
@@ -65,21 +69,25 @@ public class ReplHandler {
     this.builtins = builtins;
   }
 
+  public void setHandParser(boolean handParser) {
+    this.handParser = handParser;
+  }
+
+  public void setBodyChecks(boolean bodyChecks) {
+    this.bodyChecks = bodyChecks;
+  }
+
   public void setSessionEnv(Env env) {
     this.sessionEnv = env;
   }
 
   public void processInput(String input) {
     try {
-      cppLexer lexer = new cppLexer(org.antlr.v4.runtime.CharStreams.fromString(input));
-      org.antlr.v4.runtime.CommonTokenStream tokens =
-          new org.antlr.v4.runtime.CommonTokenStream(lexer);
-      cppParser parser = new cppParser(tokens);
-      parser.removeErrorListeners();
-      parser.addErrorListener(new ParserErrorListener());
-      cppParser.ReplInputContext repl = parser.replInput();
-      ASTBuilder astBuilder = new ASTBuilder();
-      ASTNode node = astBuilder.visit(repl);
+      ASTNode node =
+          handParser
+              ? Parser.forSource(input).parseReplInput()
+              : new ASTBuilder().visit(sourceParser.parseReplInput(input));
+      materializeDeferred(node);
       if (node instanceof ClassDefNode classDefNode) {
         registerReplClass(classDefNode);
       } else if (node instanceof FunctionNode functionNode) {
@@ -104,6 +112,20 @@ public class ReplHandler {
     }
   }
 
+  private void materializeDeferred(ASTNode node) {
+    if (!program.hasDeferred()) {
+      return;
+    }
+    Set<String> materialized =
+        new DefinitionBuilder(program).materialize(Reachability.referencedNames(node));
+    if (!materialized.isEmpty()) {
+      if (bodyChecks) {
+        new BodyAnalyzer(program).run(materialized);
+      }
+      invalidateCaches();
+    }
+  }
+
   private void registerReplClass(ClassDefNode classDefNode) {
     String name = classDefNode.name;
     if (program.classes.containsKey(name)) {
@@ -118,14 +140,18 @@ public class ReplHandler {
       classDef.baseClass = program.classes.get(baseName);
     }
     program.classes.put(name, classDef);
+    invalidateCaches();
 
+    Set<String> fields = new HashSet<>();
+    Set<String> methods = new HashSet<>();
+    Set<String> constructors = new HashSet<>();
     for (ClassMemberNode member : classDefNode.members) {
       if (member instanceof FieldDeclNode fieldDecl) {
-        addFieldRepl(classDef, fieldDecl);
+        addFieldRepl(classDef, fieldDecl, fields);
       } else if (member instanceof MethodNode methodNode) {
-        addMethodRepl(classDef, methodNode);
+        addMethodRepl(classDef, methodNode, methods);
       } else if (member instanceof ConstructorNode ctorNode) {
-        addConstructorRepl(classDef, ctorNode);
+        addConstructorRepl(classDef, ctorNode, constructors);
       }
     }
     boolean hasDefault = false;
@@ -138,7 +164,7 @@ public class ReplHandler {
     if (!hasDefault) {
       classDef.constructors.add(new ConstructorDef(classDef.name, List.of(), null));
     }
-    buildVtableFor(classDef);
+    classDef.buildVtable();
   }
 
   private void registerReplFunction(FunctionNode functionNode) {
@@ -150,11 +176,28 @@ public class ReplHandler {
     List<ParamDef> params = parseParams(functionNode.params);
     BlockNode body = functionNode.body;
     FunctionDef def = new FunctionDef(name, returnType, params, body);
+    def.isConstexpr = functionNode.isConstexpr;
     dispatch.ensureUniqueFunction(def);
     program.addFunction(def);
+    invalidateCaches();
+  }
+
+  private void invalidateCaches() {
+    Memoizer memoizer = exprEvaluator.getMemoizer();
+    if (memoizer != null) {
+      memoizer.invalidate();
+    }
+    Vm vm = exprEvaluator.getVm();
+    if (vm != null) {
+      vm.invalidate();
+    }
+    ClosureEngine closures = exprEvaluator.getClosureEngine();
+    if (closures != null) {
+      closures.invalidate();
+    }
   }
 
-  private void addFieldRepl(ClassDef classDef, FieldDeclNode fieldDecl) {
+  private void addFieldRepl(ClassDef classDef, FieldDeclNode fieldDecl, Set<String> existing) {
     Type type = typeResolver.parse(fieldDecl.type);
     if (type.isRef) {
       throw new CompileError("Reference fields are not allowed: " + type);
@@ -163,14 +206,13 @@ public class ReplHandler {
       throw new CompileError("Field type cannot be void");
     }
     String name = fieldDecl.name;
-    Set<String> existing = objectModel.collectFieldNames(classDef);
-    if (existing.contains(name)) {
+    if (!existing.add(name) || (classDef.baseClass != null && classDef.baseClass.hasField(name))) {
       throw new CompileError("Field already defined: " + name);
     }
     classDef.fields.add(new FieldDef(type, name));
   }
 
-  private void addMethodRepl(ClassDef classDef, MethodNode methodNode) {
+  private void addMethodRepl(ClassDef classDef, MethodNode methodNode, Set<String> declared) {
     boolean isVirtual = methodNode.isVirtual;
     Type returnType = typeResolver.parse(methodNode.returnType);
     if (returnType.isRef) {
@@ -180,28 +222,24 @@ public class ReplHandler {
     List<ParamDef> params = parseParams(methodNode.params);
     MethodDef def =
         new MethodDef(name, returnType, params, methodNode.body, isVirtual, classDef.name);
-    String signature = SignatureUtil.signature(name, params);
-    for (MethodDef existing : classDef.methods) {
-      if (SignatureUtil.signature(existing.name, existing.params).equals(signature)) {
-        throw new CompileError("Method already defined: " + signature);
-      }
+    if (!declared.add(def.signature)) {
+      throw new CompileError("Method already defined: " + def.signature);
     }
     classDef.methods.add(def);
   }
 
-  private void addConstructorRepl(ClassDef classDef, ConstructorNode ctorNode) {
+  private void addConstructorRepl(
+      ClassDef classDef, ConstructorNode ctorNode, Set<String> declared) {
     String name = ctorNode.name;
     if (!name.equals(classDef.name)) {
       throw new CompileError("Constructor name must match class: " + name);
     }
     List<ParamDef> params = parseParams(ctorNode.params);
-    String signature = SignatureUtil.signature(name, params);
-    for (ConstructorDef existing : classDef.constructors) {
-      if (SignatureUtil.signature(existing.className, existing.params).equals(signature)) {
-        throw new CompileError("Constructor already defined: " + signature);
-      }
+    ConstructorDef def = new ConstructorDef(classDef.name, params, ctorNode.body);
+    if (!declared.add(def.signature)) {
+      throw new CompileError("Constructor already defined: " + def.signature);
     }
-    classDef.constructors.add(new ConstructorDef(classDef.name, params, ctorNode.body));
+    classDef.constructors.add(def);
   }
 
   private List<ParamDef> parseParams(List<ParamNode> paramNodes) {
@@ -223,17 +261,4 @@ public class ReplHandler {
     }
     return params;
   }
-
-  private void buildVtableFor(ClassDef classDef) {
-    Map<String, MethodDef> inherited = new HashMap<>();
-    if (classDef.baseClass != null) {
-      inherited.putAll(classDef.baseClass.vtable);
-    }
-    for (MethodDef method : classDef.methods) {
-      String signature = SignatureUtil.signature(method.name, method.params);
-      inherited.put(signature, method);
-    }
-    classDef.vtable.clear();
-    classDef.vtable.putAll(inherited);
-  }
 }
@@ -6,21 +6,32 @@ import cpp.ast.IfStmtNode;
 import cpp.ast.ReturnStmtNode;
 import cpp.ast.StmtNode;
 import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
 import cpp.ast.WhileStmtNode;
 import cpp.error.CompileError;
+import cpp.error.RuntimeError;
 import cpp.model.ClassDef;
 import cpp.model.Type;
+import cpp.profile.Profiler;
+import cpp.runtime.Container;
 import cpp.runtime.Env;
 import cpp.runtime.EvalResult;
 import cpp.runtime.ReturnSignal;
+import cpp.runtime.VarSlot;
 import cpp.sema.TypeResolver;
-import java.util.Set;
+import cpp.vm.Vm;
 
 public class StmtExecutor {
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
   private final TypeResolver typeResolver;
   private final Dispatch dispatch;
   private final ObjectModel objectModel;
   private ExprEvaluator exprEvaluator;
+  private long stepBudget = UNLIMITED;
+  private boolean stepLimited;
+  private Profiler profiler;
+  private Vm vm;
 
   public StmtExecutor(TypeResolver typeResolver, Dispatch dispatch, ObjectModel objectModel) {
     this.typeResolver = typeResolver;
@@ -81,14 +92,31 @@ public class StmtExecutor {
       throw new CompileError("Variable already defined in scope: " + name);
     }
     if (context.currentClass != null) {
-      Set<String> fieldNames = objectModel.collectFieldNames(context.currentClass);
-      if (fieldNames.contains(name)) {
+      if (objectModel.hasField(context.currentClass, name)) {
         throw new CompileError("Variable shadows field: " + name);
       }
     }
     if (type.isRef && decl.init == null) {
       throw new CompileError("Reference variable requires initializer: " + name);
     }
+    if (type.isArray() && decl.init != null) {
+      throw new CompileError("Array variable cannot have an initializer: " + name);
+    }
+    if (decl.isConst) {
+      if (type.isRef || !type.isScalar()) {
+        throw new CompileError("Const is only supported for primitive variables: " + name);
+      }
+      if (decl.init == null) {
+        throw new CompileError("Const variable requires initializer: " + name);
+      }
+      EvalResult init = exprEvaluator.evalExpr(decl.init, context);
+      context.env.define(name, VarSlot.constSlot(type, objectModel.coerceValue(init.value, type)));
+      return;
+    }
+    if (type.isArray() || (type.isContainer() && decl.init == null)) {
+      context.env.define(name, new VarSlot(type, objectModel.defaultValue(type)));
+      return;
+    }
     if (decl.init == null) {
       context.env.define(name, objectModel.createValueSlot(type, objectModel.defaultValue(type)));
       return;
@@ -115,6 +143,9 @@ public class StmtExecutor {
 
   private void executeIf(IfStmtNode stmt, ExecContext context) {
     boolean cond = evalCondition(stmt.condition, context);
+    if (profiler != null) {
+      profiler.branch(stmt, cond);
+    }
     if (cond) {
       executeBlock(stmt.thenBlock, context, true);
     } else if (stmt.elseBlock != null) {
@@ -122,9 +153,49 @@ public class StmtExecutor {
     }
   }
 
+  // Counting stops at the threshold, so a zero threshold (no VM) never reaches the VM and long
+  // loops cannot wrap the counter back onto it.
   private void executeWhile(WhileStmtNode stmt, ExecContext context) {
+    int threshold = osrThreshold();
+    int backEdges = 0;
     while (evalCondition(stmt.condition, context)) {
+      countStep();
+      if (profiler != null) {
+        profiler.branch(stmt, true);
+      }
       executeBlock(stmt.body, context, true);
+      if (backEdges < threshold && ++backEdges == threshold && vm.runLoop(stmt, context.env)) {
+        return;
+      }
+    }
+    if (profiler != null) {
+      profiler.branch(stmt, false);
+    }
+  }
+
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  public void setVm(Vm vm) {
+    this.vm = vm;
+  }
+
+  private int osrThreshold() {
+    if (vm == null || profiler != null || stepLimited) {
+      return 0;
+    }
+    return vm.getOsrThreshold();
+  }
+
+  public void setStepBudget(long budget) {
+    stepBudget = budget;
+    stepLimited = budget != UNLIMITED;
+  }
+
+  void countStep() {
+    if (--stepBudget < 0) {
+      throw new RuntimeError("Step limit exceeded");
     }
   }
 
@@ -133,6 +204,12 @@ public class StmtExecutor {
       throw new ReturnSignal(cpp.runtime.Value.voidValue());
     }
     EvalResult result = exprEvaluator.evalExpr(stmt.value, context);
+    if (result.type.isContainer()
+        && stmt.value instanceof VarRefNode ref
+        && context.env.resolve(ref.name) == result.slot
+        && !result.slot.isRef()) {
+      ((Container) result.value.data).release();
+    }
     throw new ReturnSignal(result.value);
   }
 
@@ -1,9 +1,10 @@
 package cpp.model;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 public class ClassDef {
   public final String name;
@@ -12,10 +13,62 @@ public class ClassDef {
   public final List<FieldDef> fields = new ArrayList<>();
   public final List<MethodDef> methods = new ArrayList<>();
   public final List<ConstructorDef> constructors = new ArrayList<>();
-  public final Map<String, MethodDef> vtable = new HashMap<>();
+  // A class that declares no methods shares its base class's table.
+  public Vtable vtable = new Vtable(null);
+  public int fileIndex;
+  private Set<String> ownFieldNames;
 
   public ClassDef(String name, String baseName) {
     this.name = name;
     this.baseName = baseName;
   }
+
+  // Own and inherited fields. Only ask once the fields of this class and its bases are complete.
+  public boolean hasField(String name) {
+    for (ClassDef current = this; current != null; current = current.baseClass) {
+      if (current.ownFieldNames().contains(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Set<String> ownFieldNames() {
+    if (ownFieldNames == null) {
+      Set<String> names = HashSet.newHashSet(fields.size());
+      for (FieldDef field : fields) {
+        names.add(field.name);
+      }
+      ownFieldNames = Set.copyOf(names);
+    }
+    return ownFieldNames;
+  }
+
+  // Needs the base class's table to be built first.
+  public void buildVtable() {
+    Vtable inherited = baseClass != null ? baseClass.vtable : null;
+    if (methods.isEmpty() && inherited != null) {
+      vtable = inherited;
+      return;
+    }
+    vtable = new Vtable(inherited);
+    for (MethodDef method : methods) {
+      vtable.put(method.signature, method);
+    }
+  }
+
+  // Bases in the same batch are built first; bases defined earlier already have their table.
+  public static void buildVtables(Collection<ClassDef> classDefs) {
+    Set<ClassDef> pending = new HashSet<>(classDefs);
+    List<ClassDef> chain = new ArrayList<>();
+    for (ClassDef classDef : classDefs) {
+      for (ClassDef current = classDef; pending.remove(current); current = current.baseClass) {
+        chain.add(current);
+      }
+      for (int i = chain.size() - 1; i >= 0; i--) {
+        chain.get(i).buildVtable();
+      }
+      chain.clear();
+    }
+  }
 }
@@ -1,12 +1,15 @@
 package cpp.model;
 
 import cpp.ast.BlockNode;
+import cpp.ast.DeferredBody;
 import java.util.List;
 
 public class ConstructorDef {
   public final String className;
   public final List<ParamDef> params;
-  public final BlockNode body;
+  public final String signature;
+  public BlockNode body;
+  public DeferredBody deferredBody;
   public final boolean isSyntheticCopy;
 
   public ConstructorDef(String className, List<ParamDef> params, BlockNode body) {
@@ -17,7 +20,15 @@ public class ConstructorDef {
       String className, List<ParamDef> params, BlockNode body, boolean isSyntheticCopy) {
     this.className = className;
     this.params = params;
+    this.signature = SignatureUtil.signature(className, params);
     this.body = body;
     this.isSyntheticCopy = isSyntheticCopy;
   }
+
+  public void loadBody() {
+    if (deferredBody != null) {
+      body = deferredBody.parse();
+      deferredBody = null;
+    }
+  }
 }
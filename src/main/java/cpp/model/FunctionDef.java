@@ -1,14 +1,20 @@
 package cpp.model;
 
 import cpp.ast.BlockNode;
+import cpp.ast.DeferredBody;
 import java.util.List;
 
 public class FunctionDef {
   public final String name;
   public final Type returnType;
   public final List<ParamDef> params;
-  public final BlockNode body;
+  public final String signature;
+  public BlockNode body;
+  public DeferredBody deferredBody;
   public final boolean isBuiltin;
+  public boolean isConstexpr;
+  // Position of the defining file in load order.
+  public int fileIndex;
 
   public FunctionDef(String name, Type returnType, List<ParamDef> params, BlockNode body) {
     this(name, returnType, params, body, false);
@@ -19,7 +25,15 @@ public class FunctionDef {
     this.name = name;
     this.returnType = returnType;
     this.params = params;
+    this.signature = SignatureUtil.signature(name, params);
     this.body = body;
     this.isBuiltin = isBuiltin;
   }
+
+  public void loadBody() {
+    if (deferredBody != null) {
+      body = deferredBody.parse();
+      deferredBody = null;
+    }
+  }
 }
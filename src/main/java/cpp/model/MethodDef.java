@@ -1,13 +1,16 @@
 package cpp.model;
 
 import cpp.ast.BlockNode;
+import cpp.ast.DeferredBody;
 import java.util.List;
 
 public class MethodDef {
   public final String name;
   public final Type returnType;
   public final List<ParamDef> params;
-  public final BlockNode body;
+  public final String signature;
+  public BlockNode body;
+  public DeferredBody deferredBody;
   public final boolean isVirtual;
   public final String declaredIn;
 
@@ -21,8 +24,16 @@ public class MethodDef {
     this.name = name;
     this.returnType = returnType;
     this.params = params;
+    this.signature = SignatureUtil.signature(name, params);
     this.body = body;
     this.isVirtual = isVirtual;
     this.declaredIn = declaredIn;
   }
+
+  public void loadBody() {
+    if (deferredBody != null) {
+      body = deferredBody.parse();
+      deferredBody = null;
+    }
+  }
 }
@@ -1,15 +1,32 @@
 package cpp.model;
 
+import cpp.ast.ClassDefNode;
+import cpp.ast.FunctionNode;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ProgramDef {
   public final Map<String, ClassDef> classes = new HashMap<>();
   public final Map<String, List<FunctionDef>> functions = new HashMap<>();
+  public final Map<String, ClassDefNode> deferredClasses = new LinkedHashMap<>();
+  public final Map<String, List<FunctionNode>> deferredFunctions = new LinkedHashMap<>();
+  private final Set<String> signatures = new HashSet<>();
 
   public void addFunction(FunctionDef function) {
     functions.computeIfAbsent(function.name, name -> new ArrayList<>()).add(function);
+    signatures.add(function.signature);
+  }
+
+  public boolean hasFunction(String signature) {
+    return signatures.contains(signature);
+  }
+
+  public boolean hasDeferred() {
+    return !deferredClasses.isEmpty() || !deferredFunctions.isEmpty();
   }
 }
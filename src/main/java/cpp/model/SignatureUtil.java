@@ -1,6 +1,5 @@
-package cpp.sema;
+package cpp.model;
 
-import cpp.model.ParamDef;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -9,17 +9,31 @@ public class Type {
     CHAR,
     STRING,
     VOID,
-    CLASS
+    CLASS,
+    ARRAY,
+    VECTOR,
+    ITERATOR,
+    MAP
   }
 
   public final Kind kind;
   public final String className;
   public final boolean isRef;
+  public final Type element;
+  public final int length;
+  public final Type key;
 
   private Type(Kind kind, String className, boolean isRef) {
+    this(kind, className, isRef, null, 0, null);
+  }
+
+  private Type(Kind kind, String className, boolean isRef, Type element, int length, Type key) {
     this.kind = kind;
     this.className = className;
     this.isRef = isRef;
+    this.element = element;
+    this.length = length;
+    this.key = key;
   }
 
   public static Type boolType(boolean isRef) {
@@ -46,18 +60,35 @@ public class Type {
     return new Type(Kind.CLASS, name, isRef);
   }
 
+  public static Type arrayType(Type element, int length, boolean isRef) {
+    return new Type(Kind.ARRAY, null, isRef, element, length, null);
+  }
+
+  public static Type vectorType(Type element, boolean isRef) {
+    return new Type(Kind.VECTOR, null, isRef, element, 0, null);
+  }
+
+  public static Type iteratorType(Type container) {
+    return new Type(Kind.ITERATOR, null, false, container, 0, null);
+  }
+
+  // The mapped type is kept in element.
+  public static Type mapType(Type key, Type value, boolean isRef) {
+    return new Type(Kind.MAP, null, isRef, value, 0, key);
+  }
+
   public Type withoutRef() {
     if (!isRef) {
       return this;
     }
-    return new Type(kind, className, false);
+    return new Type(kind, className, false, element, length, key);
   }
 
   public Type withRef() {
     if (isRef) {
       return this;
     }
-    return new Type(kind, className, true);
+    return new Type(kind, className, true, element, length, key);
   }
 
   public boolean isClass() {
@@ -68,11 +99,34 @@ public class Type {
     return kind == Kind.VOID;
   }
 
+  public boolean isArray() {
+    return kind == Kind.ARRAY;
+  }
+
+  public boolean isContainer() {
+    return kind == Kind.VECTOR || kind == Kind.MAP;
+  }
+
+  public boolean isScalar() {
+    return switch (kind) {
+      case BOOL, INT, CHAR, STRING -> true;
+      default -> false;
+    };
+  }
+
   @Override
   public String toString() {
     String base;
     if (kind == Kind.CLASS) {
       base = className;
+    } else if (kind == Kind.ARRAY) {
+      base = element + "[" + length + "]";
+    } else if (kind == Kind.VECTOR) {
+      base = "vector<" + element + ">";
+    } else if (kind == Kind.ITERATOR) {
+      base = element + "::iterator";
+    } else if (kind == Kind.MAP) {
+      base = "unordered_map<" + key + "," + element + ">";
     } else {
       base = kind.name().toLowerCase();
     }
@@ -88,11 +142,16 @@ public class Type {
       return false;
     }
     Type other = (Type) obj;
-    return kind == other.kind && Objects.equals(className, other.className) && isRef == other.isRef;
+    return kind == other.kind
+        && Objects.equals(className, other.className)
+        && isRef == other.isRef
+        && Objects.equals(element, other.element)
+        && length == other.length
+        && Objects.equals(key, other.key);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(kind, className, isRef);
+    return Objects.hash(kind, className, isRef, element, length, key);
   }
 }
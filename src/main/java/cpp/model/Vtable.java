@@ -0,0 +1,53 @@
+package cpp.model;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One layer per class that declares methods: only the class's own entries, with lookups falling
+// back to the base class's layer. Building a table costs the size of the class, not of its chain.
+public class Vtable {
+  public final Vtable parent;
+  private final Map<String, MethodDef> own = new HashMap<>();
+
+  public Vtable(Vtable parent) {
+    this.parent = parent;
+  }
+
+  public MethodDef get(String signature) {
+    for (Vtable layer = this; layer != null; layer = layer.parent) {
+      MethodDef method = layer.own.get(signature);
+      if (method != null) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  public boolean containsKey(String signature) {
+    return get(signature) != null;
+  }
+
+  public MethodDef getOwn(String signature) {
+    return own.get(signature);
+  }
+
+  public void put(String signature, MethodDef method) {
+    own.put(signature, method);
+  }
+
+  public int ownSize() {
+    return own.size();
+  }
+
+  // Every visible entry; an override hides the base class's entry of the same signature.
+  public Map<String, MethodDef> entries() {
+    Map<String, MethodDef> entries = new LinkedHashMap<>();
+    for (Vtable layer = this; layer != null; layer = layer.parent) {
+      for (Map.Entry<String, MethodDef> entry : layer.own.entrySet()) {
+        entries.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    return entries;
+  }
+}
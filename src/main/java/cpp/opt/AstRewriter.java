@@ -0,0 +1,147 @@
+package cpp.opt;
+
+import cpp.ast.ASTNode;
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.WhileStmtNode;
+import java.util.List;
+
+public abstract class AstRewriter {
+
+  public void rewriteBlock(BlockNode block) {
+    List<StmtNode> statements = block.statements;
+    for (int i = 0; i < statements.size(); i++) {
+      statements.set(i, rewriteStmt(statements.get(i)));
+    }
+  }
+
+  protected StmtNode rewriteStmt(StmtNode stmt) {
+    if (stmt instanceof VarDeclNode varDecl) {
+      if (varDecl.init != null) {
+        varDecl.init = rewriteExpr(varDecl.init);
+      }
+      return varDecl;
+    }
+    if (stmt instanceof ExprStmtNode exprStmt) {
+      ExprNode expr = rewriteExpr(exprStmt.expr);
+      return expr == exprStmt.expr ? exprStmt : positioned(new ExprStmtNode(expr), exprStmt);
+    }
+    if (stmt instanceof IfStmtNode ifStmt) {
+      ExprNode condition = rewriteExpr(ifStmt.condition);
+      rewriteBlock(ifStmt.thenBlock);
+      if (ifStmt.elseBlock != null) {
+        rewriteBlock(ifStmt.elseBlock);
+      }
+      if (condition == ifStmt.condition) {
+        return ifStmt;
+      }
+      return positioned(new IfStmtNode(condition, ifStmt.thenBlock, ifStmt.elseBlock), ifStmt);
+    }
+    if (stmt instanceof WhileStmtNode whileStmt) {
+      ExprNode condition = rewriteExpr(whileStmt.condition);
+      rewriteBlock(whileStmt.body);
+      if (condition == whileStmt.condition) {
+        return whileStmt;
+      }
+      return positioned(new WhileStmtNode(condition, whileStmt.body), whileStmt);
+    }
+    if (stmt instanceof ReturnStmtNode returnStmt) {
+      if (returnStmt.value == null) {
+        return returnStmt;
+      }
+      ExprNode value = rewriteExpr(returnStmt.value);
+      return value == returnStmt.value
+          ? returnStmt
+          : positioned(new ReturnStmtNode(value), returnStmt);
+    }
+    if (stmt instanceof BlockNode block) {
+      rewriteBlock(block);
+      return block;
+    }
+    return stmt;
+  }
+
+  protected ExprNode rewriteExpr(ExprNode expr) {
+    ExprNode rewritten = expr;
+    if (expr instanceof AssignExprNode assign) {
+      ExprNode target = rewriteExpr(assign.target);
+      ExprNode value = rewriteExpr(assign.value);
+      if (target != assign.target || value != assign.value) {
+        rewritten = positioned(new AssignExprNode(target, value), assign);
+      }
+    } else if (expr instanceof BinaryExprNode binary) {
+      binary.left = rewriteExpr(binary.left);
+      binary.right = rewriteExpr(binary.right);
+    } else if (expr instanceof UnaryExprNode unary) {
+      ExprNode value = rewriteExpr(unary.expr);
+      if (value != unary.expr) {
+        rewritten = positioned(new UnaryExprNode(unary.op, value), unary);
+      }
+    } else if (expr instanceof CallExprNode call) {
+      rewriteArgs(call.args);
+    } else if (expr instanceof MethodCallNode call) {
+      ExprNode receiver = rewriteExpr(call.receiver);
+      rewriteArgs(call.args);
+      if (receiver != call.receiver) {
+        rewritten = positioned(new MethodCallNode(receiver, call.name, call.args), call);
+      }
+    } else if (expr instanceof FieldAccessNode access) {
+      ExprNode receiver = rewriteExpr(access.receiver);
+      if (receiver != access.receiver) {
+        rewritten = positioned(new FieldAccessNode(receiver, access.name), access);
+      }
+    } else if (expr instanceof IndexExprNode index) {
+      ExprNode array = rewriteExpr(index.array);
+      ExprNode position = rewriteExpr(index.index);
+      if (array != index.array || position != index.index) {
+        IndexExprNode copy = positioned(new IndexExprNode(array, position), index);
+        copy.checked = index.checked;
+        rewritten = copy;
+      }
+    } else if (expr instanceof InlinedCallNode inlined) {
+      ExprNode call = rewriteExpr(inlined.call);
+      ExprNode body = inlined.body == null ? null : rewriteExpr(inlined.body);
+      if (call != inlined.call || body != inlined.body) {
+        rewritten =
+            positioned(
+                new InlinedCallNode(
+                    call,
+                    inlined.function,
+                    inlined.method,
+                    inlined.signature,
+                    body,
+                    inlined.receiverClass),
+                inlined);
+      }
+    }
+    return transform(rewritten);
+  }
+
+  protected ExprNode transform(ExprNode expr) {
+    return expr;
+  }
+
+  private void rewriteArgs(List<ExprNode> args) {
+    for (int i = 0; i < args.size(); i++) {
+      args.set(i, rewriteExpr(args.get(i)));
+    }
+  }
+
+  public static <T extends ASTNode> T positioned(T node, ASTNode origin) {
+    node.setPosition(origin.line(), origin.column());
+    return node;
+  }
+}
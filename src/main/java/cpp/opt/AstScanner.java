@@ -0,0 +1,90 @@
+package cpp.opt;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.WhileStmtNode;
+
+public abstract class AstScanner {
+
+  public void scanBlock(BlockNode block) {
+    if (block == null) {
+      return;
+    }
+    for (StmtNode stmt : block.statements) {
+      scanStmt(stmt);
+    }
+  }
+
+  protected void scanStmt(StmtNode stmt) {
+    visitStmt(stmt);
+    if (stmt instanceof VarDeclNode varDecl) {
+      if (varDecl.init != null) {
+        scanExpr(varDecl.init);
+      }
+    } else if (stmt instanceof ExprStmtNode exprStmt) {
+      scanExpr(exprStmt.expr);
+    } else if (stmt instanceof IfStmtNode ifStmt) {
+      scanExpr(ifStmt.condition);
+      scanBlock(ifStmt.thenBlock);
+      scanBlock(ifStmt.elseBlock);
+    } else if (stmt instanceof WhileStmtNode whileStmt) {
+      scanExpr(whileStmt.condition);
+      scanBlock(whileStmt.body);
+    } else if (stmt instanceof ReturnStmtNode returnStmt) {
+      if (returnStmt.value != null) {
+        scanExpr(returnStmt.value);
+      }
+    } else if (stmt instanceof BlockNode block) {
+      scanBlock(block);
+    }
+  }
+
+  public void scanExpr(ExprNode expr) {
+    visitExpr(expr);
+    if (expr instanceof AssignExprNode assign) {
+      scanExpr(assign.target);
+      scanExpr(assign.value);
+    } else if (expr instanceof BinaryExprNode binary) {
+      scanExpr(binary.left);
+      scanExpr(binary.right);
+    } else if (expr instanceof UnaryExprNode unary) {
+      scanExpr(unary.expr);
+    } else if (expr instanceof CallExprNode call) {
+      for (ExprNode arg : call.args) {
+        scanExpr(arg);
+      }
+    } else if (expr instanceof MethodCallNode call) {
+      scanExpr(call.receiver);
+      for (ExprNode arg : call.args) {
+        scanExpr(arg);
+      }
+    } else if (expr instanceof FieldAccessNode access) {
+      scanExpr(access.receiver);
+    } else if (expr instanceof IndexExprNode index) {
+      scanExpr(index.array);
+      scanExpr(index.index);
+    } else if (expr instanceof InlinedCallNode inlined) {
+      scanExpr(inlined.call);
+      if (inlined.body != null) {
+        scanExpr(inlined.body);
+      }
+    }
+  }
+
+  protected void visitStmt(StmtNode stmt) {}
+
+  protected void visitExpr(ExprNode expr) {}
+}
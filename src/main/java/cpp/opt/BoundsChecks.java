@@ -0,0 +1,283 @@
+package cpp.opt;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.StmtNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Clears IndexExprNode.checked for a[i] inside "while (i < N)" or "while (i <= N)" when i is an
+// int local that can never go negative and a is known to hold more than the largest i.
+//
+// i qualifies when it is declared once, never bound to a reference or passed to a call, and every
+// assignment to it either stores a non-negative literal or is an "i = i + 1" statement at the top
+// of a loop body whose guard is still in force. Within a guarded body only the statements before
+// the first one that assigns i are considered.
+public class BoundsChecks {
+  private final ProgramDef program;
+  private int removedCount;
+
+  public BoundsChecks(ProgramDef program) {
+    this.program = program;
+  }
+
+  public void run() {
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (function.isBuiltin) {
+          continue;
+        }
+        if (function.body != null) {
+          analyze(function.body, function.params, null);
+        } else if (function.deferredBody != null) {
+          function.deferredBody = analyzed(function.deferredBody, function.params, null);
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        if (method.body != null) {
+          analyze(method.body, method.params, classDef);
+        } else if (method.deferredBody != null) {
+          method.deferredBody = analyzed(method.deferredBody, method.params, classDef);
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.body != null) {
+          analyze(ctor.body, ctor.params, classDef);
+        } else if (ctor.deferredBody != null) {
+          ctor.deferredBody = analyzed(ctor.deferredBody, ctor.params, classDef);
+        }
+      }
+    }
+  }
+
+  public int getRemovedCount() {
+    return removedCount;
+  }
+
+  private DeferredBody analyzed(DeferredBody source, List<ParamDef> params, ClassDef classDef) {
+    return () -> {
+      BlockNode block = source.parse();
+      analyze(block, params, classDef);
+      return block;
+    };
+  }
+
+  private void analyze(BlockNode body, List<ParamDef> params, ClassDef classDef) {
+    new Body(body, params, classDef).run();
+  }
+
+  private class Body {
+    private final BlockNode block;
+    private final ClassDef classDef;
+    private final Map<String, Integer> declCounts = new HashMap<>();
+    private final Map<String, Integer> lengths = new HashMap<>();
+    private final Map<String, VarDeclNode> intLocals = new HashMap<>();
+    private final List<WhileStmtNode> loops = new ArrayList<>();
+    private final Map<String, Boolean> counters = new HashMap<>();
+
+    Body(BlockNode block, List<ParamDef> params, ClassDef classDef) {
+      this.block = block;
+      this.classDef = classDef;
+      for (ParamDef param : params) {
+        declare(param.name);
+        if (param.type.isArray()) {
+          lengths.put(param.name, param.type.length);
+        }
+      }
+    }
+
+    void run() {
+      new AstScanner() {
+        @Override
+        protected void visitStmt(StmtNode stmt) {
+          if (stmt instanceof VarDeclNode decl) {
+            declare(decl.name);
+            if (decl.type.isArray()) {
+              lengths.put(decl.name, decl.type.length);
+            } else if (decl.type.name.equals("int") && !decl.type.isRef) {
+              intLocals.put(decl.name, decl);
+            }
+          } else if (stmt instanceof WhileStmtNode loop) {
+            loops.add(loop);
+          }
+        }
+      }.scanBlock(block);
+      for (WhileStmtNode loop : loops) {
+        String counter = counterOf(loop);
+        if (counter != null && isCounter(counter)) {
+          markGuarded(loop, counter, maxIndex(loop));
+        }
+      }
+    }
+
+    private void declare(String name) {
+      declCounts.merge(name, 1, Integer::sum);
+    }
+
+    private void markGuarded(WhileStmtNode loop, String counter, int maxIndex) {
+      for (StmtNode stmt : loop.body.statements) {
+        if (assigns(stmt, counter)) {
+          return;
+        }
+        new AstScanner() {
+          @Override
+          protected void visitExpr(ExprNode expr) {
+            if (expr instanceof IndexExprNode index
+                && index.checked
+                && isVar(index.index, counter)
+                && index.array instanceof VarRefNode array
+                && maxIndex < lengthOf(array.name)) {
+              index.checked = false;
+              removedCount++;
+            }
+          }
+        }.scanStmt(stmt);
+      }
+    }
+
+    private int lengthOf(String name) {
+      Integer count = declCounts.get(name);
+      if (count != null) {
+        return count == 1 ? lengths.getOrDefault(name, 0) : 0;
+      }
+      for (ClassDef current = classDef; current != null; current = current.baseClass) {
+        for (FieldDef field : current.fields) {
+          if (field.name.equals(name)) {
+            return field.type.isArray() ? field.type.length : 0;
+          }
+        }
+      }
+      return 0;
+    }
+
+    private boolean isCounter(String name) {
+      return counters.computeIfAbsent(name, this::checkCounter);
+    }
+
+    private boolean checkCounter(String name) {
+      VarDeclNode decl = intLocals.get(name);
+      if (decl == null || declCounts.get(name) != 1) {
+        return false;
+      }
+      if (decl.init != null && !isNonNegativeLiteral(decl.init)) {
+        return false;
+      }
+      Set<ExprNode> increments = new HashSet<>();
+      for (WhileStmtNode loop : loops) {
+        if (name.equals(counterOf(loop)) && maxIndex(loop) < Integer.MAX_VALUE) {
+          for (StmtNode stmt : loop.body.statements) {
+            if (assigns(stmt, name)) {
+              if (stmt instanceof ExprStmtNode exprStmt && isIncrement(exprStmt.expr, name)) {
+                increments.add(exprStmt.expr);
+              }
+              break;
+            }
+          }
+        }
+      }
+      boolean[] ok = {true};
+      new AstScanner() {
+        @Override
+        protected void visitStmt(StmtNode stmt) {
+          if (stmt instanceof VarDeclNode decl && decl.type.isRef && isVar(decl.init, name)) {
+            ok[0] = false;
+          }
+        }
+
+        @Override
+        protected void visitExpr(ExprNode expr) {
+          if (expr instanceof AssignExprNode assign && isVar(assign.target, name)) {
+            ok[0] &= isNonNegativeLiteral(assign.value) || increments.contains(assign);
+          } else if (expr instanceof CallExprNode call) {
+            ok[0] &= !passes(call.args, name);
+          } else if (expr instanceof MethodCallNode call) {
+            ok[0] &= !passes(call.args, name);
+          }
+        }
+      }.scanBlock(block);
+      return ok[0];
+    }
+  }
+
+  private static String counterOf(WhileStmtNode loop) {
+    if (loop.condition instanceof BinaryExprNode cond
+        && (cond.op.equals("<") || cond.op.equals("<="))
+        && cond.left instanceof VarRefNode ref
+        && cond.right instanceof LiteralNode bound
+        && bound.value instanceof Integer) {
+      return ref.name;
+    }
+    return null;
+  }
+
+  // The largest value the counter can have inside the guarded part of the loop body.
+  private static int maxIndex(WhileStmtNode loop) {
+    BinaryExprNode cond = (BinaryExprNode) loop.condition;
+    int bound = (Integer) ((LiteralNode) cond.right).value;
+    return cond.op.equals("<") ? bound - 1 : bound;
+  }
+
+  private static boolean assigns(StmtNode stmt, String name) {
+    boolean[] found = {false};
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        found[0] |= expr instanceof AssignExprNode assign && isVar(assign.target, name);
+      }
+    }.scanStmt(stmt);
+    return found[0];
+  }
+
+  private static boolean isIncrement(ExprNode expr, String name) {
+    return expr instanceof AssignExprNode assign
+        && isVar(assign.target, name)
+        && assign.value instanceof BinaryExprNode sum
+        && sum.op.equals("+")
+        && isVar(sum.left, name)
+        && sum.right instanceof LiteralNode one
+        && Integer.valueOf(1).equals(one.value);
+  }
+
+  private static boolean passes(List<ExprNode> args, String name) {
+    for (ExprNode arg : args) {
+      if (isVar(arg, name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isNonNegativeLiteral(ExprNode expr) {
+    return expr instanceof LiteralNode literal
+        && literal.value instanceof Integer value
+        && value >= 0;
+  }
+
+  private static boolean isVar(ExprNode expr, String name) {
+    return expr instanceof VarRefNode ref && ref.name.equals(name);
+  }
+}
@@ -0,0 +1,216 @@
+package cpp.opt;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.StmtNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.interp.Interpreter;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.runtime.Value;
+import cpp.sema.TypeResolver;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConstantFolder {
+  public static final long DEFAULT_STEP_LIMIT = 1_000_000;
+
+  private static final Object NOT_CONSTANT = new Object();
+
+  private final ProgramDef program;
+  private final Interpreter interpreter;
+  private final TypeResolver typeResolver;
+  private final long stepLimit;
+  private final Set<FunctionDef> foldable = new HashSet<>();
+  private int foldedCount;
+
+  public ConstantFolder(ProgramDef program, Interpreter interpreter) {
+    this(program, interpreter, DEFAULT_STEP_LIMIT);
+  }
+
+  public ConstantFolder(ProgramDef program, Interpreter interpreter, long stepLimit) {
+    this.program = program;
+    this.interpreter = interpreter;
+    this.typeResolver = new TypeResolver(program);
+    this.stepLimit = stepLimit;
+  }
+
+  public void run() {
+    collectFoldableFunctions();
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (!function.isBuiltin && function.body != null) {
+          new Folder().foldBody(function.body, function.params);
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        if (method.body != null) {
+          new Folder().foldBody(method.body, method.params);
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.body != null) {
+          new Folder().foldBody(ctor.body, ctor.params);
+        }
+      }
+    }
+  }
+
+  public int getFoldedCount() {
+    return foldedCount;
+  }
+
+  private void collectFoldableFunctions() {
+    for (FunctionDef function : new PurityAnalysis(program).run()) {
+      if (function.isConstexpr) {
+        foldable.add(function);
+      }
+    }
+  }
+
+  private boolean isFoldableCallee(String name) {
+    List<FunctionDef> overloads = program.functions.get(name);
+    if (overloads == null || program.classes.containsKey(name)) {
+      return false;
+    }
+    for (FunctionDef overload : overloads) {
+      if (!foldable.contains(overload)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isConstantExpr(ExprNode expr) {
+    if (expr instanceof LiteralNode) {
+      return true;
+    }
+    if (expr instanceof UnaryExprNode unary) {
+      return isConstantExpr(unary.expr);
+    }
+    if (expr instanceof BinaryExprNode binary) {
+      return isConstantExpr(binary.left) && isConstantExpr(binary.right);
+    }
+    return false;
+  }
+
+  private Value tryEvaluate(ExprNode expr) {
+    try {
+      return interpreter.evalIsolated(expr, stepLimit);
+    } catch (RuntimeException | StackOverflowError e) {
+      return null;
+    }
+  }
+
+  private LiteralNode literal(Value value, ExprNode origin) {
+    foldedCount++;
+    return AstRewriter.positioned(new LiteralNode(value.data), origin);
+  }
+
+  private class Folder extends AstRewriter {
+    private final Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+
+    void foldBody(BlockNode body, List<ParamDef> params) {
+      Map<String, Object> paramScope = new HashMap<>();
+      for (ParamDef param : params) {
+        paramScope.put(param.name, NOT_CONSTANT);
+      }
+      scopes.push(paramScope);
+      rewriteBlock(body);
+      scopes.pop();
+    }
+
+    @Override
+    public void rewriteBlock(BlockNode block) {
+      scopes.push(new HashMap<>());
+      super.rewriteBlock(block);
+      scopes.pop();
+    }
+
+    @Override
+    protected StmtNode rewriteStmt(StmtNode stmt) {
+      StmtNode result = super.rewriteStmt(stmt);
+      if (stmt instanceof VarDeclNode decl) {
+        scopes.peek().put(decl.name, constantValueOf(decl));
+      }
+      return result;
+    }
+
+    private Object constantValueOf(VarDeclNode decl) {
+      if (!decl.isConst || !PurityAnalysis.isValueType(decl.type) || decl.init == null) {
+        return NOT_CONSTANT;
+      }
+      if (!isConstantExpr(decl.init)) {
+        return NOT_CONSTANT;
+      }
+      Value value = tryEvaluate(decl.init);
+      if (value == null || !value.type.equals(typeResolver.parse(decl.type))) {
+        return NOT_CONSTANT;
+      }
+      if (!(decl.init instanceof LiteralNode)) {
+        decl.init = literal(value, decl.init);
+      }
+      return value.data;
+    }
+
+    @Override
+    protected ExprNode rewriteExpr(ExprNode expr) {
+      if (expr instanceof AssignExprNode assign && assign.target instanceof VarRefNode) {
+        ExprNode value = rewriteExpr(assign.value);
+        if (value == assign.value) {
+          return assign;
+        }
+        return positioned(new AssignExprNode(assign.target, value), assign);
+      }
+      return super.rewriteExpr(expr);
+    }
+
+    @Override
+    protected ExprNode transform(ExprNode expr) {
+      if (expr instanceof VarRefNode ref) {
+        Object value = lookup(ref.name);
+        if (value != null && value != NOT_CONSTANT) {
+          return positioned(new LiteralNode(value), ref);
+        }
+      } else if (expr instanceof CallExprNode call && isFoldableCallee(call.name)) {
+        for (ExprNode arg : call.args) {
+          if (!isConstantExpr(arg)) {
+            return expr;
+          }
+        }
+        Value value = tryEvaluate(call);
+        if (value != null) {
+          return literal(value, call);
+        }
+      }
+      return expr;
+    }
+
+    private Object lookup(String name) {
+      for (Map<String, Object> scope : scopes) {
+        Object value = scope.get(name);
+        if (value != null) {
+          return value;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,839 @@
+package cpp.opt;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.interp.Dispatch;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.profile.Profile;
+import cpp.profile.ProfileKeys;
+import cpp.sema.TypeResolver;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Inliner {
+  public static final int DEFAULT_MAX_SIZE = 16;
+  public static final int DEFAULT_MAX_DEPTH = 3;
+
+  private final ProgramDef program;
+  private final int maxSize;
+  private final int maxDepth;
+  private final Profile profile;
+  private final Map<String, Candidate> functionCandidates = new HashMap<>();
+  private final Map<String, Candidate> methodCandidates = new HashMap<>();
+  private final Map<String, List<MethodDef>> methodsByName = new HashMap<>();
+  private final List<Site> sites = new ArrayList<>();
+  private final TypeResolver typeResolver;
+
+  public Inliner(ProgramDef program) {
+    this(program, DEFAULT_MAX_SIZE, DEFAULT_MAX_DEPTH);
+  }
+
+  public Inliner(ProgramDef program, int maxSize, int maxDepth) {
+    this(program, maxSize, maxDepth, null);
+  }
+
+  public Inliner(ProgramDef program, int maxSize, int maxDepth, Profile profile) {
+    this.program = program;
+    this.maxSize = maxSize;
+    this.maxDepth = maxDepth;
+    this.profile = profile;
+    this.typeResolver = new TypeResolver(program);
+  }
+
+  public void run() {
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        methodsByName.computeIfAbsent(method.name, name -> new ArrayList<>()).add(method);
+      }
+    }
+    collectCandidates();
+    removeRecursiveCandidates();
+    if (maxDepth <= 0 || (functionCandidates.isEmpty() && methodCandidates.isEmpty())) {
+      return;
+    }
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (!function.isBuiltin && function.body != null) {
+          rewriteBody(function.body, ProfileKeys.signatureOf(function), function.params, null);
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        if (method.body != null) {
+          rewriteBody(method.body, ProfileKeys.signatureOf(method), method.params, classDef);
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.body != null) {
+          rewriteBody(ctor.body, ProfileKeys.signatureOf(ctor), ctor.params, classDef);
+        }
+      }
+    }
+  }
+
+  public List<String> getReport() {
+    List<Site> sorted = new ArrayList<>(sites);
+    sorted.sort(Comparator.<Site>comparingInt(s -> s.line).thenComparingInt(s -> s.column));
+    List<String> lines = new ArrayList<>();
+    for (Site site : sorted) {
+      String nested = site.depth > 1 ? " (depth " + site.depth + ")" : "";
+      lines.add(
+          "inlined "
+              + site.callee
+              + " into "
+              + site.caller
+              + " at "
+              + site.line
+              + ":"
+              + site.column
+              + nested);
+    }
+    return lines;
+  }
+
+  public int getInlinedCount() {
+    return sites.size();
+  }
+
+  private void rewriteBody(
+      BlockNode body, String caller, List<ParamDef> params, ClassDef classDef) {
+    Scopes scopes = new Scopes(classDef);
+    for (ParamDef param : params) {
+      scopes.declare(param.name, param.type.withoutRef(), true);
+    }
+    new SiteRewriter(caller, 1, Set.of(), scopes).rewriteBlock(body);
+  }
+
+  private void collectCandidates() {
+    for (Map.Entry<String, List<FunctionDef>> entry : program.functions.entrySet()) {
+      List<FunctionDef> overloads = entry.getValue();
+      if (overloads.size() != 1 || program.classes.containsKey(entry.getKey())) {
+        continue;
+      }
+      FunctionDef function = overloads.get(0);
+      if (function.isBuiltin) {
+        continue;
+      }
+      String signature = function.signature;
+      ExprNode template =
+          extractTemplate(function.body, function.returnType, sizeLimit(signature));
+      if (template == NOT_INLINABLE || !usesOnly(template, function.params, Set.of())) {
+        continue;
+      }
+      functionCandidates.put(
+          function.name,
+          new Candidate(
+              function,
+              null,
+              function.params,
+              function.returnType,
+              signature,
+              copy(template),
+              Set.of()));
+    }
+    for (Map.Entry<String, List<MethodDef>> entry : methodsByName.entrySet()) {
+      if (entry.getValue().size() != 1) {
+        continue;
+      }
+      MethodDef method = entry.getValue().get(0);
+      if (method.isVirtual) {
+        continue;
+      }
+      Set<String> fieldNames = fieldNamesOf(program.classes.get(method.declaredIn));
+      boolean shadows = false;
+      for (ParamDef param : method.params) {
+        shadows |= fieldNames.contains(param.name);
+      }
+      int sizeLimit = sizeLimit(ProfileKeys.signatureOf(method));
+      ExprNode template = extractTemplate(method.body, method.returnType, sizeLimit);
+      if (shadows
+          || template == NOT_INLINABLE
+          || !usesOnly(template, method.params, fieldNames)) {
+        continue;
+      }
+      String signature = method.signature;
+      methodCandidates.put(
+          method.name,
+          new Candidate(
+              null,
+              method,
+              method.params,
+              method.returnType,
+              signature,
+              copy(template),
+              fieldNames));
+    }
+  }
+
+  private static final ExprNode NOT_INLINABLE = new VarRefNode("<not inlinable>");
+
+  private int sizeLimit(String signature) {
+    if (profile == null) {
+      return maxSize;
+    }
+    long calls = profile.callCount(signature);
+    if (calls == 0) {
+      return 0;
+    }
+    return profile.isHot(signature) ? maxSize * 2 : maxSize;
+  }
+
+  private ExprNode extractTemplate(BlockNode body, Type returnType, int sizeLimit) {
+    if (body == null || body.statements.size() > 1) {
+      return NOT_INLINABLE;
+    }
+    if (body.statements.isEmpty()) {
+      return returnType.isVoid() ? null : NOT_INLINABLE;
+    }
+    StmtNode stmt = body.statements.get(0);
+    ExprNode expr;
+    if (!returnType.isVoid() && stmt instanceof ReturnStmtNode returnStmt) {
+      expr = returnStmt.value;
+    } else if (returnType.isVoid() && stmt instanceof ExprStmtNode exprStmt) {
+      expr = exprStmt.expr;
+    } else {
+      return NOT_INLINABLE;
+    }
+    if (expr == null || sizeOf(expr) > sizeLimit) {
+      return NOT_INLINABLE;
+    }
+    return expr;
+  }
+
+  private int sizeOf(ExprNode expr) {
+    int[] size = new int[1];
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode node) {
+        size[0]++;
+      }
+    }.scanExpr(expr);
+    return size[0];
+  }
+
+  private boolean usesOnly(ExprNode template, List<ParamDef> params, Set<String> fieldNames) {
+    if (template == null) {
+      return true;
+    }
+    Set<String> allowed = new HashSet<>(fieldNames);
+    for (ParamDef param : params) {
+      allowed.add(param.name);
+    }
+    boolean[] ok = {true};
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode node) {
+        if (node instanceof VarRefNode ref) {
+          ok[0] &= allowed.contains(ref.name);
+        } else if (!(node instanceof LiteralNode
+            || node instanceof BinaryExprNode
+            || node instanceof UnaryExprNode
+            || node instanceof AssignExprNode
+            || node instanceof CallExprNode
+            || node instanceof MethodCallNode
+            || node instanceof FieldAccessNode)) {
+          ok[0] = false;
+        }
+      }
+    }.scanExpr(template);
+    return ok[0];
+  }
+
+  private Set<String> fieldNamesOf(ClassDef classDef) {
+    Set<String> names = new HashSet<>();
+    for (ClassDef current = classDef; current != null; current = current.baseClass) {
+      for (FieldDef field : current.fields) {
+        names.add(field.name);
+      }
+    }
+    return names;
+  }
+
+  private void removeRecursiveCandidates() {
+    Set<Object> recursive = findRecursiveCallables();
+    functionCandidates.values().removeIf(candidate -> recursive.contains(candidate.target()));
+    methodCandidates.values().removeIf(candidate -> recursive.contains(candidate.target()));
+  }
+
+  private Map<Object, Set<Object>> buildCallGraph() {
+    Map<Object, Set<Object>> edges = new LinkedHashMap<>();
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        edges.put(function, calleesOf(function.body));
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        edges.put(method, calleesOf(method.body));
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        Set<Object> callees = calleesOf(ctor.body);
+        if (classDef.baseClass != null) {
+          callees.addAll(classDef.baseClass.constructors);
+        }
+        edges.put(ctor, callees);
+      }
+    }
+    return edges;
+  }
+
+  private Set<Object> calleesOf(BlockNode body) {
+    Set<Object> callees = new LinkedHashSet<>();
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode node) {
+        if (node instanceof CallExprNode call) {
+          ClassDef classDef = program.classes.get(call.name);
+          if (classDef != null) {
+            callees.addAll(classDef.constructors);
+          } else if (program.functions.containsKey(call.name)) {
+            callees.addAll(program.functions.get(call.name));
+          }
+        } else if (node instanceof MethodCallNode call) {
+          callees.addAll(methodsByName.getOrDefault(call.name, List.of()));
+        }
+      }
+    }.scanBlock(body);
+    return callees;
+  }
+
+  private Set<Object> findRecursiveCallables() {
+    Map<Object, Set<Object>> edges = buildCallGraph();
+    Map<Object, Integer> index = new HashMap<>();
+    Map<Object, Integer> low = new HashMap<>();
+    Deque<Object> stack = new ArrayDeque<>();
+    Set<Object> onStack = new HashSet<>();
+    Set<Object> recursive = new HashSet<>();
+    for (Object root : edges.keySet()) {
+      if (index.containsKey(root)) {
+        continue;
+      }
+      Deque<Frame> work = new ArrayDeque<>();
+      index.put(root, index.size());
+      low.put(root, index.get(root));
+      stack.push(root);
+      onStack.add(root);
+      work.push(new Frame(root, edges.getOrDefault(root, Set.of()).iterator()));
+      while (!work.isEmpty()) {
+        Frame frame = work.peek();
+        if (frame.successors.hasNext()) {
+          Object next = frame.successors.next();
+          if (!index.containsKey(next)) {
+            index.put(next, index.size());
+            low.put(next, index.get(next));
+            stack.push(next);
+            onStack.add(next);
+            work.push(new Frame(next, edges.getOrDefault(next, Set.of()).iterator()));
+          } else if (onStack.contains(next)) {
+            low.put(frame.node, Math.min(low.get(frame.node), index.get(next)));
+          }
+          continue;
+        }
+        work.pop();
+        if (low.get(frame.node).equals(index.get(frame.node))) {
+          List<Object> component = new ArrayList<>();
+          Object member;
+          do {
+            member = stack.pop();
+            onStack.remove(member);
+            component.add(member);
+          } while (member != frame.node);
+          if (component.size() > 1
+              || edges.getOrDefault(frame.node, Set.of()).contains(frame.node)) {
+            recursive.addAll(component);
+          }
+        }
+        if (!work.isEmpty()) {
+          Object parent = work.peek().node;
+          low.put(parent, Math.min(low.get(parent), low.get(frame.node)));
+        }
+      }
+    }
+    return recursive;
+  }
+
+  private boolean isSafeAt(Candidate candidate, List<ExprNode> args) {
+    if (candidate.template == null) {
+      return true;
+    }
+    Map<String, ExprNode> byValue = new HashMap<>();
+    Set<String> classByValue = new HashSet<>();
+    for (int i = 0; i < candidate.params.size(); i++) {
+      ParamDef param = candidate.params.get(i);
+      if (!param.type.isRef) {
+        byValue.put(param.name, args.get(i));
+        if (param.type.isClass() || param.type.isContainer()) {
+          classByValue.add(param.name);
+        }
+      }
+    }
+    if (byValue.isEmpty()) {
+      return true;
+    }
+    if (!candidate.returnType.isVoid()) {
+      ExprNode result = candidate.template;
+      while (result instanceof AssignExprNode assign) {
+        result = assign.value;
+      }
+      if (result instanceof VarRefNode ref && classByValue.contains(ref.name)) {
+        return false;
+      }
+    }
+    return new CopySemanticsCheck(byValue).check(candidate.template, false);
+  }
+
+  private class CopySemanticsCheck {
+    private final Map<String, ExprNode> byValue;
+    private boolean mayHaveWritten;
+
+    CopySemanticsCheck(Map<String, ExprNode> byValue) {
+      this.byValue = byValue;
+    }
+
+    boolean check(ExprNode expr, boolean lvalueUse) {
+      if (expr instanceof VarRefNode ref) {
+        ExprNode arg = byValue.get(ref.name);
+        if (arg == null) {
+          return true;
+        }
+        return !lvalueUse && (arg instanceof LiteralNode || !mayHaveWritten);
+      }
+      if (expr instanceof LiteralNode) {
+        return true;
+      }
+      if (expr instanceof FieldAccessNode access) {
+        return check(access.receiver, lvalueUse);
+      }
+      if (expr instanceof UnaryExprNode unary) {
+        return check(unary.expr, false);
+      }
+      if (expr instanceof BinaryExprNode binary) {
+        return check(binary.left, false) && check(binary.right, false);
+      }
+      if (expr instanceof AssignExprNode assign) {
+        boolean ok = check(assign.target, true) && check(assign.value, false);
+        mayHaveWritten = true;
+        return ok;
+      }
+      if (expr instanceof CallExprNode call) {
+        boolean bindsRef = false;
+        for (int i = 0; i < call.args.size(); i++) {
+          boolean byRef = functionMayBindRef(call.name, i, call.args.size());
+          bindsRef |= byRef;
+          if (!check(call.args.get(i), byRef)) {
+            return false;
+          }
+        }
+        mayHaveWritten |= bindsRef;
+        return true;
+      }
+      if (expr instanceof MethodCallNode call) {
+        if (!check(call.receiver, true)) {
+          return false;
+        }
+        for (int i = 0; i < call.args.size(); i++) {
+          if (!check(call.args.get(i), methodMayBindRef(call.name, i, call.args.size()))) {
+            return false;
+          }
+        }
+        mayHaveWritten = true;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private boolean functionMayBindRef(String name, int index, int arity) {
+    if (program.classes.containsKey(name) || !program.functions.containsKey(name)) {
+      return true;
+    }
+    for (FunctionDef function : program.functions.get(name)) {
+      if (function.params.size() == arity && function.params.get(index).type.isRef) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean methodMayBindRef(String name, int index, int arity) {
+    for (MethodDef method : methodsByName.getOrDefault(name, List.of())) {
+      if (method.params.size() == arity && method.params.get(index).type.isRef) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTrivial(ExprNode expr) {
+    return expr instanceof LiteralNode || isTrivialLValue(expr);
+  }
+
+  private static boolean isTrivialLValue(ExprNode expr) {
+    if (expr instanceof VarRefNode) {
+      return true;
+    }
+    return expr instanceof FieldAccessNode access && isTrivialLValue(access.receiver);
+  }
+
+  private ExprNode copy(ExprNode expr) {
+    return expr == null ? null : instantiate(expr, Map.of(), null, Set.of());
+  }
+
+  private ExprNode instantiate(
+      ExprNode expr, Map<String, ExprNode> args, ExprNode receiver, Set<String> fieldNames) {
+    if (expr instanceof VarRefNode ref) {
+      ExprNode arg = args.get(ref.name);
+      if (arg != null) {
+        return copy(arg);
+      }
+      if (receiver != null && fieldNames.contains(ref.name)) {
+        return AstRewriter.positioned(new FieldAccessNode(copy(receiver), ref.name), ref);
+      }
+      return AstRewriter.positioned(new VarRefNode(ref.name), ref);
+    }
+    if (expr instanceof LiteralNode literal) {
+      return AstRewriter.positioned(new LiteralNode(literal.value), literal);
+    }
+    if (expr instanceof BinaryExprNode binary) {
+      return AstRewriter.positioned(
+          new BinaryExprNode(
+              binary.op,
+              instantiate(binary.left, args, receiver, fieldNames),
+              instantiate(binary.right, args, receiver, fieldNames)),
+          binary);
+    }
+    if (expr instanceof UnaryExprNode unary) {
+      return AstRewriter.positioned(
+          new UnaryExprNode(unary.op, instantiate(unary.expr, args, receiver, fieldNames)), unary);
+    }
+    if (expr instanceof AssignExprNode assign) {
+      return AstRewriter.positioned(
+          new AssignExprNode(
+              instantiate(assign.target, args, receiver, fieldNames),
+              instantiate(assign.value, args, receiver, fieldNames)),
+          assign);
+    }
+    if (expr instanceof CallExprNode call) {
+      return AstRewriter.positioned(
+          new CallExprNode(call.name, instantiateAll(call.args, args, receiver, fieldNames)),
+          call);
+    }
+    if (expr instanceof MethodCallNode call) {
+      return AstRewriter.positioned(
+          new MethodCallNode(
+              instantiate(call.receiver, args, receiver, fieldNames),
+              call.name,
+              instantiateAll(call.args, args, receiver, fieldNames)),
+          call);
+    }
+    if (expr instanceof FieldAccessNode access) {
+      ExprNode target = instantiate(access.receiver, args, receiver, fieldNames);
+      return AstRewriter.positioned(new FieldAccessNode(target, access.name), access);
+    }
+    throw new IllegalStateException("Cannot inline expression: " + expr.getClass().getSimpleName());
+  }
+
+  private List<ExprNode> instantiateAll(
+      List<ExprNode> exprs, Map<String, ExprNode> args, ExprNode receiver, Set<String> fieldNames) {
+    List<ExprNode> copies = new ArrayList<>();
+    for (ExprNode expr : exprs) {
+      copies.add(instantiate(expr, args, receiver, fieldNames));
+    }
+    return copies;
+  }
+
+  private class SiteRewriter extends AstRewriter {
+    private final String caller;
+    private final int depth;
+    private final Set<Object> active;
+    private final Scopes scopes;
+
+    SiteRewriter(String caller, int depth, Set<Object> active, Scopes scopes) {
+      this.caller = caller;
+      this.depth = depth;
+      this.active = active;
+      this.scopes = scopes;
+    }
+
+    @Override
+    public void rewriteBlock(BlockNode block) {
+      scopes.push();
+      super.rewriteBlock(block);
+      scopes.pop();
+    }
+
+    @Override
+    protected StmtNode rewriteStmt(StmtNode stmt) {
+      StmtNode result = super.rewriteStmt(stmt);
+      if (stmt instanceof VarDeclNode decl) {
+        scopes.declare(decl.name, typeResolver.parse(decl.type).withoutRef(), !decl.isConst);
+      }
+      return result;
+    }
+
+    @Override
+    protected ExprNode rewriteExpr(ExprNode expr) {
+      if (expr instanceof InlinedCallNode) {
+        return expr;
+      }
+      return super.rewriteExpr(expr);
+    }
+
+    @Override
+    protected ExprNode transform(ExprNode expr) {
+      if (expr instanceof CallExprNode call) {
+        Candidate candidate = functionCandidates.get(call.name);
+        if (candidate != null) {
+          return inline(call, null, call.args, candidate);
+        }
+      } else if (expr instanceof MethodCallNode call) {
+        Candidate candidate = methodCandidates.get(call.name);
+        if (candidate != null) {
+          return inline(call, call.receiver, call.args, candidate);
+        }
+      }
+      return expr;
+    }
+
+    private ExprNode inline(
+        ExprNode call, ExprNode receiver, List<ExprNode> args, Candidate candidate) {
+      if (depth > maxDepth || active.contains(candidate.target())) {
+        return call;
+      }
+      if (args.size() != candidate.params.size()
+          || (receiver != null && !isTrivialLValue(receiver))) {
+        return call;
+      }
+      for (ExprNode arg : args) {
+        if (!isTrivial(arg)) {
+          return call;
+        }
+      }
+      String receiverClass = null;
+      if (receiver != null) {
+        Type receiverType = scopes.typeOf(receiver);
+        if (receiverType == null || !receiverType.isClass()) {
+          return call;
+        }
+        receiverClass = receiverType.className;
+        if (program.classes.get(receiverClass).vtable.get(candidate.signature)
+            != candidate.method) {
+          return call;
+        }
+      }
+      // The guard in the interpreter relies on these types instead of evaluating the arguments.
+      for (int i = 0; i < args.size(); i++) {
+        ExprNode arg = args.get(i);
+        Type type = scopes.typeOf(arg);
+        if (type == null
+            || !Dispatch.matchesParam(candidate.params.get(i), type, scopes.isLValue(arg))) {
+          return call;
+        }
+      }
+      if (!isSafeAt(candidate, args)) {
+        return call;
+      }
+      ExprNode body = null;
+      if (candidate.template != null) {
+        Map<String, ExprNode> bindings = new HashMap<>();
+        for (int i = 0; i < args.size(); i++) {
+          bindings.put(candidate.params.get(i).name, args.get(i));
+        }
+        body = instantiate(candidate.template, bindings, receiver, candidate.fieldNames);
+        if (depth < maxDepth) {
+          Set<Object> nested = new HashSet<>(active);
+          nested.add(candidate.target());
+          body = new SiteRewriter(caller, depth + 1, nested, scopes).rewriteExpr(body);
+        }
+      }
+      sites.add(new Site(candidate.describe(), caller, call.line(), call.column(), depth));
+      return positioned(
+          new InlinedCallNode(
+              call,
+              candidate.function,
+              candidate.method,
+              candidate.signature,
+              body,
+              receiverClass),
+          call);
+    }
+  }
+
+  // Static types of the names visible at the current point of a body. Only literals and
+  // variable/field paths are ever passed to an inlined callee, so these cover every argument.
+  private class Scopes {
+    private final Deque<Map<String, Local>> scopes = new ArrayDeque<>();
+    private final ClassDef classDef;
+
+    Scopes(ClassDef classDef) {
+      this.classDef = classDef;
+      scopes.push(new HashMap<>());
+    }
+
+    void push() {
+      scopes.push(new HashMap<>());
+    }
+
+    void pop() {
+      scopes.pop();
+    }
+
+    void declare(String name, Type type, boolean isLValue) {
+      scopes.peek().put(name, new Local(type, isLValue));
+    }
+
+    Type typeOf(ExprNode expr) {
+      if (expr instanceof LiteralNode literal) {
+        return switch (literal.value) {
+          case Integer i -> Type.intType(false);
+          case Boolean b -> Type.boolType(false);
+          case Character c -> Type.charType(false);
+          default -> Type.stringType(false);
+        };
+      }
+      if (expr instanceof VarRefNode ref) {
+        Local local = lookup(ref.name);
+        return local != null ? local.type : fieldType(classDef, ref.name);
+      }
+      if (expr instanceof FieldAccessNode access) {
+        Type receiver = typeOf(access.receiver);
+        if (receiver == null || !receiver.isClass()) {
+          return null;
+        }
+        return fieldType(program.classes.get(receiver.className), access.name);
+      }
+      return null;
+    }
+
+    boolean isLValue(ExprNode expr) {
+      if (expr instanceof VarRefNode ref) {
+        Local local = lookup(ref.name);
+        return local == null || local.isLValue;
+      }
+      return expr instanceof FieldAccessNode;
+    }
+
+    private Local lookup(String name) {
+      for (Map<String, Local> scope : scopes) {
+        Local local = scope.get(name);
+        if (local != null) {
+          return local;
+        }
+      }
+      return null;
+    }
+
+    private Type fieldType(ClassDef owner, String name) {
+      for (ClassDef current = owner; current != null; current = current.baseClass) {
+        for (FieldDef field : current.fields) {
+          if (field.name.equals(name)) {
+            return field.type.withoutRef();
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class Local {
+    final Type type;
+    final boolean isLValue;
+
+    Local(Type type, boolean isLValue) {
+      this.type = type;
+      this.isLValue = isLValue;
+    }
+  }
+
+  private static class Candidate {
+    final FunctionDef function;
+    final MethodDef method;
+    final List<ParamDef> params;
+    final Type returnType;
+    final String signature;
+    final ExprNode template;
+    final Set<String> fieldNames;
+
+    Candidate(
+        FunctionDef function,
+        MethodDef method,
+        List<ParamDef> params,
+        Type returnType,
+        String signature,
+        ExprNode template,
+        Set<String> fieldNames) {
+      this.function = function;
+      this.method = method;
+      this.params = params;
+      this.returnType = returnType;
+      this.signature = signature;
+      this.template = template;
+      this.fieldNames = fieldNames;
+    }
+
+    Object target() {
+      return function != null ? function : method;
+    }
+
+    String describe() {
+      return method != null ? method.declaredIn + "::" + signature : signature;
+    }
+  }
+
+  private static class Site {
+    final String callee;
+    final String caller;
+    final int line;
+    final int column;
+    final int depth;
+
+    Site(String callee, String caller, int line, int column, int depth) {
+      this.callee = callee;
+      this.caller = caller;
+      this.line = line;
+      this.column = column;
+      this.depth = depth;
+    }
+  }
+
+  private static class Frame {
+    final Object node;
+    final Iterator<Object> successors;
+
+    Frame(Object node, Iterator<Object> successors) {
+      this.node = node;
+      this.successors = successors;
+    }
+  }
+}
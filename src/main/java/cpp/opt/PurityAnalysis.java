@@ -0,0 +1,124 @@
+package cpp.opt;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.FunctionDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PurityAnalysis {
+  private final ProgramDef program;
+  private final Set<FunctionDef> pure = new HashSet<>();
+
+  public PurityAnalysis(ProgramDef program) {
+    this.program = program;
+  }
+
+  public Set<FunctionDef> run() {
+    pure.clear();
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (!function.isBuiltin && function.body != null && hasValueSignature(function)) {
+          pure.add(function);
+        }
+      }
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = pure.removeIf(function -> !isPureBody(function.body));
+    }
+    return pure;
+  }
+
+  public boolean isPure(FunctionDef function) {
+    return pure.contains(function);
+  }
+
+  public boolean isPureCallee(String name) {
+    List<FunctionDef> overloads = program.functions.get(name);
+    if (overloads == null || program.classes.containsKey(name)) {
+      return false;
+    }
+    for (FunctionDef overload : overloads) {
+      if (!pure.contains(overload)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean isValueType(Type type) {
+    return !type.isRef && type.isScalar();
+  }
+
+  public static boolean isValueType(TypeNode type) {
+    if (type.isRef || type.isArray()) {
+      return false;
+    }
+    return switch (type.name) {
+      case "int", "bool", "char", "string" -> true;
+      default -> false;
+    };
+  }
+
+  private static boolean hasValueSignature(FunctionDef function) {
+    if (!isValueType(function.returnType)) {
+      return false;
+    }
+    for (ParamDef param : function.params) {
+      if (!isValueType(param.type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isPureBody(BlockNode body) {
+    boolean[] ok = {true};
+    new AstScanner() {
+      @Override
+      protected void visitStmt(StmtNode stmt) {
+        if (stmt instanceof VarDeclNode decl) {
+          ok[0] &= isValueType(decl.type);
+        } else if (!(stmt instanceof ExprStmtNode
+            || stmt instanceof IfStmtNode
+            || stmt instanceof WhileStmtNode
+            || stmt instanceof ReturnStmtNode
+            || stmt instanceof BlockNode)) {
+          ok[0] = false;
+        }
+      }
+
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        if (expr instanceof CallExprNode call) {
+          ok[0] &= isPureCallee(call.name);
+        } else if (!(expr instanceof LiteralNode
+            || expr instanceof VarRefNode
+            || expr instanceof UnaryExprNode
+            || expr instanceof BinaryExprNode
+            || expr instanceof AssignExprNode)) {
+          ok[0] = false;
+        }
+      }
+    }.scanBlock(body);
+    return ok[0];
+  }
+}
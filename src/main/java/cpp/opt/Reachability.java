@@ -0,0 +1,127 @@
+package cpp.opt;
+
+import cpp.ast.ASTNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.ClassMemberNode;
+import cpp.ast.ConstructorNode;
+import cpp.ast.ExprNode;
+import cpp.ast.FieldDeclNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.MethodNode;
+import cpp.ast.ParamNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.VarDeclNode;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Reachability {
+  private final Map<String, ClassDefNode> classes;
+  private final Map<String, List<FunctionNode>> functions;
+
+  public Reachability(
+      Map<String, ClassDefNode> classes, Map<String, List<FunctionNode>> functions) {
+    this.classes = classes;
+    this.functions = functions;
+  }
+
+  public Set<String> closure(Collection<String> roots) {
+    Set<String> reached = new HashSet<>();
+    Deque<String> worklist = new ArrayDeque<>(roots);
+    while (!worklist.isEmpty()) {
+      String name = worklist.pop();
+      if (!reached.add(name)) {
+        continue;
+      }
+      Set<String> referenced = new HashSet<>();
+      ClassDefNode classDef = classes.get(name);
+      if (classDef != null) {
+        collect(classDef, referenced);
+      }
+      for (FunctionNode function : functions.getOrDefault(name, List.of())) {
+        collect(function, referenced);
+      }
+      referenced.removeAll(reached);
+      worklist.addAll(referenced);
+    }
+    reached.removeIf(name -> !classes.containsKey(name) && !functions.containsKey(name));
+    return reached;
+  }
+
+  public static Set<String> referencedNames(ASTNode node) {
+    Set<String> names = new HashSet<>();
+    if (node instanceof ClassDefNode classDef) {
+      names.add(classDef.name);
+    } else if (node instanceof FunctionNode function) {
+      names.add(function.name);
+    }
+    collect(node, names);
+    return names;
+  }
+
+  private static void collect(ASTNode node, Set<String> names) {
+    if (node instanceof ClassDefNode classDef) {
+      if (classDef.baseName != null) {
+        names.add(classDef.baseName);
+      }
+      for (ClassMemberNode member : classDef.members) {
+        if (member instanceof FieldDeclNode field) {
+          addType(field.type, names);
+        } else if (member instanceof MethodNode method) {
+          addType(method.returnType, names);
+          addParams(method.params, names);
+          scanner(names).scanBlock(method.body);
+        } else if (member instanceof ConstructorNode ctor) {
+          addParams(ctor.params, names);
+          scanner(names).scanBlock(ctor.body);
+        }
+      }
+    } else if (node instanceof FunctionNode function) {
+      addType(function.returnType, names);
+      addParams(function.params, names);
+      scanner(names).scanBlock(function.body);
+    } else if (node instanceof StmtNode stmt) {
+      scanner(names).scanStmt(stmt);
+    } else if (node instanceof ExprNode expr) {
+      scanner(names).scanExpr(expr);
+    }
+  }
+
+  private static void addParams(List<ParamNode> params, Set<String> names) {
+    if (params != null) {
+      for (ParamNode param : params) {
+        addType(param.type, names);
+      }
+    }
+  }
+
+  private static void addType(TypeNode type, Set<String> names) {
+    if (type != null) {
+      names.add(type.name);
+    }
+  }
+
+  private static AstScanner scanner(Set<String> names) {
+    return new AstScanner() {
+      @Override
+      protected void visitStmt(StmtNode stmt) {
+        if (stmt instanceof VarDeclNode decl) {
+          addType(decl.type, names);
+        }
+      }
+
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        if (expr instanceof CallExprNode call) {
+          names.add(call.name);
+        }
+      }
+    };
+  }
+}
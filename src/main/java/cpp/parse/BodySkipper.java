@@ -0,0 +1,74 @@
+package cpp.parse;
+
+import cpp.error.CompileError;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+// Finds the end of a function body by matching brackets over its tokens instead of parsing it.
+// The scan also rejects unbalanced brackets and an operator directly before a closing token, so
+// the common syntax errors are still reported at load time; anything else surfaces when the body
+// is parsed on first use. Shared by the hand-written parser and the ANTLR front end.
+public final class BodySkipper {
+  private static final Set<String> OPERATORS =
+      Set.of("=", "||", "&&", "==", "!=", "<=", ">=", "+", "-", "*", "/", "%", "!", ".", ",");
+  private static final Set<String> CLOSERS = Set.of(";", ")", "]", "}", ",");
+
+  public interface Tokens {
+    // Punctuation, operator or keyword text; null for identifiers, literals and EOF.
+    String symbol(int index);
+
+    boolean isEof(int index);
+
+    int line(int index);
+
+    int column(int index);
+  }
+
+  private BodySkipper() {}
+
+  // Returns the index of the '}' that closes the '{' at open.
+  public static int skip(Tokens tokens, int open) {
+    Deque<String> closing = new ArrayDeque<>();
+    for (int i = open; ; i++) {
+      if (tokens.isEof(i)) {
+        throw error(tokens, i, "<EOF>", "expecting '" + closing.peek() + "'");
+      }
+      String symbol = tokens.symbol(i);
+      if (symbol == null) {
+        continue;
+      }
+      String previous = i > open ? tokens.symbol(i - 1) : null;
+      if (previous != null && OPERATORS.contains(previous) && CLOSERS.contains(symbol)) {
+        throw error(tokens, i, symbol, "after '" + previous + "'");
+      }
+      switch (symbol) {
+        case "{" -> closing.push("}");
+        case "(" -> closing.push(")");
+        case "[" -> closing.push("]");
+        case "}", ")", "]" -> {
+          if (!symbol.equals(closing.peek())) {
+            throw error(tokens, i, symbol, "expecting '" + closing.peek() + "'");
+          }
+          closing.pop();
+          if (closing.isEmpty()) {
+            return i;
+          }
+        }
+        default -> {}
+      }
+    }
+  }
+
+  private static CompileError error(Tokens tokens, int index, String text, String detail) {
+    return new CompileError(
+        "Parse error at "
+            + tokens.line(index)
+            + ":"
+            + tokens.column(index)
+            + " mismatched input '"
+            + text
+            + "' "
+            + detail);
+  }
+}
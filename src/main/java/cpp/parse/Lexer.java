@@ -0,0 +1,278 @@
+package cpp.parse;
+
+import cpp.util.IO;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Lexer {
+  private static final Map<String, TokenKind> KEYWORDS = new HashMap<>();
+
+  static {
+    for (TokenKind kind :
+        List.of(
+            TokenKind.INT_KW,
+            TokenKind.BOOL_KW,
+            TokenKind.CHAR_KW,
+            TokenKind.STRING_KW,
+            TokenKind.VOID_KW,
+            TokenKind.CLASS,
+            TokenKind.PUBLIC,
+            TokenKind.VIRTUAL,
+            TokenKind.CONST,
+            TokenKind.CONSTEXPR,
+            TokenKind.IF,
+            TokenKind.ELSE,
+            TokenKind.WHILE,
+            TokenKind.RETURN)) {
+      KEYWORDS.put(kind.text, kind);
+    }
+  }
+
+  private final CharSequence input;
+  private final int length;
+  private int pos;
+  private int line = 1;
+  private int column;
+
+  public Lexer(CharSequence input) {
+    this.input = input;
+    this.length = input.length();
+  }
+
+  public List<Token> tokenize() {
+    List<Token> tokens = new ArrayList<>(Math.max(16, length / 4));
+    while (true) {
+      Token token = next();
+      tokens.add(token);
+      if (token.kind == TokenKind.EOF) {
+        return tokens;
+      }
+    }
+  }
+
+  public Token next() {
+    while (true) {
+      skipTrivia();
+      if (pos >= length) {
+        return new Token(TokenKind.EOF, "<EOF>", line, column, pos, pos - 1);
+      }
+      Token token = scanToken();
+      if (token != null) {
+        return token;
+      }
+    }
+  }
+
+  private void skipTrivia() {
+    while (pos < length) {
+      char c = input.charAt(pos);
+      if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+        advance();
+      } else if (c == '/' && peek(1) == '/') {
+        while (pos < length && input.charAt(pos) != '\r' && input.charAt(pos) != '\n') {
+          advance();
+        }
+      } else if (c == '/' && peek(1) == '*' && blockCommentEnd() >= 0) {
+        int end = blockCommentEnd();
+        while (pos < end) {
+          advance();
+        }
+      } else if (c == '#') {
+        while (pos < length && input.charAt(pos) != '\r' && input.charAt(pos) != '\n') {
+          advance();
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  private int blockCommentEnd() {
+    for (int i = pos + 2; i + 1 < length; i++) {
+      if (input.charAt(i) == '*' && input.charAt(i + 1) == '/') {
+        return i + 2;
+      }
+    }
+    return -1;
+  }
+
+  private Token scanToken() {
+    int start = pos;
+    int startLine = line;
+    int startColumn = column;
+    char c = input.charAt(pos);
+    if (isIdentStart(c)) {
+      while (pos < length && isIdentPart(input.charAt(pos))) {
+        advance();
+      }
+      String text = input.subSequence(start, pos).toString();
+      TokenKind kind = KEYWORDS.get(text);
+      if (kind == TokenKind.PUBLIC && pos < length && input.charAt(pos) == ':') {
+        advance();
+        return token(TokenKind.PUBLIC_COLON, start, startLine, startColumn);
+      }
+      if (kind != null) {
+        return token(kind, start, startLine, startColumn);
+      }
+      if (text.equals("true") || text.equals("false")) {
+        return new Token(TokenKind.BOOL, text, startLine, startColumn, start, pos - 1);
+      }
+      return new Token(TokenKind.ID, text, startLine, startColumn, start, pos - 1);
+    }
+    if (c >= '0' && c <= '9') {
+      while (pos < length && input.charAt(pos) >= '0' && input.charAt(pos) <= '9') {
+        advance();
+      }
+      return token(TokenKind.INT, start, startLine, startColumn);
+    }
+    if (c == '\'') {
+      int end = scanCharLiteral();
+      if (end < 0) {
+        return recognitionError(startLine, startColumn);
+      }
+      while (pos < end) {
+        advance();
+      }
+      return token(TokenKind.CHAR, start, startLine, startColumn);
+    }
+    if (c == '"') {
+      int end = scanStringLiteral();
+      if (end < 0) {
+        return recognitionError(startLine, startColumn);
+      }
+      while (pos < end) {
+        advance();
+      }
+      return token(TokenKind.STRING, start, startLine, startColumn);
+    }
+    if (c == '\\') {
+      if (pos + 1 >= length) {
+        return recognitionError(startLine, startColumn);
+      }
+      advance();
+      advance();
+      return token(TokenKind.ESC, start, startLine, startColumn);
+    }
+    TokenKind kind = operator(c, peek(1));
+    if (kind == null) {
+      return recognitionError(startLine, startColumn);
+    }
+    for (int i = 0; i < kind.text.length(); i++) {
+      advance();
+    }
+    return token(kind, start, startLine, startColumn);
+  }
+
+  private TokenKind operator(char c, char next) {
+    return switch (c) {
+      case '(' -> TokenKind.LPAREN;
+      case ')' -> TokenKind.RPAREN;
+      case '{' -> TokenKind.LBRACE;
+      case '}' -> TokenKind.RBRACE;
+      case '[' -> TokenKind.LBRACKET;
+      case ']' -> TokenKind.RBRACKET;
+      case ';' -> TokenKind.SEMI;
+      case ',' -> TokenKind.COMMA;
+      case '.' -> TokenKind.DOT;
+      case ':' -> next == ':' ? TokenKind.COLONCOLON : TokenKind.COLON;
+      case '+' -> TokenKind.PLUS;
+      case '-' -> TokenKind.MINUS;
+      case '*' -> TokenKind.STAR;
+      case '/' -> TokenKind.SLASH;
+      case '%' -> TokenKind.PERCENT;
+      case '&' -> next == '&' ? TokenKind.AND : TokenKind.AMP;
+      case '|' -> next == '|' ? TokenKind.OR : null;
+      case '=' -> next == '=' ? TokenKind.EQ : TokenKind.ASSIGN;
+      case '!' -> next == '=' ? TokenKind.NE : TokenKind.BANG;
+      case '<' -> next == '=' ? TokenKind.LE : TokenKind.LT;
+      case '>' -> next == '=' ? TokenKind.GE : TokenKind.GT;
+      default -> null;
+    };
+  }
+
+  private int scanCharLiteral() {
+    int i = pos + 1;
+    if (i >= length) {
+      return -1;
+    }
+    char c = input.charAt(i);
+    if (c == '\\') {
+      if (i + 1 >= length) {
+        return -1;
+      }
+      i += 2;
+    } else if (c == '\'' || c == '\r' || c == '\n') {
+      return -1;
+    } else {
+      i++;
+    }
+    if (i >= length || input.charAt(i) != '\'') {
+      return -1;
+    }
+    return i + 1;
+  }
+
+  private int scanStringLiteral() {
+    int i = pos + 1;
+    while (i < length) {
+      char c = input.charAt(i);
+      if (c == '"') {
+        return i + 1;
+      }
+      if (c == '\\') {
+        if (i + 1 >= length) {
+          return -1;
+        }
+        i += 2;
+      } else if (c == '\r' || c == '\n') {
+        return -1;
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  private Token recognitionError(int errorLine, int errorColumn) {
+    IO.eprintln(
+        "line "
+            + errorLine
+            + ":"
+            + errorColumn
+            + " token recognition error at: '"
+            + input.charAt(pos)
+            + "'");
+    advance();
+    return null;
+  }
+
+  private Token token(TokenKind kind, int start, int startLine, int startColumn) {
+    String text = kind.text != null ? kind.text : input.subSequence(start, pos).toString();
+    return new Token(kind, text, startLine, startColumn, start, pos - 1);
+  }
+
+  private void advance() {
+    if (input.charAt(pos) == '\n') {
+      line++;
+      column = 0;
+    } else {
+      column++;
+    }
+    pos++;
+  }
+
+  private char peek(int offset) {
+    int i = pos + offset;
+    return i < length ? input.charAt(i) : '\0';
+  }
+
+  private static boolean isIdentStart(char c) {
+    return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isIdentPart(char c) {
+    return isIdentStart(c) || (c >= '0' && c <= '9');
+  }
+}
@@ -0,0 +1,47 @@
+package cpp.parse;
+
+public final class Literals {
+  private Literals() {}
+
+  public static char parseChar(String text) {
+    String body = text.substring(1, text.length() - 1);
+    if (body.startsWith("\\")) {
+      return parseEscape(body.charAt(1));
+    }
+    if (body.length() != 1) {
+      throw new RuntimeException("Invalid char literal");
+    }
+    return body.charAt(0);
+  }
+
+  public static String parseString(String text) {
+    String body = text.substring(1, text.length() - 1);
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < body.length(); i++) {
+      char c = body.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= body.length()) {
+          throw new RuntimeException("Invalid string escape");
+        }
+        out.append(parseEscape(body.charAt(i + 1)));
+        i++;
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  public static char parseEscape(char c) {
+    return switch (c) {
+      case 'n' -> '\n';
+      case 't' -> '\t';
+      case 'r' -> '\r';
+      case '0' -> '\0';
+      case '\\' -> '\\';
+      case '\'' -> '\'';
+      case '"' -> '"';
+      default -> c;
+    };
+  }
+}
@@ -0,0 +1,646 @@
+package cpp.parse;
+
+import cpp.ast.ASTNode;
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.ClassMemberNode;
+import cpp.ast.ConstructorNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.FieldDeclNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.MethodNode;
+import cpp.ast.ParamNode;
+import cpp.ast.ProgramNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.error.CompileError;
+import cpp.sema.Scope;
+import cpp.sema.Symbol;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Parser {
+  private final List<Token> tokens;
+  private final Lexer lexer;
+  private int base;
+  private int pos;
+  private Scope currentScope = new Scope(null);
+  private boolean deferBodies;
+  private final BodySkipper.Tokens bodyTokens =
+      new BodySkipper.Tokens() {
+        @Override
+        public String symbol(int index) {
+          return token(index).kind.text;
+        }
+
+        @Override
+        public boolean isEof(int index) {
+          return token(index).kind == TokenKind.EOF;
+        }
+
+        @Override
+        public int line(int index) {
+          return token(index).line;
+        }
+
+        @Override
+        public int column(int index) {
+          return token(index).column;
+        }
+      };
+
+  public Parser(List<Token> tokens) {
+    this.tokens = tokens;
+    this.lexer = null;
+  }
+
+  // Tokens are lexed on demand and dropped once the declaration using them has been parsed.
+  private Parser(Lexer lexer) {
+    this.tokens = new ArrayList<>();
+    this.lexer = lexer;
+  }
+
+  public static Parser forSource(CharSequence source) {
+    return new Parser(new Lexer(source).tokenize());
+  }
+
+  public static Parser streaming(CharSequence source) {
+    return new Parser(new Lexer(source));
+  }
+
+  public void setDeferBodies(boolean deferBodies) {
+    if (deferBodies && lexer != null) {
+      throw new IllegalStateException("Streaming parsers cannot defer bodies");
+    }
+    this.deferBodies = deferBodies;
+  }
+
+  public ASTNode nextDecl() {
+    if (check(TokenKind.EOF)) {
+      return null;
+    }
+    ASTNode decl = parseTopLevelDecl();
+    if (lexer != null) {
+      tokens.subList(0, pos - base).clear();
+      base = pos;
+    }
+    return decl;
+  }
+
+  public ProgramNode parseProgram() {
+    ProgramNode program = at(new ProgramNode(), peek());
+    while (!check(TokenKind.EOF)) {
+      program.declarations.add(parseTopLevelDecl());
+    }
+    return program;
+  }
+
+  public ASTNode parseReplInput() {
+    ASTNode node;
+    if (startsTopLevelDecl()) {
+      node = parseTopLevelDecl();
+    } else if (startsStatementOnly() || startsVarDecl()) {
+      node = parseStmt();
+    } else {
+      Token start = peek();
+      ExprNode expr = parseExpr();
+      node = match(TokenKind.SEMI) ? at(new ExprStmtNode(expr), start) : expr;
+    }
+    expect(TokenKind.EOF);
+    return node;
+  }
+
+  private boolean startsTopLevelDecl() {
+    if (check(TokenKind.CLASS) || check(TokenKind.CONSTEXPR)) {
+      return true;
+    }
+    int i = typeLength(pos);
+    return i > 0 && kindAt(pos + i) == TokenKind.ID && kindAt(pos + i + 1) == TokenKind.LPAREN;
+  }
+
+  private boolean startsStatementOnly() {
+    return check(TokenKind.IF)
+        || check(TokenKind.WHILE)
+        || check(TokenKind.RETURN)
+        || check(TokenKind.LBRACE);
+  }
+
+  private ASTNode parseTopLevelDecl() {
+    if (check(TokenKind.CLASS)) {
+      return parseClassDef();
+    }
+    return parseFunctionDef();
+  }
+
+  private FunctionNode parseFunctionDef() {
+    Token start = peek();
+    boolean isConstexpr = match(TokenKind.CONSTEXPR);
+    TypeNode returnType = parseType();
+    String name = expect(TokenKind.ID).text;
+    expect(TokenKind.LPAREN);
+    List<ParamNode> params = parseParamList();
+    expect(TokenKind.RPAREN);
+
+    Scope oldScope = currentScope;
+    currentScope = new Scope(oldScope);
+    for (ParamNode p : params) {
+      currentScope.define(new Symbol(p.name, p.type));
+    }
+    DeferredBody deferred = skipBody();
+    BlockNode body = deferred == null ? parseBlock() : null;
+    currentScope = oldScope;
+
+    FunctionNode function =
+        at(new FunctionNode(returnType, name, params, deferred == null ? body : null), start);
+    function.isConstexpr = isConstexpr;
+    function.deferredBody = deferred;
+    return function;
+  }
+
+  private ClassDefNode parseClassDef() {
+    Token start = expect(TokenKind.CLASS);
+    String name = expect(TokenKind.ID).text;
+    String baseName = null;
+    if (match(TokenKind.COLON)) {
+      expect(TokenKind.PUBLIC);
+      baseName = expect(TokenKind.ID).text;
+    }
+    expect(TokenKind.LBRACE);
+    expect(TokenKind.PUBLIC_COLON);
+    List<ClassMemberNode> members = new ArrayList<>();
+    while (!check(TokenKind.RBRACE)) {
+      members.add(parseClassMember());
+    }
+    expect(TokenKind.RBRACE);
+    match(TokenKind.SEMI);
+    return at(new ClassDefNode(name, baseName, members), start);
+  }
+
+  private ClassMemberNode parseClassMember() {
+    Token start = peek();
+    if (match(TokenKind.VIRTUAL)) {
+      return parseMethodRest(start, true, parseType());
+    }
+    if (check(TokenKind.ID) && kindAt(pos + 1) == TokenKind.LPAREN) {
+      String name = advance().text;
+      expect(TokenKind.LPAREN);
+      List<ParamNode> params = parseParamList();
+      expect(TokenKind.RPAREN);
+      DeferredBody deferred = skipBody();
+      BlockNode body = deferred == null ? parseBlock() : null;
+      ConstructorNode ctor = at(new ConstructorNode(name, params, body), start);
+      ctor.deferredBody = deferred;
+      return ctor;
+    }
+    TypeNode type = parseType();
+    if (kindAt(pos + 1) == TokenKind.LPAREN) {
+      return parseMethodRest(start, false, type);
+    }
+    String name = expect(TokenKind.ID).text;
+    type = parseArraySuffix(type);
+    expect(TokenKind.SEMI);
+    return at(new FieldDeclNode(type, name), start);
+  }
+
+  private MethodNode parseMethodRest(Token start, boolean isVirtual, TypeNode returnType) {
+    String name = expect(TokenKind.ID).text;
+    expect(TokenKind.LPAREN);
+    List<ParamNode> params = parseParamList();
+    expect(TokenKind.RPAREN);
+    DeferredBody deferred = skipBody();
+    BlockNode body = deferred == null ? parseBlock() : null;
+    MethodNode method =
+        at(new MethodNode(isVirtual, returnType, name, params, body), start);
+    method.deferredBody = deferred;
+    return method;
+  }
+
+  // Only matches the body's braces; its tokens are copied out so the file's token list can be
+  // dropped, and parsed into a block on first use.
+  private DeferredBody skipBody() {
+    if (!deferBodies) {
+      return null;
+    }
+    if (!check(TokenKind.LBRACE)) {
+      throw error(peek(), "expecting " + describe(TokenKind.LBRACE));
+    }
+    int close = BodySkipper.skip(bodyTokens, pos);
+    List<Token> body = new ArrayList<>(tokens.subList(pos, close + 1));
+    Token last = tokens.get(close);
+    body.add(
+        new Token(TokenKind.EOF, "<EOF>", last.line, last.column + 1, last.stop + 1, last.stop));
+    pos = close + 1;
+    return () -> new Parser(body).parseBlock();
+  }
+
+
+  private List<ParamNode> parseParamList() {
+    List<ParamNode> params = new ArrayList<>();
+    if (check(TokenKind.RPAREN)) {
+      return params;
+    }
+    do {
+      Token start = peek();
+      TypeNode type = parseType();
+      String name;
+      if (match(TokenKind.LPAREN)) {
+        expect(TokenKind.AMP);
+        name = expect(TokenKind.ID).text;
+        expect(TokenKind.RPAREN);
+        type = TypeNode.arrayOf(type, parseArraySize(), true);
+      } else {
+        name = expect(TokenKind.ID).text;
+        type = parseArraySuffix(type);
+      }
+      params.add(at(new ParamNode(type, name), start));
+    } while (match(TokenKind.COMMA));
+    return params;
+  }
+
+  private TypeNode parseType() {
+    Token start = peek();
+    if (typeLength(pos) == 0) {
+      throw error(start, "expecting type");
+    }
+    if (kindAt(pos + 1) == TokenKind.COLONCOLON) {
+      StdNames.checkQualifier(advance().text);
+      advance();
+    }
+    String name = advance().text;
+    if (match(TokenKind.LT)) {
+      List<String> args = new ArrayList<>();
+      do {
+        args.add(advance().text);
+      } while (match(TokenKind.COMMA));
+      expect(TokenKind.GT);
+      name = StdNames.containerName(name, args);
+    }
+    boolean isRef = match(TokenKind.AMP);
+    return TypeNode.of(name, isRef);
+  }
+
+  private TypeNode parseArraySuffix(TypeNode type) {
+    return check(TokenKind.LBRACKET) ? TypeNode.arrayOf(type, parseArraySize(), false) : type;
+  }
+
+  private int parseArraySize() {
+    expect(TokenKind.LBRACKET);
+    int length = Integer.parseInt(expect(TokenKind.INT).text);
+    expect(TokenKind.RBRACKET);
+    return length;
+  }
+
+  private int typeLength(int at) {
+    int start = at;
+    boolean qualified = kindAt(at) == TokenKind.ID && kindAt(at + 1) == TokenKind.COLONCOLON;
+    if (qualified) {
+      at += 2;
+    }
+    TokenKind kind = kindAt(at++);
+    boolean base =
+        switch (kind) {
+          case INT_KW, BOOL_KW, CHAR_KW, STRING_KW, VOID_KW, ID -> true;
+          default -> false;
+        };
+    if (!base) {
+      return 0;
+    }
+    if (kind == TokenKind.ID && kindAt(at) == TokenKind.LT) {
+      int args = templateArgsLength(at);
+      if (args == 0) {
+        return 0;
+      }
+      at += args;
+    } else if (qualified) {
+      return 0;
+    }
+    return (kindAt(at) == TokenKind.AMP ? at + 1 : at) - start;
+  }
+
+  // '<' arg (',' arg)? '>' where every argument is a builtin type keyword.
+  private int templateArgsLength(int at) {
+    int end = at + 1;
+    if (!isTemplateArg(kindAt(end++))) {
+      return 0;
+    }
+    if (kindAt(end) == TokenKind.COMMA) {
+      if (!isTemplateArg(kindAt(end + 1))) {
+        return 0;
+      }
+      end += 2;
+    }
+    return kindAt(end) == TokenKind.GT ? end + 1 - at : 0;
+  }
+
+  private static boolean isTemplateArg(TokenKind kind) {
+    return switch (kind) {
+      case INT_KW, BOOL_KW, CHAR_KW, STRING_KW -> true;
+      default -> false;
+    };
+  }
+
+  private BlockNode parseBlock() {
+    Token start = expect(TokenKind.LBRACE);
+
+    Scope old = currentScope;
+    currentScope = new Scope(old);
+
+    List<StmtNode> statements = new ArrayList<>();
+    while (!check(TokenKind.RBRACE)) {
+      if (check(TokenKind.EOF)) {
+        throw error(peek(), "expecting '}'");
+      }
+      statements.add(parseStmt());
+    }
+    expect(TokenKind.RBRACE);
+
+    currentScope = old;
+    return at(new BlockNode(statements), start);
+  }
+
+  private StmtNode parseStmt() {
+    Token start = peek();
+    switch (start.kind) {
+      case LBRACE:
+        return parseBlock();
+      case IF:
+        {
+          advance();
+          expect(TokenKind.LPAREN);
+          ExprNode condition = parseExpr();
+          expect(TokenKind.RPAREN);
+          BlockNode thenBlock = parseBlock();
+          BlockNode elseBlock = null;
+          if (match(TokenKind.ELSE)) {
+            elseBlock = parseBlock();
+          }
+          return at(new IfStmtNode(condition, thenBlock, elseBlock), start);
+        }
+      case WHILE:
+        {
+          advance();
+          expect(TokenKind.LPAREN);
+          ExprNode condition = parseExpr();
+          expect(TokenKind.RPAREN);
+          BlockNode body = parseBlock();
+          return at(new WhileStmtNode(condition, body), start);
+        }
+      case RETURN:
+        {
+          advance();
+          ExprNode value = null;
+          if (!check(TokenKind.SEMI)) {
+            value = parseExpr();
+          }
+          expect(TokenKind.SEMI);
+          return at(new ReturnStmtNode(value), start);
+        }
+      default:
+        break;
+    }
+    if (startsVarDecl()) {
+      return parseVarDecl();
+    }
+    ExprNode expr = parseExpr();
+    expect(TokenKind.SEMI);
+    return at(new ExprStmtNode(expr), start);
+  }
+
+  private boolean startsVarDecl() {
+    if (check(TokenKind.CONST)) {
+      return true;
+    }
+    int length = typeLength(pos);
+    if (length == 0) {
+      return false;
+    }
+    if (kindAt(pos) != TokenKind.ID) {
+      return true;
+    }
+    return kindAt(pos + length) == TokenKind.ID;
+  }
+
+  private VarDeclNode parseVarDecl() {
+    Token start = peek();
+    boolean isConst = match(TokenKind.CONST);
+    TypeNode type = parseType();
+    String name = expect(TokenKind.ID).text;
+    type = parseArraySuffix(type);
+    ExprNode init = null;
+    if (match(TokenKind.ASSIGN)) {
+      init = parseExpr();
+    }
+    expect(TokenKind.SEMI);
+
+    if (!currentScope.define(new Symbol(name, type))) {
+      throw new RuntimeException("Variable doppelt definiert: " + name);
+    }
+
+    VarDeclNode decl = at(new VarDeclNode(type, name, init), start);
+    decl.isConst = isConst;
+    return decl;
+  }
+
+  private ExprNode parseExpr() {
+    Token start = peek();
+    ExprNode left = parseBinary(1);
+    if (!match(TokenKind.ASSIGN)) {
+      return left;
+    }
+    ExprNode right = parseExpr();
+    return at(new AssignExprNode(left, right), start);
+  }
+
+  private ExprNode parseBinary(int minPrecedence) {
+    Token start = peek();
+    ExprNode left = minPrecedence == 6 ? parseUnary() : parseBinary(minPrecedence + 1);
+    while (precedence(peek().kind) == minPrecedence) {
+      String op = advance().text;
+      ExprNode right = minPrecedence == 6 ? parseUnary() : parseBinary(minPrecedence + 1);
+      left = at(new BinaryExprNode(op, left, right), start);
+    }
+    return left;
+  }
+
+  private static int precedence(TokenKind kind) {
+    return switch (kind) {
+      case OR -> 1;
+      case AND -> 2;
+      case EQ, NE -> 3;
+      case LT, LE, GT, GE -> 4;
+      case PLUS, MINUS -> 5;
+      case STAR, SLASH, PERCENT -> 6;
+      default -> 0;
+    };
+  }
+
+  private ExprNode parseUnary() {
+    Token start = peek();
+    if (check(TokenKind.BANG) || check(TokenKind.MINUS) || check(TokenKind.PLUS)) {
+      String op = advance().text;
+      ExprNode value = parseUnary();
+      return at(new UnaryExprNode(op, value), start);
+    }
+    return parsePostfix();
+  }
+
+  private ExprNode parsePostfix() {
+    ExprNode current = parsePrimary();
+    while (true) {
+      if (check(TokenKind.LBRACKET)) {
+        Token open = advance();
+        ExprNode index = parseExpr();
+        expect(TokenKind.RBRACKET);
+        current = at(new IndexExprNode(current, index), open);
+        continue;
+      }
+      if (!match(TokenKind.DOT)) {
+        return current;
+      }
+      Token member = expect(TokenKind.ID);
+      if (match(TokenKind.LPAREN)) {
+        List<ExprNode> args = parseArgList();
+        expect(TokenKind.RPAREN);
+        current = at(new MethodCallNode(current, member.text, args), member);
+      } else {
+        current = at(new FieldAccessNode(current, member.text), member);
+      }
+    }
+  }
+
+  private ExprNode parsePrimary() {
+    Token start = peek();
+    switch (start.kind) {
+      case INT:
+        advance();
+        return at(new LiteralNode(Integer.parseInt(start.text)), start);
+      case BOOL:
+        advance();
+        return at(new LiteralNode(start.text.equals("true")), start);
+      case CHAR:
+        advance();
+        return at(new LiteralNode(Literals.parseChar(start.text)), start);
+      case STRING:
+        advance();
+        return at(new LiteralNode(Literals.parseString(start.text)), start);
+      case ID:
+        advance();
+        if (match(TokenKind.COLONCOLON)) {
+          StdNames.checkQualifier(start.text);
+          String name = expect(TokenKind.ID).text;
+          expect(TokenKind.LPAREN);
+          List<ExprNode> args = parseArgList();
+          expect(TokenKind.RPAREN);
+          return at(new CallExprNode(name, args), start);
+        }
+        if (match(TokenKind.LPAREN)) {
+          List<ExprNode> args = parseArgList();
+          expect(TokenKind.RPAREN);
+          return at(new CallExprNode(start.text, args), start);
+        }
+        return at(new VarRefNode(start.text), start);
+      case LPAREN:
+        {
+          advance();
+          ExprNode expr = parseExpr();
+          expect(TokenKind.RPAREN);
+          return expr;
+        }
+      default:
+        throw error(start, "expecting expression");
+    }
+  }
+
+  private List<ExprNode> parseArgList() {
+    List<ExprNode> args = new ArrayList<>();
+    if (check(TokenKind.RPAREN)) {
+      return args;
+    }
+    do {
+      args.add(parseExpr());
+    } while (match(TokenKind.COMMA));
+    return args;
+  }
+
+  private static <T extends ASTNode> T at(T node, Token token) {
+    node.setPosition(token.line, token.column);
+    return node;
+  }
+
+  private Token token(int index) {
+    int offset = index - base;
+    while (offset >= tokens.size()
+        && lexer != null
+        && (tokens.isEmpty() || tokens.get(tokens.size() - 1).kind != TokenKind.EOF)) {
+      tokens.add(lexer.next());
+    }
+    return offset < tokens.size() ? tokens.get(offset) : tokens.get(tokens.size() - 1);
+  }
+
+  private Token peek() {
+    return token(pos);
+  }
+
+  private TokenKind kindAt(int index) {
+    return token(index).kind;
+  }
+
+  private boolean check(TokenKind kind) {
+    return token(pos).kind == kind;
+  }
+
+  private boolean match(TokenKind kind) {
+    if (check(kind)) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private Token advance() {
+    Token token = token(pos);
+    if (token.kind != TokenKind.EOF) {
+      pos++;
+    }
+    return token;
+  }
+
+  private Token expect(TokenKind kind) {
+    Token token = peek();
+    if (token.kind != kind) {
+      throw error(token, "expecting " + describe(kind));
+    }
+    return advance();
+  }
+
+  private static String describe(TokenKind kind) {
+    return kind.text != null ? "'" + kind.text + "'" : kind.name();
+  }
+
+  private CompileError error(Token token, String expected) {
+    return new CompileError(
+        "Parse error at "
+            + token.line
+            + ":"
+            + token.column
+            + " mismatched input '"
+            + token
+            + "' "
+            + expected);
+  }
+}
@@ -0,0 +1,20 @@
+package cpp.parse;
+
+import cpp.error.CompileError;
+import java.util.List;
+
+// Library types and functions may be written with or without their std:: qualifier; the AST
+// always carries the unqualified name.
+public final class StdNames {
+  private StdNames() {}
+
+  public static void checkQualifier(String qualifier) {
+    if (!qualifier.equals("std")) {
+      throw new CompileError("Unknown namespace: " + qualifier);
+    }
+  }
+
+  public static String containerName(String template, List<String> args) {
+    return template + "<" + String.join(",", args) + ">";
+  }
+}
@@ -0,0 +1,24 @@
+package cpp.parse;
+
+public class Token {
+  public final TokenKind kind;
+  public final String text;
+  public final int line;
+  public final int column;
+  public final int start;
+  public final int stop;
+
+  public Token(TokenKind kind, String text, int line, int column, int start, int stop) {
+    this.kind = kind;
+    this.text = text;
+    this.line = line;
+    this.column = column;
+    this.start = start;
+    this.stop = stop;
+  }
+
+  @Override
+  public String toString() {
+    return kind == TokenKind.EOF ? "<EOF>" : text;
+  }
+}
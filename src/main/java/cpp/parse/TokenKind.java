@@ -0,0 +1,59 @@
+package cpp.parse;
+
+public enum TokenKind {
+  INT_KW("int"),
+  BOOL_KW("bool"),
+  CHAR_KW("char"),
+  STRING_KW("string"),
+  VOID_KW("void"),
+  CLASS("class"),
+  PUBLIC("public"),
+  PUBLIC_COLON("public:"),
+  VIRTUAL("virtual"),
+  CONST("const"),
+  CONSTEXPR("constexpr"),
+  IF("if"),
+  ELSE("else"),
+  WHILE("while"),
+  RETURN("return"),
+  LPAREN("("),
+  RPAREN(")"),
+  LBRACE("{"),
+  RBRACE("}"),
+  LBRACKET("["),
+  RBRACKET("]"),
+  SEMI(";"),
+  COMMA(","),
+  ASSIGN("="),
+  DOT("."),
+  AMP("&"),
+  COLON(":"),
+  COLONCOLON("::"),
+  OR("||"),
+  AND("&&"),
+  EQ("=="),
+  NE("!="),
+  LT("<"),
+  LE("<="),
+  GT(">"),
+  GE(">="),
+  PLUS("+"),
+  MINUS("-"),
+  STAR("*"),
+  SLASH("/"),
+  PERCENT("%"),
+  BANG("!"),
+  BOOL(null),
+  INT(null),
+  CHAR(null),
+  STRING(null),
+  ESC(null),
+  ID(null),
+  EOF("<EOF>");
+
+  public final String text;
+
+  TokenKind(String text) {
+    this.text = text;
+  }
+}
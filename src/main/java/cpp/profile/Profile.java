@@ -0,0 +1,119 @@
+package cpp.profile;
+
+import cpp.error.CompileError;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Profile {
+  public static final String HEADER = "# cpp profile v1";
+  public static final long HOT_CALL_COUNT = 1000;
+
+  public final Map<String, Long> calls = new TreeMap<>();
+  public final Map<String, long[]> branches = new TreeMap<>();
+  public final Map<String, long[]> loops = new TreeMap<>();
+  public final Map<String, Map<String, Long>> receivers = new TreeMap<>();
+
+  public long callCount(String signature) {
+    return calls.getOrDefault(signature, -1L);
+  }
+
+  public boolean isHot(String signature) {
+    return callCount(signature) >= HOT_CALL_COUNT;
+  }
+
+  public List<String> hotFunctions(long threshold) {
+    List<String> hot = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : calls.entrySet()) {
+      if (entry.getValue() >= threshold) {
+        hot.add(entry.getKey());
+      }
+    }
+    hot.sort(Comparator.comparing((String signature) -> -calls.get(signature)));
+    return hot;
+  }
+
+  public List<String> receiverOrder(String key) {
+    Map<String, Long> counts = receivers.get(key);
+    if (counts == null) {
+      return List.of();
+    }
+    return sortedByCount(counts);
+  }
+
+  public void write(Path path) throws IOException {
+    Files.write(path, lines(), StandardCharsets.UTF_8);
+  }
+
+  public List<String> lines() {
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    calls.forEach((signature, count) -> lines.add("call " + count + " " + signature));
+    branches.forEach((key, c) -> lines.add("branch " + c[0] + " " + c[1] + " " + key));
+    loops.forEach((key, c) -> lines.add("loop " + c[0] + " " + c[1] + " " + key));
+    receivers.forEach(
+        (key, counts) -> {
+          StringBuilder line = new StringBuilder("recv ").append(key);
+          for (String name : sortedByCount(counts)) {
+            line.append(' ').append(name).append('=').append(counts.get(name));
+          }
+          lines.add(line.toString());
+        });
+    return lines;
+  }
+
+  public static Profile read(Path path) throws IOException {
+    return parse(Files.readAllLines(path, StandardCharsets.UTF_8), path.toString());
+  }
+
+  public static Profile parse(List<String> lines, String source) {
+    Profile profile = new Profile();
+    if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+      throw new CompileError("Not a profile file: " + source);
+    }
+    for (int i = 1; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.isBlank()) {
+        continue;
+      }
+      String[] parts = line.split(" ");
+      try {
+        switch (parts[0]) {
+          case "call" -> profile.calls.put(parts[2], Long.parseLong(parts[1]));
+          case "branch" -> profile.branches.put(parts[3], counts(parts));
+          case "loop" -> profile.loops.put(parts[3], counts(parts));
+          case "recv" -> {
+            Map<String, Long> counts = new HashMap<>();
+            for (int j = 2; j < parts.length; j++) {
+              int eq = parts[j].indexOf('=');
+              counts.put(parts[j].substring(0, eq), Long.parseLong(parts[j].substring(eq + 1)));
+            }
+            profile.receivers.put(parts[1], counts);
+          }
+          default -> throw new CompileError("Unknown profile entry: " + parts[0]);
+        }
+      } catch (IndexOutOfBoundsException | NumberFormatException e) {
+        throw new CompileError("Malformed profile line " + (i + 1) + ": " + line);
+      }
+    }
+    return profile;
+  }
+
+  private static long[] counts(String[] parts) {
+    return new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+  }
+
+  private static List<String> sortedByCount(Map<String, Long> counts) {
+    List<String> names = new ArrayList<>(counts.keySet());
+    names.sort(
+        Comparator.comparing((String name) -> -counts.get(name)).thenComparing(name -> name));
+    return names;
+  }
+}
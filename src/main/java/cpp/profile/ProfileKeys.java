@@ -0,0 +1,117 @@
+package cpp.profile;
+
+import cpp.ast.ASTNode;
+import cpp.ast.BlockNode;
+import cpp.ast.ExprNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.StmtNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ProgramDef;
+import cpp.opt.AstScanner;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ProfileKeys {
+  private final Map<ASTNode, String> keys = new IdentityHashMap<>();
+  private final Map<String, ASTNode> nodes = new HashMap<>();
+  private final Map<Object, String> callables = new IdentityHashMap<>();
+  private final Map<String, Object> callablesByKey = new LinkedHashMap<>();
+
+  public ProfileKeys(ProgramDef program) {
+    for (var overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (!function.isBuiltin && function.body != null) {
+          register(function, signatureOf(function), function.body);
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        if (method.body != null) {
+          register(method, signatureOf(method), method.body);
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.body != null) {
+          register(ctor, signatureOf(ctor), ctor.body);
+        }
+      }
+    }
+  }
+
+  public static String signatureOf(FunctionDef function) {
+    return function.signature;
+  }
+
+  public static String signatureOf(MethodDef method) {
+    return method.declaredIn + "::" + method.signature;
+  }
+
+  public static String signatureOf(ConstructorDef ctor) {
+    return ctor.className + "::" + ctor.signature;
+  }
+
+  public String keyOf(ASTNode node) {
+    return keys.get(node);
+  }
+
+  public ASTNode nodeAt(String key) {
+    return nodes.get(key);
+  }
+
+  public String keyOfCallable(Object callable) {
+    return callables.get(callable);
+  }
+
+  public Object callableAt(String key) {
+    return callablesByKey.get(key);
+  }
+
+  public Iterable<String> callableKeys() {
+    return callablesByKey.keySet();
+  }
+
+  private void register(Object callable, String signature, BlockNode body) {
+    callables.put(callable, signature);
+    callablesByKey.put(signature, callable);
+    int baseLine = body.line();
+    new AstScanner() {
+      @Override
+      public void scanExpr(ExprNode expr) {
+        if (expr instanceof InlinedCallNode inlined) {
+          scanExpr(inlined.call);
+          return;
+        }
+        super.scanExpr(expr);
+      }
+
+      @Override
+      protected void visitStmt(StmtNode stmt) {
+        if (stmt instanceof IfStmtNode || stmt instanceof WhileStmtNode) {
+          add(stmt);
+        }
+      }
+
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        if (expr instanceof MethodCallNode) {
+          add(expr);
+        }
+      }
+
+      private void add(ASTNode node) {
+        String key = signature + "@" + (node.line() - baseLine) + ":" + node.column();
+        keys.put(node, key);
+        nodes.put(key, node);
+      }
+    }.scanBlock(body);
+  }
+}
@@ -0,0 +1,79 @@
+package cpp.profile;
+
+import cpp.ast.ASTNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ProgramDef;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class Profiler {
+  private final Map<ASTNode, long[]> branches = new IdentityHashMap<>();
+  private final Map<MethodCallNode, Map<String, long[]>> receivers = new IdentityHashMap<>();
+  private final Map<Object, long[]> calls = new IdentityHashMap<>();
+
+  public void branch(ASTNode node, boolean taken) {
+    long[] counts = branches.get(node);
+    if (counts == null) {
+      counts = new long[2];
+      branches.put(node, counts);
+    }
+    counts[taken ? 0 : 1]++;
+  }
+
+  public void receiver(MethodCallNode node, ClassDef receiverClass) {
+    Map<String, long[]> counts = receivers.get(node);
+    if (counts == null) {
+      counts = new HashMap<>();
+      receivers.put(node, counts);
+    }
+    counts.computeIfAbsent(receiverClass.name, name -> new long[1])[0]++;
+  }
+
+  public void call(Object callable) {
+    long[] count = calls.get(callable);
+    if (count == null) {
+      count = new long[1];
+      calls.put(callable, count);
+    }
+    count[0]++;
+  }
+
+  public Profile toProfile(ProgramDef program) {
+    ProfileKeys keys = new ProfileKeys(program);
+    Profile profile = new Profile();
+    for (String signature : keys.callableKeys()) {
+      profile.calls.put(signature, 0L);
+    }
+    for (Map.Entry<Object, long[]> entry : calls.entrySet()) {
+      String signature = keys.keyOfCallable(entry.getKey());
+      if (signature != null) {
+        profile.calls.put(signature, entry.getValue()[0]);
+      }
+    }
+    for (Map.Entry<ASTNode, long[]> entry : branches.entrySet()) {
+      String key = keys.keyOf(entry.getKey());
+      if (key == null) {
+        continue;
+      }
+      long[] counts = entry.getValue().clone();
+      if (entry.getKey() instanceof WhileStmtNode) {
+        profile.loops.put(key, counts);
+      } else {
+        profile.branches.put(key, counts);
+      }
+    }
+    for (Map.Entry<MethodCallNode, Map<String, long[]>> entry : receivers.entrySet()) {
+      String key = keys.keyOf(entry.getKey());
+      if (key == null) {
+        continue;
+      }
+      Map<String, Long> counts = new HashMap<>();
+      entry.getValue().forEach((name, count) -> counts.put(name, count[0]));
+      profile.receivers.put(key, counts);
+    }
+    return profile;
+  }
+}
@@ -0,0 +1,10 @@
+package cpp.runtime;
+
+// A library container with value semantics. Copies share storage until one of them writes.
+public interface Container {
+  Container copy();
+
+  // Called when the container's variable goes out of scope while its value lives on, so the next
+  // copy can take over the storage without copying it on the first write.
+  void release();
+}
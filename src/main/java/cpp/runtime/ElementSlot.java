@@ -0,0 +1,37 @@
+package cpp.runtime;
+
+import cpp.model.Type;
+
+// One element of an array as an lvalue; reads and writes go straight to the backing array, which
+// is an int[], char[] or boolean[] for primitive elements and a String[] or Instance[] otherwise.
+public class ElementSlot extends VarSlot {
+  private final Object array;
+  private final int index;
+
+  public ElementSlot(Type elementType, Object array, int index) {
+    super(elementType, null);
+    this.array = array;
+    this.index = index;
+  }
+
+  @Override
+  public Value get() {
+    return switch (array) {
+      case int[] ints -> Value.intValue(ints[index]);
+      case char[] chars -> Value.charValue(chars[index]);
+      case boolean[] flags -> Value.boolValue(flags[index]);
+      case String[] strings -> Value.stringValue(strings[index]);
+      default -> new Value(getDeclaredType(), ((Object[]) array)[index]);
+    };
+  }
+
+  @Override
+  public void set(Value value) {
+    switch (array) {
+      case int[] ints -> ints[index] = (int) value.data;
+      case char[] chars -> chars[index] = (char) value.data;
+      case boolean[] flags -> flags[index] = (boolean) value.data;
+      default -> ((Object[]) array)[index] = value.data;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package cpp.runtime;
+
+import cpp.model.ClassDef;
+import cpp.model.MethodDef;
+import java.util.List;
+
+public final class InlineCache {
+  public static final int MAX_ENTRIES = 4;
+
+  private final List<String> preferredOrder;
+  private final ClassDef[] staticClasses = new ClassDef[MAX_ENTRIES];
+  private final ClassDef[] dynamicClasses = new ClassDef[MAX_ENTRIES];
+  private final int[] argMasks = new int[MAX_ENTRIES];
+  private final MethodDef[] targets = new MethodDef[MAX_ENTRIES];
+  private int size;
+
+  public InlineCache() {
+    this(List.of());
+  }
+
+  public InlineCache(List<String> preferredOrder) {
+    this.preferredOrder = preferredOrder;
+  }
+
+  public MethodDef lookup(ClassDef staticClass, ClassDef dynamicClass, int argMask) {
+    for (int i = 0; i < size; i++) {
+      if (staticClasses[i] == staticClass
+          && dynamicClasses[i] == dynamicClass
+          && argMasks[i] == argMask) {
+        return targets[i];
+      }
+    }
+    return null;
+  }
+
+  public void add(ClassDef staticClass, ClassDef dynamicClass, int argMask, MethodDef target) {
+    int rank = rankOf(staticClass, dynamicClass);
+    if (size == MAX_ENTRIES) {
+      if (rank >= rankOf(staticClasses[size - 1], dynamicClasses[size - 1])) {
+        return;
+      }
+      size--;
+    }
+    int pos = size;
+    while (pos > 0 && rankOf(staticClasses[pos - 1], dynamicClasses[pos - 1]) > rank) {
+      staticClasses[pos] = staticClasses[pos - 1];
+      dynamicClasses[pos] = dynamicClasses[pos - 1];
+      argMasks[pos] = argMasks[pos - 1];
+      targets[pos] = targets[pos - 1];
+      pos--;
+    }
+    staticClasses[pos] = staticClass;
+    dynamicClasses[pos] = dynamicClass;
+    argMasks[pos] = argMask;
+    targets[pos] = target;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int rankOf(ClassDef staticClass, ClassDef dynamicClass) {
+    ClassDef receiverClass = dynamicClass != null ? dynamicClass : staticClass;
+    int index = preferredOrder.indexOf(receiverClass.name);
+    return index < 0 ? Integer.MAX_VALUE : index;
+  }
+}
@@ -0,0 +1,26 @@
+package cpp.runtime;
+
+import cpp.model.Type;
+
+// m[key] as an lvalue. The key is looked up on every access because inserting or erasing other keys
+// moves entries around the table.
+public class MapSlot extends VarSlot {
+  private final UnorderedMap map;
+  private final Value key;
+
+  public MapSlot(Type valueType, UnorderedMap map, Value key) {
+    super(valueType, null);
+    this.map = map;
+    this.key = key;
+  }
+
+  @Override
+  public Value get() {
+    return map.get(key);
+  }
+
+  @Override
+  public void set(Value value) {
+    map.put(key, value);
+  }
+}
@@ -0,0 +1,170 @@
+package cpp.runtime;
+
+import java.util.Arrays;
+
+public final class MemoCache {
+  private final int capacity;
+  private final boolean packed;
+  private final long[] packedKeys;
+  private final Object[] keys;
+  private final int[] hashes;
+  private final Value[] values;
+  private final boolean[] referenced;
+  private final int[] index;
+  private final int mask;
+  private int size;
+  private int hand;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public MemoCache(int capacity, boolean packed) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Cache capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.packed = packed;
+    this.packedKeys = packed ? new long[capacity] : null;
+    this.keys = packed ? null : new Object[capacity];
+    this.hashes = new int[capacity];
+    this.values = new Value[capacity];
+    this.referenced = new boolean[capacity];
+    this.index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    this.mask = index.length - 1;
+  }
+
+  public Value get(long key) {
+    return lookup(key, null, hash(key));
+  }
+
+  public Value get(Object key) {
+    return lookup(0, key, hash(key));
+  }
+
+  public void put(long key, Value value) {
+    store(key, null, hash(key), value);
+  }
+
+  public void put(Object key, Value value) {
+    store(0, key, hash(key), value);
+  }
+
+  public void clear() {
+    Arrays.fill(index, 0);
+    if (keys != null) {
+      Arrays.fill(keys, null);
+    }
+    Arrays.fill(values, null);
+    size = 0;
+    hand = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  public long evictions() {
+    return evictions;
+  }
+
+  private Value lookup(long packedKey, Object key, int hash) {
+    int pos = probe(packedKey, key, hash);
+    if (pos < 0) {
+      misses++;
+      return null;
+    }
+    int slot = index[pos] - 1;
+    referenced[slot] = true;
+    hits++;
+    return values[slot];
+  }
+
+  private void store(long packedKey, Object key, int hash, Value value) {
+    int pos = probe(packedKey, key, hash);
+    if (pos >= 0) {
+      values[index[pos] - 1] = value;
+      return;
+    }
+    int slot;
+    if (size < capacity) {
+      slot = size++;
+    } else {
+      slot = evict();
+      pos = probe(packedKey, key, hash);
+    }
+    if (packed) {
+      packedKeys[slot] = packedKey;
+    } else {
+      keys[slot] = key;
+    }
+    hashes[slot] = hash;
+    values[slot] = value;
+    referenced[slot] = true;
+    index[-pos - 1] = slot + 1;
+  }
+
+  private int evict() {
+    while (referenced[hand]) {
+      referenced[hand] = false;
+      hand = (hand + 1) % capacity;
+    }
+    int victim = hand;
+    hand = (hand + 1) % capacity;
+    removeAt(probe(packed ? packedKeys[victim] : 0, packed ? null : keys[victim], hashes[victim]));
+    evictions++;
+    return victim;
+  }
+
+  private int probe(long packedKey, Object key, int hash) {
+    int pos = hash & mask;
+    while (true) {
+      int slot = index[pos] - 1;
+      if (slot < 0) {
+        return -pos - 1;
+      }
+      if (hashes[slot] == hash
+          && (packed ? packedKeys[slot] == packedKey : keys[slot].equals(key))) {
+        return pos;
+      }
+      pos = (pos + 1) & mask;
+    }
+  }
+
+  private void removeAt(int pos) {
+    int hole = pos;
+    int next = (hole + 1) & mask;
+    while (index[next] != 0) {
+      int home = hashes[index[next] - 1] & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        index[hole] = index[next];
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    index[hole] = 0;
+  }
+
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+}
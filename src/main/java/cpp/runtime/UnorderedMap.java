@@ -0,0 +1,214 @@
+package cpp.runtime;
+
+import cpp.model.Type;
+
+// std::unordered_map with int or string keys and int or string values. Entries live in parallel
+// key and value arrays and collisions are resolved by linear probing, so int keys and values are
+// never boxed. Erasing shifts the following entries back instead of leaving tombstones.
+public class UnorderedMap implements Container {
+  private static final int MIN_CAPACITY = 16;
+
+  private static final class Table {
+    final int[] intKeys;
+    final String[] stringKeys;
+    final int[] intValues;
+    final String[] stringValues;
+    final boolean[] used;
+    int size;
+    int owners = 1;
+
+    Table(boolean intKeys, boolean intValues, int capacity) {
+      this.intKeys = intKeys ? new int[capacity] : null;
+      this.stringKeys = intKeys ? null : new String[capacity];
+      this.intValues = intValues ? new int[capacity] : null;
+      this.stringValues = intValues ? null : new String[capacity];
+      this.used = new boolean[capacity];
+    }
+
+    Table(Table source) {
+      intKeys = source.intKeys != null ? source.intKeys.clone() : null;
+      stringKeys = source.stringKeys != null ? source.stringKeys.clone() : null;
+      intValues = source.intValues != null ? source.intValues.clone() : null;
+      stringValues = source.stringValues != null ? source.stringValues.clone() : null;
+      used = source.used.clone();
+      size = source.size;
+    }
+  }
+
+  private Table table;
+
+  public UnorderedMap(Type.Kind key, Type.Kind value) {
+    this(new Table(key == Type.Kind.INT, value == Type.Kind.INT, MIN_CAPACITY));
+  }
+
+  private UnorderedMap(Table table) {
+    this.table = table;
+  }
+
+  public int size() {
+    return table.size;
+  }
+
+  public boolean contains(Value key) {
+    return table.used[indexOf(table, key)];
+  }
+
+  // operator[]: inserts a default value for a missing key.
+  public Value get(Value key) {
+    int index = indexOf(table, key);
+    if (!table.used[index]) {
+      Table t = writable(table.size + 1);
+      index = indexOf(t, key);
+      insert(t, index, key);
+    }
+    Table t = table;
+    return t.intValues != null
+        ? Value.intValue(t.intValues[index])
+        : Value.stringValue(t.stringValues[index]);
+  }
+
+  public void put(Value key, Value value) {
+    Table t = writable(table.size + 1);
+    int index = indexOf(t, key);
+    if (!t.used[index]) {
+      insert(t, index, key);
+    }
+    if (t.intValues != null) {
+      t.intValues[index] = (int) value.data;
+    } else {
+      t.stringValues[index] = (String) value.data;
+    }
+  }
+
+  public boolean remove(Value key) {
+    if (!contains(key)) {
+      return false;
+    }
+    Table t = writable(table.size);
+    int mask = t.used.length - 1;
+    int hole = indexOf(t, key);
+    for (int i = (hole + 1) & mask; t.used[i]; i = (i + 1) & mask) {
+      // An entry may fill the hole unless its home slot lies after the hole.
+      if (((i - homeOf(t, i)) & mask) >= ((i - hole) & mask)) {
+        copyEntry(t, i, t, hole);
+        hole = i;
+      }
+    }
+    t.used[hole] = false;
+    if (t.stringKeys != null) {
+      t.stringKeys[hole] = null;
+    }
+    if (t.stringValues != null) {
+      t.stringValues[hole] = null;
+    }
+    t.size--;
+    return true;
+  }
+
+  @Override
+  public UnorderedMap copy() {
+    table.owners++;
+    return new UnorderedMap(table);
+  }
+
+  @Override
+  public void release() {
+    table.owners--;
+  }
+
+  // Makes the table exclusive to this map and large enough for minSize entries at a load factor of
+  // at most two thirds.
+  private Table writable(int minSize) {
+    Table t = table;
+    int capacity = t.used.length;
+    while (minSize * 3 > capacity * 2) {
+      capacity *= 2;
+    }
+    if (capacity == t.used.length && t.owners <= 1) {
+      return t;
+    }
+    Table copy;
+    if (capacity == t.used.length) {
+      copy = new Table(t);
+    } else {
+      copy = new Table(t.intKeys != null, t.intValues != null, capacity);
+      int mask = capacity - 1;
+      for (int i = 0; i < t.used.length; i++) {
+        if (t.used[i]) {
+          int j = hash(t, i) & mask;
+          while (copy.used[j]) {
+            j = (j + 1) & mask;
+          }
+          copy.used[j] = true;
+          copyEntry(t, i, copy, j);
+        }
+      }
+      copy.size = t.size;
+    }
+    if (t.owners > 1) {
+      t.owners--;
+    }
+    table = copy;
+    return copy;
+  }
+
+  // The slot holding key, or the empty slot where it would be inserted.
+  private static int indexOf(Table t, Value key) {
+    int mask = t.used.length - 1;
+    if (t.intKeys != null) {
+      int k = (int) key.data;
+      int i = mix(k) & mask;
+      while (t.used[i] && t.intKeys[i] != k) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+    String k = (String) key.data;
+    int i = mix(k.hashCode()) & mask;
+    while (t.used[i] && !t.stringKeys[i].equals(k)) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private static void insert(Table t, int index, Value key) {
+    t.used[index] = true;
+    if (t.intKeys != null) {
+      t.intKeys[index] = (int) key.data;
+    } else {
+      t.stringKeys[index] = (String) key.data;
+    }
+    if (t.stringValues != null) {
+      t.stringValues[index] = "";
+    } else {
+      t.intValues[index] = 0;
+    }
+    t.size++;
+  }
+
+  private static void copyEntry(Table from, int i, Table to, int j) {
+    if (from.intKeys != null) {
+      to.intKeys[j] = from.intKeys[i];
+    } else {
+      to.stringKeys[j] = from.stringKeys[i];
+    }
+    if (from.intValues != null) {
+      to.intValues[j] = from.intValues[i];
+    } else {
+      to.stringValues[j] = from.stringValues[i];
+    }
+  }
+
+  private static int homeOf(Table t, int i) {
+    return hash(t, i) & (t.used.length - 1);
+  }
+
+  private static int hash(Table t, int i) {
+    return mix(t.intKeys != null ? t.intKeys[i] : t.stringKeys[i].hashCode());
+  }
+
+  private static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
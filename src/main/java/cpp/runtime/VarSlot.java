@@ -6,6 +6,7 @@ public class VarSlot {
   private final Type declaredType;
   private VarSlot refTarget;
   private Value value;
+  private boolean readOnly;
 
   public VarSlot(Type declaredType, Value value) {
     this.declaredType = declaredType;
@@ -18,6 +19,16 @@ public class VarSlot {
     return slot;
   }
 
+  public static VarSlot constSlot(Type declaredType, Value value) {
+    VarSlot slot = new VarSlot(declaredType, value);
+    slot.readOnly = true;
+    return slot;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
   public boolean isRef() {
     return refTarget != null;
   }
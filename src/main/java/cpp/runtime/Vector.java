@@ -0,0 +1,170 @@
+package cpp.runtime;
+
+import cpp.model.Type;
+import java.util.Arrays;
+
+// std::vector over an int[], char[], boolean[] or String[]. Copies share the backing array until
+// one of them writes, so passing or returning a vector by value does not copy its elements.
+public class Vector implements Container {
+  private static final int MIN_CAPACITY = 8;
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+  private static final class Storage {
+    Object data;
+    int owners = 1;
+
+    Storage(Object data) {
+      this.data = data;
+    }
+  }
+
+  private Storage storage;
+  private int size;
+
+  public Vector(Type.Kind element) {
+    this(
+        new Storage(
+            switch (element) {
+              case INT -> new int[0];
+              case CHAR -> new char[0];
+              case BOOL -> new boolean[0];
+              case STRING -> new String[0];
+              default -> throw new IllegalArgumentException("vector<" + element + ">");
+            }),
+        0);
+  }
+
+  private Vector(Storage storage, int size) {
+    this.storage = storage;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Value get(int index) {
+    return switch (storage.data) {
+      case int[] ints -> Value.intValue(ints[index]);
+      case char[] chars -> Value.charValue(chars[index]);
+      case boolean[] flags -> Value.boolValue(flags[index]);
+      default -> Value.stringValue(((String[]) storage.data)[index]);
+    };
+  }
+
+  public void set(int index, Value value) {
+    store(writable(size), index, value);
+  }
+
+  public void pushBack(Value value) {
+    store(writable(size + 1), size, value);
+    size++;
+  }
+
+  public void reserve(int capacity) {
+    writable(capacity);
+  }
+
+  public void clear() {
+    if (storage.owners > 1) {
+      storage.owners--;
+      storage = new Storage(resize(storage.data, 0));
+    } else if (storage.data instanceof String[] strings) {
+      Arrays.fill(strings, 0, size, null);
+    }
+    size = 0;
+  }
+
+  @Override
+  public Vector copy() {
+    storage.owners++;
+    return new Vector(storage, size);
+  }
+
+  @Override
+  public void release() {
+    storage.owners--;
+  }
+
+  public void sort(int from, int to) {
+    Object data = writable(size);
+    boolean parallel = to - from >= PARALLEL_SORT_THRESHOLD;
+    switch (data) {
+      case int[] ints -> {
+        if (parallel) {
+          Arrays.parallelSort(ints, from, to);
+        } else {
+          Arrays.sort(ints, from, to);
+        }
+      }
+      case char[] chars -> {
+        if (parallel) {
+          Arrays.parallelSort(chars, from, to);
+        } else {
+          Arrays.sort(chars, from, to);
+        }
+      }
+      case boolean[] flags -> {
+        int falses = 0;
+        for (int i = from; i < to; i++) {
+          falses += flags[i] ? 0 : 1;
+        }
+        Arrays.fill(flags, from, from + falses, false);
+        Arrays.fill(flags, from + falses, to, true);
+      }
+      default -> {
+        String[] strings = (String[]) data;
+        if (parallel) {
+          Arrays.parallelSort(strings, from, to);
+        } else {
+          Arrays.sort(strings, from, to);
+        }
+      }
+    }
+  }
+
+  // Makes the storage exclusive to this vector and at least minCapacity long.
+  private Object writable(int minCapacity) {
+    int capacity = capacity(storage.data);
+    if (capacity < minCapacity) {
+      capacity = Math.max(minCapacity, Math.max(MIN_CAPACITY, capacity * 2));
+    } else if (storage.owners <= 1) {
+      return storage.data;
+    }
+    Object data = resize(storage.data, capacity);
+    if (storage.owners > 1) {
+      storage.owners--;
+      storage = new Storage(data);
+    } else {
+      storage.data = data;
+    }
+    return data;
+  }
+
+  private static void store(Object data, int index, Value value) {
+    switch (data) {
+      case int[] ints -> ints[index] = (int) value.data;
+      case char[] chars -> chars[index] = (char) value.data;
+      case boolean[] flags -> flags[index] = (boolean) value.data;
+      default -> ((String[]) data)[index] = (String) value.data;
+    }
+  }
+
+  private static int capacity(Object data) {
+    return switch (data) {
+      case int[] ints -> ints.length;
+      case char[] chars -> chars.length;
+      case boolean[] flags -> flags.length;
+      default -> ((String[]) data).length;
+    };
+  }
+
+  private static Object resize(Object data, int capacity) {
+    return switch (data) {
+      case int[] ints -> Arrays.copyOf(ints, capacity);
+      case char[] chars -> Arrays.copyOf(chars, capacity);
+      case boolean[] flags -> Arrays.copyOf(flags, capacity);
+      default -> Arrays.copyOf((String[]) data, capacity);
+    };
+  }
+}
@@ -0,0 +1,12 @@
+package cpp.runtime;
+
+// The result of begin() or end(): a position within one particular vector.
+public class VectorIterator {
+  public final Vector vector;
+  public final int position;
+
+  public VectorIterator(Vector vector, int position) {
+    this.vector = vector;
+    this.position = position;
+  }
+}
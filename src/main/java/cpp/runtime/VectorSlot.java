@@ -0,0 +1,26 @@
+package cpp.runtime;
+
+import cpp.model.Type;
+
+// One vector element as an lvalue. Writes go through the vector so that a copy sharing its storage
+// is split off first.
+public class VectorSlot extends VarSlot {
+  private final Vector vector;
+  private final int index;
+
+  public VectorSlot(Type elementType, Vector vector, int index) {
+    super(elementType, null);
+    this.vector = vector;
+    this.index = index;
+  }
+
+  @Override
+  public Value get() {
+    return vector.get(index);
+  }
+
+  @Override
+  public void set(Value value) {
+    vector.set(index, value);
+  }
+}
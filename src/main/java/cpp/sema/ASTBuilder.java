@@ -10,12 +10,14 @@ import cpp.ast.CallExprNode;
 import cpp.ast.ClassDefNode;
 import cpp.ast.ClassMemberNode;
 import cpp.ast.ConstructorNode;
+import cpp.ast.DeferredBody;
 import cpp.ast.ExprNode;
 import cpp.ast.ExprStmtNode;
 import cpp.ast.FieldAccessNode;
 import cpp.ast.FieldDeclNode;
 import cpp.ast.FunctionNode;
 import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
 import cpp.ast.LiteralNode;
 import cpp.ast.MethodCallNode;
 import cpp.ast.MethodNode;
@@ -28,16 +30,34 @@ import cpp.ast.UnaryExprNode;
 import cpp.ast.VarDeclNode;
 import cpp.ast.VarRefNode;
 import cpp.ast.WhileStmtNode;
+import cpp.parse.Literals;
+import cpp.parse.StdNames;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 public class ASTBuilder extends cppBaseVisitor<ASTNode> {
 
   public Scope currentScope = new Scope(null);
+  private final Map<Integer, DeferredBody> bodies;
+  private final boolean deferBodies;
+
+  public ASTBuilder() {
+    this(null);
+  }
+
+  // bodies comes from SourceParser.parseProgram(input, bodies), whose parse tree has empty blocks
+  // in place of the deferred bodies.
+  public ASTBuilder(Map<Integer, DeferredBody> bodies) {
+    this.bodies = bodies;
+    this.deferBodies = bodies != null;
+  }
 
   @Override
   public ASTNode visitProgram(cppParser.ProgramContext ctx) {
-    ProgramNode program = new ProgramNode();
+    ProgramNode program = at(new ProgramNode(), ctx.getStart());
     for (var decl : ctx.topLevelDecl()) {
       program.declarations.add(visit(decl));
     }
@@ -81,11 +101,14 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
       currentScope.define(new Symbol(p.name, p.type));
     }
 
-    BlockNode body = (BlockNode) visit(ctx.block());
+    BlockNode body = deferBodies ? null : (BlockNode) visit(ctx.block());
 
     currentScope = oldScope;
 
-    return new FunctionNode(returnType, name, params, body);
+    FunctionNode function = at(new FunctionNode(returnType, name, params, body), ctx.getStart());
+    function.isConstexpr = ctx.isConstexpr != null;
+    function.deferredBody = deferred(ctx.block());
+    return function;
   }
 
   @Override
@@ -95,11 +118,11 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     if (ctx.ID().size() > 1) {
       baseName = ctx.ID(1).getText();
     }
-    ClassDefNode classDef = new ClassDefNode(name, baseName);
+    List<ClassMemberNode> members = new ArrayList<>();
     for (cppParser.ClassMemberContext member : ctx.classMember()) {
-      classDef.members.add((ClassMemberNode) visit(member));
+      members.add((ClassMemberNode) visit(member));
     }
-    return classDef;
+    return at(new ClassDefNode(name, baseName, members), ctx.getStart());
   }
 
   @Override
@@ -118,8 +141,8 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
 
   @Override
   public ASTNode visitFieldDecl(cppParser.FieldDeclContext ctx) {
-    TypeNode type = (TypeNode) visit(ctx.type());
-    return new FieldDeclNode(type, ctx.ID().getText());
+    TypeNode type = withArraySize((TypeNode) visit(ctx.type()), ctx.arraySize(), false);
+    return at(new FieldDeclNode(type, ctx.ID().getText()), ctx.getStart());
   }
 
   @Override
@@ -128,34 +151,70 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     TypeNode returnType = (TypeNode) visit(ctx.type());
     String name = ctx.ID().getText();
     List<ParamNode> params = parseParams(ctx.paramList());
-    BlockNode body = (BlockNode) visit(ctx.block());
-    return new MethodNode(isVirtual, returnType, name, params, body);
+    BlockNode body = deferBodies ? null : (BlockNode) visit(ctx.block());
+    MethodNode method =
+        at(new MethodNode(isVirtual, returnType, name, params, body), ctx.getStart());
+    method.deferredBody = deferred(ctx.block());
+    return method;
   }
 
   @Override
   public ASTNode visitConstructorDef(cppParser.ConstructorDefContext ctx) {
     String name = ctx.ID().getText();
     List<ParamNode> params = parseParams(ctx.paramList());
-    BlockNode body = (BlockNode) visit(ctx.block());
-    return new ConstructorNode(name, params, body);
+    BlockNode body = deferBodies ? null : (BlockNode) visit(ctx.block());
+    ConstructorNode ctor = at(new ConstructorNode(name, params, body), ctx.getStart());
+    ctor.deferredBody = deferred(ctx.block());
+    return ctor;
+  }
+
+  private DeferredBody deferred(cppParser.BlockContext block) {
+    return deferBodies ? bodies.get(block.getStart().getTokenIndex()) : null;
   }
 
   @Override
   public ASTNode visitParam(cppParser.ParamContext ctx) {
     TypeNode type = (TypeNode) visit(ctx.type());
-    return new ParamNode(type, ctx.ID().getText());
+    type = withArraySize(type, ctx.arraySize(), ctx.ref() != null);
+    return at(new ParamNode(type, ctx.ID().getText()), ctx.getStart());
+  }
+
+  private static TypeNode withArraySize(
+      TypeNode type, cppParser.ArraySizeContext size, boolean isRef) {
+    if (size == null) {
+      return type;
+    }
+    return TypeNode.arrayOf(type, Integer.parseInt(size.INT().getText()), isRef);
   }
 
   @Override
   public ASTNode visitType(cppParser.TypeContext ctx) {
-    String name = ctx.baseType().getText();
+    String name = baseTypeName(ctx.baseType());
     boolean isRef = ctx.ref() != null;
-    return new TypeNode(name, isRef);
+    return TypeNode.of(name, isRef);
+  }
+
+  private static String baseTypeName(cppParser.BaseTypeContext ctx) {
+    if (ctx.templateArg().isEmpty()) {
+      return ctx.getText();
+    }
+    checkQualifier(ctx.qualifier());
+    List<String> args = new ArrayList<>();
+    for (cppParser.TemplateArgContext arg : ctx.templateArg()) {
+      args.add(arg.getText());
+    }
+    return StdNames.containerName(ctx.ID().getText(), args);
+  }
+
+  private static void checkQualifier(cppParser.QualifierContext qualifier) {
+    if (qualifier != null) {
+      StdNames.checkQualifier(qualifier.ID().getText());
+    }
   }
 
   @Override
   public ASTNode visitVarDecl(cppParser.VarDeclContext ctx) {
-    TypeNode type = (TypeNode) visit(ctx.type());
+    TypeNode type = withArraySize((TypeNode) visit(ctx.type()), ctx.arraySize(), false);
     String name = ctx.ID().getText();
 
     ExprNode init = null;
@@ -167,7 +226,9 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
       throw new RuntimeException("Variable doppelt definiert: " + name);
     }
 
-    return new VarDeclNode(type, name, init);
+    VarDeclNode decl = at(new VarDeclNode(type, name, init), ctx.getStart());
+    decl.isConst = ctx.isConst != null;
+    return decl;
   }
 
   @Override
@@ -196,7 +257,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
   @Override
   public ASTNode visitExprStmt(cppParser.ExprStmtContext ctx) {
     ExprNode expr = (ExprNode) visit(ctx.expr());
-    return new ExprStmtNode(expr);
+    return at(new ExprStmtNode(expr), ctx.getStart());
   }
 
   @Override
@@ -207,14 +268,14 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     if (ctx.block().size() > 1) {
       elseBlock = (BlockNode) visit(ctx.block(1));
     }
-    return new IfStmtNode(condition, thenBlock, elseBlock);
+    return at(new IfStmtNode(condition, thenBlock, elseBlock), ctx.getStart());
   }
 
   @Override
   public ASTNode visitWhileStmt(cppParser.WhileStmtContext ctx) {
     ExprNode condition = (ExprNode) visit(ctx.expr());
     BlockNode body = (BlockNode) visit(ctx.block());
-    return new WhileStmtNode(condition, body);
+    return at(new WhileStmtNode(condition, body), ctx.getStart());
   }
 
   @Override
@@ -223,22 +284,21 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     if (ctx.expr() != null) {
       value = (ExprNode) visit(ctx.expr());
     }
-    return new ReturnStmtNode(value);
+    return at(new ReturnStmtNode(value), ctx.getStart());
   }
 
   @Override
   public ASTNode visitBlock(cppParser.BlockContext ctx) {
-    BlockNode block = new BlockNode();
-
     Scope old = currentScope;
     currentScope = new Scope(old);
 
+    List<StmtNode> statements = new ArrayList<>();
     for (var stmt : ctx.stmt()) {
-      block.statements.add((StmtNode) visit(stmt));
+      statements.add((StmtNode) visit(stmt));
     }
 
     currentScope = old;
-    return block;
+    return at(new BlockNode(statements), ctx.getStart());
   }
 
   @Override
@@ -253,7 +313,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
       return left;
     }
     ExprNode right = (ExprNode) visit(ctx.assignment());
-    return new AssignExprNode(left, right);
+    return at(new AssignExprNode(left, right), ctx.getStart());
   }
 
   @Override
@@ -261,7 +321,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     ExprNode left = (ExprNode) visit(ctx.logicalAnd(0));
     for (int i = 1; i < ctx.logicalAnd().size(); i++) {
       ExprNode right = (ExprNode) visit(ctx.logicalAnd(i));
-      left = new BinaryExprNode("||", left, right);
+      left = at(new BinaryExprNode("||", left, right), ctx.getStart());
     }
     return left;
   }
@@ -271,7 +331,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     ExprNode left = (ExprNode) visit(ctx.equality(0));
     for (int i = 1; i < ctx.equality().size(); i++) {
       ExprNode right = (ExprNode) visit(ctx.equality(i));
-      left = new BinaryExprNode("&&", left, right);
+      left = at(new BinaryExprNode("&&", left, right), ctx.getStart());
     }
     return left;
   }
@@ -282,7 +342,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     for (int i = 1; i < ctx.relational().size(); i++) {
       String op = ctx.getChild(2 * i - 1).getText();
       ExprNode right = (ExprNode) visit(ctx.relational(i));
-      left = new BinaryExprNode(op, left, right);
+      left = at(new BinaryExprNode(op, left, right), ctx.getStart());
     }
     return left;
   }
@@ -293,7 +353,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     for (int i = 1; i < ctx.additive().size(); i++) {
       String op = ctx.getChild(2 * i - 1).getText();
       ExprNode right = (ExprNode) visit(ctx.additive(i));
-      left = new BinaryExprNode(op, left, right);
+      left = at(new BinaryExprNode(op, left, right), ctx.getStart());
     }
     return left;
   }
@@ -304,7 +364,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     for (int i = 1; i < ctx.multiplicative().size(); i++) {
       String op = ctx.getChild(2 * i - 1).getText();
       ExprNode right = (ExprNode) visit(ctx.multiplicative(i));
-      left = new BinaryExprNode(op, left, right);
+      left = at(new BinaryExprNode(op, left, right), ctx.getStart());
     }
     return left;
   }
@@ -315,7 +375,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     for (int i = 1; i < ctx.unary().size(); i++) {
       String op = ctx.getChild(2 * i - 1).getText();
       ExprNode right = (ExprNode) visit(ctx.unary(i));
-      left = new BinaryExprNode(op, left, right);
+      left = at(new BinaryExprNode(op, left, right), ctx.getStart());
     }
     return left;
   }
@@ -325,7 +385,7 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     if (ctx.unary() != null) {
       String op = ctx.getChild(0).getText();
       ExprNode value = (ExprNode) visit(ctx.unary());
-      return new UnaryExprNode(op, value);
+      return at(new UnaryExprNode(op, value), ctx.getStart());
     }
     return visit(ctx.postfix());
   }
@@ -336,10 +396,18 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     int i = 1;
     while (i < ctx.getChildCount()) {
       String dot = ctx.getChild(i).getText();
+      if ("[".equals(dot)) {
+        Token open = ((TerminalNode) ctx.getChild(i)).getSymbol();
+        ExprNode index = (ExprNode) visit(ctx.getChild(i + 1));
+        current = at(new IndexExprNode(current, index), open);
+        i += 3;
+        continue;
+      }
       if (!".".equals(dot)) {
         break;
       }
-      String member = ctx.getChild(i + 1).getText();
+      Token memberToken = ((TerminalNode) ctx.getChild(i + 1)).getSymbol();
+      String member = memberToken.getText();
       i += 2;
       if (i < ctx.getChildCount() && "(".equals(ctx.getChild(i).getText())) {
         cppParser.ArgListContext argCtx = null;
@@ -353,9 +421,9 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
           i++;
         }
         List<ExprNode> args = parseArgs(argCtx);
-        current = new MethodCallNode(current, member, args);
+        current = at(new MethodCallNode(current, member, args), memberToken);
       } else {
-        current = new FieldAccessNode(current, member);
+        current = at(new FieldAccessNode(current, member), memberToken);
       }
     }
     return current;
@@ -367,12 +435,13 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
       return visit(ctx.literal());
     }
     if (ctx.ID() != null && ctx.getChildCount() == 1) {
-      return new VarRefNode(ctx.ID().getText());
+      return at(new VarRefNode(ctx.ID().getText()), ctx.getStart());
     }
     if (ctx.ID() != null && ctx.getChildCount() > 1) {
+      checkQualifier(ctx.qualifier());
       String name = ctx.ID().getText();
       List<ExprNode> args = parseArgs(ctx.argList());
-      return new CallExprNode(name, args);
+      return at(new CallExprNode(name, args), ctx.getStart());
     }
     if (ctx.expr() != null) {
       return visit(ctx.expr());
@@ -383,20 +452,25 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
   @Override
   public ASTNode visitLiteral(cppParser.LiteralContext ctx) {
     if (ctx.INT() != null) {
-      return new LiteralNode(Integer.parseInt(ctx.INT().getText()));
+      return at(new LiteralNode(Integer.parseInt(ctx.INT().getText())), ctx.getStart());
     }
     if (ctx.BOOL() != null) {
-      return new LiteralNode(ctx.BOOL().getText().equals("true"));
+      return at(new LiteralNode(ctx.BOOL().getText().equals("true")), ctx.getStart());
     }
     if (ctx.CHAR() != null) {
-      return new LiteralNode(parseCharLiteral(ctx.CHAR().getText()));
+      return at(new LiteralNode(Literals.parseChar(ctx.CHAR().getText())), ctx.getStart());
     }
     if (ctx.STRING() != null) {
-      return new LiteralNode(parseStringLiteral(ctx.STRING().getText()));
+      return at(new LiteralNode(Literals.parseString(ctx.STRING().getText())), ctx.getStart());
     }
     return super.visitLiteral(ctx);
   }
 
+  private static <T extends ASTNode> T at(T node, Token token) {
+    node.setPosition(token.getLine(), token.getCharPositionInLine());
+    return node;
+  }
+
   private List<ParamNode> parseParams(cppParser.ParamListContext ctx) {
     List<ParamNode> params = new ArrayList<>();
     if (ctx == null) {
@@ -418,46 +492,4 @@ public class ASTBuilder extends cppBaseVisitor<ASTNode> {
     }
     return args;
   }
-
-  private char parseCharLiteral(String text) {
-    String body = text.substring(1, text.length() - 1);
-    if (body.startsWith("\\")) {
-      return parseEscape(body.charAt(1));
-    }
-    if (body.length() != 1) {
-      throw new RuntimeException("Invalid char literal");
-    }
-    return body.charAt(0);
-  }
-
-  private String parseStringLiteral(String text) {
-    String body = text.substring(1, text.length() - 1);
-    StringBuilder out = new StringBuilder();
-    for (int i = 0; i < body.length(); i++) {
-      char c = body.charAt(i);
-      if (c == '\\') {
-        if (i + 1 >= body.length()) {
-          throw new RuntimeException("Invalid string escape");
-        }
-        out.append(parseEscape(body.charAt(i + 1)));
-        i++;
-      } else {
-        out.append(c);
-      }
-    }
-    return out.toString();
-  }
-
-  private char parseEscape(char c) {
-    return switch (c) {
-      case 'n' -> '\n';
-      case 't' -> '\t';
-      case 'r' -> '\r';
-      case '0' -> '\0';
-      case '\\' -> '\\';
-      case '\'' -> '\'';
-      case '"' -> '"';
-      default -> c;
-    };
-  }
 }
@@ -0,0 +1,350 @@
+package cpp.sema;
+
+import cpp.antlr.cppParser;
+import cpp.ast.ASTNode;
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.ClassMemberNode;
+import cpp.ast.ConstructorNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.FieldDeclNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.MethodNode;
+import cpp.ast.ParamNode;
+import cpp.ast.ProgramNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.parse.Literals;
+import cpp.parse.StdNames;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+// Builds the same AST as ASTBuilder while the parser runs with setBuildParseTree(false). Matched
+// tokens and finished rules are pushed onto one stack; when a rule exits, everything it pushed is
+// replaced by its node (or by a token or list that the enclosing rule folds in).
+public class ASTListener implements ParseTreeListener {
+  private final Parser parser;
+  private final List<Object> values = new ArrayList<>();
+  private int[] frames = new int[64];
+  private int depth;
+  private Scope currentScope = new Scope(null);
+  private boolean failed;
+
+  public ASTListener(Parser parser) {
+    this.parser = parser;
+  }
+
+  public void reset() {
+    values.clear();
+    depth = 0;
+    currentScope = new Scope(null);
+    failed = false;
+  }
+
+  // Removes and returns the node of the most recently completed top-level rule.
+  public ASTNode take() {
+    return (ASTNode) values.remove(values.size() - 1);
+  }
+
+  @Override
+  public void enterEveryRule(ParserRuleContext ctx) {
+    if (depth == frames.length) {
+      frames = Arrays.copyOf(frames, depth * 2);
+    }
+    frames[depth++] = values.size();
+    if (ctx instanceof cppParser.BlockContext) {
+      currentScope = new Scope(currentScope);
+    }
+  }
+
+  @Override
+  public void visitTerminal(TerminalNode node) {
+    values.add(node.getSymbol());
+  }
+
+  @Override
+  public void visitErrorNode(ErrorNode node) {
+    failed = true;
+  }
+
+  // Generated rules call exitRule() from a finally block, so this also runs while a syntax error
+  // unwinds the parser. Nothing may be built or thrown then, or the parse error would be lost.
+  @Override
+  public void exitEveryRule(ParserRuleContext ctx) {
+    if (failed || ctx.exception != null || parser.getNumberOfSyntaxErrors() > 0) {
+      failed = true;
+      return;
+    }
+    failed = true;
+    List<Object> parts = values.subList(frames[--depth], values.size());
+    Object value = build(ctx, parts);
+    parts.clear();
+    values.add(value);
+    if (ctx instanceof cppParser.BlockContext) {
+      currentScope = currentScope.parent;
+    }
+    failed = false;
+  }
+
+  private Object build(ParserRuleContext ctx, List<Object> parts) {
+    Token start = ctx.getStart();
+    return switch (ctx) {
+      case cppParser.ProgramContext c -> {
+        ProgramNode program = at(new ProgramNode(), start);
+        for (Object part : parts) {
+          if (part instanceof ASTNode decl) {
+            program.declarations.add(decl);
+          }
+        }
+        yield program;
+      }
+      case cppParser.FunctionDefContext c -> {
+        TypeNode returnType = node(parts, TypeNode.class);
+        FunctionNode function =
+            new FunctionNode(returnType, nameAfter(parts, returnType), params(parts), body(parts));
+        function.isConstexpr = c.isConstexpr != null;
+        yield at(function, start);
+      }
+      case cppParser.ClassDefContext c -> {
+        List<String> names = new ArrayList<>();
+        for (Object part : parts) {
+          if (part instanceof Token token && token.getType() == cppParser.ID) {
+            names.add(token.getText());
+          }
+        }
+        String baseName = names.size() > 1 ? names.get(1) : null;
+        List<ClassMemberNode> members = nodes(parts, ClassMemberNode.class);
+        yield at(new ClassDefNode(names.get(0), baseName, members), start);
+      }
+      case cppParser.FieldDeclContext c -> {
+        TypeNode type = node(parts, TypeNode.class);
+        String name = nameAfter(parts, type);
+        yield at(new FieldDeclNode(withArraySize(type, parts, false), name), start);
+      }
+      case cppParser.MethodDefContext c -> {
+        TypeNode returnType = node(parts, TypeNode.class);
+        boolean isVirtual = parts.get(0) instanceof Token;
+        String name = nameAfter(parts, returnType);
+        yield at(new MethodNode(isVirtual, returnType, name, params(parts), body(parts)), start);
+      }
+      case cppParser.ConstructorDefContext c ->
+          at(new ConstructorNode(text(parts, 0), params(parts), body(parts)), start);
+      case cppParser.ParamListContext c -> nodes(parts, ParamNode.class);
+      case cppParser.ParamContext c -> {
+        TypeNode type = node(parts, TypeNode.class);
+        String name = nameAfter(parts, type);
+        boolean isRef = text(parts, 1).equals("(");
+        yield at(new ParamNode(withArraySize(type, parts, isRef), name), start);
+      }
+      case cppParser.TypeContext c -> TypeNode.of((String) parts.get(0), parts.size() > 1);
+      case cppParser.BaseTypeContext c -> baseTypeName(parts);
+      case cppParser.QualifierContext c -> {
+        StdNames.checkQualifier(text(parts, 0));
+        yield text(parts, 0);
+      }
+      case cppParser.ArraySizeContext c -> Integer.parseInt(text(parts, 1));
+      case cppParser.VarDeclContext c -> {
+        TypeNode type = node(parts, TypeNode.class);
+        String name = nameAfter(parts, type);
+        type = withArraySize(type, parts, false);
+        if (!currentScope.define(new Symbol(name, type))) {
+          throw new RuntimeException("Variable doppelt definiert: " + name);
+        }
+        VarDeclNode decl = at(new VarDeclNode(type, name, node(parts, ExprNode.class)), start);
+        decl.isConst = c.isConst != null;
+        yield decl;
+      }
+      case cppParser.BlockContext c -> at(new BlockNode(nodes(parts, StmtNode.class)), start);
+      case cppParser.ExprStmtContext c -> at(new ExprStmtNode(node(parts, ExprNode.class)), start);
+      case cppParser.IfStmtContext c -> {
+        List<BlockNode> blocks = nodes(parts, BlockNode.class);
+        BlockNode elseBlock = blocks.size() > 1 ? blocks.get(1) : null;
+        yield at(new IfStmtNode(node(parts, ExprNode.class), blocks.get(0), elseBlock), start);
+      }
+      case cppParser.WhileStmtContext c ->
+          at(new WhileStmtNode(node(parts, ExprNode.class), body(parts)), start);
+      case cppParser.ReturnStmtContext c ->
+          at(new ReturnStmtNode(node(parts, ExprNode.class)), start);
+      case cppParser.AssignmentContext c ->
+          parts.size() == 1
+              ? parts.get(0)
+              : at(new AssignExprNode((ExprNode) parts.get(0), (ExprNode) parts.get(2)), start);
+      case cppParser.LogicalOrContext c -> binary(parts, start);
+      case cppParser.LogicalAndContext c -> binary(parts, start);
+      case cppParser.EqualityContext c -> binary(parts, start);
+      case cppParser.RelationalContext c -> binary(parts, start);
+      case cppParser.AdditiveContext c -> binary(parts, start);
+      case cppParser.MultiplicativeContext c -> binary(parts, start);
+      case cppParser.UnaryContext c ->
+          parts.size() == 1
+              ? parts.get(0)
+              : at(new UnaryExprNode(text(parts, 0), (ExprNode) parts.get(1)), start);
+      case cppParser.PostfixContext c -> postfix(parts);
+      case cppParser.PrimaryContext c -> primary(parts, start);
+      case cppParser.ArgListContext c -> nodes(parts, ExprNode.class);
+      case cppParser.LiteralContext c -> at(literal((Token) parts.get(0)), start);
+      default -> parts.get(0);
+    };
+  }
+
+  private static Object postfix(List<Object> parts) {
+    ExprNode current = (ExprNode) parts.get(0);
+    int i = 1;
+    while (i < parts.size()) {
+      if (text(parts, i).equals("[")) {
+        current = at(new IndexExprNode(current, (ExprNode) parts.get(i + 1)), (Token) parts.get(i));
+        i += 3;
+        continue;
+      }
+      Token member = (Token) parts.get(i + 1);
+      i += 2;
+      if (i < parts.size() && text(parts, i).equals("(")) {
+        List<ExprNode> args = new ArrayList<>();
+        if (parts.get(i + 1) instanceof List<?> list) {
+          args = exprs(list);
+          i++;
+        }
+        i += 2;
+        current = at(new MethodCallNode(current, member.getText(), args), member);
+      } else {
+        current = at(new FieldAccessNode(current, member.getText()), member);
+      }
+    }
+    return current;
+  }
+
+  private static Object primary(List<Object> parts, Token start) {
+    if (parts.get(0) instanceof ASTNode literal) {
+      return literal;
+    }
+    int id = parts.get(0) instanceof String ? 1 : 0;
+    if (((Token) parts.get(id)).getType() != cppParser.ID) {
+      return parts.get(1);
+    }
+    String name = text(parts, id);
+    if (parts.size() == 1) {
+      return at(new VarRefNode(name), start);
+    }
+    List<ExprNode> args =
+        parts.get(id + 2) instanceof List<?> list ? exprs(list) : new ArrayList<>();
+    return at(new CallExprNode(name, args), start);
+  }
+
+  // Qualifier (already checked), name, then '<' arg (',' arg)* '>' for library containers.
+  private static String baseTypeName(List<Object> parts) {
+    int id = parts.get(0) instanceof String ? 1 : 0;
+    if (parts.size() == id + 1) {
+      return text(parts, id);
+    }
+    List<String> args = new ArrayList<>();
+    for (int i = id + 2; i < parts.size(); i += 2) {
+      args.add(text(parts, i));
+    }
+    return StdNames.containerName(text(parts, id), args);
+  }
+
+  private static Object binary(List<Object> parts, Token start) {
+    ExprNode left = (ExprNode) parts.get(0);
+    for (int i = 1; i < parts.size(); i += 2) {
+      left = at(new BinaryExprNode(text(parts, i), left, (ExprNode) parts.get(i + 1)), start);
+    }
+    return left;
+  }
+
+  private static LiteralNode literal(Token token) {
+    String text = token.getText();
+    int type = token.getType();
+    if (type == cppParser.INT) {
+      return new LiteralNode(Integer.parseInt(text));
+    }
+    if (type == cppParser.BOOL) {
+      return new LiteralNode(text.equals("true"));
+    }
+    if (type == cppParser.CHAR) {
+      return new LiteralNode(Literals.parseChar(text));
+    }
+    return new LiteralNode(Literals.parseString(text));
+  }
+
+  private static String nameAfter(List<Object> parts, ASTNode type) {
+    for (int i = parts.indexOf(type) + 1; ; i++) {
+      if (parts.get(i) instanceof Token token && token.getType() == cppParser.ID) {
+        return token.getText();
+      }
+    }
+  }
+
+  private static TypeNode withArraySize(TypeNode type, List<Object> parts, boolean isRef) {
+    Integer size = node(parts, Integer.class);
+    return size == null ? type : TypeNode.arrayOf(type, size, isRef);
+  }
+
+  private static String text(List<Object> parts, int index) {
+    return ((Token) parts.get(index)).getText();
+  }
+
+  private static List<ParamNode> params(List<Object> parts) {
+    for (Object part : parts) {
+      if (part instanceof List<?> list) {
+        @SuppressWarnings("unchecked")
+        List<ParamNode> params = (List<ParamNode>) list;
+        return params;
+      }
+    }
+    return new ArrayList<>();
+  }
+
+  private static BlockNode body(List<Object> parts) {
+    return (BlockNode) parts.get(parts.size() - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<ExprNode> exprs(List<?> list) {
+    return (List<ExprNode>) list;
+  }
+
+  private static <T> T node(List<Object> parts, Class<T> type) {
+    for (Object part : parts) {
+      if (type.isInstance(part)) {
+        return type.cast(part);
+      }
+    }
+    return null;
+  }
+
+  private static <T> List<T> nodes(List<Object> parts, Class<T> type) {
+    List<T> found = new ArrayList<>();
+    for (Object part : parts) {
+      if (type.isInstance(part)) {
+        found.add(type.cast(part));
+      }
+    }
+    return found;
+  }
+
+  private static <T extends ASTNode> T at(T node, Token token) {
+    node.setPosition(token.getLine(), token.getCharPositionInLine());
+    return node;
+  }
+}
@@ -0,0 +1,454 @@
+package cpp.sema;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.FieldAccessNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.MethodCallNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.error.CompileError;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Checks function, method and constructor bodies against a frozen view of the program, split
+// across a fork-join pool, and reports every error in source order.
+//
+// Only --check-bodies runs it. These checks reject some programs the interpreter accepts, so the
+// default load path skips them, and default load time does not benefit from the parallelism.
+public class BodyAnalyzer {
+  public static final int DEFAULT_SPLIT_THRESHOLD = 64;
+
+  private final ProgramDef program;
+  private final ForkJoinPool pool;
+  private final int splitThreshold;
+
+  public BodyAnalyzer(ProgramDef program) {
+    this(program, ForkJoinPool.commonPool(), DEFAULT_SPLIT_THRESHOLD);
+  }
+
+  public BodyAnalyzer(ProgramDef program, ForkJoinPool pool, int splitThreshold) {
+    this.program = program;
+    this.pool = pool;
+    this.splitThreshold = Math.max(1, splitThreshold);
+  }
+
+  public void run() {
+    FrozenProgram frozen = new FrozenProgram(program);
+    analyze(collectBodies(null), frozen);
+    checkOnLoad(frozen);
+  }
+
+  public void run(Collection<String> names) {
+    analyze(collectBodies(Set.copyOf(names)));
+  }
+
+  private void analyze(List<Body> bodies) {
+    if (!bodies.isEmpty()) {
+      analyze(bodies, new FrozenProgram(program));
+    }
+  }
+
+  private void analyze(List<Body> bodies, FrozenProgram frozen) {
+    if (bodies.isEmpty()) {
+      return;
+    }
+    List<List<String>> errors = new ArrayList<>(Collections.nCopies(bodies.size(), List.of()));
+    AnalyzeTask task = new AnalyzeTask(frozen, bodies, errors, 0, bodies.size(), splitThreshold);
+    if (bodies.size() <= splitThreshold) {
+      task.compute();
+    } else {
+      pool.invoke(task);
+    }
+    List<String> messages = new ArrayList<>();
+    for (List<String> bodyErrors : errors) {
+      messages.addAll(bodyErrors);
+    }
+    report(messages);
+  }
+
+  // All errors are reported in source order, one per line.
+  private static void report(List<String> messages) {
+    if (!messages.isEmpty()) {
+      throw new CompileError(String.join("\n", messages));
+    }
+  }
+
+  private List<Body> collectBodies(Set<String> names) {
+    List<Body> bodies = new ArrayList<>();
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (!function.isBuiltin
+            && function.body != null
+            && (names == null || names.contains(function.name))) {
+          bodies.add(
+              new Body(
+                  function.body,
+                  function.params,
+                  null,
+                  false,
+                  function.name,
+                  function.fileIndex));
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      if (names != null && !names.contains(classDef.name)) {
+        continue;
+      }
+      for (MethodDef method : classDef.methods) {
+        if (method.body != null) {
+          bodies.add(
+              new Body(
+                  method.body,
+                  method.params,
+                  classDef.name,
+                  false,
+                  classDef.name,
+                  classDef.fileIndex));
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.body != null) {
+          bodies.add(
+              new Body(
+                  ctor.body, ctor.params, classDef.name, true, classDef.name, classDef.fileIndex));
+        }
+      }
+    }
+    bodies.sort(
+        Comparator.comparingInt((Body body) -> body.fileIndex)
+            .thenComparingInt(body -> body.block.line())
+            .thenComparingInt(body -> body.block.column())
+            .thenComparing(body -> body.owner));
+    return bodies;
+  }
+
+  private void checkOnLoad(FrozenProgram frozen) {
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        if (function.deferredBody != null) {
+          function.deferredBody =
+              checked(frozen, function.deferredBody, function.params, null, false);
+        }
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        if (method.deferredBody != null) {
+          method.deferredBody =
+              checked(frozen, method.deferredBody, method.params, classDef.name, false);
+        }
+      }
+      for (ConstructorDef ctor : classDef.constructors) {
+        if (ctor.deferredBody != null) {
+          ctor.deferredBody = checked(frozen, ctor.deferredBody, ctor.params, classDef.name, true);
+        }
+      }
+    }
+  }
+
+  private static DeferredBody checked(
+      FrozenProgram frozen,
+      DeferredBody source,
+      List<ParamDef> params,
+      String className,
+      boolean isConstructor) {
+    return () -> {
+      BlockNode block = source.parse();
+      report(
+          new BodyChecker(frozen, new Body(block, params, className, isConstructor, className, 0))
+              .check());
+      return block;
+    };
+  }
+
+  private static final class Body {
+    final BlockNode block;
+    final List<ParamDef> params;
+    final String className;
+    final boolean isConstructor;
+    final String owner;
+    final int fileIndex;
+
+    Body(
+        BlockNode block,
+        List<ParamDef> params,
+        String className,
+        boolean isConstructor,
+        String owner,
+        int fileIndex) {
+      this.block = block;
+      this.params = params;
+      this.className = className;
+      this.isConstructor = isConstructor;
+      this.owner = owner;
+      this.fileIndex = fileIndex;
+    }
+  }
+
+  private static final class FrozenProgram {
+    final Map<String, Set<String>> fieldNames;
+    final Set<String> functionNames;
+
+    FrozenProgram(ProgramDef program) {
+      Map<String, Set<String>> fields = new HashMap<>();
+      for (ClassDef classDef : program.classes.values()) {
+        Set<String> names = new HashSet<>();
+        for (ClassDef current = classDef; current != null; current = current.baseClass) {
+          for (FieldDef field : current.fields) {
+            names.add(field.name);
+          }
+        }
+        fields.put(classDef.name, Set.copyOf(names));
+      }
+      this.fieldNames = Map.copyOf(fields);
+      this.functionNames = Set.copyOf(program.functions.keySet());
+    }
+  }
+
+  private static final class AnalyzeTask extends RecursiveTask<Void> {
+    private final FrozenProgram frozen;
+    private final List<Body> bodies;
+    private final List<List<String>> errors;
+    private final int from;
+    private final int to;
+    private final int threshold;
+
+    AnalyzeTask(
+        FrozenProgram frozen,
+        List<Body> bodies,
+        List<List<String>> errors,
+        int from,
+        int to,
+        int threshold) {
+      this.frozen = frozen;
+      this.bodies = bodies;
+      this.errors = errors;
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+    }
+
+    @Override
+    protected Void compute() {
+      if (to - from > threshold) {
+        int mid = (from + to) >>> 1;
+        invokeAll(
+            new AnalyzeTask(frozen, bodies, errors, from, mid, threshold),
+            new AnalyzeTask(frozen, bodies, errors, mid, to, threshold));
+        return null;
+      }
+      for (int i = from; i < to; i++) {
+        errors.set(i, new BodyChecker(frozen, bodies.get(i)).check());
+      }
+      return null;
+    }
+  }
+
+  private static final class BodyChecker {
+    private final FrozenProgram frozen;
+    private final Body body;
+    private final Set<String> fields;
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+    private final List<String> errors = new ArrayList<>();
+
+    BodyChecker(FrozenProgram frozen, Body body) {
+      this.frozen = frozen;
+      this.body = body;
+      this.fields = body.className != null ? frozen.fieldNames.get(body.className) : Set.of();
+    }
+
+    List<String> check() {
+      Set<String> top = new HashSet<>();
+      for (ParamDef param : body.params) {
+        if (fields.contains(param.name)) {
+          errors.add("Parameter shadows field: " + param.name);
+        }
+        top.add(param.name);
+      }
+      scopes.push(top);
+      checkStatements(body.block);
+      return errors;
+    }
+
+    private void checkBlock(BlockNode block) {
+      if (block == null) {
+        return;
+      }
+      scopes.push(new HashSet<>());
+      checkStatements(block);
+      scopes.pop();
+    }
+
+    private void checkStatements(BlockNode block) {
+      for (StmtNode stmt : block.statements) {
+        checkStmt(stmt);
+      }
+    }
+
+    private void checkStmt(StmtNode stmt) {
+      if (stmt instanceof VarDeclNode decl) {
+        checkVarDecl(decl);
+      } else if (stmt instanceof ExprStmtNode exprStmt) {
+        checkExpr(exprStmt.expr);
+      } else if (stmt instanceof IfStmtNode ifStmt) {
+        checkExpr(ifStmt.condition);
+        checkBlock(ifStmt.thenBlock);
+        checkBlock(ifStmt.elseBlock);
+      } else if (stmt instanceof WhileStmtNode whileStmt) {
+        checkExpr(whileStmt.condition);
+        checkBlock(whileStmt.body);
+      } else if (stmt instanceof ReturnStmtNode returnStmt) {
+        if (returnStmt.value != null) {
+          checkExpr(returnStmt.value);
+        }
+        if (body.isConstructor) {
+          errors.add("Return not allowed in constructor");
+        }
+      } else if (stmt instanceof BlockNode block) {
+        checkBlock(block);
+      }
+    }
+
+    private void checkVarDecl(VarDeclNode decl) {
+      checkType(decl.type);
+      String name = decl.name;
+      if ("void".equals(decl.type.name)) {
+        errors.add("Variable type cannot be void");
+      }
+      if (scopes.peek().contains(name)) {
+        errors.add("Variable already defined in scope: " + name);
+      }
+      if (fields.contains(name)) {
+        errors.add("Variable shadows field: " + name);
+      }
+      if (decl.type.isRef && decl.init == null) {
+        errors.add("Reference variable requires initializer: " + name);
+      }
+      if (decl.type.isArray() && decl.init != null) {
+        errors.add("Array variable cannot have an initializer: " + name);
+      }
+      if (decl.isConst) {
+        if (decl.type.isRef
+            || decl.type.isArray()
+            || decl.type.isContainer()
+            || frozen.fieldNames.containsKey(decl.type.name)) {
+          errors.add("Const is only supported for primitive variables: " + name);
+        }
+        if (decl.init == null) {
+          errors.add("Const variable requires initializer: " + name);
+        }
+      }
+      if (decl.init != null) {
+        checkExpr(decl.init);
+      }
+      scopes.peek().add(name);
+    }
+
+    private void checkType(TypeNode type) {
+      if (type.isContainer()) {
+        try {
+          TypeResolver.parseContainer(type.name, type.isRef);
+        } catch (CompileError error) {
+          errors.add(error.getMessage());
+        }
+        return;
+      }
+      switch (type.name) {
+        case "int", "bool", "char", "string" -> {}
+        case "void" -> {
+          if (type.isRef) {
+            errors.add("void& is not allowed");
+          }
+        }
+        default -> {
+          if (!frozen.fieldNames.containsKey(type.name)) {
+            errors.add("Unknown class type: " + type.name);
+          }
+        }
+      }
+    }
+
+    private void checkExpr(ExprNode expr) {
+      if (expr instanceof VarRefNode ref) {
+        if (!isDeclared(ref.name) && !fields.contains(ref.name)) {
+          errors.add("Unknown identifier: " + ref.name);
+        }
+      } else if (expr instanceof AssignExprNode assign) {
+        checkExpr(assign.target);
+        checkExpr(assign.value);
+      } else if (expr instanceof BinaryExprNode binary) {
+        checkExpr(binary.left);
+        checkExpr(binary.right);
+      } else if (expr instanceof UnaryExprNode unary) {
+        checkExpr(unary.expr);
+      } else if (expr instanceof CallExprNode call) {
+        checkArgs(call.args);
+        checkCall(call);
+      } else if (expr instanceof MethodCallNode call) {
+        checkExpr(call.receiver);
+        checkArgs(call.args);
+      } else if (expr instanceof FieldAccessNode access) {
+        checkExpr(access.receiver);
+      } else if (expr instanceof IndexExprNode index) {
+        checkExpr(index.array);
+        checkExpr(index.index);
+      }
+    }
+
+    private void checkArgs(List<ExprNode> args) {
+      if (args != null) {
+        for (ExprNode arg : args) {
+          checkExpr(arg);
+        }
+      }
+    }
+
+    // Overloads and constructors are resolved when the call runs, so only the name is checked here.
+    private void checkCall(CallExprNode call) {
+      if (!frozen.functionNames.contains(call.name)
+          && !frozen.fieldNames.containsKey(call.name)) {
+        errors.add("Unknown function: " + call.name);
+      }
+    }
+
+    private boolean isDeclared(String name) {
+      for (Set<String> scope : scopes) {
+        if (scope.contains(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
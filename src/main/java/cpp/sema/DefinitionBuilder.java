@@ -1,5 +1,6 @@
 package cpp.sema;
 
+import cpp.ast.ASTNode;
 import cpp.ast.ClassDefNode;
 import cpp.ast.ClassMemberNode;
 import cpp.ast.ConstructorNode;
@@ -18,50 +19,135 @@ import cpp.model.MethodDef;
 import cpp.model.ParamDef;
 import cpp.model.ProgramDef;
 import cpp.model.Type;
+import cpp.opt.Reachability;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class DefinitionBuilder {
-  private final ProgramDef program = new ProgramDef();
+  private final ProgramDef program;
+  private final List<ClassDefNode> pendingClasses = new ArrayList<>();
+  private final List<FunctionNode> pendingFunctions = new ArrayList<>();
+
+  public DefinitionBuilder() {
+    this(new ProgramDef());
+  }
+
+  public DefinitionBuilder(ProgramDef program) {
+    this.program = program;
+  }
 
   public ProgramDef build(ProgramNode programNode) {
+    return build(programNode, false);
+  }
+
+  public ProgramDef build(ProgramNode programNode, boolean pruneUnreachable) {
     for (var decl : programNode.declarations) {
-      if (decl instanceof ClassDefNode classDef) {
-        registerClassHeader(classDef);
-      }
+      add(decl);
+    }
+    return finish(pruneUnreachable);
+  }
+
+  // Declarations can arrive one at a time from a streaming front end; signatures may refer to
+  // classes declared later, so definitions are only built once every declaration is known.
+  public void add(ASTNode decl) {
+    if (decl instanceof ClassDefNode classDef) {
+      pendingClasses.add(classDef);
+    } else if (decl instanceof FunctionNode functionDef) {
+      pendingFunctions.add(functionDef);
     }
+  }
 
-    for (var decl : programNode.declarations) {
-      if (decl instanceof FunctionNode functionDef) {
-        registerFunction(functionDef);
+  public ProgramDef finish(boolean pruneUnreachable) {
+    List<ClassDefNode> classNodes = List.copyOf(pendingClasses);
+    List<FunctionNode> functionNodes = List.copyOf(pendingFunctions);
+    pendingClasses.clear();
+    pendingFunctions.clear();
+    if (pruneUnreachable) {
+      defer(classNodes, functionNodes);
+      materialize(List.of("main"));
+    } else {
+      define(classNodes, functionNodes);
+    }
+    return program;
+  }
+
+  public Set<String> materialize(Collection<String> names) {
+    Set<String> reached =
+        new Reachability(program.deferredClasses, program.deferredFunctions).closure(names);
+    if (reached.isEmpty()) {
+      return reached;
+    }
+    List<ClassDefNode> classNodes = new ArrayList<>();
+    for (ClassDefNode classDef : program.deferredClasses.values()) {
+      if (reached.contains(classDef.name)) {
+        classNodes.add(classDef);
+      }
+    }
+    List<FunctionNode> functionNodes = new ArrayList<>();
+    for (List<FunctionNode> overloads : program.deferredFunctions.values()) {
+      if (reached.contains(overloads.get(0).name)) {
+        functionNodes.addAll(overloads);
       }
     }
+    program.deferredClasses.keySet().removeAll(reached);
+    program.deferredFunctions.keySet().removeAll(reached);
+    define(classNodes, functionNodes);
+    return reached;
+  }
 
-    for (var decl : programNode.declarations) {
-      if (decl instanceof ClassDefNode classDef) {
-        populateClassMembers(classDef);
+  private void defer(List<ClassDefNode> classNodes, List<FunctionNode> functionNodes) {
+    for (ClassDefNode classDef : classNodes) {
+      if (program.deferredClasses.putIfAbsent(classDef.name, classDef) != null) {
+        throw new CompileError(
+            "Class already defined: " + classDef.name + location(classDef.file, classDef));
       }
     }
+    for (FunctionNode functionDef : functionNodes) {
+      program
+          .deferredFunctions
+          .computeIfAbsent(functionDef.name, name -> new ArrayList<>())
+          .add(functionDef);
+    }
+  }
+
+  private void define(List<ClassDefNode> classNodes, List<FunctionNode> functionNodes) {
+    List<ClassDef> classDefs = new ArrayList<>();
+    for (ClassDefNode classDef : classNodes) {
+      classDefs.add(registerClassHeader(classDef));
+    }
 
-    resolveBaseClasses();
-    validateFieldNames();
-    buildVtables();
-    ensureDefaultConstructors();
+    for (FunctionNode functionDef : functionNodes) {
+      registerFunction(functionDef);
+    }
 
-    return program;
+    for (ClassDefNode classDef : classNodes) {
+      populateClassMembers(classDef);
+    }
+
+    resolveBaseClasses(classDefs);
+    validateFieldNames(classDefs);
+    ClassDef.buildVtables(classDefs);
+    ensureDefaultConstructors(classDefs);
   }
 
-  private void registerClassHeader(ClassDefNode classDef) {
+  private ClassDef registerClassHeader(ClassDefNode classDef) {
     String name = classDef.name;
     String baseName = classDef.baseName;
     if (program.classes.containsKey(name)) {
-      throw new CompileError("Class already defined: " + name);
+      throw new CompileError("Class already defined: " + name + location(classDef.file, classDef));
     }
-    program.classes.put(name, new ClassDef(name, baseName));
+    ClassDef def = new ClassDef(name, baseName);
+    def.fileIndex = classDef.fileIndex;
+    program.classes.put(name, def);
+    return def;
   }
 
   private void registerFunction(FunctionNode functionDef) {
@@ -72,24 +158,32 @@ public class DefinitionBuilder {
     String name = functionDef.name;
     List<ParamDef> params = parseParams(functionDef.params);
     FunctionDef def = new FunctionDef(name, returnType, params, functionDef.body);
-    ensureUniqueFunction(def);
+    def.isConstexpr = functionDef.isConstexpr;
+    def.fileIndex = functionDef.fileIndex;
+    def.deferredBody = functionDef.deferredBody;
+    ensureUniqueFunction(def, functionDef);
     program.addFunction(def);
   }
 
   private void populateClassMembers(ClassDefNode classDefNode) {
     ClassDef classDef = program.classes.get(classDefNode.name);
+    String file = classDefNode.file;
+    Set<String> fields = new HashSet<>();
+    Set<String> methods = new HashSet<>();
+    Set<String> constructors = new HashSet<>();
     for (ClassMemberNode member : classDefNode.members) {
       if (member instanceof FieldDeclNode fieldDecl) {
-        addField(classDef, fieldDecl);
+        addField(classDef, fieldDecl, file, fields);
       } else if (member instanceof MethodNode methodDef) {
-        addMethod(classDef, methodDef);
+        addMethod(classDef, methodDef, file, methods);
       } else if (member instanceof ConstructorNode ctorDef) {
-        addConstructor(classDef, ctorDef);
+        addConstructor(classDef, ctorDef, file, constructors);
       }
     }
   }
 
-  private void addField(ClassDef classDef, FieldDeclNode fieldDecl) {
+  private void addField(
+      ClassDef classDef, FieldDeclNode fieldDecl, String file, Set<String> declared) {
     Type type = parseType(fieldDecl.type);
     if (type.isRef) {
       throw new CompileError("Reference fields are not allowed: " + type);
@@ -98,15 +192,14 @@ public class DefinitionBuilder {
       throw new CompileError("Field type cannot be void");
     }
     String name = fieldDecl.name;
-    for (FieldDef field : classDef.fields) {
-      if (field.name.equals(name)) {
-        throw new CompileError("Field already defined: " + name);
-      }
+    if (!declared.add(name)) {
+      throw new CompileError("Field already defined: " + name + location(file, fieldDecl));
     }
     classDef.fields.add(new FieldDef(type, name));
   }
 
-  private void addMethod(ClassDef classDef, MethodNode methodDef) {
+  private void addMethod(
+      ClassDef classDef, MethodNode methodDef, String file, Set<String> declared) {
     boolean isVirtual = methodDef.isVirtual;
     Type returnType = parseType(methodDef.returnType);
     if (returnType.isRef) {
@@ -116,28 +209,28 @@ public class DefinitionBuilder {
     List<ParamDef> params = parseParams(methodDef.params);
     MethodDef def =
         new MethodDef(name, returnType, params, methodDef.body, isVirtual, classDef.name);
-    String signature = SignatureUtil.signature(name, params);
-    for (MethodDef existing : classDef.methods) {
-      if (SignatureUtil.signature(existing.name, existing.params).equals(signature)) {
-        throw new CompileError("Method already defined: " + signature);
-      }
+    def.deferredBody = methodDef.deferredBody;
+    if (!declared.add(def.signature)) {
+      throw new CompileError(
+          "Method already defined: " + def.signature + location(file, methodDef));
     }
     classDef.methods.add(def);
   }
 
-  private void addConstructor(ClassDef classDef, ConstructorNode ctorDef) {
+  private void addConstructor(
+      ClassDef classDef, ConstructorNode ctorDef, String file, Set<String> declared) {
     String name = ctorDef.name;
     if (!name.equals(classDef.name)) {
       throw new CompileError("Constructor name must match class: " + name);
     }
     List<ParamDef> params = parseParams(ctorDef.params);
-    String signature = SignatureUtil.signature(name, params);
-    for (ConstructorDef existing : classDef.constructors) {
-      if (SignatureUtil.signature(existing.className, existing.params).equals(signature)) {
-        throw new CompileError("Constructor already defined: " + signature);
-      }
+    ConstructorDef def = new ConstructorDef(classDef.name, params, ctorDef.body);
+    if (!declared.add(def.signature)) {
+      throw new CompileError(
+          "Constructor already defined: " + def.signature + location(file, ctorDef));
     }
-    classDef.constructors.add(new ConstructorDef(classDef.name, params, ctorDef.body));
+    def.deferredBody = ctorDef.deferredBody;
+    classDef.constructors.add(def);
   }
 
   private List<ParamDef> parseParams(List<ParamNode> paramNodes) {
@@ -152,6 +245,9 @@ public class DefinitionBuilder {
         throw new CompileError("Parameter type cannot be void");
       }
       String name = paramNode.name;
+      if (type.isArray() && !type.isRef) {
+        throw new CompileError("Array parameter must be a reference: " + name);
+      }
       if (names.contains(name)) {
         throw new CompileError("Duplicate parameter: " + name);
       }
@@ -162,8 +258,21 @@ public class DefinitionBuilder {
   }
 
   private Type parseType(TypeNode typeNode) {
+    if (typeNode.isArray()) {
+      Type element = parseType(TypeNode.of(typeNode.name, false));
+      if (element.isVoid()) {
+        throw new CompileError("Array element type cannot be void");
+      }
+      if (element.isContainer()) {
+        throw new CompileError("Unsupported array element type: " + element);
+      }
+      return Type.arrayType(element, typeNode.length, typeNode.isRef);
+    }
     String base = typeNode.name;
     boolean isRef = typeNode.isRef;
+    if (typeNode.isContainer()) {
+      return TypeResolver.parseContainer(base, isRef);
+    }
     if ("int".equals(base)) {
       return Type.intType(isRef);
     }
@@ -188,21 +297,19 @@ public class DefinitionBuilder {
     return Type.classType(base, isRef);
   }
 
-  private void ensureUniqueFunction(FunctionDef def) {
-    List<FunctionDef> existing = program.functions.get(def.name);
-    if (existing == null) {
-      return;
-    }
-    String signature = SignatureUtil.signature(def.name, def.params);
-    for (FunctionDef other : existing) {
-      if (SignatureUtil.signature(other.name, other.params).equals(signature)) {
-        throw new CompileError("Function already defined: " + signature);
-      }
+  private void ensureUniqueFunction(FunctionDef def, FunctionNode node) {
+    if (program.hasFunction(def.signature)) {
+      throw new CompileError(
+          "Function already defined: " + def.signature + location(node.file, node));
     }
   }
 
-  private void resolveBaseClasses() {
-    for (ClassDef classDef : program.classes.values()) {
+  private static String location(String file, ASTNode node) {
+    return file != null ? " at " + file + ":" + node.line() : " at line " + node.line();
+  }
+
+  private void resolveBaseClasses(List<ClassDef> classDefs) {
+    for (ClassDef classDef : classDefs) {
       if (classDef.baseName != null) {
         ClassDef base = program.classes.get(classDef.baseName);
         if (base == null) {
@@ -211,29 +318,61 @@ public class DefinitionBuilder {
         classDef.baseClass = base;
       }
     }
-    detectInheritanceCycles();
+    detectInheritanceCycles(classDefs);
   }
 
-  private void validateFieldNames() {
-    for (ClassDef classDef : program.classes.values()) {
-      Set<String> seen = new HashSet<>();
-      ClassDef current = classDef;
-      while (current != null) {
-        for (FieldDef field : current.fields) {
-          if (seen.contains(field.name)) {
-            throw new CompileError("Duplicate field in inheritance chain: " + field.name);
+  // Walks each inheritance tree of the batch once, keeping the field names of the current class
+  // and its bases in a single set, so deep chains cost their number of fields.
+  private void validateFieldNames(List<ClassDef> classDefs) {
+    Set<ClassDef> batch = new HashSet<>(classDefs);
+    Map<ClassDef, List<ClassDef>> children = new HashMap<>();
+    List<ClassDef> roots = new ArrayList<>();
+    for (ClassDef classDef : classDefs) {
+      if (batch.contains(classDef.baseClass)) {
+        children.computeIfAbsent(classDef.baseClass, base -> new ArrayList<>()).add(classDef);
+      } else {
+        roots.add(classDef);
+      }
+    }
+    for (ClassDef root : roots) {
+      Set<String> names = new HashSet<>();
+      for (ClassDef base = root.baseClass; base != null; base = base.baseClass) {
+        for (FieldDef field : base.fields) {
+          names.add(field.name);
+        }
+      }
+      addFieldNames(root, names);
+      Deque<ClassDef> path = new ArrayDeque<>(List.of(root));
+      Deque<Iterator<ClassDef>> next = new ArrayDeque<>();
+      next.push(children.getOrDefault(root, List.of()).iterator());
+      while (!path.isEmpty()) {
+        if (next.peek().hasNext()) {
+          ClassDef child = next.peek().next();
+          addFieldNames(child, names);
+          path.push(child);
+          next.push(children.getOrDefault(child, List.of()).iterator());
+        } else {
+          for (FieldDef field : path.pop().fields) {
+            names.remove(field.name);
           }
-          seen.add(field.name);
+          next.pop();
         }
-        current = current.baseClass;
       }
     }
   }
 
-  private void detectInheritanceCycles() {
+  private static void addFieldNames(ClassDef classDef, Set<String> names) {
+    for (FieldDef field : classDef.fields) {
+      if (!names.add(field.name)) {
+        throw new CompileError("Duplicate field in inheritance chain: " + field.name);
+      }
+    }
+  }
+
+  private void detectInheritanceCycles(List<ClassDef> classDefs) {
     Set<String> visiting = new HashSet<>();
     Set<String> visited = new HashSet<>();
-    for (ClassDef classDef : program.classes.values()) {
+    for (ClassDef classDef : classDefs) {
       detectCycle(classDef, visiting, visited);
     }
   }
@@ -253,33 +392,8 @@ public class DefinitionBuilder {
     visited.add(classDef.name);
   }
 
-  private void buildVtables() {
-    for (ClassDef classDef : program.classes.values()) {
-      buildVtable(classDef, new HashMap<>());
-    }
-  }
-
-  private void buildVtable(ClassDef classDef, Map<String, MethodDef> inherited) {
-    if (!classDef.vtable.isEmpty()) {
-      return;
-    }
-    if (classDef.baseClass != null) {
-      buildVtable(classDef.baseClass, inherited);
-      inherited = new HashMap<>(classDef.baseClass.vtable);
-    } else {
-      inherited = new HashMap<>();
-    }
-
-    Map<String, MethodDef> table = new HashMap<>(inherited);
-    for (MethodDef method : classDef.methods) {
-      String signature = SignatureUtil.signature(method.name, method.params);
-      table.put(signature, method);
-    }
-    classDef.vtable.putAll(table);
-  }
-
-  private void ensureDefaultConstructors() {
-    for (ClassDef classDef : program.classes.values()) {
+  private void ensureDefaultConstructors(List<ClassDef> classDefs) {
+    for (ClassDef classDef : classDefs) {
       boolean hasDefault = false;
       for (ConstructorDef ctor : classDef.constructors) {
         if (ctor.params.isEmpty()) {
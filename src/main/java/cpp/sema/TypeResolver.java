@@ -13,8 +13,21 @@ public class TypeResolver {
   }
 
   public Type parse(TypeNode node) {
+    if (node.isArray()) {
+      Type element = parse(TypeNode.of(node.name, false));
+      if (element.isVoid()) {
+        throw new CompileError("Array element type cannot be void");
+      }
+      if (element.isContainer()) {
+        throw new CompileError("Unsupported array element type: " + element);
+      }
+      return Type.arrayType(element, node.length, node.isRef);
+    }
     String base = node.name;
     boolean isRef = node.isRef;
+    if (node.isContainer()) {
+      return parseContainer(base, isRef);
+    }
     if ("int".equals(base)) {
       return Type.intType(isRef);
     }
@@ -38,4 +51,36 @@ public class TypeResolver {
     }
     return Type.classType(base, isRef);
   }
+
+  // Library types arrive as "vector<int>", see StdNames.containerName.
+  static Type parseContainer(String name, boolean isRef) {
+    int open = name.indexOf('<');
+    String template = name.substring(0, open);
+    String[] args = name.substring(open + 1, name.length() - 1).split(",");
+    if (template.equals("vector") && args.length == 1) {
+      return Type.vectorType(parseElement(args[0]), isRef);
+    }
+    if (template.equals("unordered_map") && args.length == 2) {
+      Type key = parseElement(args[0]);
+      Type value = parseElement(args[1]);
+      boolean supported =
+          key.kind == Type.Kind.INT
+              ? value.kind == Type.Kind.INT || value.kind == Type.Kind.STRING
+              : key.kind == Type.Kind.STRING && value.kind == Type.Kind.INT;
+      if (!supported) {
+        throw new CompileError("Unsupported map type: " + name);
+      }
+      return Type.mapType(key, value, isRef);
+    }
+    throw new CompileError("Unknown library type: " + name);
+  }
+
+  private static Type parseElement(String name) {
+    return switch (name) {
+      case "int" -> Type.intType(false);
+      case "bool" -> Type.boolType(false);
+      case "char" -> Type.charType(false);
+      default -> Type.stringType(false);
+    };
+  }
 }
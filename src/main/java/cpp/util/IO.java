@@ -15,6 +15,10 @@ public class IO {
     System.out.println(value);
   }
 
+  public static void eprintln(String value) {
+    System.err.println(value);
+  }
+
   public static String readln(String prompt) {
     if (prompt != null && !prompt.isEmpty()) {
       print(prompt);
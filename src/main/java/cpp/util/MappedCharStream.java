@@ -0,0 +1,235 @@
+package cpp.util;
+
+import cpp.error.CompileError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+// Reads UTF-8 source straight from a mapped file. Pure ASCII files index bytes directly; other
+// files decode code points on demand, using a byte offset recorded every STRIDE code points.
+// As a CharSequence for the hand-written lexer, indexes count code points like the CharStream.
+public final class MappedCharStream implements CharStream, CharSequence {
+  private static final int STRIDE = 256;
+  private static final int REPLACEMENT = 0xFFFD;
+
+  private final ByteBuffer bytes;
+  private final String name;
+  private final int size;
+  private final int[] checkpoints;
+  private int index;
+  private int indexOffset;
+  private int anchor;
+  private int anchorOffset;
+  private int recent;
+  private int recentOffset;
+
+  public MappedCharStream(ByteBuffer bytes, String name) {
+    this.bytes = bytes;
+    this.name = name;
+    int length = bytes.limit();
+    int ascii = 0;
+    while (ascii < length && bytes.get(ascii) >= 0) {
+      ascii++;
+    }
+    if (ascii == length) {
+      this.size = length;
+      this.checkpoints = null;
+      return;
+    }
+    int[] marks = new int[length / STRIDE + 1];
+    int count = 0;
+    for (int at = 0; at < length; at += width(bytes.get(at))) {
+      if (count % STRIDE == 0) {
+        marks[count / STRIDE] = at;
+      }
+      count++;
+    }
+    this.size = count;
+    this.checkpoints = marks;
+  }
+
+  public static MappedCharStream open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new CompileError("Source file too large: " + file);
+      }
+      return new MappedCharStream(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+    }
+  }
+
+  @Override
+  public void consume() {
+    if (index >= size) {
+      throw new IllegalStateException("cannot consume EOF");
+    }
+    if (checkpoints != null) {
+      indexOffset += width(bytes.get(indexOffset));
+    }
+    index++;
+  }
+
+  @Override
+  public int LA(int i) {
+    if (i == 0) {
+      return 0;
+    }
+    int target = i > 0 ? index + i - 1 : index + i;
+    if (target < 0 || target >= size) {
+      return IntStream.EOF;
+    }
+    return codePointAt(target);
+  }
+
+  // The lexer marks the start of every token and later seeks back to it or slices from it.
+  @Override
+  public int mark() {
+    anchor = index;
+    anchorOffset = indexOffset;
+    return -1;
+  }
+
+  @Override
+  public void release(int marker) {}
+
+  @Override
+  public int index() {
+    return index;
+  }
+
+  @Override
+  public void seek(int target) {
+    target = Math.min(Math.max(target, 0), size);
+    indexOffset = offsetOf(target);
+    index = target;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String getSourceName() {
+    return name;
+  }
+
+  @Override
+  public String getText(Interval interval) {
+    int start = Math.max(interval.a, 0);
+    int stop = Math.min(interval.b, size - 1);
+    return start > stop ? "" : slice(start, stop + 1);
+  }
+
+  @Override
+  public int length() {
+    return size;
+  }
+
+  @Override
+  public char charAt(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException(i);
+    }
+    int codePoint = codePointAt(i);
+    return codePoint > 0xFFFF ? Character.highSurrogate(codePoint) : (char) codePoint;
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > size || start > end) {
+      throw new IndexOutOfBoundsException(start);
+    }
+    return slice(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return slice(0, size);
+  }
+
+  private int codePointAt(int target) {
+    return checkpoints == null ? bytes.get(target) : decode(offsetOf(target));
+  }
+
+  private String slice(int start, int end) {
+    int from = offsetOf(start);
+    byte[] text = new byte[offsetOf(end) - from];
+    bytes.get(from, text);
+    return new String(text, checkpoints == null ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+  }
+
+  // Walks forward from the nearest known position: the checkpoint, the stream index, the last
+  // mark or the last lookup, whichever is closest below the target.
+  private int offsetOf(int target) {
+    if (checkpoints == null) {
+      return target;
+    }
+    int from = target / STRIDE * STRIDE;
+    int at = checkpoints[target / STRIDE];
+    if (index <= target && index > from) {
+      from = index;
+      at = indexOffset;
+    }
+    if (anchor <= target && anchor > from) {
+      from = anchor;
+      at = anchorOffset;
+    }
+    if (recent <= target && recent > from) {
+      from = recent;
+      at = recentOffset;
+    }
+    int length = bytes.limit();
+    while (from < target && at < length) {
+      at += width(bytes.get(at));
+      from++;
+    }
+    at = Math.min(at, length);
+    recent = target;
+    recentOffset = at;
+    return at;
+  }
+
+  private int decode(int at) {
+    byte lead = bytes.get(at);
+    if (lead >= 0) {
+      return lead;
+    }
+    int width = width(lead);
+    if (width == 1 || at + width > bytes.limit()) {
+      return REPLACEMENT;
+    }
+    int codePoint = lead & (0xFF >> (width + 1));
+    for (int i = 1; i < width; i++) {
+      byte next = bytes.get(at + i);
+      if ((next & 0xC0) != 0x80) {
+        return REPLACEMENT;
+      }
+      codePoint = (codePoint << 6) | (next & 0x3F);
+    }
+    return codePoint;
+  }
+
+  // Stray continuation bytes and invalid leads count as one replacement character each.
+  private static int width(byte lead) {
+    if (lead >= 0) {
+      return 1;
+    }
+    if ((lead & 0xE0) == 0xC0) {
+      return 2;
+    }
+    if ((lead & 0xF0) == 0xE0) {
+      return 3;
+    }
+    if ((lead & 0xF8) == 0xF0) {
+      return 4;
+    }
+    return 1;
+  }
+}
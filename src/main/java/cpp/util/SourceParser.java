@@ -0,0 +1,223 @@
+package cpp.util;
+
+import cpp.antlr.cppLexer;
+import cpp.antlr.cppParser;
+import cpp.ast.ASTNode;
+import cpp.ast.BlockNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.ProgramNode;
+import cpp.parse.BodySkipper;
+import cpp.sema.ASTBuilder;
+import cpp.sema.ASTListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+public class SourceParser {
+  private static final String WARMUP_RESOURCE = "/cpp/warmup.cpp";
+  private static final List<String> WARMUP_REPL_INPUTS =
+      List.of(
+          "int x = 1;", "x = x + 2;", "x * (3 - 1)", "print_int(x);", "int f(int a) { return a; }");
+  private static final AtomicBoolean warmedUp = new AtomicBoolean();
+
+  private final cppLexer lexer = new cppLexer(null);
+  private final cppParser parser = new cppParser(null);
+  private final BailErrorStrategy bail = new BailErrorStrategy();
+  private final DefaultErrorStrategy recover = new DefaultErrorStrategy();
+  private final ParserErrorListener errors = new ParserErrorListener();
+  private final ASTListener builder = new ASTListener(parser);
+  private int fallbacks;
+
+  public cppParser.ProgramContext parseProgram(CharStream input) {
+    return parse(input, cppParser::program, null);
+  }
+
+  // Function, method and constructor bodies are only brace-matched: their tokens are hidden from
+  // the parser, which sees "{ }", and each body is parsed from a copy of its tokens on first use.
+  // bodies receives them keyed by the token index of the opening brace.
+  public cppParser.ProgramContext parseProgram(
+      CharStream input, Map<Integer, DeferredBody> bodies) {
+    return parse(input, cppParser::program, bodies);
+  }
+
+  // Builds the AST from parse events instead of a parse tree that is walked afterwards.
+  public ProgramNode buildProgram(CharStream input) {
+    parser.setBuildParseTree(false);
+    parser.addParseListener(builder);
+    try {
+      parse(input, cppParser::program, null);
+      return (ProgramNode) builder.take();
+    } finally {
+      parser.removeParseListeners();
+      parser.setBuildParseTree(true);
+      release();
+    }
+  }
+
+  // The parser is reused per thread and would otherwise keep the last token buffer and source
+  // alive. Only call this once nothing refers to the parse tree anymore.
+  public void release() {
+    parser.setTokenStream(null);
+    lexer.setInputStream(null);
+  }
+
+  public cppParser.ReplInputContext parseReplInput(String input) {
+    return parse(CharStreams.fromString(input), cppParser::replInput, null);
+  }
+
+  // Parses one top-level declaration at a time from an unbuffered token stream, so only the
+  // declaration being parsed is held in memory; the mapped source stays off the heap and tokens
+  // slice their text from it lazily. Without a token buffer there is no rewind for the SLL
+  // attempt, so streaming always predicts in full LL mode.
+  public void streamProgram(MappedCharStream input, Consumer<cppParser.TopLevelDeclContext> sink) {
+    cppParser streamParser = streamingParser(input);
+    while (streamParser.getInputStream().LA(1) != Token.EOF) {
+      sink.accept(streamParser.topLevelDecl());
+    }
+  }
+
+  public void streamDeclarations(MappedCharStream input, Consumer<ASTNode> sink) {
+    cppParser streamParser = streamingParser(input);
+    ASTListener declarations = new ASTListener(streamParser);
+    streamParser.setBuildParseTree(false);
+    streamParser.addParseListener(declarations);
+    while (streamParser.getInputStream().LA(1) != Token.EOF) {
+      streamParser.topLevelDecl();
+      sink.accept(declarations.take());
+    }
+  }
+
+  private cppParser streamingParser(MappedCharStream input) {
+    cppParser streamParser = new cppParser(new UnbufferedTokenStream<>(new cppLexer(input)));
+    streamParser.removeErrorListeners();
+    streamParser.addErrorListener(errors);
+    streamParser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    return streamParser;
+  }
+
+  public int getFallbacks() {
+    return fallbacks;
+  }
+
+  private <T extends ParserRuleContext> T parse(
+      CharStream input, Function<cppParser, T> rule, Map<Integer, DeferredBody> bodies) {
+    lexer.setInputStream(input);
+    CommonTokenStream tokens = new CommonTokenStream(lexer);
+    if (bodies != null) {
+      hideBodies(tokens, bodies);
+    }
+    parser.setTokenStream(tokens);
+    parser.removeErrorListeners();
+    builder.reset();
+    parser.setErrorHandler(bail);
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return rule.apply(parser);
+    } catch (ParseCancellationException e) {
+      fallbacks++;
+      builder.reset();
+      tokens.seek(0);
+      parser.setTokenStream(tokens);
+      parser.addErrorListener(errors);
+      parser.setErrorHandler(recover);
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return rule.apply(parser);
+    }
+  }
+
+  // Every '{' right after ')' opens a body: class bodies follow a name, statements only occur
+  // inside bodies, and the scan jumps over each body it finds.
+  private static void hideBodies(CommonTokenStream tokens, Map<Integer, DeferredBody> bodies) {
+    tokens.fill();
+    List<Token> all = tokens.getTokens();
+    BodySkipper.Tokens view =
+        new BodySkipper.Tokens() {
+          @Override
+          public String symbol(int index) {
+            Token token = all.get(index);
+            return cppLexer.VOCABULARY.getLiteralName(token.getType()) != null
+                ? token.getText()
+                : null;
+          }
+
+          @Override
+          public boolean isEof(int index) {
+            return all.get(index).getType() == Token.EOF;
+          }
+
+          @Override
+          public int line(int index) {
+            return all.get(index).getLine();
+          }
+
+          @Override
+          public int column(int index) {
+            return all.get(index).getCharPositionInLine();
+          }
+        };
+    for (int i = 1; i < all.size(); i++) {
+      if (!"{".equals(view.symbol(i)) || !")".equals(view.symbol(i - 1))) {
+        continue;
+      }
+      int close = BodySkipper.skip(view, i);
+      List<Token> body = new ArrayList<>(close - i + 1);
+      for (int j = i; j <= close; j++) {
+        body.add(new CommonToken(all.get(j)));
+      }
+      for (int j = i + 1; j < close; j++) {
+        ((CommonToken) all.get(j)).setChannel(Token.HIDDEN_CHANNEL);
+      }
+      bodies.put(i, () -> parseBlock(body));
+      i = close;
+    }
+  }
+
+  private static BlockNode parseBlock(List<Token> body) {
+    cppParser blockParser = new cppParser(new CommonTokenStream(new ListTokenSource(body)));
+    blockParser.removeErrorListeners();
+    blockParser.addErrorListener(new ParserErrorListener());
+    return (BlockNode) new ASTBuilder().visit(blockParser.block());
+  }
+
+  public static void warmUp() {
+    if (!warmedUp.compareAndSet(false, true)) {
+      return;
+    }
+    try (InputStream in = SourceParser.class.getResourceAsStream(WARMUP_RESOURCE)) {
+      SourceParser warm = new SourceParser();
+      if (in != null) {
+        String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        warm.parseProgram(CharStreams.fromString(source));
+      }
+      for (String input : WARMUP_REPL_INPUTS) {
+        warm.parseReplInput(input);
+      }
+    } catch (IOException | RuntimeException e) {
+      IO.eprintln("[parser] warm-up skipped: " + e.getMessage());
+    }
+  }
+
+  public static void warmUpInBackground() {
+    Thread thread = new Thread(SourceParser::warmUp, "cpp-parser-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -0,0 +1,706 @@
+package cpp.vm;
+
+import static cpp.vm.Opcodes.*;
+
+import cpp.ast.AssignExprNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.BlockNode;
+import cpp.ast.CallExprNode;
+import cpp.ast.ExprNode;
+import cpp.ast.ExprStmtNode;
+import cpp.ast.IfStmtNode;
+import cpp.ast.InlinedCallNode;
+import cpp.ast.LiteralNode;
+import cpp.ast.ReturnStmtNode;
+import cpp.ast.StmtNode;
+import cpp.ast.TypeNode;
+import cpp.ast.UnaryExprNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.ast.WhileStmtNode;
+import cpp.model.ClassDef;
+import cpp.model.ConstructorDef;
+import cpp.model.FieldDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ParamDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.runtime.Env;
+import cpp.runtime.VarSlot;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BytecodeCompiler {
+  private final ProgramDef program;
+
+  public BytecodeCompiler(ProgramDef program) {
+    this.program = program;
+  }
+
+  public CompiledBody compile(FunctionDef function) {
+    if (function.isBuiltin || function.body == null) {
+      return null;
+    }
+    return compile(
+        function.name,
+        function.params,
+        function.returnType,
+        function.body,
+        null,
+        false,
+        "Missing return in function: " + function.name);
+  }
+
+  public CompiledBody compile(MethodDef method) {
+    ClassDef owner = program.classes.get(method.declaredIn);
+    return compile(
+        method.declaredIn + "::" + method.name,
+        method.params,
+        method.returnType,
+        method.body,
+        owner,
+        false,
+        "Missing return in method: " + method.name);
+  }
+
+  public CompiledBody compile(ConstructorDef ctor) {
+    if (ctor.body == null) {
+      return null;
+    }
+    ClassDef owner = program.classes.get(ctor.className);
+    return compile(ctor.className, ctor.params, Type.voidType(), ctor.body, owner, true, null);
+  }
+
+  public CompiledBody compileLoop(WhileStmtNode loop, Env env) {
+    try {
+      Unit unit = new Unit("while@" + loop.line(), Type.voidType(), null, false, null);
+      unit.outer = env;
+      return unit.compileLoop(loop);
+    } catch (Unsupported e) {
+      return null;
+    }
+  }
+
+  private CompiledBody compile(
+      String name,
+      List<ParamDef> params,
+      Type returnType,
+      BlockNode body,
+      ClassDef owner,
+      boolean isConstructor,
+      String missingReturn) {
+    try {
+      return new Unit(name, returnType, owner, isConstructor, missingReturn).compile(params, body);
+    } catch (Unsupported e) {
+      return null;
+    }
+  }
+
+  private static final class Unsupported extends RuntimeException {
+    Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final class Local {
+    final Type.Kind kind;
+    final int slot;
+    final boolean readOnly;
+
+    Local(Type.Kind kind, int slot, boolean readOnly) {
+      this.kind = kind;
+      this.slot = slot;
+      this.readOnly = readOnly;
+    }
+
+    boolean isObj() {
+      return kind == Type.Kind.STRING;
+    }
+  }
+
+  private final class Unit {
+    private final String name;
+    private final Type returnType;
+    private final Map<String, Type> fields = new HashMap<>();
+    private final boolean isConstructor;
+    private final String missingReturn;
+    private final Deque<Map<String, Local>> scopes = new ArrayDeque<>();
+    private final Map<String, Local> liveIns = new LinkedHashMap<>();
+    private Env outer;
+    private final List<Object> constants = new ArrayList<>();
+    private int[] code = new int[64];
+    private int pc;
+    private int intSlots;
+    private int objSlots;
+    private int intDepth;
+    private int objDepth;
+    private int maxIntDepth;
+    private int maxObjDepth;
+
+    Unit(
+        String name,
+        Type returnType,
+        ClassDef owner,
+        boolean isConstructor,
+        String missingReturn) {
+      this.name = name;
+      this.returnType = returnType;
+      this.isConstructor = isConstructor;
+      this.missingReturn = missingReturn;
+      for (ClassDef current = owner; current != null; current = current.baseClass) {
+        for (FieldDef field : current.fields) {
+          fields.putIfAbsent(field.name, field.type);
+        }
+      }
+    }
+
+    CompiledBody compile(List<ParamDef> params, BlockNode body) {
+      if (returnType.isRef || !(returnType.isVoid() || returnType.isScalar())) {
+        throw new Unsupported();
+      }
+      boolean[] paramIsObj = new boolean[params.size()];
+      int[] paramSlots = new int[params.size()];
+      Map<String, Local> top = new HashMap<>();
+      for (int i = 0; i < params.size(); i++) {
+        ParamDef param = params.get(i);
+        if (param.type.isRef || fields.containsKey(param.name)) {
+          throw new Unsupported();
+        }
+        Local local = newLocal(kindOf(param.type), false);
+        top.put(param.name, local);
+        paramIsObj[i] = local.isObj();
+        paramSlots[i] = local.slot;
+      }
+      scopes.push(top);
+      compileStatements(body);
+      if (returnType.isVoid()) {
+        emit(RET);
+      } else {
+        emit(MISSING_RETURN, constant(missingReturn));
+      }
+      return finish(paramIsObj, paramSlots);
+    }
+
+    CompiledBody compileLoop(WhileStmtNode loop) {
+      scopes.push(new HashMap<>());
+      compileStmt(loop);
+      emit(RET);
+      boolean[] liveInIsObj = new boolean[liveIns.size()];
+      int[] liveInSlots = new int[liveIns.size()];
+      int index = 0;
+      for (Local local : liveIns.values()) {
+        liveInIsObj[index] = local.isObj();
+        liveInSlots[index++] = local.slot;
+      }
+      CompiledBody body = finish(liveInIsObj, liveInSlots);
+      body.liveIns = liveIns.keySet().toArray(new String[0]);
+      return body;
+    }
+
+    private CompiledBody finish(boolean[] paramIsObj, int[] paramSlots) {
+      return new CompiledBody(
+          name,
+          Arrays.copyOf(code, pc),
+          constants.toArray(),
+          intSlots,
+          objSlots,
+          maxIntDepth,
+          maxObjDepth,
+          paramIsObj,
+          paramSlots,
+          returnType);
+    }
+
+    private void compileBlock(BlockNode block) {
+      scopes.push(new HashMap<>());
+      compileStatements(block);
+      scopes.pop();
+    }
+
+    private void compileStatements(BlockNode block) {
+      for (StmtNode stmt : block.statements) {
+        compileStmt(stmt);
+      }
+    }
+
+    private void compileStmt(StmtNode stmt) {
+      if (stmt instanceof VarDeclNode decl) {
+        compileVarDecl(decl);
+      } else if (stmt instanceof ExprStmtNode exprStmt) {
+        if (!tryIncrement(exprStmt.expr)) {
+          discard(compileExpr(exprStmt.expr));
+        }
+      } else if (stmt instanceof IfStmtNode ifStmt) {
+        int toElse = compileJumpIfFalse(ifStmt.condition);
+        compileBlock(ifStmt.thenBlock);
+        if (ifStmt.elseBlock != null) {
+          int toEnd = emitJump(JMP);
+          patch(toElse);
+          compileBlock(ifStmt.elseBlock);
+          patch(toEnd);
+        } else {
+          patch(toElse);
+        }
+      } else if (stmt instanceof WhileStmtNode whileStmt) {
+        int top = pc;
+        int toEnd = compileJumpIfFalse(whileStmt.condition);
+        compileBlock(whileStmt.body);
+        emit(JMP, top);
+        patch(toEnd);
+      } else if (stmt instanceof ReturnStmtNode returnStmt) {
+        compileReturn(returnStmt);
+      } else if (stmt instanceof BlockNode block) {
+        compileBlock(block);
+      } else {
+        throw new Unsupported();
+      }
+    }
+
+    private void compileVarDecl(VarDeclNode decl) {
+      Type.Kind kind = kindOf(decl.type);
+      if (scopes.peek().containsKey(decl.name) || fields.containsKey(decl.name)) {
+        throw new Unsupported();
+      }
+      if (decl.init != null) {
+        require(compileExpr(decl.init) == kind);
+      } else if (decl.isConst) {
+        throw new Unsupported();
+      } else if (kind == Type.Kind.STRING) {
+        emit(OCONST, constant(""));
+        push(kind);
+      } else {
+        emit(ICONST, 0);
+        push(kind);
+      }
+      Local local = newLocal(kind, decl.isConst);
+      store(local);
+      scopes.peek().put(decl.name, local);
+    }
+
+    private void compileReturn(ReturnStmtNode stmt) {
+      if (isConstructor || outer != null) {
+        throw new Unsupported();
+      }
+      if (stmt.value == null) {
+        require(returnType.isVoid());
+        emit(RET);
+        return;
+      }
+      require(!returnType.isVoid());
+      Type.Kind kind = compileExpr(stmt.value);
+      require(kind == returnType.kind);
+      emit(kind == Type.Kind.STRING ? ORET : IRET);
+      pop(kind);
+    }
+
+    private boolean tryIncrement(ExprNode expr) {
+      if (!(expr instanceof AssignExprNode assign)
+          || !(assign.target instanceof VarRefNode target)
+          || !(assign.value instanceof BinaryExprNode binary)
+          || !(binary.left instanceof VarRefNode left)
+          || !left.name.equals(target.name)
+          || !(binary.right instanceof LiteralNode literal)
+          || !(literal.value instanceof Integer delta)
+          || !(binary.op.equals("+") || binary.op.equals("-"))) {
+        return false;
+      }
+      Local local = lookup(target.name);
+      if (local == null || local.readOnly || local.kind != Type.Kind.INT) {
+        return false;
+      }
+      emit(IINC, local.slot, binary.op.equals("+") ? delta : -delta);
+      return true;
+    }
+
+    private int compileJumpIfFalse(ExprNode condition) {
+      if (condition instanceof BinaryExprNode binary) {
+        int op =
+            switch (binary.op) {
+              case "==" -> JF_EQ;
+              case "!=" -> JF_NE;
+              case "<" -> JF_LT;
+              case "<=" -> JF_LE;
+              case ">" -> JF_GT;
+              case ">=" -> JF_GE;
+              default -> -1;
+            };
+        if (op == JF_LT
+            && binary.left instanceof VarRefNode ref
+            && binary.right instanceof LiteralNode literal
+            && literal.value instanceof Integer bound) {
+          Local local = lookup(ref.name);
+          if (local != null && local.kind == Type.Kind.INT) {
+            emit(ILOAD_ICONST_JF_LT, local.slot, bound, 0);
+            return pc - 1;
+          }
+        }
+        if (op >= 0) {
+          Type.Kind left = compileExpr(binary.left);
+          Type.Kind right = compileExpr(binary.right);
+          require(left == right && left != Type.Kind.STRING && left != Type.Kind.VOID);
+          if (op != JF_EQ && op != JF_NE) {
+            require(left == Type.Kind.INT || left == Type.Kind.CHAR);
+          }
+          intDepth -= 2;
+          return emitJump(op);
+        }
+      }
+      Type.Kind kind = compileExpr(condition);
+      require(kind != Type.Kind.VOID);
+      if (kind == Type.Kind.STRING) {
+        emit(OTRUTHY);
+        pop(Type.Kind.STRING);
+        push(Type.Kind.BOOL);
+      }
+      pop(Type.Kind.BOOL);
+      return emitJump(JZ);
+    }
+
+    private Type.Kind compileExpr(ExprNode expr) {
+      if (expr instanceof LiteralNode literal) {
+        return compileLiteral(literal.value);
+      }
+      if (expr instanceof VarRefNode ref) {
+        return compileLoad(ref.name);
+      }
+      if (expr instanceof AssignExprNode assign) {
+        return compileAssign(assign);
+      }
+      if (expr instanceof BinaryExprNode binary) {
+        return compileBinary(binary);
+      }
+      if (expr instanceof UnaryExprNode unary) {
+        Type.Kind kind = compileExpr(unary.expr);
+        if (unary.op.equals("!")) {
+          require(kind == Type.Kind.BOOL);
+          emit(NOT);
+        } else {
+          require(kind == Type.Kind.INT);
+          if (unary.op.equals("-")) {
+            emit(INEG);
+          }
+        }
+        return kind;
+      }
+      if (expr instanceof CallExprNode call) {
+        return compileCall(call);
+      }
+      if (expr instanceof InlinedCallNode inlined) {
+        return compileExpr(inlined.call);
+      }
+      throw new Unsupported();
+    }
+
+    private Type.Kind compileLiteral(Object value) {
+      if (value instanceof Integer intValue) {
+        emit(ICONST, intValue);
+        return push(Type.Kind.INT);
+      }
+      if (value instanceof Boolean boolValue) {
+        emit(ICONST, boolValue ? 1 : 0);
+        return push(Type.Kind.BOOL);
+      }
+      if (value instanceof Character charValue) {
+        emit(ICONST, charValue);
+        return push(Type.Kind.CHAR);
+      }
+      if (value instanceof String stringValue) {
+        emit(OCONST, constant(stringValue));
+        return push(Type.Kind.STRING);
+      }
+      throw new Unsupported();
+    }
+
+    private Type.Kind compileLoad(String name) {
+      Local local = lookup(name);
+      if (local != null) {
+        emit(local.isObj() ? OLOAD : ILOAD, local.slot);
+        return push(local.kind);
+      }
+      Type fieldType = fields.get(name);
+      require(fieldType != null);
+      Type.Kind kind = kindOf(fieldType);
+      emit(kind == Type.Kind.STRING ? OGETFIELD : IGETFIELD, fieldRef(name, fieldType));
+      return push(kind);
+    }
+
+    private Type.Kind compileAssign(AssignExprNode assign) {
+      require(assign.target instanceof VarRefNode);
+      String target = ((VarRefNode) assign.target).name;
+      Local local = lookup(target);
+      if (local != null) {
+        require(!local.readOnly);
+        require(compileExpr(assign.value) == local.kind);
+        emit(local.isObj() ? ODUP : IDUP);
+        push(local.kind);
+        store(local);
+        return local.kind;
+      }
+      Type fieldType = fields.get(target);
+      require(fieldType != null);
+      Type.Kind kind = kindOf(fieldType);
+      require(compileExpr(assign.value) == kind);
+      emit(kind == Type.Kind.STRING ? ODUP : IDUP);
+      push(kind);
+      emit(kind == Type.Kind.STRING ? OPUTFIELD : IPUTFIELD, fieldRef(target, fieldType));
+      pop(kind);
+      return kind;
+    }
+
+    private Type.Kind compileBinary(BinaryExprNode binary) {
+      String op = binary.op;
+      if (op.equals("&&") || op.equals("||")) {
+        require(compileExpr(binary.left) == Type.Kind.BOOL);
+        intDepth--;
+        int shortCircuit;
+        if (op.equals("&&")) {
+          shortCircuit = emitJump(JZ);
+        } else {
+          emit(NOT);
+          shortCircuit = emitJump(JZ);
+        }
+        require(compileExpr(binary.right) == Type.Kind.BOOL);
+        int toEnd = emitJump(JMP);
+        patch(shortCircuit);
+        emit(ICONST, op.equals("&&") ? 0 : 1);
+        patch(toEnd);
+        return Type.Kind.BOOL;
+      }
+      if (op.equals("+")
+          && binary.left instanceof VarRefNode leftRef
+          && lookup(leftRef.name) != null
+          && lookup(leftRef.name).kind == Type.Kind.INT) {
+        int leftSlot = lookup(leftRef.name).slot;
+        if (binary.right instanceof LiteralNode literal && literal.value instanceof Integer c) {
+          emit(ILOAD_ICONST_ADD, leftSlot, c);
+          return push(Type.Kind.INT);
+        }
+        if (binary.right instanceof VarRefNode rightRef
+            && lookup(rightRef.name) != null
+            && lookup(rightRef.name).kind == Type.Kind.INT) {
+          emit(ILOAD_ILOAD_ADD, leftSlot, lookup(rightRef.name).slot);
+          return push(Type.Kind.INT);
+        }
+      }
+      Type.Kind left = compileExpr(binary.left);
+      Type.Kind right = compileExpr(binary.right);
+      require(left == right && left != Type.Kind.VOID);
+      switch (op) {
+        case "==", "!=" -> {
+          if (left == Type.Kind.STRING) {
+            emit(op.equals("==") ? OCMPEQ : OCMPNE);
+            objDepth -= 2;
+            return push(Type.Kind.BOOL);
+          }
+          emit(op.equals("==") ? ICMPEQ : ICMPNE);
+          intDepth--;
+          return Type.Kind.BOOL;
+        }
+        case "<", "<=", ">", ">=" -> {
+          require(left == Type.Kind.INT || left == Type.Kind.CHAR);
+          emit(
+              switch (op) {
+                case "<" -> ICMPLT;
+                case "<=" -> ICMPLE;
+                case ">" -> ICMPGT;
+                default -> ICMPGE;
+              });
+          intDepth--;
+          return Type.Kind.BOOL;
+        }
+        case "+", "-", "*", "/", "%" -> {
+          require(left == Type.Kind.INT);
+          emit(
+              switch (op) {
+                case "+" -> IADD;
+                case "-" -> ISUB;
+                case "*" -> IMUL;
+                case "/" -> IDIV;
+                default -> IREM;
+              });
+          intDepth--;
+          return Type.Kind.INT;
+        }
+        default -> throw new Unsupported();
+      }
+    }
+
+    private Type.Kind compileCall(CallExprNode call) {
+      List<FunctionDef> candidates = program.functions.get(call.name);
+      require(candidates != null && !program.classes.containsKey(call.name));
+      List<ExprNode> args = call.args == null ? List.of() : call.args;
+      Type.Kind[] argKinds = new Type.Kind[args.size()];
+      boolean[] lvalues = new boolean[args.size()];
+      for (int i = 0; i < args.size(); i++) {
+        argKinds[i] = compileExpr(args.get(i));
+        lvalues[i] = isLValue(args.get(i));
+      }
+      FunctionDef selected = null;
+      for (FunctionDef candidate : candidates) {
+        if (matches(candidate.params, argKinds, lvalues)) {
+          require(selected == null);
+          selected = candidate;
+        }
+      }
+      require(selected != null);
+      for (Type.Kind kind : argKinds) {
+        pop(kind);
+      }
+      if (selected.isBuiltin) {
+        emit(
+            switch (selected.name) {
+              case "print_int" -> PRINT_INT;
+              case "print_bool" -> PRINT_BOOL;
+              case "print_char" -> PRINT_CHAR;
+              case "print_string" -> PRINT_STRING;
+              default -> throw new Unsupported();
+            });
+        return Type.Kind.VOID;
+      }
+      boolean[] paramIsObj = new boolean[selected.params.size()];
+      for (int i = 0; i < paramIsObj.length; i++) {
+        ParamDef param = selected.params.get(i);
+        require(!param.type.isRef);
+        paramIsObj[i] = param.type.kind == Type.Kind.STRING;
+      }
+      Type result = selected.returnType;
+      require(!result.isRef && (result.isVoid() || result.isScalar()));
+      emit(CALL, constant(new CallSite(selected, paramIsObj)));
+      return push(result.kind);
+    }
+
+    private boolean matches(List<ParamDef> params, Type.Kind[] kinds, boolean[] lvalues) {
+      if (params.size() != kinds.length) {
+        return false;
+      }
+      for (int i = 0; i < kinds.length; i++) {
+        Type type = params.get(i).type;
+        if (type.kind != kinds[i] || type.isRef && !lvalues[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean isLValue(ExprNode expr) {
+      if (!(expr instanceof VarRefNode ref)) {
+        return false;
+      }
+      Local local = lookup(ref.name);
+      return local != null ? !local.readOnly : fields.containsKey(ref.name);
+    }
+
+    private Type.Kind kindOf(TypeNode type) {
+      require(!type.isRef && !type.isArray());
+      return switch (type.name) {
+        case "int" -> Type.Kind.INT;
+        case "bool" -> Type.Kind.BOOL;
+        case "char" -> Type.Kind.CHAR;
+        case "string" -> Type.Kind.STRING;
+        default -> throw new Unsupported();
+      };
+    }
+
+    private Type.Kind kindOf(Type type) {
+      require(!type.isRef && type.isScalar());
+      return type.kind;
+    }
+
+    private Local lookup(String name) {
+      for (Map<String, Local> scope : scopes) {
+        Local local = scope.get(name);
+        if (local != null) {
+          return local;
+        }
+      }
+      return outer != null ? liveIn(name) : null;
+    }
+
+    private Local liveIn(String name) {
+      Local local = liveIns.get(name);
+      if (local == null) {
+        VarSlot slot = outer.resolve(name);
+        if (slot == null) {
+          return null;
+        }
+        local = newLocal(kindOf(slot.getDeclaredType().withoutRef()), slot.isReadOnly());
+        liveIns.put(name, local);
+      }
+      return local;
+    }
+
+    private Local newLocal(Type.Kind kind, boolean readOnly) {
+      int slot = kind == Type.Kind.STRING ? objSlots++ : intSlots++;
+      return new Local(kind, slot, readOnly);
+    }
+
+    private void store(Local local) {
+      emit(local.isObj() ? OSTORE : ISTORE, local.slot);
+      pop(local.kind);
+    }
+
+    private Type.Kind push(Type.Kind kind) {
+      if (kind == Type.Kind.STRING) {
+        maxObjDepth = Math.max(maxObjDepth, ++objDepth);
+      } else if (kind != Type.Kind.VOID) {
+        maxIntDepth = Math.max(maxIntDepth, ++intDepth);
+      }
+      return kind;
+    }
+
+    private void pop(Type.Kind kind) {
+      if (kind == Type.Kind.STRING) {
+        objDepth--;
+      } else if (kind != Type.Kind.VOID) {
+        intDepth--;
+      }
+    }
+
+    private void discard(Type.Kind kind) {
+      if (kind != Type.Kind.VOID) {
+        emit(kind == Type.Kind.STRING ? OPOP : IPOP);
+        pop(kind);
+      }
+    }
+
+    private int constant(Object value) {
+      constants.add(value);
+      return constants.size() - 1;
+    }
+
+    private int fieldRef(String name, Type type) {
+      return constant(new FieldRef(name, type));
+    }
+
+    private int emitJump(int op) {
+      emit(op, 0);
+      return pc - 1;
+    }
+
+    private void patch(int operand) {
+      code[operand] = pc;
+    }
+
+    private void emit(int... words) {
+      if (pc + words.length > code.length) {
+        code = Arrays.copyOf(code, Math.max(code.length * 2, pc + words.length));
+      }
+      for (int word : words) {
+        code[pc++] = word;
+      }
+    }
+
+    private void require(boolean condition) {
+      if (!condition) {
+        throw new Unsupported();
+      }
+    }
+  }
+}
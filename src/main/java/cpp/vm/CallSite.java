@@ -0,0 +1,25 @@
+package cpp.vm;
+
+import cpp.model.FunctionDef;
+
+final class CallSite {
+  final FunctionDef function;
+  final boolean[] paramIsObj;
+  final int intArgs;
+  final int objArgs;
+  CompiledBody target;
+  int generation = -1;
+
+  CallSite(FunctionDef function, boolean[] paramIsObj) {
+    this.function = function;
+    this.paramIsObj = paramIsObj;
+    int objects = 0;
+    for (boolean isObj : paramIsObj) {
+      if (isObj) {
+        objects++;
+      }
+    }
+    this.objArgs = objects;
+    this.intArgs = paramIsObj.length - objects;
+  }
+}
@@ -0,0 +1,52 @@
+package cpp.vm;
+
+import cpp.model.FunctionDef;
+import cpp.model.Type;
+import java.lang.invoke.MethodHandle;
+
+public final class CompiledBody {
+  final String name;
+  final int[] code;
+  final Object[] constants;
+  final int intSlots;
+  final int objSlots;
+  final int intFrameSize;
+  final int objFrameSize;
+  final boolean[] paramIsObj;
+  final int[] paramSlots;
+  final Type returnType;
+  FunctionDef function;
+  String[] liveIns;
+  int invocations;
+  int backEdges;
+  boolean jitQueued;
+  volatile MethodHandle jitted;
+  volatile MethodHandle osrEntry;
+
+  CompiledBody(
+      String name,
+      int[] code,
+      Object[] constants,
+      int intSlots,
+      int objSlots,
+      int maxIntStack,
+      int maxObjStack,
+      boolean[] paramIsObj,
+      int[] paramSlots,
+      Type returnType) {
+    this.name = name;
+    this.code = code;
+    this.constants = constants;
+    this.intSlots = intSlots;
+    this.objSlots = objSlots;
+    this.intFrameSize = intSlots + maxIntStack;
+    this.objFrameSize = objSlots + maxObjStack;
+    this.paramIsObj = paramIsObj;
+    this.paramSlots = paramSlots;
+    this.returnType = returnType;
+  }
+
+  public int size() {
+    return code.length;
+  }
+}
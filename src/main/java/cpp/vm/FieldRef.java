@@ -0,0 +1,13 @@
+package cpp.vm;
+
+import cpp.model.Type;
+
+final class FieldRef {
+  final String name;
+  final Type type;
+
+  FieldRef(String name, Type type) {
+    this.name = name;
+    this.type = type;
+  }
+}
@@ -0,0 +1,140 @@
+package cpp.vm;
+
+import cpp.model.FunctionDef;
+import cpp.util.IO;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Jit {
+  public static final int DEFAULT_INVOCATION_THRESHOLD = 1000;
+  public static final int DEFAULT_LOOP_THRESHOLD = 10000;
+  public static final int MAX_UNIT_FUNCTIONS = 32;
+
+  // One daemon compiler thread for the whole process, however many VMs enable the JIT.
+  private static final Executor BACKGROUND =
+      Executors.newSingleThreadExecutor(
+          task -> {
+            Thread thread = new Thread(task, "cpp-jit");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Vm vm;
+  private final int invocationThreshold;
+  private final int loopThreshold;
+  private final boolean log;
+  private final Executor executor;
+  private final AtomicInteger compiled = new AtomicInteger();
+
+  Jit(Vm vm, int invocationThreshold, int loopThreshold, boolean log, Executor executor) {
+    this.vm = vm;
+    this.invocationThreshold = invocationThreshold;
+    this.loopThreshold = loopThreshold;
+    this.log = log;
+    this.executor = executor != null ? executor : BACKGROUND;
+  }
+
+  public int compiledFunctions() {
+    return compiled.get();
+  }
+
+  void countInvocation(CompiledBody body) {
+    if (body.function != null && ++body.invocations >= invocationThreshold) {
+      enqueue(body, body.invocations + " calls");
+    }
+  }
+
+  void countBackEdge(CompiledBody body) {
+    if (++body.backEdges >= loopThreshold) {
+      enqueue(body, body.backEdges + " loop iterations");
+    }
+  }
+
+  // Queues a function before this run has counted its calls, e.g. because a profile marks it hot.
+  public void enqueue(FunctionDef function, String trigger) {
+    CompiledBody body = vm.codeFor(function);
+    if (body != null) {
+      enqueue(body, trigger);
+    }
+  }
+
+  private void enqueue(CompiledBody root, String trigger) {
+    if (root.jitQueued) {
+      return;
+    }
+    root.jitQueued = true;
+    if (!JvmCompiler.canCompile(root)) {
+      if (log) {
+        IO.eprintln("[jit] skipped " + root.name + ": accesses object fields");
+      }
+      return;
+    }
+    List<CompiledBody> unit = collectUnit(root);
+    executor.execute(() -> compile(unit, trigger));
+  }
+
+  private List<CompiledBody> collectUnit(CompiledBody root) {
+    List<CompiledBody> unit = new ArrayList<>();
+    Set<FunctionDef> seen = new HashSet<>();
+    unit.add(root);
+    seen.add(root.function);
+    for (int next = 0; next < unit.size(); next++) {
+      for (Object constant : unit.get(next).constants) {
+        if (!(constant instanceof CallSite site)
+            || site.function.deferredBody != null
+            || !seen.add(site.function)
+            || unit.size() >= MAX_UNIT_FUNCTIONS) {
+          continue;
+        }
+        CompiledBody callee = vm.codeFor(site.function);
+        if (callee != null && JvmCompiler.canCompile(callee)) {
+          unit.add(callee);
+        }
+      }
+    }
+    return unit;
+  }
+
+  private void compile(List<CompiledBody> unit, String trigger) {
+    CompiledBody root = unit.get(0);
+    long start = System.nanoTime();
+    JvmCompiler compiler = new JvmCompiler(vm, unit);
+    try {
+      compiler.compile();
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      if (log) {
+        IO.eprintln("[jit] failed " + root.name + ": " + e);
+      }
+      return;
+    }
+    for (int i = 0; i < unit.size(); i++) {
+      CompiledBody body = unit.get(i);
+      if (compiler.entries[i] != null && body.jitted == null) {
+        body.jitted = compiler.entries[i];
+        compiled.incrementAndGet();
+      }
+    }
+    if (compiler.osrEntry != null) {
+      root.osrEntry = compiler.osrEntry;
+    }
+    if (log) {
+      long micros = (System.nanoTime() - start) / 1000;
+      IO.eprintln(
+          "[jit] compiled "
+              + root.name
+              + " after "
+              + trigger
+              + " ("
+              + unit.size()
+              + (unit.size() == 1 ? " body, " : " bodies, ")
+              + micros
+              + " us"
+              + (compiler.osrEntry != null ? ", with OSR entry)" : ")"));
+    }
+  }
+}
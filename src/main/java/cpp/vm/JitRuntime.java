@@ -0,0 +1,42 @@
+package cpp.vm;
+
+import cpp.error.RuntimeError;
+import cpp.util.IO;
+
+final class JitRuntime {
+  static int div(int dividend, int divisor) {
+    if (divisor == 0) {
+      throw new RuntimeError("Division by zero");
+    }
+    return dividend / divisor;
+  }
+
+  static int rem(int dividend, int divisor) {
+    if (divisor == 0) {
+      throw new RuntimeError("Division by zero");
+    }
+    return dividend % divisor;
+  }
+
+  static void printInt(int value) {
+    IO.println(Integer.toString(value));
+  }
+
+  static void printBool(int value) {
+    IO.println(value != 0 ? "1" : "0");
+  }
+
+  static void printChar(int value) {
+    IO.println(Character.toString((char) value));
+  }
+
+  static void printString(String value) {
+    IO.println(value);
+  }
+
+  static RuntimeError error(String message) {
+    return new RuntimeError(message);
+  }
+
+  private JitRuntime() {}
+}
@@ -0,0 +1,366 @@
+package cpp.vm;
+
+import static cpp.vm.Opcodes.*;
+import static java.lang.constant.ConstantDescs.BSM_CLASS_DATA_AT;
+import static java.lang.constant.ConstantDescs.CD_Integer;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_String;
+import static java.lang.constant.ConstantDescs.CD_boolean;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+import static java.lang.constant.ConstantDescs.DEFAULT_NAME;
+
+import cpp.model.FunctionDef;
+import cpp.model.Type;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class JvmCompiler {
+  private static final ClassDesc CD_UNIT = ClassDesc.of("cpp.vm.JitUnit");
+  private static final ClassDesc CD_RUNTIME = ClassDesc.of("cpp.vm.JitRuntime");
+  private static final ClassDesc CD_VM = ClassDesc.of("cpp.vm.Vm");
+  private static final ClassDesc CD_CALL_SITE = ClassDesc.of("cpp.vm.CallSite");
+  private static final ClassDesc CD_RUNTIME_ERROR = ClassDesc.of("cpp.error.RuntimeError");
+  private static final MethodTypeDesc INT_INT_TO_INT = MethodTypeDesc.of(CD_int, CD_int, CD_int);
+  private static final MethodTypeDesc INT_TO_VOID = MethodTypeDesc.of(CD_void, CD_int);
+  private static final MethodType ENTRY_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+  private static final MethodTypeDesc OSR_DESCRIPTOR =
+      MethodTypeDesc.of(CD_Object, CD_int, CD_int.arrayType(), CD_Object.arrayType());
+  private static final MethodType OSR_TYPE =
+      MethodType.methodType(Object.class, int.class, int[].class, Object[].class);
+
+  private final List<CompiledBody> bodies;
+  private final Map<FunctionDef, Integer> indices = new HashMap<>();
+  private final List<Object> classData = new ArrayList<>();
+  MethodHandle[] entries;
+  MethodHandle osrEntry;
+
+  JvmCompiler(Vm vm, List<CompiledBody> unit) {
+    this.bodies = List.copyOf(unit);
+    for (int i = 0; i < bodies.size(); i++) {
+      if (bodies.get(i).function != null) {
+        indices.put(bodies.get(i).function, i);
+      }
+    }
+    classData.add(vm);
+  }
+
+  static boolean canCompile(CompiledBody body) {
+    int[] code = body.code;
+    for (int pc = 0; pc < code.length; pc += 1 + operandCount(code[pc])) {
+      switch (code[pc]) {
+        case IGETFIELD, OGETFIELD, IPUTFIELD, OPUTFIELD -> {
+          return false;
+        }
+        default -> {}
+      }
+    }
+    return true;
+  }
+
+  void compile() throws ReflectiveOperationException {
+    CompiledBody root = bodies.get(0);
+    boolean osr = !loopHeads(root).isEmpty();
+    byte[] bytes =
+        ClassFile.of()
+            .build(
+                CD_UNIT,
+                clb -> {
+                  clb.withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+                  for (int i = 0; i < bodies.size(); i++) {
+                    CompiledBody body = bodies.get(i);
+                    if (body.function != null) {
+                      clb.withMethodBody(
+                          methodName(i),
+                          descriptor(body.paramIsObj, body.returnType),
+                          ClassFile.ACC_STATIC,
+                          cb -> emitBody(cb, body, false));
+                    }
+                  }
+                  if (osr) {
+                    clb.withMethodBody(
+                        "osr",
+                        OSR_DESCRIPTOR,
+                        ClassFile.ACC_STATIC,
+                        cb -> emitBody(cb, root, true));
+                  }
+                });
+    MethodHandles.Lookup unit =
+        MethodHandles.lookup().defineHiddenClassWithClassData(bytes, List.copyOf(classData), true);
+    entries = new MethodHandle[bodies.size()];
+    for (int i = 0; i < bodies.size(); i++) {
+      CompiledBody body = bodies.get(i);
+      if (body.function != null) {
+        MethodHandle handle = unit.findStatic(unit.lookupClass(), methodName(i), methodType(body));
+        entries[i] = handle.asSpreader(Object[].class, body.paramIsObj.length).asType(ENTRY_TYPE);
+      }
+    }
+    if (osr) {
+      osrEntry = unit.findStatic(unit.lookupClass(), "osr", OSR_TYPE);
+    }
+  }
+
+  static List<Integer> loopHeads(CompiledBody body) {
+    List<Integer> heads = new ArrayList<>();
+    int[] code = body.code;
+    for (int pc = 0; pc < code.length; pc += 1 + operandCount(code[pc])) {
+      if (code[pc] == JMP && code[pc + 1] < pc && !heads.contains(code[pc + 1])) {
+        heads.add(code[pc + 1]);
+      }
+    }
+    return heads;
+  }
+
+  private void emitBody(CodeBuilder cb, CompiledBody body, boolean osr) {
+    int[] code = body.code;
+    int[] intLocals = new int[body.intSlots];
+    int[] objLocals = new int[body.objSlots];
+    int next;
+    if (osr) {
+      next = 3;
+      for (int slot = 0; slot < intLocals.length; slot++) {
+        intLocals[slot] = next++;
+        cb.aload(1).loadConstant(slot).iaload().istore(intLocals[slot]);
+      }
+      for (int slot = 0; slot < objLocals.length; slot++) {
+        objLocals[slot] = next++;
+        cb.aload(2).loadConstant(slot).aaload().checkcast(CD_String).astore(objLocals[slot]);
+      }
+    } else {
+      int params = body.paramIsObj.length;
+      Arrays.fill(intLocals, -1);
+      Arrays.fill(objLocals, -1);
+      for (int i = 0; i < params; i++) {
+        if (body.paramIsObj[i]) {
+          objLocals[body.paramSlots[i]] = i;
+        } else {
+          intLocals[body.paramSlots[i]] = i;
+        }
+      }
+      next = params;
+      for (int slot = 0; slot < intLocals.length; slot++) {
+        if (intLocals[slot] < 0) {
+          intLocals[slot] = next++;
+          cb.iconst_0().istore(intLocals[slot]);
+        }
+      }
+      for (int slot = 0; slot < objLocals.length; slot++) {
+        if (objLocals[slot] < 0) {
+          objLocals[slot] = next++;
+          cb.loadConstant("").astore(objLocals[slot]);
+        }
+      }
+    }
+    int scratch = next;
+
+    Label[] labels = new Label[code.length + 1];
+    for (int pc = 0; pc < code.length; pc += 1 + operandCount(code[pc])) {
+      int target =
+          switch (code[pc]) {
+            case JMP, JZ, JF_EQ, JF_NE, JF_LT, JF_LE, JF_GT, JF_GE -> code[pc + 1];
+            case ILOAD_ICONST_JF_LT -> code[pc + 3];
+            default -> -1;
+          };
+      if (target >= 0 && labels[target] == null) {
+        labels[target] = cb.newLabel();
+      }
+    }
+    if (osr) {
+      for (int head : loopHeads(body)) {
+        cb.iload(0).loadConstant(head).if_icmpeq(labels[head]);
+      }
+    }
+
+    for (int pc = 0; pc < code.length; pc += 1 + operandCount(code[pc])) {
+      if (labels[pc] != null) {
+        cb.labelBinding(labels[pc]);
+      }
+      int op = code[pc];
+      int a = operandCount(op) > 0 ? code[pc + 1] : 0;
+      switch (op) {
+        case ICONST -> cb.loadConstant(a);
+        case OCONST -> cb.loadConstant((String) body.constants[a]);
+        case ILOAD -> cb.iload(intLocals[a]);
+        case ISTORE -> cb.istore(intLocals[a]);
+        case OLOAD -> cb.aload(objLocals[a]);
+        case OSTORE -> cb.astore(objLocals[a]);
+        case IDUP, ODUP -> cb.dup();
+        case IPOP, OPOP -> cb.pop();
+        case IADD -> cb.iadd();
+        case ISUB -> cb.isub();
+        case IMUL -> cb.imul();
+        case IDIV -> cb.invokestatic(CD_RUNTIME, "div", INT_INT_TO_INT);
+        case IREM -> cb.invokestatic(CD_RUNTIME, "rem", INT_INT_TO_INT);
+        case INEG -> cb.ineg();
+        case NOT -> cb.iconst_1().ixor();
+        case ICMPEQ, ICMPNE, ICMPLT, ICMPLE, ICMPGT, ICMPGE -> {
+          Label isTrue = cb.newLabel();
+          Label done = cb.newLabel();
+          switch (op) {
+            case ICMPEQ -> cb.if_icmpeq(isTrue);
+            case ICMPNE -> cb.if_icmpne(isTrue);
+            case ICMPLT -> cb.if_icmplt(isTrue);
+            case ICMPLE -> cb.if_icmple(isTrue);
+            case ICMPGT -> cb.if_icmpgt(isTrue);
+            default -> cb.if_icmpge(isTrue);
+          }
+          cb.iconst_0().goto_(done).labelBinding(isTrue).iconst_1().labelBinding(done);
+        }
+        case OCMPEQ, OCMPNE -> {
+          cb.invokevirtual(CD_String, "equals", MethodTypeDesc.of(CD_boolean, CD_Object));
+          if (op == OCMPNE) {
+            cb.iconst_1().ixor();
+          }
+        }
+        case OTRUTHY -> {
+          cb.invokevirtual(CD_String, "isEmpty", MethodTypeDesc.of(CD_boolean));
+          cb.iconst_1().ixor();
+        }
+        case JMP -> cb.goto_(labels[a]);
+        case JZ -> cb.ifeq(labels[a]);
+        case JF_EQ -> cb.if_icmpne(labels[a]);
+        case JF_NE -> cb.if_icmpeq(labels[a]);
+        case JF_LT -> cb.if_icmpge(labels[a]);
+        case JF_LE -> cb.if_icmpgt(labels[a]);
+        case JF_GT -> cb.if_icmple(labels[a]);
+        case JF_GE -> cb.if_icmplt(labels[a]);
+        case ILOAD_ICONST_JF_LT ->
+            cb.iload(intLocals[a]).loadConstant(code[pc + 2]).if_icmpge(labels[code[pc + 3]]);
+        case ILOAD_ICONST_ADD -> cb.iload(intLocals[a]).loadConstant(code[pc + 2]).iadd();
+        case ILOAD_ILOAD_ADD -> cb.iload(intLocals[a]).iload(intLocals[code[pc + 2]]).iadd();
+        case IINC -> {
+          int delta = code[pc + 2];
+          if (delta == (short) delta) {
+            cb.iinc(intLocals[a], delta);
+          } else {
+            cb.iload(intLocals[a]).loadConstant(delta).iadd().istore(intLocals[a]);
+          }
+        }
+        case CALL -> emitCall(cb, (CallSite) body.constants[a], scratch);
+        case PRINT_INT -> cb.invokestatic(CD_RUNTIME, "printInt", INT_TO_VOID);
+        case PRINT_BOOL -> cb.invokestatic(CD_RUNTIME, "printBool", INT_TO_VOID);
+        case PRINT_CHAR -> cb.invokestatic(CD_RUNTIME, "printChar", INT_TO_VOID);
+        case PRINT_STRING ->
+            cb.invokestatic(CD_RUNTIME, "printString", MethodTypeDesc.of(CD_void, CD_String));
+        case IRET -> {
+          if (osr) {
+            cb.invokestatic(CD_Integer, "valueOf", MethodTypeDesc.of(CD_Integer, CD_int));
+            cb.areturn();
+          } else {
+            cb.ireturn();
+          }
+        }
+        case ORET -> cb.areturn();
+        case RET -> {
+          if (osr) {
+            for (int slot = 0; slot < intLocals.length; slot++) {
+              cb.aload(1).loadConstant(slot).iload(intLocals[slot]).iastore();
+            }
+            for (int slot = 0; slot < objLocals.length; slot++) {
+              cb.aload(2).loadConstant(slot).aload(objLocals[slot]).aastore();
+            }
+            cb.aconst_null().areturn();
+          } else {
+            cb.return_();
+          }
+        }
+        case MISSING_RETURN -> {
+          cb.loadConstant((String) body.constants[a]);
+          cb.invokestatic(CD_RUNTIME, "error", MethodTypeDesc.of(CD_RUNTIME_ERROR, CD_String));
+          cb.athrow();
+        }
+        default ->
+            throw new IllegalStateException("Cannot compile opcode " + op + " in " + body.name);
+      }
+    }
+  }
+
+  private void emitCall(CodeBuilder cb, CallSite site, int scratch) {
+    Integer target = indices.get(site.function);
+    if (target != null) {
+      CompiledBody callee = bodies.get(target);
+      cb.invokestatic(
+          CD_UNIT, methodName(target), descriptor(callee.paramIsObj, callee.returnType));
+      return;
+    }
+    int count = site.paramIsObj.length;
+    for (int i = count - 1; i >= 0; i--) {
+      if (site.paramIsObj[i]) {
+        cb.astore(scratch + i);
+      } else {
+        cb.istore(scratch + i);
+      }
+    }
+    cb.loadConstant(classDataAt(0, CD_VM));
+    classData.add(site);
+    cb.loadConstant(classDataAt(classData.size() - 1, CD_CALL_SITE));
+    cb.loadConstant(count).anewarray(CD_Object);
+    for (int i = 0; i < count; i++) {
+      cb.dup().loadConstant(i);
+      if (site.paramIsObj[i]) {
+        cb.aload(scratch + i);
+      } else {
+        cb.iload(scratch + i);
+        cb.invokestatic(CD_Integer, "valueOf", MethodTypeDesc.of(CD_Integer, CD_int));
+      }
+      cb.aastore();
+    }
+    cb.invokevirtual(
+        CD_VM,
+        "callInterpreted",
+        MethodTypeDesc.of(CD_Object, CD_CALL_SITE, CD_Object.arrayType()));
+    Type result = site.function.returnType;
+    if (result.isVoid()) {
+      cb.pop();
+    } else if (result.kind == Type.Kind.STRING) {
+      cb.checkcast(CD_String);
+    } else {
+      cb.checkcast(CD_Integer);
+      cb.invokevirtual(CD_Integer, "intValue", MethodTypeDesc.of(CD_int));
+    }
+  }
+
+  private static DynamicConstantDesc<Object> classDataAt(int index, ClassDesc type) {
+    return DynamicConstantDesc.ofNamed(BSM_CLASS_DATA_AT, DEFAULT_NAME, type, index);
+  }
+
+  private static String methodName(int index) {
+    return "f" + index;
+  }
+
+  private static MethodTypeDesc descriptor(boolean[] paramIsObj, Type returnType) {
+    ClassDesc[] params = new ClassDesc[paramIsObj.length];
+    for (int i = 0; i < params.length; i++) {
+      params[i] = paramIsObj[i] ? CD_String : CD_int;
+    }
+    ClassDesc result =
+        returnType.isVoid() ? CD_void : returnType.kind == Type.Kind.STRING ? CD_String : CD_int;
+    return MethodTypeDesc.of(result, params);
+  }
+
+  private static MethodType methodType(CompiledBody body) {
+    Class<?>[] params = new Class<?>[body.paramIsObj.length];
+    for (int i = 0; i < params.length; i++) {
+      params[i] = body.paramIsObj[i] ? String.class : int.class;
+    }
+    Type returnType = body.returnType;
+    Class<?> result =
+        returnType.isVoid()
+            ? void.class
+            : returnType.kind == Type.Kind.STRING ? String.class : int.class;
+    return MethodType.methodType(result, params);
+  }
+}
@@ -0,0 +1,70 @@
+package cpp.vm;
+
+final class Opcodes {
+  static final int ICONST = 0;
+  static final int OCONST = 1;
+  static final int ILOAD = 2;
+  static final int ISTORE = 3;
+  static final int OLOAD = 4;
+  static final int OSTORE = 5;
+  static final int IGETFIELD = 6;
+  static final int OGETFIELD = 7;
+  static final int IPUTFIELD = 8;
+  static final int OPUTFIELD = 9;
+  static final int IDUP = 10;
+  static final int ODUP = 11;
+  static final int IPOP = 12;
+  static final int OPOP = 13;
+  static final int IADD = 14;
+  static final int ISUB = 15;
+  static final int IMUL = 16;
+  static final int IDIV = 17;
+  static final int IREM = 18;
+  static final int INEG = 19;
+  static final int NOT = 20;
+  static final int ICMPEQ = 21;
+  static final int ICMPNE = 22;
+  static final int ICMPLT = 23;
+  static final int ICMPLE = 24;
+  static final int ICMPGT = 25;
+  static final int ICMPGE = 26;
+  static final int OCMPEQ = 27;
+  static final int OCMPNE = 28;
+  static final int OTRUTHY = 29;
+  static final int JMP = 30;
+  static final int JZ = 31;
+  static final int CALL = 32;
+  static final int PRINT_INT = 33;
+  static final int PRINT_BOOL = 34;
+  static final int PRINT_CHAR = 35;
+  static final int PRINT_STRING = 36;
+  static final int IRET = 37;
+  static final int ORET = 38;
+  static final int RET = 39;
+  static final int MISSING_RETURN = 40;
+
+  // Superinstructions.
+  static final int ILOAD_ICONST_ADD = 41;
+  static final int ILOAD_ILOAD_ADD = 42;
+  static final int IINC = 43;
+  static final int JF_EQ = 44;
+  static final int JF_NE = 45;
+  static final int JF_LT = 46;
+  static final int JF_LE = 47;
+  static final int JF_GT = 48;
+  static final int JF_GE = 49;
+  static final int ILOAD_ICONST_JF_LT = 50;
+
+  static int operandCount(int op) {
+    return switch (op) {
+      case ICONST, OCONST, ILOAD, ISTORE, OLOAD, OSTORE -> 1;
+      case IGETFIELD, OGETFIELD, IPUTFIELD, OPUTFIELD, JMP, JZ, CALL, MISSING_RETURN -> 1;
+      case JF_EQ, JF_NE, JF_LT, JF_LE, JF_GT, JF_GE -> 1;
+      case ILOAD_ICONST_ADD, ILOAD_ILOAD_ADD, IINC -> 2;
+      case ILOAD_ICONST_JF_LT -> 3;
+      default -> 0;
+    };
+  }
+
+  private Opcodes() {}
+}
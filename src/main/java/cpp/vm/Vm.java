@@ -0,0 +1,491 @@
+package cpp.vm;
+
+import static cpp.vm.Opcodes.*;
+
+import cpp.ast.WhileStmtNode;
+import cpp.error.RuntimeError;
+import cpp.interp.ArgInfo;
+import cpp.interp.ExprEvaluator;
+import cpp.model.ConstructorDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
+import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.runtime.Env;
+import cpp.runtime.EvalResult;
+import cpp.runtime.Instance;
+import cpp.runtime.Value;
+import cpp.runtime.VarSlot;
+import cpp.util.IO;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+public class Vm {
+  public static final int DEFAULT_OSR_THRESHOLD = 100;
+
+  private static final CompiledBody NOT_COMPILABLE =
+      new CompiledBody("", new int[0], new Object[0], 0, 0, 0, 0, null, null, null);
+
+  private final BytecodeCompiler compiler;
+  private final ExprEvaluator evaluator;
+  private final Map<Object, CompiledBody> bodies = new IdentityHashMap<>();
+  private Jit jit;
+  private int osrThreshold = DEFAULT_OSR_THRESHOLD;
+  private int generation;
+  private Object objResult;
+
+  public Vm(ProgramDef program, ExprEvaluator evaluator) {
+    this.compiler = new BytecodeCompiler(program);
+    this.evaluator = evaluator;
+  }
+
+  public CompiledBody codeFor(FunctionDef function) {
+    CompiledBody body = bodies.get(function);
+    if (body == null) {
+      function.loadBody();
+      body = orMarker(compiler.compile(function));
+      body.function = body != NOT_COMPILABLE ? function : null;
+      bodies.put(function, body);
+    }
+    return body == NOT_COMPILABLE ? null : body;
+  }
+
+  public CompiledBody codeFor(MethodDef method) {
+    CompiledBody body = bodies.get(method);
+    if (body == null) {
+      method.loadBody();
+      body = orMarker(compiler.compile(method));
+      bodies.put(method, body);
+    }
+    return body == NOT_COMPILABLE ? null : body;
+  }
+
+  public CompiledBody codeFor(ConstructorDef ctor) {
+    CompiledBody body = bodies.get(ctor);
+    if (body == null) {
+      ctor.loadBody();
+      body = orMarker(compiler.compile(ctor));
+      bodies.put(ctor, body);
+    }
+    return body == NOT_COMPILABLE ? null : body;
+  }
+
+  public int getOsrThreshold() {
+    return osrThreshold;
+  }
+
+  public void setOsrThreshold(int osrThreshold) {
+    this.osrThreshold = osrThreshold;
+  }
+
+  public boolean runLoop(WhileStmtNode loop, Env env) {
+    CompiledBody body = bodies.get(loop);
+    if (body == null) {
+      body = orMarker(compiler.compileLoop(loop, env));
+      bodies.put(loop, body);
+    }
+    if (body == NOT_COMPILABLE) {
+      return false;
+    }
+    VarSlot[] slots = new VarSlot[body.liveIns.length];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = env.resolve(body.liveIns[i]);
+      for (int j = 0; j < i; j++) {
+        if (storage(slots[i]) == storage(slots[j])) {
+          return false;
+        }
+      }
+    }
+    int[] ints = new int[body.intFrameSize];
+    Object[] objs = new Object[body.objFrameSize];
+    for (int i = 0; i < slots.length; i++) {
+      Object data = slots[i].get().data;
+      if (body.paramIsObj[i]) {
+        objs[body.paramSlots[i]] = data;
+      } else {
+        ints[body.paramSlots[i]] = toInt(data);
+      }
+    }
+    try {
+      execute(body, ints, objs, null);
+    } finally {
+      for (int i = 0; i < slots.length; i++) {
+        if (!slots[i].isReadOnly()) {
+          Type type = slots[i].getDeclaredType().withoutRef();
+          Object data =
+              body.paramIsObj[i]
+                  ? objs[body.paramSlots[i]]
+                  : fromInt(type.kind, ints[body.paramSlots[i]]);
+          slots[i].set(new Value(type, data));
+        }
+      }
+    }
+    return true;
+  }
+
+  public Jit enableJit(int invocationThreshold, int loopThreshold, boolean log) {
+    return enableJit(invocationThreshold, loopThreshold, log, null);
+  }
+
+  public Jit enableJit(
+      int invocationThreshold, int loopThreshold, boolean log, Executor executor) {
+    jit = new Jit(this, invocationThreshold, loopThreshold, log, executor);
+    return jit;
+  }
+
+  public void invalidate() {
+    bodies.clear();
+    generation++;
+  }
+
+  public EvalResult invoke(CompiledBody body, List<ArgInfo> args, Instance self) {
+    if (self == null && jit != null && evaluator.allowsDirectCalls()) {
+      MethodHandle entry = body.jitted;
+      if (entry != null) {
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+          Object data = args.get(i).result.value.data;
+          values[i] = body.paramIsObj[i] ? data : toInt(data);
+        }
+        return toResult(body.returnType, runCompiled(entry, values));
+      }
+      jit.countInvocation(body);
+    }
+    int[] ints = new int[body.intFrameSize];
+    Object[] objs = new Object[body.objFrameSize];
+    for (int i = 0; i < args.size(); i++) {
+      Value value = args.get(i).result.value;
+      if (body.paramIsObj[i]) {
+        objs[body.paramSlots[i]] = value.data;
+      } else {
+        ints[body.paramSlots[i]] = toInt(value.data);
+      }
+    }
+    int result = execute(body, ints, objs, self);
+    Type type = body.returnType;
+    Object data = type.kind == Type.Kind.STRING ? objResult : result;
+    objResult = null;
+    return toResult(type, data);
+  }
+
+  Object callInterpreted(CallSite site, Object[] values) {
+    List<ArgInfo> args = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; i++) {
+      Type type = site.function.params.get(i).type;
+      Object data = site.paramIsObj[i] ? values[i] : fromInt(type.kind, (Integer) values[i]);
+      args.add(new ArgInfo(new EvalResult(new Value(type, data), type, false, null, false)));
+    }
+    EvalResult result = evaluator.invokeSelected(site.function, args);
+    if (result.type.isVoid()) {
+      return null;
+    }
+    Object data = result.value.data;
+    return result.type.kind == Type.Kind.STRING ? data : toInt(data);
+  }
+
+  private int execute(CompiledBody body, int[] ints, Object[] objs, Instance self) {
+    final int[] code = body.code;
+    final Object[] constants = body.constants;
+    int isp = body.intSlots;
+    int osp = body.objSlots;
+    int pc = 0;
+    while (true) {
+      switch (code[pc++]) {
+        case ICONST -> ints[isp++] = code[pc++];
+        case OCONST -> objs[osp++] = constants[code[pc++]];
+        case ILOAD -> ints[isp++] = ints[code[pc++]];
+        case ISTORE -> ints[code[pc++]] = ints[--isp];
+        case OLOAD -> objs[osp++] = objs[code[pc++]];
+        case OSTORE -> {
+          objs[code[pc++]] = objs[--osp];
+          objs[osp] = null;
+        }
+        case IGETFIELD -> {
+          FieldRef field = (FieldRef) constants[code[pc++]];
+          ints[isp++] = toInt(self.fields.get(field.name).get().data);
+        }
+        case OGETFIELD -> {
+          FieldRef field = (FieldRef) constants[code[pc++]];
+          objs[osp++] = self.fields.get(field.name).get().data;
+        }
+        case IPUTFIELD -> {
+          FieldRef field = (FieldRef) constants[code[pc++]];
+          Object data = fromInt(field.type.kind, ints[--isp]);
+          self.fields.get(field.name).set(new Value(field.type, data));
+        }
+        case OPUTFIELD -> {
+          FieldRef field = (FieldRef) constants[code[pc++]];
+          self.fields.get(field.name).set(new Value(field.type, objs[--osp]));
+          objs[osp] = null;
+        }
+        case IDUP -> {
+          ints[isp] = ints[isp - 1];
+          isp++;
+        }
+        case ODUP -> {
+          objs[osp] = objs[osp - 1];
+          osp++;
+        }
+        case IPOP -> isp--;
+        case OPOP -> objs[--osp] = null;
+        case IADD -> {
+          isp--;
+          ints[isp - 1] += ints[isp];
+        }
+        case ISUB -> {
+          isp--;
+          ints[isp - 1] -= ints[isp];
+        }
+        case IMUL -> {
+          isp--;
+          ints[isp - 1] *= ints[isp];
+        }
+        case IDIV -> {
+          int divisor = ints[--isp];
+          if (divisor == 0) {
+            throw new RuntimeError("Division by zero");
+          }
+          ints[isp - 1] /= divisor;
+        }
+        case IREM -> {
+          int divisor = ints[--isp];
+          if (divisor == 0) {
+            throw new RuntimeError("Division by zero");
+          }
+          ints[isp - 1] %= divisor;
+        }
+        case INEG -> ints[isp - 1] = -ints[isp - 1];
+        case NOT -> ints[isp - 1] ^= 1;
+        case ICMPEQ -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] == ints[isp] ? 1 : 0;
+        }
+        case ICMPNE -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] != ints[isp] ? 1 : 0;
+        }
+        case ICMPLT -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] < ints[isp] ? 1 : 0;
+        }
+        case ICMPLE -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] <= ints[isp] ? 1 : 0;
+        }
+        case ICMPGT -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] > ints[isp] ? 1 : 0;
+        }
+        case ICMPGE -> {
+          isp--;
+          ints[isp - 1] = ints[isp - 1] >= ints[isp] ? 1 : 0;
+        }
+        case OCMPEQ, OCMPNE -> {
+          osp -= 2;
+          boolean equal = objs[osp].equals(objs[osp + 1]);
+          objs[osp] = null;
+          objs[osp + 1] = null;
+          ints[isp++] = equal == (code[pc - 1] == OCMPEQ) ? 1 : 0;
+        }
+        case OTRUTHY -> {
+          String value = (String) objs[--osp];
+          objs[osp] = null;
+          ints[isp++] = value.isEmpty() ? 0 : 1;
+        }
+        case JMP -> {
+          int target = code[pc];
+          if (target < pc && jit != null && evaluator.allowsDirectCalls()) {
+            if (body.osrEntry == null) {
+              jit.countBackEdge(body);
+            }
+            MethodHandle osr = body.osrEntry;
+            if (osr != null) {
+              return enterOsr(body, osr, target, ints, objs);
+            }
+          }
+          pc = target;
+        }
+        case JZ -> pc = ints[--isp] == 0 ? code[pc] : pc + 1;
+        case JF_EQ -> {
+          isp -= 2;
+          pc = ints[isp] == ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case JF_NE -> {
+          isp -= 2;
+          pc = ints[isp] != ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case JF_LT -> {
+          isp -= 2;
+          pc = ints[isp] < ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case JF_LE -> {
+          isp -= 2;
+          pc = ints[isp] <= ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case JF_GT -> {
+          isp -= 2;
+          pc = ints[isp] > ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case JF_GE -> {
+          isp -= 2;
+          pc = ints[isp] >= ints[isp + 1] ? pc + 1 : code[pc];
+        }
+        case ILOAD_ICONST_JF_LT ->
+            pc = ints[code[pc]] < code[pc + 1] ? pc + 3 : code[pc + 2];
+        case ILOAD_ICONST_ADD -> {
+          ints[isp++] = ints[code[pc]] + code[pc + 1];
+          pc += 2;
+        }
+        case ILOAD_ILOAD_ADD -> {
+          ints[isp++] = ints[code[pc]] + ints[code[pc + 1]];
+          pc += 2;
+        }
+        case IINC -> {
+          ints[code[pc]] += code[pc + 1];
+          pc += 2;
+        }
+        case CALL -> {
+          CallSite site = (CallSite) constants[code[pc++]];
+          isp -= site.intArgs;
+          osp -= site.objArgs;
+          Type returnType = site.function.returnType;
+          int result = call(site, ints, isp, objs, osp);
+          for (int i = 0; i < site.objArgs; i++) {
+            objs[osp + i] = null;
+          }
+          if (returnType.kind == Type.Kind.STRING) {
+            objs[osp++] = objResult;
+            objResult = null;
+          } else if (!returnType.isVoid()) {
+            ints[isp++] = result;
+          }
+        }
+        case PRINT_INT -> IO.println(Integer.toString(ints[--isp]));
+        case PRINT_BOOL -> IO.println(ints[--isp] != 0 ? "1" : "0");
+        case PRINT_CHAR -> IO.println(Character.toString((char) ints[--isp]));
+        case PRINT_STRING -> {
+          IO.println((String) objs[--osp]);
+          objs[osp] = null;
+        }
+        case IRET -> {
+          return ints[--isp];
+        }
+        case ORET -> {
+          objResult = objs[--osp];
+          return 0;
+        }
+        case RET -> {
+          return 0;
+        }
+        case MISSING_RETURN -> throw new RuntimeError((String) constants[code[pc]]);
+        default ->
+            throw new IllegalStateException("Bad opcode at " + (pc - 1) + " in " + body.name);
+      }
+    }
+  }
+
+  private int call(CallSite site, int[] ints, int intBase, Object[] objs, int objBase) {
+    if (site.generation != generation) {
+      site.target = codeFor(site.function);
+      site.generation = generation;
+    }
+    CompiledBody target = site.target;
+    MethodHandle entry = null;
+    if (target != null && evaluator.allowsDirectCalls()) {
+      if (jit != null) {
+        entry = target.jitted;
+        if (entry == null) {
+          jit.countInvocation(target);
+        }
+      }
+      if (entry == null) {
+        int[] calleeInts = new int[target.intFrameSize];
+        Object[] calleeObjs = new Object[target.objFrameSize];
+        System.arraycopy(ints, intBase, calleeInts, 0, site.intArgs);
+        System.arraycopy(objs, objBase, calleeObjs, 0, site.objArgs);
+        return execute(target, calleeInts, calleeObjs, null);
+      }
+    }
+    Object[] values = new Object[site.paramIsObj.length];
+    int nextInt = intBase;
+    int nextObj = objBase;
+    for (int i = 0; i < values.length; i++) {
+      values[i] = site.paramIsObj[i] ? objs[nextObj++] : (Object) ints[nextInt++];
+    }
+    Object result = entry != null ? runCompiled(entry, values) : callInterpreted(site, values);
+    Type returnType = site.function.returnType;
+    if (returnType.kind == Type.Kind.STRING) {
+      objResult = result;
+      return 0;
+    }
+    return returnType.isVoid() ? 0 : (Integer) result;
+  }
+
+  private int enterOsr(CompiledBody body, MethodHandle osr, int pc, int[] ints, Object[] objs) {
+    Object result;
+    try {
+      result = (Object) osr.invokeExact(pc, ints, objs);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+    Type returnType = body.returnType;
+    if (returnType.kind == Type.Kind.STRING) {
+      objResult = result;
+      return 0;
+    }
+    return returnType.isVoid() ? 0 : (Integer) result;
+  }
+
+  private static VarSlot storage(VarSlot slot) {
+    while (slot.isRef()) {
+      slot = slot.getRefTarget();
+    }
+    return slot;
+  }
+
+  private static Object runCompiled(MethodHandle entry, Object[] values) {
+    try {
+      return (Object) entry.invokeExact(values);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static EvalResult toResult(Type type, Object data) {
+    if (type.isVoid()) {
+      return new EvalResult(Value.voidValue(), Type.voidType(), false, null, false);
+    }
+    Object value = type.kind == Type.Kind.STRING ? data : fromInt(type.kind, (Integer) data);
+    return new EvalResult(new Value(type, value), type, false, null, false);
+  }
+
+  private static CompiledBody orMarker(CompiledBody body) {
+    return body != null ? body : NOT_COMPILABLE;
+  }
+
+  private static int toInt(Object data) {
+    if (data instanceof Integer value) {
+      return value;
+    }
+    if (data instanceof Boolean value) {
+      return value ? 1 : 0;
+    }
+    return (Character) data;
+  }
+
+  private static Object fromInt(Type.Kind kind, int value) {
+    return switch (kind) {
+      case BOOL -> value != 0;
+      case CHAR -> (char) value;
+      default -> value;
+    };
+  }
+}
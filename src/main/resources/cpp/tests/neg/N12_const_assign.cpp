@@ -0,0 +1,8 @@
+#include "hsbi_runtime.h"
+
+int main() {
+    const int limit = 3;
+    limit = 4;
+    print_int(limit);
+    return 0;
+}
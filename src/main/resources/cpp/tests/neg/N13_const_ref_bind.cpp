@@ -0,0 +1,9 @@
+#include "hsbi_runtime.h"
+
+void bump(int &x) { x = x + 1; }
+
+int main() {
+    const int limit = 3;
+    bump(limit);
+    return 0;
+}
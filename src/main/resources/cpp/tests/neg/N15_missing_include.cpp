@@ -0,0 +1,7 @@
+#include "hsbi_runtime.h"
+#include "nicht_vorhanden.h" // Fehler: Header existiert nicht
+
+int main() {
+    print_int(1);
+    return 0;
+}
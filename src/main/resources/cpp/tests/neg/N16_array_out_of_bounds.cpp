@@ -0,0 +1,13 @@
+#include "hsbi_runtime.h"
+
+int main() {
+    int values[4];
+    int i = 0;
+    // Die Schleife laeuft einen Schritt zu weit: der Zugriff auf values[4] muss scheitern
+    while (i <= 4) {
+        values[i] = i;
+        i = i + 1;
+    }
+    print_int(values[0]);
+    return 0;
+}
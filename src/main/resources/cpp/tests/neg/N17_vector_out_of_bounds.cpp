@@ -0,0 +1,11 @@
+#include <vector>
+#include "hsbi_runtime.h"
+
+int main() {
+    std::vector<int> values;
+    values.reserve(8);
+    values.push_back(1);
+    // reserve() vergroessert nur die Kapazitaet, nicht die Groesse
+    print_int(values[1]);
+    return 0;
+}
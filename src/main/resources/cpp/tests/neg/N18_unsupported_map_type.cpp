@@ -0,0 +1,9 @@
+#include <unordered_map>
+#include "hsbi_runtime.h"
+
+int main() {
+    // Nur <int,int>, <string,int> und <int,string> werden unterstuetzt
+    std::unordered_map<string, string> names;
+    names["a"] = "b";
+    return 0;
+}
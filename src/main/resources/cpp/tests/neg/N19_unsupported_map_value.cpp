@@ -0,0 +1,9 @@
+#include <unordered_map>
+#include "hsbi_runtime.h"
+
+int main() {
+    // bool-Werte werden nicht unterstuetzt, auch nicht mit int-Schluesseln
+    std::unordered_map<int, bool> seen;
+    seen[1] = true;
+    return 0;
+}
@@ -0,0 +1,62 @@
+#include "hsbi_runtime.h"
+
+class Point {
+public:
+    Point(int px, int py) { x = px; y = py; }
+    int sum() { return x + y; }
+    void moveX(int dx) { x = x + dx; }
+    int x;
+    int y;
+};
+
+int sq(int a) { return a * a; }
+int quad(int a) { return sq(sq(a)); }
+int bump(int a) { return a = a + 1; }
+void incr(int &a) { a = a + 1; }
+int twice(int &a) { return a = a * 2; }
+int after(int a, int &b) { return (b = 10) + a; }
+Point keep(Point p) { return p; }
+int fact(int n) { if (n < 2) { return 1; } return n * fact(n - 1); }
+void nothing() {}
+
+int main() {
+    int v = 3;
+    print_int(sq(v));        // 9
+    print_int(quad(2));      // 16
+    print_int(bump(v));      // 4
+    print_int(v);            // 3
+    incr(v);
+    print_int(v);            // 4
+    print_int(twice(v));     // 8
+    print_int(v);            // 8
+    int w = 1;
+    print_int(after(w, w));  // 11
+    print_int(w);            // 10
+
+    Point p = Point(1, 2);
+    p.moveX(5);
+    print_int(p.sum());      // 8
+    Point q = keep(p);
+    q.moveX(1);
+    print_int(p.x);          // 6
+    print_int(q.x);          // 7
+
+    nothing();
+    print_int(fact(5));      // 120
+    return 0;
+}
+/* EXPECT:
+9
+16
+4
+3
+4
+8
+8
+11
+10
+8
+6
+7
+120
+*/
@@ -0,0 +1,74 @@
+#include "hsbi_runtime.h"
+
+constexpr int sq(int x) { return x * x; }
+
+constexpr int fib(int n) {
+    int a = 0;
+    int b = 1;
+    int i = 0;
+    while (i < n) {
+        int t = a + b;
+        a = b;
+        b = t;
+        i = i + 1;
+    }
+    return a;
+}
+
+constexpr bool isEven(int x) { return x % 2 == 0; }
+
+constexpr int clampTo(int v, int limit) {
+    if (v > limit) {
+        return limit;
+    }
+    return v;
+}
+
+int addRuntime(int a, int b) { return a + b; }
+
+int lookup(int i) {
+    const int base = sq(4) + 1;
+    return base + i;
+}
+
+int main() {
+    const int n = 10;
+    print_int(fib(n));              // 55
+    print_int(sq(n + 2));           // 144
+    const int limit = sq(3);
+    print_int(clampTo(20, limit));  // 9
+    print_bool(isEven(limit));      // 0
+
+    int x = 5;
+    print_int(sq(x));               // 25
+    const int y = addRuntime(x, 1);
+    print_int(y);                   // 6
+    {
+        int n = 3;
+        n = n + 1;
+        print_int(n);               // 4
+    }
+    print_int(n);                   // 10
+
+    const char c = 'z';
+    print_char(c);                  // z
+    const string s = "const";
+    print_string(s);                // const
+    print_int(lookup(1));           // 18
+    print_int(lookup(2));           // 19
+    return 0;
+}
+/* EXPECT:
+55
+144
+9
+0
+25
+6
+4
+10
+z
+const
+18
+19
+*/
@@ -0,0 +1,59 @@
+#include "hsbi_runtime.h"
+
+int fib(int n) {
+    if (n < 2) {
+        return n;
+    }
+    return fib(n - 1) + fib(n - 2);
+}
+
+int countdown(int n) {
+    int steps = 0;
+    while (n > 0) {
+        n = n - 1;
+        steps = steps + 1;
+    }
+    return steps;
+}
+
+bool isVowel(char c) {
+    return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+}
+
+bool same(string a, string b) { return a == b; }
+
+int noisy(int x) {
+    print_int(x);
+    return x + 1;
+}
+
+int viaNoisy(int x) { return noisy(x) * 2; }
+
+int main() {
+    print_int(fib(25));          // 75025
+    print_int(fib(25));          // 75025
+    int n = 7;
+    print_int(countdown(n));     // 7
+    print_int(n);                // 7
+    print_bool(isVowel('e'));    // 1
+    print_bool(isVowel('x'));    // 0
+    print_bool(same("ab", "ab")); // 1
+    print_bool(same("ab", "ba")); // 0
+    print_int(viaNoisy(3));      // 3, 8
+    print_int(viaNoisy(3));      // 3, 8
+    return 0;
+}
+/* EXPECT:
+75025
+75025
+7
+7
+1
+0
+1
+0
+3
+8
+3
+8
+*/
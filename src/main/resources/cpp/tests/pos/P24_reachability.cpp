@@ -0,0 +1,47 @@
+#include "hsbi_runtime.h"
+
+class Shape {
+public:
+    virtual int area() { return 0; }
+};
+
+class Square : public Shape {
+public:
+    Square(int s) { side = s; }
+    int area() { return side * side; }
+    int side;
+};
+
+class Circle : public Shape {
+public:
+    Circle(int r) { radius = r; }
+    int area() { return 3 * radius * radius; }
+    int radius;
+};
+
+int helperOnlyForUnused(int x) { return x * 100; }
+
+class Unused {
+public:
+    int value() { return helperOnlyForUnused(4); }
+    Shape s;
+};
+
+int neverCalled() {
+    Unused u;
+    return u.value();
+}
+
+int total(Shape& s) { return s.area() + 1; }
+
+int main() {
+    Square sq = Square(4);
+    Shape& shape = sq;
+    print_int(total(shape));
+    print_int(shape.area());
+    return 0;
+}
+/* EXPECT:
+17
+16
+*/
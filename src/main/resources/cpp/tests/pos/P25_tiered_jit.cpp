@@ -0,0 +1,55 @@
+#include "hsbi_runtime.h"
+
+class Box {
+public:
+    Box(int x) { side = x; }
+    int area() { return side * side; }
+
+    int side;
+};
+
+// Box-Werte laufen nicht in der VM: Aufrufe aus kompiliertem Code gehen zurueck in den Interpreter
+int boxArea(int w) {
+    Box b = Box(w);
+    return b.area();
+}
+
+int collatz(int n) {
+    int steps = 0;
+    while (n != 1) {
+        if (n % 2 == 0) {
+            n = n / 2;
+        } else {
+            n = 3 * n + 1;
+        }
+        steps = steps + 1;
+    }
+    return steps;
+}
+
+string parity(int n) {
+    if (n % 2 == 0) {
+        return "even";
+    }
+    return "odd";
+}
+
+int score(int i) { return boxArea(i) + collatz(i + 1); }
+
+int main() {
+    int sum = 0;
+    int i = 0;
+    while (i < 200) {
+        sum = sum + score(i);
+        i = i + 1;
+    }
+    print_int(sum);
+    print_string(parity(sum));
+    print_int(collatz(27));
+    return 0;
+}
+/* EXPECT:
+2655118
+even
+111
+*/
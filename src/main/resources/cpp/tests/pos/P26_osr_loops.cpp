@@ -0,0 +1,85 @@
+#include "hsbi_runtime.h"
+
+class Counter {
+public:
+    Counter() { hits = 0; }
+    int hits;
+};
+
+int firstMultiple(int k, int limit) {
+    int i = 1;
+    while (i < limit) {
+        if (i % k == 0) {
+            return i;          // return in der Schleife: bleibt im Interpreter
+        }
+        i = i + 1;
+    }
+    return -1;
+}
+
+// Klassenwert als Local: die Funktion laeuft im Interpreter, die Schleife kann trotzdem ersetzt werden
+int countDivisible(int n, int k) {
+    Counter c;
+    int found = 0;
+    int i = 1;
+    while (i <= n) {
+        if (i % k == 0) {
+            found = found + 1;
+        }
+        i = i + 1;
+    }
+    c.hits = found;
+    return c.hits;
+}
+
+int main() {
+    int sum = 0;
+    int i = 0;
+    bool sawSeven = false;
+    char last = 'a';
+    string tag = "";
+    const int step = 3;
+    int& alias = sum;
+    while (i < 1000) {
+        sum = sum + i * step;
+        if (i % 250 == 7) {
+            sawSeven = true;
+            last = 'z';
+            tag = "seven";
+        }
+        int j = 0;
+        while (j < 3) {
+            j = j + 1;
+        }
+        i = i + j - 2;
+    }
+    print_int(sum);            // 1498500
+    print_int(alias);          // 1498500
+    print_bool(sawSeven);      // 1
+    print_char(last);          // z
+    print_string(tag);         // seven
+    print_int(i);              // 1000
+
+    int a = 0;
+    int& b = a;
+    while (a < 500) {
+        a = a + 1;
+        b = b + 1;             // Alias im Schleifenrumpf: keine Ersetzung
+    }
+    print_int(a);              // 500
+
+    print_int(firstMultiple(997, 5000));   // 997
+    print_int(countDivisible(3000, 7));    // 428
+    return 0;
+}
+/* EXPECT:
+1498500
+1498500
+1
+z
+seven
+1000
+500
+997
+428
+*/
@@ -0,0 +1,96 @@
+#include "hsbi_runtime.h"
+
+class Account {
+public:
+    Account(int start) { balance = start; owner = "anna"; }
+    int deposit(int amount) {
+        balance = balance + amount;
+        return balance;
+    }
+    bool rich() { return balance > 1000; }
+    string name() { return owner; }
+
+    int balance;
+    string owner;
+};
+
+int fib(int n) {
+    if (n < 2) {
+        return n;
+    }
+    return fib(n - 1) + fib(n - 2);
+}
+
+// Gemischte Typen in Parametern und Rueckgabe
+char grade(int points, bool bonus) {
+    if (bonus && points >= 80 || points >= 90) {
+        return 'A';
+    }
+    if (!(points < 50)) {
+        return 'B';
+    }
+    return 'C';
+}
+
+string label(string prefix, int n) {
+    if (prefix == "") {
+        return "none";
+    }
+    if (n % 2 != 0) {
+        return prefix;
+    }
+    return "even";
+}
+
+void shout(string text) {
+    print_string(text);
+}
+
+int sumTo(int n) {
+    int total = 0;
+    int i = 0;
+    while (i < n) {
+        i = i + 1;
+        {
+            int doubled = i * 2;
+            total = total + doubled / 2;
+        }
+    }
+    return total;
+}
+
+int main() {
+    print_int(fib(20));                // 6765
+    print_char(grade(85, true));       // A
+    print_char(grade(60, false));      // B
+    print_char(grade(10, true));       // C
+    print_string(label("odd", 3));     // odd
+    print_string(label("odd", 4));     // even
+    print_string(label("", 4));        // none
+    shout("hey");                      // hey
+    print_int(sumTo(100));             // 5050
+
+    Account a = Account(900);
+    print_int(a.deposit(50));          // 950
+    print_bool(a.rich());              // 0
+    print_int(a.deposit(100));         // 1050
+    print_bool(a.rich());              // 1
+    print_string(a.name());            // anna
+    return 0;
+}
+/* EXPECT:
+6765
+A
+B
+C
+odd
+even
+none
+hey
+5050
+950
+0
+1050
+1
+anna
+*/
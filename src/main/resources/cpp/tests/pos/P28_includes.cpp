@@ -0,0 +1,20 @@
+#include "hsbi_runtime.h"
+#include "include/geometry.h"
+#include "include/counter.h" // schon ueber geometry.h eingebunden: nur einmal
+
+int main() {
+    Rect r = Rect(3, 4);
+    print_int(r.area());                           // 12
+    Counter c = Counter(5);
+    c.tick();
+    print_int(c.tick());                           // 10
+    print_int(clampTo(r.area() * c.value, 100));   // 100
+    print_int(scaled(r.area(), 200));              // 1000
+    return 0;
+}
+/* EXPECT:
+12
+10
+100
+1000
+*/
@@ -0,0 +1,117 @@
+#include "hsbi_runtime.h"
+
+class Point {
+public:
+    int x;
+    int y;
+};
+
+class Histogram {
+public:
+    Histogram() { total = 0; }
+    void add(int bucket) {
+        counts[bucket] = counts[bucket] + 1;
+        total = total + 1;
+    }
+    int largest() {
+        int best = 0;
+        int i = 0;
+        while (i < 4) {
+            if (counts[i] > best) {
+                best = counts[i];
+            }
+            i = i + 1;
+        }
+        return best;
+    }
+
+    int counts[4];
+    int total;
+};
+
+// Arrays werden nur per Referenz uebergeben
+void fill(int (&values)[5], int start) {
+    int i = 0;
+    while (i < 5) {
+        values[i] = start + i * i;
+        i = i + 1;
+    }
+}
+
+int sum(int (&values)[5]) {
+    int total = 0;
+    int i = 0;
+    while (i <= 4) {
+        total = total + values[i];
+        i = i + 1;
+    }
+    return total;
+}
+
+int main() {
+    int squares[5];
+    fill(squares, 1);
+    print_int(squares[0]);
+    print_int(squares[4]);
+    print_int(sum(squares));
+
+    // Standardwerte und Zuweisung einzelner Elemente
+    char word[3];
+    bool flags[2];
+    string names[2];
+    word[0] = 'h';
+    word[1] = 'i';
+    flags[1] = true;
+    names[0] = "anna";
+    print_char(word[0]);
+    print_char(word[1]);
+    print_bool(flags[0]);
+    print_bool(flags[1]);
+    print_string(names[0]);
+    print_bool(names[1] == "");
+
+    // Klassen als Elemente, Referenz auf ein Element
+    Point points[3];
+    points[2].x = 4;
+    Point& last = points[2];
+    last.y = 5;
+    print_int(points[2].x * points[2].y);
+
+    // Array-Felder werden beim Kopieren des Objekts mitkopiert
+    Histogram h;
+    h.add(1);
+    h.add(3);
+    h.add(3);
+    Histogram copy = h;
+    h.add(1);
+    h.add(1);
+    print_int(h.largest());
+    print_int(copy.largest());
+    print_int(copy.total);
+
+    // Index aus einem Ausdruck
+    int k = 0;
+    while (k < 3) {
+        squares[k + 2] = k;
+        k = k + 1;
+    }
+    print_int(squares[2] + squares[3] + squares[4]);
+    return 0;
+}
+
+/* EXPECT
+1
+17
+35
+h
+i
+0
+1
+anna
+1
+20
+3
+2
+3
+3
+*/
@@ -0,0 +1,120 @@
+#include <vector>
+#include <algorithm>
+#include "hsbi_runtime.h"
+
+class Bag {
+public:
+    std::vector<int> items;
+    void add(int x) { items.push_back(x); }
+};
+
+std::vector<int> squares(int n) {
+    std::vector<int> out;
+    out.reserve(n);
+    int i = 0;
+    while (i < n) {
+        out.push_back(i * i);
+        i = i + 1;
+    }
+    return out;
+}
+
+// Wertparameter: clear() im Aufgerufenen aendert den Vektor des Aufrufers nicht
+int sumAndClear(std::vector<int> values) {
+    int total = 0;
+    int i = 0;
+    while (i < values.size()) {
+        total = total + values[i];
+        i = i + 1;
+    }
+    values.clear();
+    return total;
+}
+
+void append(std::vector<int>& values, int x) {
+    values.push_back(x);
+}
+
+int main() {
+    std::vector<int> v;
+    v.push_back(5);
+    v.push_back(3);
+    v.push_back(9);
+    v.push_back(1);
+    std::vector<int> copy = v;
+    std::sort(v.begin(), v.end());
+    print_int(v[0]);
+    print_int(v[3]);
+    print_int(copy[0]);
+
+    // Schreiben ueber eine Referenz auf ein Element
+    int& third = v[2];
+    third = 7;
+    print_int(v[2]);
+    print_int(copy[2]);
+    print_int(sumAndClear(v));
+    print_int(v.size());
+    append(v, 11);
+    print_int(v[4]);
+
+    // Wachstum ueber die Anfangskapazitaet hinaus
+    std::vector<int> s = squares(100);
+    print_int(s.size());
+    print_int(s[99]);
+
+    std::vector<string> names;
+    names.push_back("pear");
+    names.push_back("apple");
+    names.push_back("fig");
+    sort(names.begin(), names.end());
+    print_string(names[0]);
+    print_string(names[2]);
+
+    vector<char> letters;
+    letters.push_back('z');
+    letters.push_back('a');
+    sort(letters.begin(), letters.end());
+    print_char(letters[0]);
+
+    vector<bool> flags;
+    flags.push_back(true);
+    flags.push_back(false);
+    sort(flags.begin(), flags.end());
+    print_bool(flags[0]);
+
+    // Vektorfelder werden mit dem Objekt kopiert
+    Bag b;
+    b.add(4);
+    Bag other = b;
+    other.add(5);
+    print_int(b.items.size());
+    print_int(other.items.size());
+
+    // Zuweisung kopiert, clear() leert nur das Ziel
+    copy = v;
+    copy.clear();
+    print_int(v.size());
+    print_int(copy.size());
+    return 0;
+}
+
+/* EXPECT
+1
+9
+5
+7
+9
+20
+4
+11
+100
+9801
+apple
+pear
+a
+0
+1
+2
+5
+0
+*/
@@ -0,0 +1,85 @@
+#include <unordered_map>
+#include "hsbi_runtime.h"
+
+class Cache {
+public:
+    std::unordered_map<int, string> names;
+};
+
+int countWord(std::unordered_map<string, int>& counts, string word) {
+    counts[word] = counts[word] + 1;
+    return counts[word];
+}
+
+int main() {
+    std::unordered_map<int, int> squares;
+    int i = 0;
+    while (i < 1000) {
+        squares[i * 7] = i * i;
+        i = i + 1;
+    }
+    print_int(squares.size());
+    print_int(squares[70]);
+
+    // count() fuegt nichts ein, operator[] schon
+    print_int(squares.count(71));
+    print_int(squares.size());
+    print_int(squares[71]);
+    print_int(squares.size());
+
+    // Jeden zweiten Schluessel loeschen, die uebrigen bleiben auffindbar
+    i = 0;
+    while (i < 1000) {
+        if (i % 2 == 0) {
+            squares.erase(i * 7);
+        }
+        i = i + 1;
+    }
+    print_int(squares.size());
+    print_int(squares.count(7));
+    print_int(squares.count(14));
+    print_int(squares[7 * 999]);
+    print_int(squares.erase(14));
+
+    std::unordered_map<string, int> counts;
+    countWord(counts, "a");
+    countWord(counts, "b");
+    print_int(countWord(counts, "a"));
+
+    // Kopien sind unabhaengig
+    std::unordered_map<string, int> snapshot = counts;
+    counts.erase("a");
+    print_int(counts.count("a"));
+    print_int(snapshot["a"]);
+
+    Cache c;
+    c.names[1] = "one";
+    Cache d = c;
+    d.names[1] = "uno";
+    print_string(c.names[1]);
+    print_string(d.names[1]);
+    print_bool(c.names[2] == "");
+    print_int(c.names.size());
+    return 0;
+}
+
+/* EXPECT
+1000
+100
+0
+1000
+0
+1001
+501
+1
+0
+998001
+0
+2
+0
+2
+one
+uno
+1
+2
+*/
@@ -0,0 +1,17 @@
+#include "hsbi_runtime.h"
+
+int rarelyUsed(int x) {
+    return x + missing; // unbekannter Bezeichner, nur mit --check-bodies ein Fehler
+}
+
+int main() {
+    print_int(1);
+    if (false) {
+        print_int(rarelyUsed(2));
+    }
+    return 0;
+}
+
+/* EXPECT:
+1
+*/
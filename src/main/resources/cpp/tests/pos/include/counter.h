@@ -0,0 +1,24 @@
+#ifndef COUNTER_H
+#define COUNTER_H
+
+// Zaehler mit fester Schrittweite
+class Counter {
+public:
+    Counter(int s) { step = s; value = 0; }
+    int tick() {
+        value = value + step;
+        return value;
+    }
+
+    int value;
+    int step;
+};
+
+int clampTo(int v, int limit) {
+    if (v > limit) {
+        return limit;
+    }
+    return v;
+}
+
+#endif
@@ -0,0 +1,20 @@
+#ifndef GEOMETRY_H
+#define GEOMETRY_H
+
+// Wird relativ zum Verzeichnis dieses Headers gefunden
+#include "counter.h"
+
+class Rect {
+public:
+    Rect(int w, int h) { width = w; height = h; }
+    int area() { return width * height; }
+
+    int width;
+    int height;
+};
+
+int scaled(int v, int factor) {
+    return clampTo(v * factor, 1000);
+}
+
+#endif
@@ -0,0 +1,50 @@
+#include "hsbi_runtime.h"
+
+// Deckt die Grammatik einmal ab, damit der Parser-Cache vor der ersten Eingabe warm ist
+class Shape {
+public:
+    Shape() { name = "shape"; }
+    Shape(string n) { name = n; }
+    virtual int area() { return 0; }
+    string label() { return name; }
+
+    string name;
+};
+
+class Square : public Shape {
+public:
+    Square(int s) { side = s; }
+    int area() { return side * side; }
+
+    int side;
+};
+
+constexpr int twice(int x) { return x + x; }
+
+void bump(int& counter, int step) { counter = counter + step; }
+
+bool check(Shape& s, char c) {
+    if (!(s.area() >= 1) || (c == 'x' && s.label() != "")) {
+        return false;
+    } else {
+        return true;
+    }
+}
+
+int main() {
+    const int limit = twice(+3);
+    int i = 0;
+    int& r = i;
+    bool done = false;
+    Square sq = Square(4);
+    Shape& base = sq;
+    while (i < limit && !done) {
+        bump(r, 1);
+        done = check(base, 'y');
+        i = (i * 2 - -1) / 3 % 5;
+    }
+    print_int(sq.area());
+    print_bool(done);
+    print_string(base.label());
+    return 0;
+}
@@ -1,63 +1,1154 @@
 package cpp;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import cpp.antlr.cppLexer;
 import cpp.antlr.cppParser;
+import cpp.aot.ImageMain;
+import cpp.aot.PrecompiledHeaders;
+import cpp.aot.ProgramCache;
+import cpp.aot.ProgramImage;
+import cpp.app.Main;
+import cpp.app.Options;
+import cpp.app.SourceLoader;
+import cpp.ast.ASTNode;
+import cpp.ast.BinaryExprNode;
+import cpp.ast.ClassDefNode;
+import cpp.ast.DeferredBody;
+import cpp.ast.ExprNode;
+import cpp.ast.FunctionNode;
+import cpp.ast.IndexExprNode;
+import cpp.ast.InlinedCallNode;
 import cpp.ast.ProgramNode;
+import cpp.ast.StmtNode;
+import cpp.ast.SymbolTable;
+import cpp.ast.TypeNode;
+import cpp.ast.VarDeclNode;
+import cpp.ast.VarRefNode;
+import cpp.error.CompileError;
 import cpp.interp.Interpreter;
+import cpp.model.ClassDef;
+import cpp.model.FunctionDef;
+import cpp.model.MethodDef;
 import cpp.model.ProgramDef;
+import cpp.model.Type;
+import cpp.model.Vtable;
+import cpp.opt.AstScanner;
+import cpp.opt.BoundsChecks;
+import cpp.opt.ConstantFolder;
+import cpp.opt.Inliner;
+import cpp.parse.Lexer;
+import cpp.parse.Parser;
+import cpp.parse.Token;
+import cpp.profile.Profile;
+import cpp.profile.ProfileKeys;
+import cpp.runtime.UnorderedMap;
+import cpp.runtime.Value;
+import cpp.runtime.Vector;
 import cpp.sema.ASTBuilder;
+import cpp.sema.BodyAnalyzer;
 import cpp.sema.DefinitionBuilder;
-import cpp.util.ParserErrorListener;
+import cpp.util.MappedCharStream;
+import cpp.util.SourceParser;
+import cpp.vm.Jit;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 class CppTestSuite {
   private static final Pattern EXPECT_BLOCK =
       Pattern.compile("/\\*\\s*EXPECT[^\\n]*\\n([\\s\\S]*?)\\*/", Pattern.MULTILINE);
 
+  // Every positive test runs under each flag set. Runs separated by ';' execute in order and share
+  // a temporary directory, substituted for {dir}, so a later run can read what an earlier wrote.
+  private static final List<String> FLAG_SETS =
+      List.of(
+          "",
+          "--inline",
+          "--memo-size=4",
+          "--engine=closure",
+          "--engine=closure --inline --memo-size=4",
+          "--engine=vm",
+          "--engine=vm --inline --memo-size=4",
+          "--jit-threshold=1 --jit-loop-threshold=1",
+          "--engine=vm --osr-threshold=1",
+          "--jit-threshold=1 --jit-loop-threshold=1 --osr-threshold=1",
+          "--prune-unreachable --inline",
+          "--lazy-bodies",
+          "--lazy-bodies --parser=hand --engine=jit",
+          "--stream --parser=hand --engine=vm",
+          "--stream --parser=antlr-direct",
+          "--stream --prune-unreachable",
+          "--parser=hand --engine=vm",
+          "--parser=antlr-direct",
+          "--cache-dir={dir}; --cache-dir={dir} --inline --engine=vm",
+          "--profile-out={dir}/profile.txt; --profile-in={dir}/profile.txt --inline;"
+              + " --profile-in={dir}/profile.txt --jit-threshold=1");
+
   @Test
   void sanity() {
     new Interpreter(new ProgramDef());
   }
 
   @DisplayName("Positive tests")
+  @ParameterizedTest(name = "{0} [{1}]")
+  @MethodSource("positiveRuns")
+  void runPositiveTests(Path file, String flagSet, @TempDir Path dir) throws Exception {
+    String expected = parseExpectedOutput(file);
+    assertNotNull(expected, "Missing EXPECT block in " + file.getFileName());
+    for (String run : flagSet.split(";")) {
+      String[] flags = run.replace("{dir}", dir.toString()).trim().split("\\s+");
+      String actual = run.isBlank() ? runProgram(file) : runProgram(file, flags);
+      assertEquals(normalize(expected), normalize(actual), "Output mismatch for [" + run + "]");
+    }
+  }
+
+  @DisplayName("Positive tests (bundled jar)")
   @ParameterizedTest(name = "{0}")
   @MethodSource("positiveTests")
-  void runPositiveTests(Path file) throws Exception {
+  void runPositiveTestsFromJar(Path file, @TempDir Path dir) throws Exception {
     String expected = parseExpectedOutput(file);
     assertNotNull(expected, "Missing EXPECT block in " + file.getFileName());
-    String actual = runProgram(file);
+    Path jar = dir.resolve("program.jar");
+    Main.main("bundle", file.toString(), "--output=" + jar, "--engine=vm", "--inline");
+    ProgramImage image;
+    try (JarFile archive = new JarFile(jar.toFile())) {
+      String mainClass = archive.getManifest().getMainAttributes().getValue("Main-Class");
+      assertEquals(ImageMain.class.getName(), mainClass);
+      image = ProgramImage.read(archive.getInputStream(archive.getEntry(ProgramImage.ENTRY)));
+    }
+    String actual = captureOutput(() -> ImageMain.run(image));
     assertEquals(normalize(expected), normalize(actual), "Output mismatch for " + file);
   }
 
+  @Test
+  void programImageLoadsWithoutParsingOrDefinitionBuilding(@TempDir Path dir) throws Exception {
+    Path source = Path.of("src/main/resources/cpp/tests/pos/P25_tiered_jit.cpp");
+    Path file = Files.copy(source, dir.resolve("p25.cpp"));
+    Path jar = dir.resolve("p25.jar");
+    Main.main("bundle", file.toString(), "--output=" + jar);
+    Files.delete(file);
+    ProgramImage image;
+    try (JarFile archive = new JarFile(jar.toFile())) {
+      image = ProgramImage.read(archive.getInputStream(archive.getEntry(ProgramImage.ENTRY)));
+    }
+    // Timing lives in the JMH benchmarks. Here the image must arrive complete: nothing is left
+    // for DefinitionBuilder to materialize and no body is left to parse.
+    ProgramDef program = image.program;
+    assertFalse(program.hasDeferred(), "deferred definitions");
+    for (List<FunctionDef> overloads : program.functions.values()) {
+      for (FunctionDef function : overloads) {
+        assertNull(function.deferredBody, function.signature);
+        assertTrue(function.isBuiltin || function.body != null, function.signature);
+      }
+    }
+    for (ClassDef classDef : program.classes.values()) {
+      for (MethodDef method : classDef.methods) {
+        assertNull(method.deferredBody, method.signature);
+        assertNotNull(method.body, method.signature);
+      }
+    }
+    String actual = captureOutput(() -> ImageMain.run(image));
+    assertEquals(normalize(parseExpectedOutput(source)), normalize(actual));
+  }
+
+  @Test
+  void bundledJarRunsStandalone(@TempDir Path dir) throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P25_tiered_jit.cpp");
+    Path jar = dir.resolve("p25.jar");
+    Main.main("bundle", file.toString(), "--output=" + jar, "--engine=jit");
+    String java = ProcessHandle.current().info().command().orElse("java");
+    Process process =
+        new ProcessBuilder(java, "-jar", jar.toString()).redirectErrorStream(true).start();
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertEquals(0, process.waitFor());
+    assertEquals(normalize(parseExpectedOutput(file)), normalize(output));
+  }
+
+  @Test
+  void jitCompilesHotFunctionsInBackground() throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P25_tiered_jit.cpp");
+    Interpreter interpreter = new Interpreter(new DefinitionBuilder().build(parse(file)));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Jit jit = interpreter.enableBytecodeEngine().enableJit(10, 100, false, executor);
+      String output = captureOutput(interpreter::runMain);
+      assertEquals(normalize(parseExpectedOutput(file)), normalize(output));
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "JIT compiler finished");
+      assertTrue(jit.compiledFunctions() >= 2, "score and collatz are compiled");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void jitRunsShareOneCompilerThread() throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P25_tiered_jit.cpp");
+    for (int i = 0; i < 3; i++) {
+      Interpreter interpreter = new Interpreter(new DefinitionBuilder().build(parse(file)));
+      interpreter.enableBytecodeEngine().enableJit(1, 1, false);
+      captureOutput(interpreter::runMain);
+    }
+    long threads =
+        Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("cpp-jit"))
+            .count();
+    assertEquals(1, threads, "compiler threads");
+  }
+
+  @Test
+  void jitCompilesProfiledHotFunctionsAtStartup(@TempDir Path dir) throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P25_tiered_jit.cpp");
+    Path recorded = dir.resolve("profile.txt");
+    runProgram(file, "--profile-out=" + recorded);
+    assertTrue(Files.readString(recorded).startsWith(Profile.HEADER), "profile header");
+    Profile profile = Profile.read(recorded);
+    assertTrue(profile.hotFunctions(10).contains("score(int)"), "score is hot");
+
+    Interpreter interpreter = new Interpreter(new DefinitionBuilder().build(parse(file)));
+    Jit jit =
+        interpreter.enableBytecodeEngine().enableJit(1_000_000, 1_000_000, false, Runnable::run);
+    interpreter.enqueueHotFunctions(profile, jit, 10);
+    assertTrue(jit.compiledFunctions() >= 2, "hot functions compile before main runs");
+    String output = captureOutput(interpreter::runMain);
+    assertEquals(normalize(parseExpectedOutput(file)), normalize(output));
+  }
+
+  @Test
+  void prunedDefinitionsMaterializeOnDemand() throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P24_reachability.cpp");
+    ProgramDef program = new DefinitionBuilder().build(parse(file), true);
+    assertTrue(program.classes.containsKey("Square"), "Square is reachable");
+    assertTrue(program.deferredClasses.containsKey("Circle"), "Circle is deferred");
+    assertTrue(program.deferredClasses.containsKey("Unused"), "Unused is deferred");
+    assertTrue(program.deferredFunctions.containsKey("neverCalled"), "neverCalled is deferred");
+
+    Set<String> materialized = new DefinitionBuilder(program).materialize(List.of("neverCalled"));
+    assertTrue(materialized.contains("Unused"), "Unused is materialized");
+    assertTrue(program.classes.get("Unused").vtable.containsKey("value()"), "Unused vtable");
+    assertTrue(program.functions.containsKey("helperOnlyForUnused"), "transitive callee");
+    assertTrue(program.deferredClasses.containsKey("Circle"), "Circle stays deferred");
+  }
+
+  @Test
+  void boundsChecksDropOnlyProvablySafeAccesses() {
+    String source =
+        "int main() {\n"
+            + "  int a[4];\n"
+            + "  int i = 0;\n"
+            + "  while (i < 4) { a[i] = i; i = i + 1; a[i] = 0; }\n"
+            + "  int j = 0;\n"
+            + "  while (j <= 4) { a[j] = j; j = j + 1; }\n"
+            + "  int k = 1;\n"
+            + "  while (k < 4) { a[k] = a[k - 1]; k = k * 2; }\n"
+            + "  return a[0];\n"
+            + "}\n";
+    ProgramDef program = new DefinitionBuilder().build(Parser.forSource(source).parseProgram());
+    BoundsChecks boundsChecks = new BoundsChecks(program);
+    boundsChecks.run();
+    List<Boolean> checked = new ArrayList<>();
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        if (expr instanceof IndexExprNode index) {
+          checked.add(index.checked);
+        }
+      }
+    }.scanBlock(program.functions.get("main").get(0).body);
+    // Only a[i] before the increment is safe; j <= 4 reaches a[4] and k does not grow by one.
+    assertEquals(List.of(false, true, true, true, true, true), checked);
+    assertEquals(1, boundsChecks.getRemovedCount());
+  }
+
+  @Test
+  void inlinedCallsRecordStaticArgumentTypes() {
+    String source =
+        "class Acc {\n"
+            + "public:\n"
+            + "  int plus(int x) { return total + x; }\n"
+            + "  int total;\n"
+            + "};\n"
+            + "int twice(int x) { return 2 * x; }\n"
+            + "int main() {\n"
+            + "  Acc a;\n"
+            + "  a.total = 1;\n"
+            + "  int n = 4;\n"
+            + "  print_int(a.plus(n));\n"
+            + "  print_int(twice(a.total));\n"
+            + "  return 0;\n"
+            + "}\n";
+    ProgramDef program = new DefinitionBuilder().build(Parser.forSource(source).parseProgram());
+    Inliner inliner = new Inliner(program);
+    inliner.run();
+    List<String> receivers = new ArrayList<>();
+    new AstScanner() {
+      @Override
+      protected void visitExpr(ExprNode expr) {
+        if (expr instanceof InlinedCallNode inlined) {
+          receivers.add(inlined.signature + " on " + inlined.receiverClass);
+        }
+      }
+    }.scanBlock(program.functions.get("main").get(0).body);
+    assertEquals(List.of("plus(int) on Acc", "twice(int) on null"), receivers);
+    assertEquals(2, inliner.getInlinedCount());
+    assertEquals("5\n2", normalize(captureOutput(new Interpreter(program)::runMain)));
+  }
+
+  @Test
+  void vectorCopiesShareStorageUntilWritten() {
+    Random random = new Random(49);
+    int[] expected = new int[(1 << 16) + 3];
+    Vector original = new Vector(Type.Kind.INT);
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = random.nextInt();
+      original.pushBack(Value.intValue(expected[i]));
+    }
+    Object first = original.get(0).data;
+    Vector copy = original.copy();
+    copy.sort(0, copy.size());
+    Arrays.sort(expected);
+    // Sorting is what separates the copy from the original
+    assertEquals(first, original.get(0).data);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], (int) copy.get(i).data);
+    }
+  }
+
+  @Test
+  void unorderedMapMatchesHashMapUnderRandomEdits() {
+    Random random = new Random(50);
+    UnorderedMap map = new UnorderedMap(Type.Kind.INT, Type.Kind.INT);
+    Map<Integer, Integer> expected = new HashMap<>();
+    UnorderedMap snapshot = null;
+    Map<Integer, Integer> expectedSnapshot = null;
+    for (int step = 0; step < 20_000; step++) {
+      // Few keys, so that collisions and erasures inside probe chains occur
+      int key = random.nextInt(512) * 1024;
+      Value k = Value.intValue(key);
+      switch (random.nextInt(3)) {
+        case 0 -> {
+          map.put(k, Value.intValue(step));
+          expected.put(key, step);
+        }
+        case 1 -> assertEquals(expected.remove(key) != null, map.remove(k));
+        default -> assertEquals(expected.containsKey(key), map.contains(k));
+      }
+      if (step == 10_000) {
+        snapshot = map.copy();
+        expectedSnapshot = new HashMap<>(expected);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(Value.intValue(entry.getKey())).data);
+    }
+    assertEquals(expectedSnapshot.size(), snapshot.size());
+    for (Map.Entry<Integer, Integer> entry : expectedSnapshot.entrySet()) {
+      assertEquals(entry.getValue(), snapshot.get(Value.intValue(entry.getKey())).data);
+    }
+  }
+
+  @Test
+  void definitionBuildingScalesLinearly() {
+    // Timing lives in DefinitionBenchmark; here the stored work is counted, which is exact. Every
+    // class in the chain adds a method and a field, so copying inherited entries would grow with
+    // the square of the depth.
+    for (int depth : new int[] {10, 100, 1_000, 5_000}) {
+      ProgramNode node = Parser.forSource(ScalingPrograms.chain(depth)).parseProgram();
+      ProgramDef program = new DefinitionBuilder().build(node);
+      assertEquals(depth, program.functions.get("g0").size());
+      Set<Vtable> layers = Collections.newSetFromMap(new IdentityHashMap<>());
+      long entries = 0;
+      for (ClassDef classDef : program.classes.values()) {
+        if (layers.add(classDef.vtable)) {
+          entries += classDef.vtable.ownSize();
+        }
+      }
+      assertEquals(depth, layers.size(), "vtable layers at depth " + depth);
+      assertEquals(2L * depth, entries, "vtable entries at depth " + depth);
+
+      ClassDef deepest = program.classes.get("C" + (depth - 1));
+      assertSame(program.classes.get("C0").methods.get(0), deepest.vtable.get("m0()"));
+      assertSame(deepest.methods.get(1), deepest.vtable.get("get()"));
+      assertEquals(depth + 1, deepest.vtable.entries().size());
+      assertTrue(deepest.hasField("f0"));
+      assertFalse(deepest.hasField("f" + depth));
+    }
+
+    ProgramNode duplicate =
+        Parser.forSource(ScalingPrograms.chain(10) + "int g3(C7& a) { return 0; }\n")
+            .parseProgram();
+    CompileError error =
+        assertThrows(CompileError.class, () -> new DefinitionBuilder().build(duplicate));
+    assertTrue(error.getMessage().startsWith("Function already defined: g3(C7&)"));
+
+    ProgramNode shadowing =
+        Parser.forSource(ScalingPrograms.chain(10) + "class D : public C9 { public: int f3; };\n")
+            .parseProgram();
+    error = assertThrows(CompileError.class, () -> new DefinitionBuilder().build(shadowing));
+    assertEquals("Duplicate field in inheritance chain: f3", error.getMessage());
+  }
+
+  @Test
+  void parallelAnalysisReportsAllErrorsInSourceOrder(@TempDir Path dir) throws Exception {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 600; i++) {
+      String body = "return x + " + i + ";";
+      if (i == 217) {
+        body = "return missing + other;";
+      } else if (i == 480) {
+        body = "int x = 1; return x;";
+      }
+      source.append("int f").append(i).append("(int x) { ").append(body).append(" }\n");
+    }
+    source.append("int main() { return 0; }\n");
+    Path file = dir.resolve("generated.cpp");
+    Files.writeString(file, source);
+
+    for (int threads : new int[] {1, 4, 16}) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        ProgramDef program = new DefinitionBuilder().build(parse(file));
+        CompileError error =
+            assertThrows(CompileError.class, () -> new BodyAnalyzer(program, pool, 8).run());
+        assertEquals(
+            "Unknown identifier: missing\n"
+                + "Unknown identifier: other\n"
+                + "Variable already defined in scope: x",
+            error.getMessage());
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  @Test
+  void bodyChecksRejectCodeThatNeverRuns() throws Exception {
+    Path file = Path.of("src/main/resources/cpp/tests/pos/P32_unknown_identifier_unexecuted.cpp");
+    assertEquals("1", normalize(runProgram(file)));
+    CompileError error =
+        assertThrows(CompileError.class, () -> runProgram(file, "--check-bodies"));
+    assertEquals("Unknown identifier: missing", error.getMessage());
+  }
+
+  @Test
+  void sourceParserReusesInstancesAndFallsBackToFullContext() throws Exception {
+    SourceParser.warmUp();
+    SourceParser parser = new SourceParser();
+    ASTBuilder builder = new ASTBuilder();
+    for (Path file : listCppFiles(Path.of("src/main/resources/cpp/tests/pos"))) {
+      ProgramNode program =
+          (ProgramNode)
+              builder.visit(parser.parseProgram(org.antlr.v4.runtime.CharStreams.fromPath(file)));
+      assertNotNull(program, "AST for " + file.getFileName());
+    }
+    assertTrue(builder.visit(parser.parseReplInput("int y = 2;")) instanceof VarDeclNode);
+    assertEquals(0, parser.getFallbacks(), "valid inputs parse in SLL mode");
+
+    CompileError error =
+        assertThrows(CompileError.class, () -> parser.parseReplInput("int = 3;"));
+    assertTrue(error.getMessage().startsWith("Parse error at 1:"), error.getMessage());
+    assertEquals(1, parser.getFallbacks(), "syntax errors are reported by the LL pass");
+    assertTrue(builder.visit(parser.parseReplInput("y + 1")) instanceof ExprNode);
+  }
+
+  @Test
+  void lazyBodiesAreParsedAndCheckedOnFirstCall(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("lazy.cpp");
+    Files.writeString(
+        file,
+        """
+        int used(int x) { return x + 1; }
+        int broken() { return missing; }
+        class Box {
+        public:
+            Box(int v) { value = v; }
+            int get() { return value; }
+            int unused() { int a = 1; return value * a; }
+            int value;
+        };
+        int main() { Box b = Box(used(1)); print_int(b.get()); return 0; }
+        """);
+    Path bad = dir.resolve("bad.cpp");
+    Files.writeString(bad, "int unused() { return 1 + ; }\nint main() { return 0; }\n");
+    Path unbalanced = dir.resolve("unbalanced.cpp");
+    Files.writeString(unbalanced, "int unused() { return (1; }\nint main() { return 0; }\n");
+    Path late = dir.resolve("late.cpp");
+    Files.writeString(
+        late, "int later() { if 1 { return 1; } return 0; }\nint main() { return 0; }\n");
+
+    for (String parser : new String[] {"antlr", "hand"}) {
+      Options options = Options.parse("--lazy-bodies", "--parser=" + parser);
+      ProgramDef program = new DefinitionBuilder().build(parse(file, options));
+      Interpreter interpreter = new Interpreter(program);
+      interpreter.enableBodyChecks();
+      assertEquals("2", normalize(captureOutput(interpreter::runMain)), parser);
+
+      assertNotNull(program.functions.get("used").get(0).body, "used is loaded");
+      MethodDef unused = program.classes.get("Box").methods.get(1);
+      assertNull(unused.body, "unused stays unparsed");
+      unused.loadBody();
+      assertEquals(2, unused.body.statements.size(), "unused parses on demand");
+
+      FunctionDef broken = program.functions.get("broken").get(0);
+      CompileError error = assertThrows(CompileError.class, broken::loadBody);
+      assertEquals("Unknown identifier: missing", error.getMessage());
+      assertThrows(CompileError.class, () -> parse(bad, options), "operator before ';'");
+      assertThrows(CompileError.class, () -> parse(unbalanced, options), "unbalanced brackets");
+      // Bodies are only brace-matched at load time; other syntax errors surface on first use.
+      FunctionDef later =
+          new DefinitionBuilder().build(parse(late, options)).functions.get("later").get(0);
+      error = assertThrows(CompileError.class, later::loadBody);
+      assertTrue(error.getMessage().startsWith("Parse error at 1:17"), error.getMessage());
+    }
+  }
+
+  @Test
+  void streamingDeliversDeclarationsBeforeReadingTheRest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("streamed.cpp");
+    Files.writeString(
+        file,
+        "class A {\npublic:\n int v;\n};\nint one() { return 1; }\nint two() { return 2 +; }\n");
+    assertThrows(CompileError.class, () -> Options.parse("--stream", "--lazy-bodies"));
+    for (String parser : new String[] {"hand", "antlr", "antlr-direct"}) {
+      List<ASTNode> delivered = new ArrayList<>();
+      SourceLoader loader = new SourceLoader(Options.parse("--parser=" + parser));
+      CompileError error =
+          assertThrows(CompileError.class, () -> loader.stream(List.of(file), delivered::add));
+      assertTrue(error.getMessage().startsWith(file + ": Parse error at 6:"), error.getMessage());
+      assertEquals(2, delivered.size(), parser);
+      assertEquals("A", ((ClassDefNode) delivered.get(0)).name);
+      assertEquals(file.toString(), ((FunctionNode) delivered.get(1)).file);
+    }
+  }
+
+  @Test
+  void mappedCharStreamMatchesDecodedString(@TempDir Path dir) throws Exception {
+    String[] samples = {
+      "int main() { return 0; }\n".repeat(40),
+      "// Grüße aus Bielefeld\nint größe = 3;\n".repeat(30),
+      "/* \uD83D\uDE80 */ char c = 'x';\n".repeat(30) + "// Ende ohne Zeilenumbruch"
+    };
+    Random random = new Random(44);
+    for (String sample : samples) {
+      Path file = dir.resolve("mapped.cpp");
+      Files.writeString(file, sample);
+      MappedCharStream mapped = MappedCharStream.open(file);
+      org.antlr.v4.runtime.CharStream expected =
+          org.antlr.v4.runtime.CharStreams.fromString(sample);
+      assertEquals(expected.size(), mapped.size());
+      assertEquals(sample, mapped.toString());
+      for (int i = 0; i <= expected.size(); i++) {
+        assertEquals(expected.LA(1), mapped.LA(1), "LA(1) at " + i);
+        assertEquals(expected.LA(-1), mapped.LA(-1), "LA(-1) at " + i);
+        if (i < expected.size()) {
+          expected.consume();
+          mapped.consume();
+        }
+      }
+      assertThrows(IllegalStateException.class, mapped::consume);
+      for (int n = 0; n < 200; n++) {
+        int a = random.nextInt(expected.size());
+        int b = a + random.nextInt(Math.min(80, expected.size() - a));
+        expected.seek(a);
+        mapped.seek(a);
+        assertEquals(expected.LA(2), mapped.LA(2));
+        org.antlr.v4.runtime.misc.Interval span = org.antlr.v4.runtime.misc.Interval.of(a, b);
+        assertEquals(expected.getText(span), mapped.getText(span));
+      }
+    }
+  }
+
+  @Test
+  void compactAstSharesNamesAndTypesAndPacksPositions() {
+    String source = "int f(int a) { int b = a + 1; return b; }\n  int main() { return f(2); }\n";
+    ProgramNode hand = Parser.forSource(source).parseProgram();
+    ProgramNode direct =
+        new SourceParser().buildProgram(org.antlr.v4.runtime.CharStreams.fromString(source));
+    FunctionNode f = (FunctionNode) hand.declarations.get(0);
+    FunctionNode main = (FunctionNode) hand.declarations.get(1);
+    FunctionNode g = (FunctionNode) direct.declarations.get(0);
+    // Type nodes and identifiers are the same objects across parsers and files.
+    assertSame(TypeNode.of("int", false), f.returnType);
+    assertSame(f.returnType, main.returnType);
+    assertSame(f.params.get(0).type, g.params.get(0).type);
+    assertSame(f.name, g.name);
+    VarDeclNode decl = (VarDeclNode) f.body.statements.get(0);
+    assertSame(f.params.get(0).name, ((VarRefNode) ((BinaryExprNode) decl.init).left).name);
+    assertThrows(UnsupportedOperationException.class, () -> f.body.statements.add(decl));
+    assertEquals(2, main.line());
+    assertEquals(2, main.column());
+    // Long lines and files keep their exact positions.
+    VarRefNode far = new VarRefNode("x");
+    far.setPosition(5_000_000, 5_000);
+    assertEquals(5_000_000, far.line());
+    assertEquals(5_000, far.column());
+    far.setPosition(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    assertEquals(Integer.MAX_VALUE, far.line());
+    assertEquals(Integer.MAX_VALUE, far.column());
+    f.returnType.setPosition(7, 7);
+    assertEquals(0, TypeNode.of("int", false).line());
+  }
+
+  @Test
+  void internedSymbolsAreReleasedWithTheirAst() throws InterruptedException {
+    String name = "symbol_" + System.nanoTime();
+    VarRefNode ref = new VarRefNode(new String(name));
+    assertSame(ref.name, SymbolTable.intern(new String(name)));
+    WeakReference<String> interned = new WeakReference<>(ref.name);
+    ref = null;
+    for (int i = 0; i < 50 && interned.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(interned.get(), "symbol outlives its AST");
+  }
+
+  @Test
+  void statementsPastColumn1023KeepDistinctProfileKeys() {
+    String source =
+        "int f(int x) {"
+            + " ".repeat(1100)
+            + "if (x > 0) { x = 1; } if (x > 1) { x = 2; } return x; }\n"
+            + "int main() { return f(1); }\n";
+    ProgramDef program = new DefinitionBuilder().build(Parser.forSource(source).parseProgram());
+    List<StmtNode> statements = program.functions.get("f").get(0).body.statements;
+    ProfileKeys keys = new ProfileKeys(program);
+    String first = keys.keyOf(statements.get(0));
+    String second = keys.keyOf(statements.get(1));
+    assertEquals("f(int)@0:1114", first);
+    assertEquals("f(int)@0:1136", second);
+    assertSame(statements.get(1), keys.nodeAt(second));
+  }
+
+  @Test
+  void programCacheIsKeyedBySourceAndToleratesBrokenEntries(@TempDir Path dir) throws Exception {
+    Path source = dir.resolve("cached.cpp");
+    Path cacheDir = dir.resolve("cache");
+    String cacheFlag = "--cache-dir=" + cacheDir;
+    Files.writeString(source, "int main() { print_int(6 * 7); return 0; }\n");
+    assertNull(new ProgramCache(cacheDir, source, false).read(), "cold cache");
+    assertEquals("42", normalize(runProgram(source, cacheFlag)));
+    ProgramDef cached = new ProgramCache(cacheDir, source, false).read();
+    assertNotNull(cached, "warm cache");
+    assertEquals("42", normalize(captureOutput(new Interpreter(cached, true)::runMain)));
+    assertNull(new ProgramCache(cacheDir, source, true).read(), "pruning is part of the key");
+
+    Files.writeString(source, "int main() { print_int(7); return 0; }\n");
+    ProgramCache changed = new ProgramCache(cacheDir, source, false);
+    assertNull(changed.read(), "edited source misses");
+    assertEquals("7", normalize(runProgram(source, cacheFlag)));
+
+    byte[] bytes = Files.readAllBytes(changed.getFile());
+    Files.write(changed.getFile(), Arrays.copyOf(bytes, bytes.length / 2));
+    assertNull(changed.read(), "truncated entry is a miss");
+    assertEquals("7", normalize(runProgram(source, cacheFlag)));
+    ProgramDef program = changed.read();
+    assertNotNull(program, "truncated entry is rewritten");
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> writes = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        writes.add(executor.submit(() -> changed.write(program)));
+      }
+      for (Future<?> write : writes) {
+        write.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertNotNull(changed.read(), "concurrent writers leave a readable entry");
+    try (Stream<Path> entries = Files.list(cacheDir)) {
+      assertEquals(2, entries.count(), "no temporary files are left behind");
+    }
+  }
+
+  @Test
+  void multipleSourcesAreParsedConcurrentlyAndMergedInOrder(@TempDir Path dir) throws Exception {
+    Path lib = Files.createDirectories(dir.resolve("lib"));
+    StringBuilder calls = new StringBuilder();
+    List<String> expectedOrder = new ArrayList<>();
+    List<String> expectedFiles = new ArrayList<>();
+    for (int i = 0; i < 24; i++) {
+      String name = String.format("f%02d", i);
+      Files.writeString(
+          lib.resolve(name + ".cpp"), "int " + name + "(int x) { return x + " + i + "; }\n");
+      calls.append("total = ").append(name).append("(total);\n");
+      expectedOrder.add(name);
+      expectedFiles.add(lib.resolve(name + ".cpp").toString());
+    }
+    Files.writeString(lib.resolve("readme.txt"), "not a source file");
+    Path main = dir.resolve("main.cpp");
+    Files.writeString(
+        main,
+        "class Sum { public: int value; };\nint main() {\nint total = 0;\n"
+            + calls
+            + "Sum s;\ns.value = total;\nprint_int(s.value);\nreturn 0;\n}\n");
+    expectedOrder.add("main");
+    expectedFiles.add(main.toString());
+
+    List<Path> sources = SourceLoader.expand(List.of(lib.toString(), main.toString()));
+    assertEquals(25, sources.size());
+    for (String parser : new String[] {"antlr", "hand"}) {
+      ProgramNode merged = new SourceLoader(Options.parse("--parser=" + parser)).load(sources);
+      List<String> order = new ArrayList<>();
+      List<String> files = new ArrayList<>();
+      for (ASTNode decl : merged.declarations) {
+        if (decl instanceof FunctionNode function) {
+          order.add(function.name);
+          files.add(function.file);
+        }
+      }
+      assertEquals(expectedOrder, order, parser);
+      assertEquals(expectedFiles, files, parser);
+      ProgramDef program = new DefinitionBuilder().build(merged);
+      assertEquals("276", normalize(captureOutput(new Interpreter(program)::runMain)), parser);
+    }
+  }
+
+  @Test
+  void bodyErrorsAreOrderedByFileThenPosition(@TempDir Path dir) throws Exception {
+    Path first = dir.resolve("z.cpp");
+    Path second = dir.resolve("a.cpp");
+    Files.writeString(first, "\n\n\nint late(int x) { return x + first; }\n");
+    Files.writeString(
+        second,
+        "class Box { public: int get() { return second; } };\n"
+            + "int main() { return third; }\n");
+    ProgramDef program =
+        new DefinitionBuilder().build(new SourceLoader(new Options()).load(List.of(first, second)));
+    CompileError error = assertThrows(CompileError.class, () -> new BodyAnalyzer(program).run());
+    assertEquals(
+        "Unknown identifier: first\nUnknown identifier: second\nUnknown identifier: third",
+        error.getMessage());
+  }
+
+  @Test
+  void duplicateDefinitionsAcrossSourcesNameFileAndLine(@TempDir Path dir) throws Exception {
+    Path first = dir.resolve("a.cpp");
+    Path second = dir.resolve("b.cpp");
+    Files.writeString(first, "int twice(int x) { return 2 * x; }\nclass Box { public: int v; };\n");
+    Files.writeString(second, "int main() { return 0; }\n\nint twice(int y) { return y + y; }\n");
+    SourceLoader loader = new SourceLoader(new Options());
+    CompileError error =
+        assertThrows(
+            CompileError.class,
+            () -> new DefinitionBuilder().build(loader.load(List.of(first, second))));
+    assertEquals("Function already defined: twice(int) at " + second + ":3", error.getMessage());
+
+    Files.writeString(second, "int main() { return 0; }\nclass Box {\npublic:\n};\n");
+    error =
+        assertThrows(
+            CompileError.class,
+            () -> new DefinitionBuilder().build(loader.load(List.of(first, second)), true));
+    assertEquals("Class already defined: Box at " + second + ":2", error.getMessage());
+
+    Files.writeString(second, "int main() { return 0 }\n");
+    error = assertThrows(CompileError.class, () -> loader.load(List.of(first, second)));
+    assertTrue(error.getMessage().startsWith(second + ": "), error.getMessage());
+    String empty = Files.createDirectories(dir.resolve("empty")).toString();
+    assertThrows(CompileError.class, () -> SourceLoader.expand(List.of(empty)));
+  }
+
+  @Test
+  void includesResolveOnceAgainstSearchPaths(@TempDir Path dir) throws Exception {
+    Path inc = Files.createDirectories(dir.resolve("inc"));
+    Path src = Files.createDirectories(dir.resolve("src"));
+    Files.writeString(inc.resolve("util.h"), "int twice(int x) { return 2 * x; }\n");
+    Files.writeString(
+        src.resolve("local.h"), "#include \"util.h\"\nint four() { return twice(2); }\n");
+    Path main = src.resolve("main.cpp");
+    Files.writeString(
+        main,
+        "#include \"hsbi_runtime.h\"\n#include \"local.h\"\n #  include \"util.h\"\n"
+            + "int main() { print_int(twice(four())); return 0; }\n");
+    Options options = Options.parse("--include-path=" + inc);
+    SourceLoader loader = new SourceLoader(options);
+    assertEquals(
+        List.of(inc.resolve("util.h"), src.resolve("local.h"), main),
+        loader.withIncludes(List.of(main)));
+    ProgramNode merged = loader.load(List.of(main));
+    FunctionNode twice = (FunctionNode) merged.declarations.get(0);
+    assertEquals(inc.resolve("util.h").toString(), twice.file);
+    ProgramDef program = new DefinitionBuilder().build(merged);
+    assertEquals("8", normalize(captureOutput(new Interpreter(program)::runMain)));
+
+    CompileError error =
+        assertThrows(CompileError.class, () -> new SourceLoader(new Options()).load(List.of(main)));
+    assertEquals(src.resolve("local.h") + ":1: Cannot find include: util.h", error.getMessage());
+  }
+
+  @Test
+  void includesInCommentsAndStringsAreIgnored(@TempDir Path dir) throws Exception {
+    Path util = dir.resolve("util.h");
+    Files.writeString(util, "int twice(int x) { return 2 * x; }\n");
+    Path main = dir.resolve("main.cpp");
+    Files.writeString(
+        main,
+        "/*\n#include \"missing.h\"\n*/\n// #include \"missing.h\"\n#include \"util.h\"\n"
+            + "int main() { print_string(\"#include \\\"missing.h\\\"\"); "
+            + "print_int(twice(4)); return 0; }\n");
+    SourceLoader loader = new SourceLoader(new Options());
+    assertEquals(List.of(util, main), loader.withIncludes(List.of(main)));
+    ProgramDef program = new DefinitionBuilder().build(loader.load(List.of(main)));
+    assertEquals(
+        "#include \"missing.h\"\n8", normalize(captureOutput(new Interpreter(program)::runMain)));
+
+    Files.writeString(main, "/* one\n two */ int x;\n'\"' ;\n#include \"missing.h\"\n");
+    CompileError error = assertThrows(CompileError.class, () -> loader.withIncludes(List.of(main)));
+    assertEquals(main + ":4: Cannot find include: missing.h", error.getMessage());
+  }
+
+  @Test
+  void precompiledHeadersAreParsedOncePerProcessAndCacheDir(@TempDir Path dir) throws Exception {
+    Path header = dir.resolve("shared.h");
+    Files.writeString(
+        header,
+        "class Acc {\npublic:\n int add(int x) { total = total + x; return total; }\n"
+            + " int total;\n};\nint triple(int x) { return 3 * x; }\n");
+    Path first = dir.resolve("first.cpp");
+    Path second = dir.resolve("second.cpp");
+    Files.writeString(
+        first, "#include \"shared.h\"\nint main() { print_int(triple(14)); return 0; }\n");
+    Files.writeString(
+        second,
+        "#include \"shared.h\"\nint main() { Acc a; a.add(triple(2)); print_int(a.add(1)); "
+            + "return 0; }\n");
+    Path cacheDir = dir.resolve("cache");
+    Options options = new Options();
+
+    PrecompiledHeaders headers = new PrecompiledHeaders(cacheDir);
+    SourceLoader loader = new SourceLoader(options, headers);
+    ProgramNode firstNode = loader.load(List.of(first));
+    ProgramNode secondNode = loader.load(List.of(second));
+    assertEquals(1, headers.getParses(), "one parse per process");
+    assertTrue(
+        firstNode.declarations.get(0) != secondNode.declarations.get(0), "each load gets a copy");
+    ProgramDef firstProgram = new DefinitionBuilder().build(firstNode);
+    Interpreter interpreter = new Interpreter(firstProgram);
+    new ConstantFolder(firstProgram, interpreter).run();
+    new Inliner(firstProgram, Inliner.DEFAULT_MAX_SIZE, Inliner.DEFAULT_MAX_DEPTH, null).run();
+    assertEquals("42", normalize(captureOutput(interpreter::runMain)));
+    ProgramDef secondProgram = new DefinitionBuilder().build(secondNode);
+    assertEquals("7", normalize(captureOutput(new Interpreter(secondProgram)::runMain)));
+
+    PrecompiledHeaders restarted = new PrecompiledHeaders(cacheDir);
+    ProgramNode reloaded = new SourceLoader(options, restarted).load(List.of(second));
+    assertEquals(0, restarted.getParses(), "one parse per cache directory");
+    assertEquals(header.toString(), ((ClassDefNode) reloaded.declarations.get(0)).file);
+    ProgramDef program = new DefinitionBuilder().build(reloaded);
+    assertEquals("7", normalize(captureOutput(new Interpreter(program)::runMain)));
+
+    Files.writeString(header, Files.readString(header) + "int unused() { return 0; }\n");
+    new SourceLoader(options, restarted).load(List.of(first));
+    assertEquals(1, restarted.getParses(), "edited header is parsed again");
+    PrecompiledHeaders memoryOnly = new PrecompiledHeaders(null);
+    new SourceLoader(Options.parse("--parser=hand"), memoryOnly).load(List.of(first, second));
+    new SourceLoader(options, memoryOnly).load(List.of(second));
+    assertEquals(1, memoryOnly.getParses(), "memory-only cache");
+  }
+
+  @Test
+  void precompiledHeadersEvictLeastRecentlyUsedUnits() throws Exception {
+    PrecompiledHeaders headers = new PrecompiledHeaders(null);
+    Function<String, ProgramNode> parser = text -> Parser.forSource(text).parseProgram();
+    int count = PrecompiledHeaders.MAX_UNITS + 1;
+    for (int i = 0; i < count; i++) {
+      headers.load("int h" + i + "() { return 0; }\n", parser);
+    }
+    assertEquals(PrecompiledHeaders.MAX_UNITS, headers.getUnitCount(), "units kept");
+    headers.load("int h" + (count - 1) + "() { return 0; }\n", parser);
+    assertEquals(count, headers.getParses(), "recent unit stays");
+    headers.load("int h0() { return 0; }\n", parser);
+    assertEquals(count + 1, headers.getParses(), "oldest unit is evicted");
+  }
+
+  @DisplayName("Hand-written parser builds the ANTLR AST")
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("allTests")
+  void handParserMatchesAntlrOnCorpus(Path file) throws Exception {
+    assertSameParse(Files.readString(file), file.getFileName().toString());
+  }
+
+  @Test
+  void handParserMatchesAntlrOnGeneratedPrograms() {
+    Random random = new Random(38);
+    for (int i = 0; i < 300; i++) {
+      String source = generateProgram(random);
+      assertSameParse(source, "generated #" + i);
+      List<Token> tokens = new Lexer(source).tokenize();
+      Token dropped = tokens.get(random.nextInt(tokens.size() - 1));
+      String mutated = source.substring(0, dropped.start) + source.substring(dropped.stop + 1);
+      assertSameParse(mutated, "generated #" + i + " without '" + dropped.text + "'");
+    }
+  }
+
+  @DisplayName("Parse listener builds the parse tree's AST")
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("allTests")
+  void parseListenerMatchesTreeVisitorOnCorpus(Path file) throws Exception {
+    assertSameDirectParse(
+        new SourceParser(), Files.readString(file), file.getFileName().toString());
+  }
+
+  @Test
+  void parseListenerMatchesTreeVisitorOnGeneratedPrograms() {
+    Random random = new Random(45);
+    SourceParser reused = new SourceParser();
+    for (int i = 0; i < 300; i++) {
+      String source = generateProgram(random);
+      assertSameDirectParse(reused, source, "generated #" + i);
+      List<Token> tokens = new Lexer(source).tokenize();
+      Token dropped = tokens.get(random.nextInt(tokens.size() - 1));
+      String mutated = source.substring(0, dropped.start) + source.substring(dropped.stop + 1);
+      String name = "generated #" + i + " without '" + dropped.text + "'";
+      assertSameDirectParse(reused, mutated, name);
+    }
+  }
+
   @DisplayName("Negative tests")
   @ParameterizedTest(name = "{0}")
   @MethodSource("negativeTests")
   void runNegativeTests(Path file) {
     assertThrows(RuntimeException.class, () -> runProgram(file));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--parser=hand"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--parser=antlr-direct"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--inline"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--memoize"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--prune-unreachable"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--check-bodies"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--engine=closure"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--engine=vm"));
+    assertThrows(RuntimeException.class, () -> runProgram(file, "--jit-threshold=0"));
+    assertThrows(
+        RuntimeException.class, () -> runProgram(file, "--engine=vm", "--osr-threshold=1"));
   }
 
   static Stream<Path> positiveTests() throws IOException {
     return listCppFiles(Path.of("src/main/resources/cpp/tests/pos")).stream();
   }
 
+  static Stream<Arguments> positiveRuns() throws IOException {
+    return positiveTests()
+        .flatMap(file -> FLAG_SETS.stream().map(flags -> Arguments.of(file, flags)));
+  }
+
+  static Stream<Path> allTests() throws IOException {
+    return Stream.concat(positiveTests(), negativeTests());
+  }
+
+  private static void assertSameParse(String source, String name) {
+    Object expected;
+    Object actual;
+    try {
+      cppParser.ProgramContext program =
+          new SourceParser().parseProgram(org.antlr.v4.runtime.CharStreams.fromString(source));
+      expected = new ASTBuilder().visit(program);
+    } catch (RuntimeException e) {
+      expected = e;
+    }
+    try {
+      actual = Parser.forSource(source).parseProgram();
+    } catch (RuntimeException e) {
+      actual = e;
+    }
+    if (expected instanceof RuntimeException || actual instanceof RuntimeException) {
+      assertEquals(
+          expected instanceof RuntimeException,
+          actual instanceof RuntimeException,
+          name + ": ANTLR " + expected + ", hand-written " + actual + "\n" + source);
+      return;
+    }
+    assertSameAst(expected, actual, name);
+  }
+
+  private static void assertSameDirectParse(SourceParser direct, String source, String name) {
+    Object expected;
+    Object actual;
+    try {
+      cppParser.ProgramContext program =
+          new SourceParser().parseProgram(org.antlr.v4.runtime.CharStreams.fromString(source));
+      expected = new ASTBuilder().visit(program);
+    } catch (RuntimeException e) {
+      expected = e;
+    }
+    try {
+      actual = direct.buildProgram(org.antlr.v4.runtime.CharStreams.fromString(source));
+    } catch (RuntimeException e) {
+      actual = e;
+    }
+    if (expected instanceof RuntimeException error) {
+      assertTrue(actual instanceof RuntimeException, name + ": " + actual + "\n" + source);
+      assertEquals(error.getClass(), actual.getClass(), name);
+      assertEquals(error.getMessage(), ((RuntimeException) actual).getMessage(), name);
+      return;
+    }
+    assertSameAst(expected, actual, name);
+  }
+
+  private static void assertSameAst(Object expected, Object actual, String path) {
+    if (!(expected instanceof ASTNode) && !(expected instanceof List)) {
+      assertEquals(expected, actual, path);
+      return;
+    }
+    assertNotNull(actual, path);
+    assertEquals(expected.getClass(), actual.getClass(), path);
+    if (expected instanceof List<?> list) {
+      List<?> other = (List<?>) actual;
+      assertEquals(list.size(), other.size(), path + ".size");
+      for (int i = 0; i < list.size(); i++) {
+        assertSameAst(list.get(i), other.get(i), path + "[" + i + "]");
+      }
+      return;
+    }
+    for (Field field : expected.getClass().getFields()) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      try {
+        assertSameAst(field.get(expected), field.get(actual), path + "." + field.getName());
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private static String generateProgram(Random random) {
+    StringBuilder out = new StringBuilder("#include \"hsbi_runtime.h\"\n");
+    int[] names = {0};
+    int classes = random.nextInt(3);
+    for (int c = 0; c < classes; c++) {
+      out.append("class C").append(c);
+      if (c > 0 && random.nextBoolean()) {
+        out.append(" : public C").append(c - 1);
+      }
+      out.append(" {\npublic:\n  C").append(c).append("(int v) { f = v; }\n  int f;\n  ");
+      out.append(random.nextBoolean() ? "virtual " : "").append("int get(int& r, string s) ");
+      out.append(generateBlock(random, names, 2)).append("\n};\n");
+    }
+    int functions = 1 + random.nextInt(4);
+    for (int f = 0; f < functions; f++) {
+      out.append(random.nextInt(4) == 0 ? "constexpr " : "");
+      out.append(generateType(random)).append(" g").append(f).append("(");
+      int params = random.nextInt(3);
+      for (int p = 0; p < params; p++) {
+        out.append(p > 0 ? ", " : "").append(generateType(random)).append(" p").append(p);
+      }
+      out.append(") ").append(generateBlock(random, names, 3)).append("\n");
+    }
+    return out.toString();
+  }
+
+  private static String generateBlock(Random random, int[] names, int depth) {
+    StringBuilder out = new StringBuilder("{ ");
+    int statements = random.nextInt(4);
+    for (int i = 0; i < statements; i++) {
+      out.append(generateStmt(random, names, depth)).append(" ");
+    }
+    return out.append("}").toString();
+  }
+
+  private static String generateStmt(Random random, int[] names, int depth) {
+    int choice = random.nextInt(depth > 0 ? 7 : 3);
+    return switch (choice) {
+      case 0 ->
+          (random.nextInt(3) == 0 ? "const " : "")
+              + generateType(random)
+              + " v"
+              + names[0]++
+              + (random.nextBoolean() ? " = " + generateExpr(random, 2) : "")
+              + ";";
+      case 1 -> generateExpr(random, 3) + ";";
+      case 2 -> "return" + (random.nextBoolean() ? " " + generateExpr(random, 2) : "") + ";";
+      case 3 ->
+          "if ("
+              + generateExpr(random, 2)
+              + ") "
+              + generateBlock(random, names, depth - 1)
+              + (random.nextBoolean() ? " else " + generateBlock(random, names, depth - 1) : "");
+      case 4 ->
+          "while (" + generateExpr(random, 2) + ") " + generateBlock(random, names, depth - 1);
+      case 5 -> generateBlock(random, names, depth - 1);
+      default -> "v" + random.nextInt(5) + " = " + generateExpr(random, 2) + ";";
+    };
+  }
+
+  private static String generateType(Random random) {
+    String[] types = {"int", "bool", "char", "string", "void", "C0"};
+    return types[random.nextInt(types.length)] + (random.nextInt(4) == 0 ? "&" : "");
+  }
+
+  private static String generateExpr(Random random, int depth) {
+    String[] literals = {"0", "42", "true", "false", "'a'", "'\\n'", "\"hi\"", "\"a\\\"b\""};
+    String[] ops = {"||", "&&", "==", "!=", "<", "<=", ">", ">=", "+", "-", "*", "/", "%"};
+    if (depth == 0) {
+      return random.nextBoolean() ? literals[random.nextInt(literals.length)] : "x";
+    }
+    return switch (random.nextInt(8)) {
+      case 0 -> literals[random.nextInt(literals.length)];
+      case 1 -> "v" + random.nextInt(5);
+      case 2 ->
+          generateExpr(random, depth - 1)
+              + " "
+              + ops[random.nextInt(ops.length)]
+              + " "
+              + generateExpr(random, depth - 1);
+      case 3 -> new String[] {"!", "-", "+"}[random.nextInt(3)] + generateExpr(random, depth - 1);
+      case 4 -> "(" + generateExpr(random, depth - 1) + ")";
+      case 5 -> "g" + random.nextInt(3) + "(" + generateArgs(random, depth - 1) + ")";
+      case 6 ->
+          "c.get(" + generateArgs(random, depth - 1) + ")" + (random.nextBoolean() ? ".f" : "");
+      default -> "v" + random.nextInt(5) + " = " + generateExpr(random, depth - 1);
+    };
+  }
+
+  private static String generateArgs(Random random, int depth) {
+    StringBuilder out = new StringBuilder();
+    int args = random.nextInt(3);
+    for (int i = 0; i < args; i++) {
+      out.append(i > 0 ? ", " : "").append(generateExpr(random, depth));
+    }
+    return out.toString();
+  }
+
   static Stream<Path> negativeTests() throws IOException {
     return listCppFiles(Path.of("src/main/resources/cpp/tests/neg")).stream();
   }
@@ -68,29 +1159,49 @@ class CppTestSuite {
     }
   }
 
-  private static String runProgram(Path file) throws Exception {
+  private static String runProgram(Path file, String... flags) throws Exception {
+    List<String> args = new ArrayList<>(List.of(flags));
+    args.add(file.toString());
+    Options options = Options.parse(args.toArray(String[]::new));
     PrintStream originalOut = System.out;
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
     System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
     try {
-      cppLexer lexer = new cppLexer(org.antlr.v4.runtime.CharStreams.fromPath(file));
-      org.antlr.v4.runtime.CommonTokenStream tokens =
-          new org.antlr.v4.runtime.CommonTokenStream(lexer);
-      cppParser parser = new cppParser(tokens);
-      parser.removeErrorListeners();
-      parser.addErrorListener(new ParserErrorListener());
-      cppParser.ProgramContext programCtx = parser.program();
-
-      ProgramNode programNode = (ProgramNode) new ASTBuilder().visit(programCtx);
-      ProgramDef program = new DefinitionBuilder().build(programNode);
-      Interpreter interpreter = new Interpreter(program);
-      interpreter.runMain();
+      Main.run(options, Runnable::run, false);
+      return buffer.toString(StandardCharsets.UTF_8);
+    } finally {
+      System.setOut(originalOut);
+    }
+  }
+
+  private static String captureOutput(Runnable action) {
+    PrintStream originalOut = System.out;
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+    try {
+      action.run();
       return buffer.toString(StandardCharsets.UTF_8);
     } finally {
       System.setOut(originalOut);
     }
   }
 
+  private static ProgramNode parse(Path file) throws IOException {
+    return parse(file, new Options());
+  }
+
+  private static ProgramNode parse(Path file, Options options) throws IOException {
+    if (options.frontend == Options.Frontend.HAND) {
+      Parser parser = Parser.forSource(Files.readString(file));
+      parser.setDeferBodies(options.lazyBodies);
+      return parser.parseProgram();
+    }
+    Map<Integer, DeferredBody> bodies = options.lazyBodies ? new HashMap<>() : null;
+    cppParser.ProgramContext program =
+        new SourceParser().parseProgram(org.antlr.v4.runtime.CharStreams.fromPath(file), bodies);
+    return (ProgramNode) new ASTBuilder(bodies).visit(program);
+  }
+
   private static String parseExpectedOutput(Path file) throws IOException {
     String content = Files.readString(file);
     Matcher matcher = EXPECT_BLOCK.matcher(content);
@@ -0,0 +1,28 @@
+package cpp;
+
+// Synthetic sources for the definition-building scaling test and DefinitionBenchmark.
+public final class ScalingPrograms {
+  private ScalingPrograms() {}
+
+  // One inheritance chain C0 to C(depth - 1). Every class adds a field f<i>, a method m<i>() and an
+  // override of get(), and there are ten overloads per class for each of the names g0 to g9.
+  public static String chain(int depth) {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      source.append("class C").append(i);
+      if (i > 0) {
+        source.append(" : public C").append(i - 1);
+      }
+      source.append(" { public: int f").append(i).append(";");
+      source.append(" int m").append(i).append("() { return ").append(i).append("; }");
+      source.append(" virtual int get() { return ").append(i).append("; } };\n");
+    }
+    for (int i = 0; i < depth; i++) {
+      for (int k = 0; k < 10; k++) {
+        source.append("int g").append(k).append("(C").append(i).append("& a) { return ");
+        source.append(k).append("; }\n");
+      }
+    }
+    return source.append("int main() { return 0; }\n").toString();
+  }
+}